@@ -0,0 +1,41 @@
+package com.iot.payment;
+
+import com.iot.payment.commandmodel.aggregate.BatchingCommandBus;
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.DuplicateCommandHandlerResolver;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.messaging.interceptors.CorrelationDataInterceptor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Replaces the simple command bus with a {@link BatchingCommandBus}: the commands of an entity are handled on the
+ * thread its id is routed to, and the commands queued for a thread are appended to the event store in one
+ * transaction. In multi-node mode it is the local segment of the distributed command bus.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ledger.commands.batching.enabled", havingValue = "true")
+public class BatchingCommandBusConfiguration {
+
+    @Bean(destroyMethod = "close")
+    @Qualifier("localSegment")
+    public BatchingCommandBus commandBus(TransactionManager transactionManager, org.axonframework.config.Configuration axonConfiguration,
+                                         DuplicateCommandHandlerResolver duplicateCommandHandlerResolver,
+                                         @Value("${ledger.commands.batching.threads:2}") int threads,
+                                         @Value("${ledger.commands.batching.max-batch-size:256}") int maxBatchSize,
+                                         @Value("${ledger.commands.batching.queue-capacity:4096}") int queueCapacity) {
+        BatchingCommandBus commandBus = BatchingCommandBus.builder()
+                .transactionManager(transactionManager)
+                .messageMonitor(axonConfiguration.messageMonitor(CommandBus.class, "commandBus"))
+                .duplicateCommandHandlerResolver(duplicateCommandHandlerResolver)
+                .threads(threads)
+                .maxBatchSize(maxBatchSize)
+                .queueCapacity(queueCapacity)
+                .build();
+        commandBus.registerHandlerInterceptor(new CorrelationDataInterceptor<>(axonConfiguration.correlationDataProviders()));
+        return commandBus;
+    }
+}
@@ -0,0 +1,155 @@
+package com.iot.payment;
+
+import com.iot.payment.cluster.ClusterSecretInterceptor;
+import com.iot.payment.cluster.EntityOwnerRedirectInterceptor;
+import com.iot.payment.cluster.HttpCommandBusConnector;
+import com.iot.payment.cluster.LedgerCluster;
+import com.iot.payment.cluster.OwnedEntityFilter;
+import com.iot.payment.cluster.ProjectionRebalancer;
+import com.iot.payment.commandmodel.aggregate.BoundedAggregateCache;
+import com.iot.payment.querymodel.ProjectionSnapshotter;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.distributed.DistributedCommandBus;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.config.EventProcessingConfigurer;
+import org.axonframework.eventhandling.ReplayToken;
+import org.axonframework.eventhandling.tokenstore.inmemory.InMemoryTokenStore;
+import org.axonframework.serialization.Serializer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Multi-node mode: entities are split over the nodes by consistent hashing on their id. Commands are routed to the
+ * owning node by a distributed command bus, queries about an entity are redirected to it, and every node projects only
+ * the entities it owns. Nodes share the event store and find each other through heartbeats over HTTP, so several
+ * instances on one machine only need different ports and each other as seeds. The cluster endpoints only accept
+ * requests that carry the secret the nodes share.
+ * <p>
+ * The "entities" processor keeps its tokens in memory: a node reads the whole event stream when it starts and again
+ * whenever the members change, replaying the entities it took over without publishing derived events. Hence it cannot be combined with the
+ * ledger journal or projection snapshots, which restore every entity.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "ledger.cluster.enabled", havingValue = "true")
+public class ClusterConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public LedgerCluster ledgerCluster(@Value("${ledger.cluster.node-id:}") String nodeId,
+                                       @Value("${ledger.cluster.advertised-url:}") String advertisedUrl,
+                                       @Value("${ledger.cluster.seeds:}") String[] seeds,
+                                       @Value("${ledger.cluster.secret:}") String secret,
+                                       @Value("${ledger.cluster.load-factor:100}") int loadFactor,
+                                       @Value("${ledger.cluster.member-timeout:5s}") Duration memberTimeout,
+                                       @Value("${ledger.cluster.suspect-after-failures:3}") int suspectAfterFailures,
+                                       @Value("${ledger.serializer.compact.enabled:false}") boolean compactSerializer,
+                                       @Value("${ledger.journal.enabled:false}") boolean journal,
+                                       @Value("${ledger.projection.snapshot.enabled:false}") boolean projectionSnapshots) {
+        if (!compactSerializer) {
+            throw new IllegalStateException("Multi-node mode sends commands with the compact serializer, enable ledger.serializer.compact.enabled");
+        }
+        if (journal || projectionSnapshots) {
+            throw new IllegalStateException("Multi-node mode only projects the entities a node owns, disable the ledger journal and projection snapshots");
+        }
+        if (secret.isBlank()) {
+            throw new IllegalStateException("Multi-node mode needs the secret the nodes share, set ledger.cluster.secret");
+        }
+        if (nodeId.isBlank()) {
+            nodeId = UUID.randomUUID().toString();
+            log.warn("No ledger.cluster.node-id set, joining as {}; the entities this node owns change when it restarts", nodeId);
+        }
+        return LedgerCluster.builder()
+                .nodeId(nodeId)
+                .url(advertisedUrl.isBlank() ? null : URI.create(advertisedUrl))
+                .seeds(Arrays.stream(seeds).filter(seed -> !seed.isBlank()).map(seed -> URI.create(seed.trim())).toList())
+                .secret(secret)
+                .loadFactor(loadFactor)
+                .memberTimeout(memberTimeout)
+                .suspectAfterFailures(suspectAfterFailures)
+                .build();
+    }
+
+    /**
+     * Starts the heartbeats once the web server runs, advertising its port on localhost unless a url was configured.
+     */
+    @Bean
+    public ApplicationListener<WebServerInitializedEvent> clusterHeartbeats(LedgerCluster cluster,
+                                                                            @Value("${ledger.cluster.heartbeat-interval:1s}") Duration interval) {
+        return event -> {
+            if (event.getApplicationContext().getServerNamespace() != null) {
+                return;
+            }
+            if (cluster.url() == null) {
+                cluster.advertise(URI.create("http://localhost:" + event.getWebServer().getPort()));
+            }
+            cluster.scheduleHeartbeats(interval);
+        };
+    }
+
+    @Bean
+    public HttpCommandBusConnector commandBusConnector(@Qualifier("localSegment") CommandBus localSegment,
+                                                       @Qualifier("messageSerializer") Serializer messageSerializer,
+                                                       @Value("${ledger.cluster.secret:}") String secret,
+                                                       @Value("${ledger.cluster.command-timeout:10s}") Duration timeout) {
+        return new HttpCommandBusConnector(localSegment, messageSerializer, secret, timeout);
+    }
+
+    /**
+     * Takes the place of the local command bus, which Axon's auto-configuration still creates as its local segment.
+     */
+    @Bean
+    @Primary
+    public DistributedCommandBus distributedCommandBus(LedgerCluster cluster, HttpCommandBusConnector connector,
+                                                       org.axonframework.config.Configuration axonConfiguration) {
+        return DistributedCommandBus.builder()
+                .commandRouter(cluster)
+                .connector(connector)
+                .messageMonitor(axonConfiguration.messageMonitor(DistributedCommandBus.class, "distributedCommandBus"))
+                .build();
+    }
+
+    @Autowired
+    public void configureEntitiesProcessor(EventProcessingConfigurer configurer, ObjectProvider<ProjectionRebalancer> rebalancer) {
+        configurer.registerTokenStore(ProjectionSnapshotter.PROCESSING_GROUP, configuration -> new InMemoryTokenStore())
+                .registerHandlerInterceptor(ProjectionSnapshotter.PROCESSING_GROUP, configuration -> new OwnedEntityFilter(rebalancer.getObject()))
+                .registerPooledStreamingEventProcessorConfiguration(ProjectionSnapshotter.PROCESSING_GROUP, (configuration, builder) ->
+                        builder.initialToken(source -> ReplayToken.createReplayToken(source.createHeadToken())));
+    }
+
+    @Bean(destroyMethod = "close")
+    public ProjectionRebalancer projectionRebalancer(LedgerCluster cluster, EventProcessingConfiguration eventProcessing,
+                                                     BoundedAggregateCache entityAggregateCache,
+                                                     @Value("${ledger.cluster.heartbeat-interval:1s}") Duration settleTime) {
+        ProjectionRebalancer rebalancer = new ProjectionRebalancer(cluster, eventProcessing, ProjectionSnapshotter.PROCESSING_GROUP,
+                entityAggregateCache, settleTime);
+        cluster.onMembershipChange(rebalancer::membersChanged);
+        return rebalancer;
+    }
+
+    @Bean
+    public WebMvcConfigurer entityOwnerRedirect(LedgerCluster cluster, @Value("${ledger.cluster.secret:}") String secret) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(new ClusterSecretInterceptor(secret)).addPathPatterns("/cluster/**");
+                registry.addInterceptor(new EntityOwnerRedirectInterceptor(cluster)).excludePathPatterns("/cluster/**");
+            }
+        };
+    }
+}
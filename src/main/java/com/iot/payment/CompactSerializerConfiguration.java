@@ -0,0 +1,46 @@
+package com.iot.payment;
+
+import com.iot.payment.commandmodel.aggregate.EntityAggregateCodec;
+import com.iot.payment.serialization.CompactCodec;
+import com.iot.payment.serialization.CompactSerializer;
+import com.iot.payment.serialization.LedgerCommandCodecs;
+import com.iot.payment.serialization.LedgerEventCodecs;
+import com.thoughtworks.xstream.XStream;
+import org.axonframework.serialization.RevisionResolver;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.xml.XStreamSerializer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces Axon's general serializer, which the event and message serializers default to, with a
+ * {@link CompactSerializer} for the ledger events, {@code EntityAggregate} snapshots and the commands sent between
+ * nodes. Everything else, and every event stored before, is still handled by the XStream serializer Axon would have
+ * used. Opt-in, as nodes without it cannot read what it writes.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ledger.serializer.compact.enabled", havingValue = "true")
+public class CompactSerializerConfiguration {
+
+    @Bean
+    @Primary
+    public Serializer serializer(RevisionResolver revisionResolver, @Qualifier("defaultAxonXStream") XStream xStream) {
+        List<CompactCodec<?>> codecs = new ArrayList<>(LedgerEventCodecs.all());
+        codecs.add(EntityAggregateCodec.SNAPSHOT);
+        codecs.addAll(LedgerCommandCodecs.all());
+        return CompactSerializer.builder()
+                .delegate(XStreamSerializer.builder()
+                        .xStream(xStream)
+                        .revisionResolver(revisionResolver)
+                        .classLoader(getClass().getClassLoader())
+                        .build())
+                .codecs(codecs)
+                .build();
+    }
+}
@@ -1,17 +1,174 @@
 package com.iot.payment;
 
-import org.axonframework.eventsourcing.EventCountSnapshotTriggerDefinition;
-import org.axonframework.eventsourcing.SnapshotTriggerDefinition;
+import com.iot.payment.commandmodel.BalanceHistorySpillFile;
+import com.iot.payment.commandmodel.BalanceRetentionPolicy;
+import com.iot.payment.commandmodel.aggregate.BoundedAggregateCache;
+import com.iot.payment.commandmodel.aggregate.IdempotencyKeyStore;
+import com.iot.payment.commandmodel.aggregate.IdempotentCommandInterceptor;
+import com.iot.payment.commandmodel.aggregate.LoadTimeSnapshotTriggerDefinition;
+import com.iot.payment.querymodel.AsyncBatchingDerivedEventPublisher;
+import com.iot.payment.querymodel.DerivedEventPublisher;
+import com.iot.payment.querymodel.OutboxDerivedEventPublisher;
+import com.iot.payment.repository.LedgerJournal;
+import com.iot.payment.repository.MappedLedgerJournal;
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.common.jpa.EntityManagerProvider;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventhandling.async.SequencingPolicy;
+import org.axonframework.eventhandling.async.SequentialPerAggregatePolicy;
 import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.serialization.Serializer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Path;
+import java.time.Duration;
+
 @Configuration
 public class LedgerApplicationConfiguration {
+    /**
+     * Snapshots an {@code EntityAggregate} once loading it takes longer than the budget, rather than every fixed number
+     * of events.
+     */
+    @Bean
+    public LoadTimeSnapshotTriggerDefinition entityAggregateSnapshotTriggerDefinition(Snapshotter snapshotter, @Qualifier("eventSerializer") Serializer eventSerializer,
+                                                                                      @Value("${axon.aggregate.entity.snapshot-load-budget:50ms}") Duration budget,
+                                                                                      @Value("${axon.aggregate.entity.snapshot-minimum-events:16}") int minimumEvents) {
+        return LoadTimeSnapshotTriggerDefinition.builder()
+                .snapshotter(snapshotter)
+                .eventSerializer(eventSerializer)
+                .budget(budget)
+                .minimumEvents(minimumEvents)
+                .build();
+    }
+
+    /**
+     * Keeps loaded {@code EntityAggregate}s between commands, so hot entities are not sourced from the event store on
+     * every command. The cache is bounded by its number of entries: the state of an {@code EntityAggregate} is its
+     * identifier alone, so every entry costs about the same. Axon evicts the entry of an aggregate whose unit of work
+     * rolls back, e.g. on a concurrent append, so the next command sources it again.
+     */
+    @Bean
+    public BoundedAggregateCache entityAggregateCache(@Value("${axon.aggregate.entity.cache.max-entries:65536}") long maxEntries,
+                                                      @Value("${axon.aggregate.entity.cache.segments:16}") int segments) {
+        // Without a weigher every entry weighs one
+        return BoundedAggregateCache.builder()
+                .maxWeight(maxEntries)
+                .segments(segments)
+                .build();
+    }
+
+    /**
+     * Routes the events of the "entities" processing group to segments by entity id. Entity events are applied by
+     * {@code EntityAggregate}, whose identifier is the entity id, so events of one entity stay in order on one segment
+     * while different entities are projected in parallel.
+     */
+    @Bean
+    public SequencingPolicy<? super EventMessage<?>> entityIdSequencingPolicy() {
+        return SequentialPerAggregatePolicy.instance();
+    }
+
+    /**
+     * Retention of the wallet balance histories kept by the query side. Unbounded unless enabled, so historical
+     * balances are exact. Without a spill directory the day checkpoints stay in memory, with one all wallets spill
+     * into a single file, removed when the context closes.
+     */
+    @Bean
+    public BalanceRetentionPolicy balanceRetentionPolicy(@Value("${ledger.balance.history.bounded:false}") boolean bounded,
+                                                         @Value("${ledger.balance.history.full-resolution:1h}") Duration fullResolution,
+                                                         @Value("${ledger.balance.history.minute-checkpoints:1d}") Duration minuteCheckpoints,
+                                                         @Value("${ledger.balance.history.hour-checkpoints:30d}") Duration hourCheckpoints,
+                                                         @Value("${ledger.balance.history.spill-after:30d}") Duration spillAfter,
+                                                         @Value("${ledger.balance.history.spill-directory:}") String spillDirectory,
+                                                         @Value("${ledger.balance.history.compaction-threshold:1024}") int compactionThreshold) {
+        if (!bounded) {
+            return BalanceRetentionPolicy.UNBOUNDED;
+        }
+        return BalanceRetentionPolicy.builder()
+                .fullResolution(fullResolution)
+                .minuteCheckpoints(minuteCheckpoints)
+                .hourCheckpoints(hourCheckpoints)
+                .spillAfter(spillAfter)
+                .spillFile(spillDirectory.isBlank() ? null : BalanceHistorySpillFile.open(Path.of(spillDirectory)))
+                .compactionThreshold(compactionThreshold)
+                .build();
+    }
+
+    /**
+     * Journal the in-memory ledger is rebuilt from on start up. Disabled by default, the projection is then rebuilt
+     * by replaying the event store.
+     */
+    @Bean
+    public LedgerJournal ledgerJournal(@Value("${ledger.journal.enabled:false}") boolean enabled,
+                                       @Value("${ledger.journal.directory:ledger-journal}") String directory,
+                                       @Value("${ledger.journal.segment-records:65536}") int segmentRecords,
+                                       @Value("${ledger.journal.force-on-write:false}") boolean forceOnWrite) {
+        if (!enabled) {
+            return LedgerJournal.NONE;
+        }
+        return MappedLedgerJournal.open(Path.of(directory), segmentRecords, forceOnWrite);
+    }
+
+    /**
+     * How the projection publishes the events it derives: {@code immediate} within each event handler,
+     * {@code batched} in one append after every processor batch, or through the {@code outbox} table.
+     */
+    @Bean(destroyMethod = "close")
+    public DerivedEventPublisher derivedEventPublisher(EventBus eventBus, TransactionManager transactionManager, EntityManagerProvider entityManagerProvider,
+                                                       @Qualifier("eventSerializer") Serializer eventSerializer,
+                                                       @Value("${ledger.derived-events.publication:immediate}") String publication,
+                                                       @Value("${ledger.derived-events.max-batch-size:1024}") int maxBatchSize,
+                                                       @Value("${ledger.derived-events.retry-interval:1s}") Duration retryInterval,
+                                                       @Value("${ledger.derived-events.outbox.relay-interval:1s}") Duration relayInterval) {
+        return switch (publication) {
+            case "immediate" -> DerivedEventPublisher.immediate(eventBus);
+            case "batched" -> AsyncBatchingDerivedEventPublisher.builder()
+                    .eventBus(eventBus)
+                    .transactionManager(transactionManager)
+                    .maxBatchSize(maxBatchSize)
+                    .retryInterval(retryInterval)
+                    .build();
+            case "outbox" -> {
+                OutboxDerivedEventPublisher outbox = OutboxDerivedEventPublisher.builder()
+                        .entityManagerProvider(entityManagerProvider)
+                        .eventBus(eventBus)
+                        .serializer(eventSerializer)
+                        .transactionManager(transactionManager)
+                        .relayBatchSize(maxBatchSize)
+                        .build();
+                outbox.scheduleEvery(relayInterval);
+                yield outbox;
+            }
+            default -> throw new IllegalArgumentException("Unknown derived event publication " + publication + ", expected immediate, batched or outbox");
+        };
+    }
+
+    /**
+     * Idempotency keys of the transfers handled within the window, bounded to {@code max-keys} in memory.
+     */
+    @Bean
+    public IdempotencyKeyStore idempotencyKeyStore(@Value("${ledger.transfer.idempotency.window:24h}") Duration window,
+                                                   @Value("${ledger.transfer.idempotency.max-keys:500000}") int maxKeys,
+                                                   @Value("${ledger.transfer.idempotency.generations:4}") int generations) {
+        return IdempotencyKeyStore.builder()
+                .window(window)
+                .maxKeys(maxKeys)
+                .generations(generations)
+                .build();
+    }
 
+    /**
+     * Registered on the command bus the aggregates subscribe to. In multi-node mode that is the distributed command
+     * bus, which registers it on its local segment, so keys are checked by the node owning the entity.
+     */
     @Bean
-    public SnapshotTriggerDefinition entityAggregateSnapshotTriggerDefinition(Snapshotter snapshotter, @Value("${axon.aggregate.entity.snapshot-threshold:250}") int threshold) {
-        return new EventCountSnapshotTriggerDefinition(snapshotter, threshold);
+    public IdempotentCommandInterceptor idempotentCommandInterceptor(CommandBus commandBus, IdempotencyKeyStore idempotencyKeyStore) {
+        IdempotentCommandInterceptor interceptor = new IdempotentCommandInterceptor(idempotencyKeyStore);
+        commandBus.registerHandlerInterceptor(interceptor);
+        return interceptor;
     }
 }
@@ -0,0 +1,54 @@
+package com.iot.payment;
+
+import com.iot.payment.querymodel.JournalCheckpointer;
+import com.iot.payment.querymodel.ProjectionSnapshotter;
+import com.iot.payment.repository.LedgerJournal;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.config.EventProcessingConfigurer;
+import org.axonframework.eventhandling.tokenstore.TokenStore;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.axonframework.serialization.Serializer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Checkpoints of the ledger journal, so the "entities" processor resumes where the journal is complete on start up.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ledger.journal.enabled", havingValue = "true")
+public class LedgerJournalConfiguration {
+
+    @Autowired
+    public void configureEntitiesProcessor(EventProcessingConfigurer configurer, ObjectProvider<JournalCheckpointer> checkpointer,
+                                           @Value("${ledger.projection.snapshot.enabled:false}") boolean projectionSnapshots) {
+        if (projectionSnapshots) {
+            throw new IllegalStateException("The ledger journal and projection snapshots both restore the projection, enable only one of them");
+        }
+        configurer.registerPooledStreamingEventProcessorConfiguration(ProjectionSnapshotter.PROCESSING_GROUP, (configuration, builder) ->
+                builder.initialToken(source -> checkpointer.getObject().resumeToken().orElseGet(source::createTailToken)));
+    }
+
+    @Bean(destroyMethod = "close")
+    public JournalCheckpointer journalCheckpointer(LedgerJournal journal, EventProcessingConfiguration eventProcessing, EventStore eventStore,
+                                                   TokenStore tokenStore, TransactionManager transactionManager, Serializer serializer,
+                                                   @Value("${ledger.journal.checkpoint-interval:1s}") Duration interval) {
+        JournalCheckpointer checkpointer = JournalCheckpointer.builder()
+                .journal(journal)
+                .eventProcessing(eventProcessing)
+                .eventStore(eventStore)
+                .tokenStore(tokenStore)
+                .transactionManager(transactionManager)
+                .serializer(serializer)
+                .build();
+        checkpointer.restore();
+        checkpointer.scheduleEvery(interval);
+        return checkpointer;
+    }
+}
@@ -0,0 +1,78 @@
+package com.iot.payment;
+
+import com.iot.payment.repository.MongoEventLayout;
+import com.mongodb.client.MongoClient;
+import org.axonframework.common.jpa.EntityManagerProvider;
+import org.axonframework.eventhandling.tokenstore.TokenStore;
+import org.axonframework.eventhandling.tokenstore.jpa.JpaTokenStore;
+import org.axonframework.eventsourcing.eventstore.EventStorageEngine;
+import org.axonframework.extensions.mongo.DefaultMongoTemplate;
+import org.axonframework.extensions.mongo.MongoTemplate;
+import org.axonframework.extensions.mongo.eventsourcing.eventstore.MongoEventStorageEngine;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.json.JacksonSerializer;
+import org.axonframework.springboot.TokenStoreProperties;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Stores the events and the {@code EntityAggregate} snapshots in MongoDB instead of the relational database, in the
+ * compact layout of {@link MongoEventLayout}. The storage engine creates its indexes on start: events by aggregate id
+ * and sequence number for sourcing aggregates and by timestamp and sequence number for the tracking processors. A new
+ * snapshot is inserted and the older snapshots of its aggregate are deleted afterwards. Tokens, projections and the
+ * outbox stay in the relational database, so a processor batch still commits its tokens with its projection changes.
+ * <p>
+ * The tokens of the Mongo event store hold unmodifiable maps, which XStream cannot write on Java 17, so the token store
+ * serializes them with Jackson. Projection snapshots and ledger journal checkpoints write tokens with the general
+ * serializer and cannot be combined with this store.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ledger.event-store.mongo.enabled", havingValue = "true")
+public class MongoEventStoreConfiguration {
+
+    @Bean
+    public MongoTemplate ledgerMongoTemplate(MongoClient mongoClient,
+                                             @Value("${ledger.event-store.mongo.database:ledger}") String database,
+                                             @Value("${ledger.event-store.mongo.events-collection:events}") String eventsCollection,
+                                             @Value("${ledger.event-store.mongo.snapshots-collection:entity_snapshots}") String snapshotsCollection) {
+        return DefaultMongoTemplate.builder()
+                .mongoDatabase(mongoClient, database)
+                .domainEventsCollectionName(eventsCollection)
+                .snapshotEventsCollectionName(snapshotsCollection)
+                .build();
+    }
+
+    @Bean
+    public TokenStore tokenStore(EntityManagerProvider entityManagerProvider, TokenStoreProperties tokenStoreProperties,
+                                 @Value("${ledger.projection.snapshot.enabled:false}") boolean projectionSnapshots,
+                                 @Value("${ledger.journal.enabled:false}") boolean journal) {
+        if (projectionSnapshots || journal) {
+            throw new IllegalStateException("Projection snapshots and the ledger journal cannot store the tokens of the Mongo event store");
+        }
+        return JpaTokenStore.builder()
+                .entityManagerProvider(entityManagerProvider)
+                .serializer(JacksonSerializer.defaultSerializer())
+                .claimTimeout(tokenStoreProperties.getClaimTimeout())
+                .build();
+    }
+
+    @Bean
+    public EventStorageEngine eventStorageEngine(MongoTemplate ledgerMongoTemplate, org.axonframework.config.Configuration axonConfiguration,
+                                                 @Qualifier("eventSerializer") Serializer eventSerializer, Serializer serializer,
+                                                 @Value("${ledger.event-store.mongo.look-back-time:1s}") Duration lookBackTime,
+                                                 @Value("${ledger.event-store.mongo.batch-size:512}") int batchSize) {
+        return MongoEventStorageEngine.builder()
+                .mongoTemplate(ledgerMongoTemplate)
+                .storageStrategy(MongoEventLayout.compact(lookBackTime))
+                .eventSerializer(eventSerializer)
+                .snapshotSerializer(serializer)
+                .upcasterChain(axonConfiguration.upcasterChain())
+                .batchSize(batchSize)
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+package com.iot.payment;
+
+import com.iot.payment.commandmodel.BalanceRetentionPolicy;
+import com.iot.payment.querymodel.ProjectionSnapshotter;
+import com.iot.payment.querymodel.ProjectionWatermarks;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.config.EventProcessingConfigurer;
+import org.axonframework.eventhandling.tokenstore.TokenStore;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.axonframework.serialization.Serializer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Snapshots of the query side ledger, so the "entities" processor resumes from the latest snapshot on start up.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ledger.projection.snapshot.enabled", havingValue = "true")
+public class ProjectionSnapshotConfiguration {
+    private final ProjectionWatermarks watermarks = new ProjectionWatermarks();
+
+    @Autowired
+    public void configureEntitiesProcessor(EventProcessingConfigurer configurer, ObjectProvider<ProjectionSnapshotter> snapshotter) {
+        configurer.registerEventHandler(configuration -> watermarks)
+                .registerHandlerInterceptor(ProjectionSnapshotter.PROCESSING_GROUP, configuration -> watermarks)
+                .registerPooledStreamingEventProcessorConfiguration(ProjectionSnapshotter.PROCESSING_GROUP, (configuration, builder) ->
+                        builder.initialToken(source -> snapshotter.getObject().resumeToken().orElseGet(source::createTailToken)));
+    }
+
+    @Bean(destroyMethod = "close")
+    public ProjectionSnapshotter projectionSnapshotter(LedgerInMemoryRepository repository, EventProcessingConfiguration eventProcessing,
+                                                       EventStore eventStore, TokenStore tokenStore, TransactionManager transactionManager,
+                                                       Serializer serializer, BalanceRetentionPolicy balanceRetention,
+                                                       @Value("${ledger.projection.snapshot.directory:projection-snapshots}") String directory,
+                                                       @Value("${ledger.projection.snapshot.interval:5m}") Duration interval,
+                                                       @Value("${ledger.projection.snapshot.retained:2}") int retained) {
+        ProjectionSnapshotter snapshotter = ProjectionSnapshotter.builder()
+                .repository(repository)
+                .watermarks(watermarks)
+                .eventProcessing(eventProcessing)
+                .eventStore(eventStore)
+                .tokenStore(tokenStore)
+                .transactionManager(transactionManager)
+                .serializer(serializer)
+                .balanceRetention(balanceRetention)
+                .directory(Path.of(directory))
+                .retained(retained)
+                .build();
+        snapshotter.restore();
+        snapshotter.scheduleEvery(interval);
+        return snapshotter;
+    }
+}
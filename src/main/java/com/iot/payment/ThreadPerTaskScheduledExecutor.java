@@ -0,0 +1,113 @@
+package com.iot.payment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ScheduledExecutorService} starting a new thread for every task, so the number of tasks running at once is
+ * not capped by a pool. Delayed and periodic tasks wait on a single timer thread and are then handed to a thread of
+ * their own; a periodic task that runs longer than its period may overlap its next run. Scheduling a
+ * {@link Callable} is not supported.
+ */
+final class ThreadPerTaskScheduledExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+    private final ThreadFactory threadFactory;
+    private final ScheduledExecutorService timer;
+    private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown;
+
+    ThreadPerTaskScheduledExecutor(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+        this.timer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        Thread thread = threadFactory.newThread(() -> {
+            try {
+                command.run();
+            } finally {
+                running.remove(Thread.currentThread());
+                synchronized (running) {
+                    running.notifyAll();
+                }
+            }
+        });
+        running.add(thread);
+        thread.start();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return timer.schedule(() -> execute(command), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException("Scheduling a callable is not supported");
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return timer.scheduleAtFixedRate(() -> execute(command), initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return timer.scheduleWithFixedDelay(() -> execute(command), initialDelay, delay, unit);
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        timer.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> pending = new ArrayList<>(timer.shutdownNow());
+        running.forEach(Thread::interrupt);
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && timer.isTerminated() && running.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!timer.awaitTermination(timeout, unit)) {
+            return false;
+        }
+        synchronized (running) {
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(running, remaining);
+            }
+        }
+        return true;
+    }
+}
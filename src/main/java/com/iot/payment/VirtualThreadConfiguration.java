@@ -0,0 +1,66 @@
+package com.iot.payment;
+
+import org.axonframework.config.EventProcessingModule;
+import org.axonframework.eventhandling.EventHandlerInvoker;
+import org.axonframework.eventhandling.EventProcessor;
+import org.axonframework.eventhandling.TrackedEventMessage;
+import org.axonframework.messaging.StreamableMessageSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Runs Tomcat request handling, asynchronous MVC responses (the bulk transfer stream) and the workers of the pooled
+ * event processors on virtual threads, so slow clients park cheap virtual threads instead of exhausting platform
+ * thread pools. The configured command bus is kept: the simple command bus handles a command on the thread sending
+ * it, which is then a virtual thread too. Needs Java 21.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ledger.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("tomcat-handler-");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    @Bean(name = "applicationTaskExecutor")
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(VirtualThreads.newThreadPerTaskExecutor("task-"));
+    }
+
+    @Bean
+    public EventProcessingModule eventProcessingModule() {
+        return new VirtualThreadEventProcessingModule();
+    }
+
+    /**
+     * Replaces the platform thread executors of every pooled streaming processor. Every work package runs on a virtual
+     * thread of its own, so the configured thread count no longer caps how many segments are processed at once. The
+     * processor properties of Spring Boot set the worker executor last, so the override has to wrap the whole
+     * processor configuration.
+     */
+    private static final class VirtualThreadEventProcessingModule extends EventProcessingModule {
+
+        @Override
+        protected EventProcessor pooledStreamingEventProcessor(String name, EventHandlerInvoker eventHandlerInvoker, org.axonframework.config.Configuration config,
+                                                               StreamableMessageSource<TrackedEventMessage<?>> messageSource,
+                                                               PooledStreamingProcessorConfiguration processorConfiguration) {
+            return super.pooledStreamingEventProcessor(name, eventHandlerInvoker, config, messageSource, processorConfiguration.andThen((configuration, builder) -> {
+                ScheduledExecutorService coordinator = Executors.newSingleThreadScheduledExecutor(VirtualThreads.factory("Coordinator[" + name + "]-"));
+                ScheduledExecutorService workers = VirtualThreads.newScheduledThreadPerTaskExecutor("WorkPackage[" + name + "]-");
+                configuration.onShutdown(coordinator::shutdown);
+                configuration.onShutdown(workers::shutdown);
+                return builder.coordinatorExecutor(coordinator).workerExecutor(workers);
+            }));
+        }
+    }
+}
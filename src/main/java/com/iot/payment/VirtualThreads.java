@@ -0,0 +1,56 @@
+package com.iot.payment;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads of Java 21, looked up reflectively as the code base is still compiled for Java 16.
+ */
+public final class VirtualThreads {
+    private static final int FIRST_RELEASE = 21;
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return Runtime.version().feature() >= FIRST_RELEASE;
+    }
+
+    /**
+     * Factory of virtual threads named {@code namePrefix} followed by a sequence number.
+     */
+    public static ThreadFactory factory(String namePrefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads need Java " + FIRST_RELEASE + " or later, running on Java " + Runtime.version().feature());
+        }
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * Executor starting a new virtual thread for every task.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        ThreadFactory factory = factory(namePrefix);
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * Scheduled executor starting a new virtual thread for every task, see {@link ThreadPerTaskScheduledExecutor}.
+     */
+    public static ScheduledExecutorService newScheduledThreadPerTaskExecutor(String namePrefix) {
+        return new ThreadPerTaskScheduledExecutor(factory(namePrefix));
+    }
+}
@@ -0,0 +1,41 @@
+package com.iot.payment.cluster;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Only lets requests to the cluster endpoints through that carry the secret the nodes share, so heartbeats and
+ * commands cannot be sent by anyone who reaches the port. Others are answered with a 401.
+ */
+public class ClusterSecretInterceptor implements HandlerInterceptor {
+    public static final String SECRET_HEADER = "X-Ledger-Cluster-Secret";
+
+    private final byte[] secret;
+
+    public ClusterSecretInterceptor(String secret) {
+        this.secret = requireSecret(secret).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String sent = request.getHeader(SECRET_HEADER);
+        // Compared in constant time, so the secret cannot be guessed byte by byte
+        if (sent != null && MessageDigest.isEqual(secret, sent.getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        response.setStatus(HttpStatus.UNAUTHORIZED.value());
+        return false;
+    }
+
+    static String requireSecret(String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("The nodes of a cluster need a shared secret");
+        }
+        return secret;
+    }
+}
@@ -0,0 +1,61 @@
+package com.iot.payment.cluster;
+
+import com.iot.payment.rest.BulkTransferEndpoint;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AllArgsConstructor;
+import org.axonframework.commandhandling.distributed.Member;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Redirects queries about an entity owned by another node to that node, which is the only one projecting it. The
+ * entity is the {@code entity-id} path variable or request parameter; queries without one are answered locally.
+ * Commands are not redirected, the distributed command bus routes them, except bulk transfers: they wait for the
+ * projection to report which transfers were made.
+ */
+@AllArgsConstructor
+public class EntityOwnerRedirectInterceptor implements HandlerInterceptor {
+    public static final String ENTITY_ID = "entity-id";
+
+    private final LedgerCluster cluster;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!HttpMethod.GET.matches(request.getMethod()) && !isBulkTransfer(request)) {
+            return true;
+        }
+        String entityId = entityIdOf(request);
+        if (entityId == null) {
+            return true;
+        }
+        Member owner = cluster.ownerOf(entityId);
+        if (owner.local()) {
+            return true;
+        }
+        String query = request.getQueryString();
+        String location = LedgerCluster.urlOf(owner).resolve(request.getRequestURI()) + (query == null ? "" : "?" + query);
+        response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+        response.setHeader(HttpHeaders.LOCATION, location);
+        return false;
+    }
+
+    private static boolean isBulkTransfer(HttpServletRequest request) {
+        return HttpMethod.POST.matches(request.getMethod())
+                && BulkTransferEndpoint.TRANSFERS_PATH.equals(request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+    }
+
+    private static String entityIdOf(HttpServletRequest request) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> pathVariables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (pathVariables != null && pathVariables.get(ENTITY_ID) != null) {
+            return pathVariables.get(ENTITY_ID);
+        }
+        return request.getParameter(ENTITY_ID);
+    }
+}
@@ -0,0 +1,131 @@
+package com.iot.payment.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.CommandResultMessage;
+import org.axonframework.commandhandling.distributed.CommandBusConnector;
+import org.axonframework.commandhandling.distributed.CommandDispatchException;
+import org.axonframework.commandhandling.distributed.Member;
+import org.axonframework.common.Registration;
+import org.axonframework.messaging.MessageHandler;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.axonframework.serialization.Serializer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.axonframework.commandhandling.GenericCommandResultMessage.asCommandResultMessage;
+
+/**
+ * Sends the commands of the distributed command bus to the node owning their entity as a binary request to
+ * {@code /cluster/commands}, and dispatches the commands this node receives on its local command bus. Commands for
+ * this node never leave the JVM. Payloads are serialized with the message serializer, so the command codecs keep the
+ * requests small. Requests carry the secret the nodes share.
+ */
+@Slf4j
+public class HttpCommandBusConnector implements CommandBusConnector {
+    public static final String COMMANDS_PATH = "/cluster/commands";
+    public static final String CONTENT_TYPE = "application/octet-stream";
+
+    private final CommandBus localSegment;
+    private final Serializer serializer;
+    private final String secret;
+    private final HttpClient httpClient;
+    private final Duration timeout;
+
+    public HttpCommandBusConnector(CommandBus localSegment, Serializer serializer, String secret, Duration timeout) {
+        this.localSegment = localSegment;
+        this.serializer = serializer;
+        this.secret = ClusterSecretInterceptor.requireSecret(secret);
+        this.timeout = timeout;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    @Override
+    public <C> void send(Member destination, CommandMessage<? extends C> command) {
+        if (destination.local()) {
+            localSegment.dispatch(command);
+            return;
+        }
+        post(destination, new HttpDispatchMessage(command, serializer, false))
+                .exceptionally(e -> {
+                    log.warn("Could not send command {} to {}", command.getCommandName(), destination.name(), e);
+                    destination.suspect();
+                    return null;
+                });
+    }
+
+    @Override
+    public <C, R> void send(Member destination, CommandMessage<C> command, CommandCallback<? super C, R> callback) {
+        if (destination.local()) {
+            localSegment.dispatch(command, callback);
+            return;
+        }
+        post(destination, new HttpDispatchMessage(command, serializer, true))
+                .whenComplete((response, e) -> {
+                    if (e != null) {
+                        destination.suspect();
+                        callback.onResult(command, asCommandResultMessage(
+                                new CommandDispatchException("Could not send command to " + destination.name(), e)));
+                    } else if (response.statusCode() != 200) {
+                        callback.onResult(command, asCommandResultMessage(
+                                new CommandDispatchException(destination.name() + " answered with status " + response.statusCode())));
+                    } else {
+                        @SuppressWarnings("unchecked")
+                        CommandResultMessage<R> result = (CommandResultMessage<R>) HttpReplyMessage.fromBytes(response.body())
+                                .getCommandResultMessage(serializer);
+                        callback.onResult(command, result);
+                    }
+                });
+    }
+
+    /**
+     * Dispatches a command sent by another node on the local command bus. Completes with the reply, or with
+     * {@code null} when the sender does not expect one.
+     */
+    public CompletableFuture<byte[]> receive(byte[] body) {
+        HttpDispatchMessage dispatched = HttpDispatchMessage.fromBytes(body);
+        CommandMessage<?> command = dispatched.getCommandMessage(serializer);
+        if (!dispatched.isExpectReply()) {
+            localSegment.dispatch(command);
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        localSegment.dispatch(command, (message, result) ->
+                reply.complete(new HttpReplyMessage(message.getIdentifier(), result, serializer).toBytes()));
+        return reply;
+    }
+
+    @Override
+    public Registration subscribe(String commandName, MessageHandler<? super CommandMessage<?>> handler) {
+        return localSegment.subscribe(commandName, handler);
+    }
+
+    @Override
+    public Registration registerHandlerInterceptor(MessageHandlerInterceptor<? super CommandMessage<?>> handlerInterceptor) {
+        return localSegment.registerHandlerInterceptor(handlerInterceptor);
+    }
+
+    @Override
+    public Optional<CommandBus> localSegment() {
+        return Optional.of(localSegment);
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> post(Member destination, HttpDispatchMessage message) {
+        URI url = LedgerCluster.urlOf(destination).resolve(COMMANDS_PATH);
+        HttpRequest request = HttpRequest.newBuilder(url)
+                .timeout(timeout)
+                .header("Content-Type", CONTENT_TYPE)
+                .header(ClusterSecretInterceptor.SECRET_HEADER, secret)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(message.toBytes()))
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,62 @@
+package com.iot.payment.cluster;
+
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.distributed.DispatchMessage;
+import org.axonframework.serialization.Serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static com.iot.payment.serialization.CompactEncoding.readBytes;
+import static com.iot.payment.serialization.CompactEncoding.readString;
+import static com.iot.payment.serialization.CompactEncoding.writeBytes;
+import static com.iot.payment.serialization.CompactEncoding.writeString;
+
+/**
+ * A command on its way to another node, as the body of a request to {@code /cluster/commands}.
+ */
+class HttpDispatchMessage extends DispatchMessage {
+
+    HttpDispatchMessage(CommandMessage<?> command, Serializer serializer, boolean expectReply) {
+        super(command, serializer, expectReply);
+    }
+
+    private HttpDispatchMessage() {
+    }
+
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, commandIdentifier);
+            writeString(out, commandName);
+            writeString(out, payloadType);
+            writeString(out, payloadRevision);
+            writeBytes(out, serializedPayload);
+            writeBytes(out, serializedMetaData);
+            out.writeBoolean(expectReply);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static HttpDispatchMessage fromBytes(byte[] bytes) {
+        HttpDispatchMessage message = new HttpDispatchMessage();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            message.commandIdentifier = readString(in);
+            message.commandName = readString(in);
+            message.payloadType = readString(in);
+            message.payloadRevision = readString(in);
+            message.serializedPayload = readBytes(in);
+            message.serializedMetaData = readBytes(in);
+            message.expectReply = in.readBoolean();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Not a dispatched command", e);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,64 @@
+package com.iot.payment.cluster;
+
+import org.axonframework.commandhandling.CommandResultMessage;
+import org.axonframework.commandhandling.distributed.ReplyMessage;
+import org.axonframework.serialization.Serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static com.iot.payment.serialization.CompactEncoding.readBytes;
+import static com.iot.payment.serialization.CompactEncoding.readString;
+import static com.iot.payment.serialization.CompactEncoding.writeBytes;
+import static com.iot.payment.serialization.CompactEncoding.writeString;
+
+/**
+ * The result of a command handled for another node, as the body of the response from {@code /cluster/commands}.
+ */
+class HttpReplyMessage extends ReplyMessage {
+
+    HttpReplyMessage(String commandIdentifier, CommandResultMessage<?> result, Serializer serializer) {
+        super(commandIdentifier, result, serializer);
+    }
+
+    private HttpReplyMessage() {
+    }
+
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, commandIdentifier);
+            writeString(out, payloadType);
+            writeString(out, payloadRevision);
+            writeBytes(out, serializedPayload);
+            writeString(out, exceptionType);
+            writeString(out, exceptionRevision);
+            writeBytes(out, serializedException);
+            writeBytes(out, serializedMetaData);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static HttpReplyMessage fromBytes(byte[] bytes) {
+        HttpReplyMessage message = new HttpReplyMessage();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            message.commandIdentifier = readString(in);
+            message.payloadType = readString(in);
+            message.payloadRevision = readString(in);
+            message.serializedPayload = readBytes(in);
+            message.exceptionType = readString(in);
+            message.exceptionRevision = readString(in);
+            message.serializedException = readBytes(in);
+            message.serializedMetaData = readBytes(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Not a command reply", e);
+        }
+        return message;
+    }
+}
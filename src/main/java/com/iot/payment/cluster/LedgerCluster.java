@@ -0,0 +1,390 @@
+package com.iot.payment.cluster;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.distributed.AnnotationRoutingStrategy;
+import org.axonframework.commandhandling.distributed.CommandMessageFilter;
+import org.axonframework.commandhandling.distributed.CommandRouter;
+import org.axonframework.commandhandling.distributed.ConsistentHash;
+import org.axonframework.commandhandling.distributed.Member;
+import org.axonframework.commandhandling.distributed.RoutingStrategy;
+import org.axonframework.commandhandling.distributed.SimpleMember;
+import org.axonframework.commandhandling.distributed.commandfilter.AcceptAll;
+import org.axonframework.commandhandling.distributed.commandfilter.DenyAll;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Membership of a multi-node ledger and the consistent hash ring that assigns every entity id to one node. The ring
+ * routes the commands of the distributed command bus and decides which entities a node projects and answers queries
+ * for, so commands and queries of an entity always end up on the same node.
+ * <p>
+ * Nodes find each other without a broker: every node posts a heartbeat with the members it knows to its seeds and to
+ * every member it learnt about, and a member that has not been heard from within the member timeout, or that
+ * several commands in a row could not be delivered to, leaves the ring. A heartbeat tells how long ago the sender last
+ * heard from every member, so a member is only kept alive by gossip while some node still hears from it, and a member
+ * this node dropped only comes back once it was heard from after it was dropped. Listeners are told whenever the set
+ * of members changes.
+ */
+@Slf4j
+public class LedgerCluster implements CommandRouter, AutoCloseable {
+    public static final String MEMBERS_PATH = "/cluster/members";
+
+    private final String nodeId;
+    private final Set<URI> seeds;
+    private final String secret;
+    private final int loadFactor;
+    private final Duration memberTimeout;
+    private final int suspectAfterFailures;
+    private final Clock clock;
+    private final HttpClient httpClient;
+    private final RoutingStrategy routingStrategy = AnnotationRoutingStrategy.defaultStrategy();
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    /**
+     * When the members this node dropped were dropped, by name. Gossip about them from before is ignored.
+     */
+    private final Map<String, Long> dropped = new ConcurrentHashMap<>();
+    private final List<Consumer<Set<String>>> membershipListeners = new CopyOnWriteArrayList<>();
+    private volatile SimpleMember<URI> localMember;
+    private volatile CommandMessageFilter localFilter = AcceptAll.INSTANCE;
+    private volatile ConsistentHash ring;
+    private ScheduledExecutorService scheduler;
+
+    @Builder
+    private LedgerCluster(String nodeId, URI url, Collection<URI> seeds, String secret, Integer loadFactor, Duration memberTimeout,
+                          Integer suspectAfterFailures, Clock clock, HttpClient httpClient) {
+        if (nodeId == null || nodeId.isBlank()) {
+            throw new IllegalArgumentException("A cluster node needs an id");
+        }
+        this.nodeId = nodeId;
+        this.seeds = seeds == null ? Set.of() : new LinkedHashSet<>(seeds);
+        this.secret = ClusterSecretInterceptor.requireSecret(secret);
+        this.loadFactor = loadFactor == null ? 100 : loadFactor;
+        if (this.loadFactor < 1) {
+            throw new IllegalArgumentException("The load factor must be positive");
+        }
+        this.memberTimeout = memberTimeout == null ? Duration.ofSeconds(5) : memberTimeout;
+        this.suspectAfterFailures = suspectAfterFailures == null ? 3 : suspectAfterFailures;
+        if (this.suspectAfterFailures < 1) {
+            throw new IllegalArgumentException("A member is only suspected after at least one failed command");
+        }
+        this.clock = clock == null ? Clock.systemUTC() : clock;
+        this.httpClient = httpClient == null ? HttpClient.newBuilder().connectTimeout(this.memberTimeout).build() : httpClient;
+        this.localMember = new SimpleMember<>(nodeId, url, SimpleMember.LOCAL_MEMBER, null);
+        rebuildRing();
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Url other nodes reach this node at, {@code null} until it is known.
+     */
+    public URI url() {
+        return localMember.endpoint();
+    }
+
+    /**
+     * Sets the url of this node once the web server runs, when it was not configured up front.
+     */
+    public synchronized void advertise(URI url) {
+        localMember = new SimpleMember<>(nodeId, url, SimpleMember.LOCAL_MEMBER, null);
+        rebuildRing();
+    }
+
+    /**
+     * Tells the listener the names of the members every time a node joins or leaves.
+     */
+    public void onMembershipChange(Consumer<Set<String>> listener) {
+        membershipListeners.add(listener);
+    }
+
+    public Set<String> memberNames() {
+        return ring.getMembers().stream().map(Member::name).collect(Collectors.toCollection(HashSet::new));
+    }
+
+    /**
+     * The node owning the given entity: the first member on the ring from the hash of the entity id.
+     */
+    public Member ownerOf(String entityId) {
+        return ring.getEligibleMembers(entityId).iterator().next();
+    }
+
+    public boolean owns(String entityId) {
+        return ownerOf(entityId).local();
+    }
+
+    /**
+     * The entities this node owns with the current members, unaffected by later membership changes.
+     */
+    public Predicate<String> ownedEntities() {
+        ConsistentHash current = ring;
+        return entityId -> current.getEligibleMembers(entityId).iterator().next().local();
+    }
+
+    public static URI urlOf(Member member) {
+        return member.getConnectionEndpoint(URI.class)
+                .orElseThrow(() -> new IllegalStateException("Cluster member " + member.name() + " has no url"));
+    }
+
+    @Override
+    public Optional<Member> findDestination(CommandMessage<?> command) {
+        return ring.getMember(routingStrategy.getRoutingKey(command), command);
+    }
+
+    /**
+     * Called by the distributed command bus when handlers subscribe. Every node runs the same handlers, so the load
+     * factor and the filter only change which commands this node accepts while it starts.
+     */
+    @Override
+    public synchronized void updateMembership(int loadFactor, CommandMessageFilter commandFilter) {
+        localFilter = commandFilter;
+        rebuildRing();
+    }
+
+    /**
+     * Registers the members in a heartbeat, the sender being the first, and answers with the members this node knows.
+     */
+    public String receiveHeartbeat(String members) {
+        Map<String, Sighting> received = decode(members);
+        URI sender = received.values().stream().findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("A heartbeat names its sender first")).url();
+        merge(received, sender);
+        return heartbeatMessage();
+    }
+
+    /**
+     * The members this node knows with how long ago it heard from them, this node first.
+     */
+    String heartbeatMessage() {
+        return encode(members());
+    }
+
+    /**
+     * Sends a heartbeat to every seed and every known member, then drops the members not heard from in time.
+     */
+    public void heartbeat() {
+        URI url = url();
+        if (url == null) {
+            return;
+        }
+        Set<URI> targets = new LinkedHashSet<>(seeds);
+        peers.values().forEach(peer -> targets.add(peer.member().endpoint()));
+        targets.remove(url);
+        String members = heartbeatMessage();
+        for (URI target : targets) {
+            HttpRequest request = HttpRequest.newBuilder(target.resolve(MEMBERS_PATH))
+                    .timeout(memberTimeout)
+                    .header("Content-Type", "text/plain; charset=UTF-8")
+                    .header(ClusterSecretInterceptor.SECRET_HEADER, secret)
+                    .POST(HttpRequest.BodyPublishers.ofString(members, StandardCharsets.UTF_8))
+                    .build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                    .thenAccept(response -> {
+                        if (response.statusCode() == 200) {
+                            merge(decode(response.body()), target);
+                        }
+                    })
+                    .exceptionally(e -> {
+                        log.debug("No heartbeat from {}: {}", target, e.getMessage());
+                        return null;
+                    });
+        }
+        expire();
+    }
+
+    public synchronized void scheduleHeartbeats(Duration interval) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Cluster heartbeats are already scheduled");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-heartbeats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                heartbeat();
+            } catch (RuntimeException e) {
+                log.warn("Cluster heartbeat failed", e);
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Drops the members that have not been heard from within the member timeout, by this node or by the nodes it
+     * gossips with.
+     */
+    synchronized void expire() {
+        long now = clock.millis();
+        long deadline = now - memberTimeout.toMillis();
+        dropped.values().removeIf(droppedAt -> droppedAt < deadline);
+        boolean changed = false;
+        for (Peer peer : List.copyOf(peers.values())) {
+            if (peer.lastSeen() < deadline) {
+                drop(peer, now);
+                changed = true;
+            }
+        }
+        if (changed) {
+            rebuildRing();
+        }
+    }
+
+    /**
+     * Adds the members heard from within the member timeout and keeps the latest time every member was heard from.
+     * Gossip about a member from before this node dropped it is ignored, so a node that left does not come back
+     * through the nodes that still list it; it comes back once it is heard from again.
+     */
+    private synchronized void merge(Map<String, Sighting> members, URI heardFrom) {
+        long now = clock.millis();
+        long deadline = now - memberTimeout.toMillis();
+        boolean changed = false;
+        for (Map.Entry<String, Sighting> member : members.entrySet()) {
+            String name = member.getKey();
+            URI url = member.getValue().url();
+            long lastSeen = now - member.getValue().age();
+            boolean gossip = !url.equals(heardFrom);
+            if (name.equals(nodeId) || lastSeen < deadline || gossip && lastSeen <= dropped.getOrDefault(name, Long.MIN_VALUE)) {
+                continue;
+            }
+            Peer known = peers.get(name);
+            if (known == null || !known.member().endpoint().equals(url)) {
+                peers.put(name, new Peer(new SimpleMember<>(name, url, SimpleMember.REMOTE_MEMBER, this::suspect), lastSeen, 0));
+                dropped.remove(name);
+                changed = true;
+            } else if (!gossip) {
+                peers.put(name, new Peer(known.member(), lastSeen, 0));
+            } else if (lastSeen > known.lastSeen()) {
+                peers.put(name, new Peer(known.member(), lastSeen, known.failures()));
+            }
+        }
+        if (changed) {
+            rebuildRing();
+        }
+    }
+
+    private void drop(Peer peer, long now) {
+        peers.remove(peer.member().name());
+        dropped.put(peer.member().name(), now);
+    }
+
+    /**
+     * Counts a command that could not be delivered to the member, and drops the member once
+     * {@code suspectAfterFailures} commands in a row failed. A heartbeat from the member clears the count, a member
+     * that was dropped joins again with its next heartbeat.
+     */
+    private synchronized void suspect(SimpleMember<URI> member) {
+        Peer known = peers.get(member.name());
+        if (known == null || !known.member().endpoint().equals(member.endpoint())) {
+            return;
+        }
+        int failures = known.failures() + 1;
+        if (failures < suspectAfterFailures) {
+            peers.put(member.name(), new Peer(known.member(), known.lastSeen(), failures));
+            return;
+        }
+        drop(known, clock.millis());
+        log.warn("Removed cluster member {} at {} after {} failed commands", member.name(), member.endpoint(), failures);
+        rebuildRing();
+    }
+
+    private Map<String, Sighting> members() {
+        long now = clock.millis();
+        Map<String, Sighting> members = new LinkedHashMap<>();
+        if (url() != null) {
+            members.put(nodeId, new Sighting(url(), 0));
+        }
+        peers.values().forEach(peer -> members.put(peer.member().name(), new Sighting(peer.member().endpoint(), Math.max(0, now - peer.lastSeen()))));
+        return members;
+    }
+
+    private synchronized void rebuildRing() {
+        Set<String> before = ring == null ? null : memberNames();
+        CommandMessageFilter filter = localFilter == null ? DenyAll.INSTANCE : localFilter;
+        ConsistentHash rebuilt = new ConsistentHash().with(localMember, loadFactor, filter);
+        for (Peer peer : peers.values()) {
+            rebuilt = rebuilt.with(peer.member(), loadFactor, AcceptAll.INSTANCE);
+        }
+        ring = rebuilt;
+        Set<String> after = memberNames();
+        if (before != null && !before.equals(after)) {
+            log.info("Cluster members of {} are now {}", nodeId, after);
+            membershipListeners.forEach(listener -> listener.accept(after));
+        }
+    }
+
+    /**
+     * One member per line: its name, its url and how many milliseconds ago it was heard from.
+     */
+    static String encode(Map<String, Sighting> members) {
+        StringBuilder encoded = new StringBuilder();
+        members.forEach((name, sighting) -> encoded.append(name).append(' ').append(sighting.url()).append(' ').append(sighting.age()).append('\n'));
+        return encoded.toString();
+    }
+
+    static Map<String, Sighting> decode(String encoded) {
+        Map<String, Sighting> members = new LinkedHashMap<>();
+        for (String line : encoded.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int ageSeparator = line.lastIndexOf(' ');
+            int urlSeparator = ageSeparator <= 0 ? -1 : line.lastIndexOf(' ', ageSeparator - 1);
+            if (urlSeparator <= 0) {
+                throw new IllegalArgumentException("Not a cluster member: " + line);
+            }
+            long age;
+            try {
+                age = Long.parseLong(line.substring(ageSeparator + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a cluster member: " + line, e);
+            }
+            if (age < 0) {
+                throw new IllegalArgumentException("Not a cluster member: " + line);
+            }
+            members.put(line.substring(0, urlSeparator), new Sighting(URI.create(line.substring(urlSeparator + 1, ageSeparator)), age));
+        }
+        return members;
+    }
+
+    private record Peer(SimpleMember<URI> member, long lastSeen, int failures) {
+    }
+
+    /**
+     * A member as a heartbeat names it: its url and how many milliseconds ago the sender heard from it.
+     */
+    record Sighting(URI url, long age) {
+    }
+}
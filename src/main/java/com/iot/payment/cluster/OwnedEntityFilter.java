@@ -0,0 +1,26 @@
+package com.iot.payment.cluster;
+
+import lombok.AllArgsConstructor;
+import org.axonframework.eventhandling.DomainEventMessage;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventhandling.ReplayToken;
+import org.axonframework.messaging.InterceptorChain;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+
+/**
+ * Lets the "entities" processor of a node only project the events of the entities it owns. Every node reads the
+ * whole event stream, the {@link ProjectionRebalancer} decides which events reach the handlers.
+ */
+@AllArgsConstructor
+public class OwnedEntityFilter implements MessageHandlerInterceptor<EventMessage<?>> {
+    private final ProjectionRebalancer rebalancer;
+
+    @Override
+    public Object handle(UnitOfWork<? extends EventMessage<?>> unitOfWork, InterceptorChain interceptorChain) throws Exception {
+        if (unitOfWork.getMessage() instanceof DomainEventMessage<?> event && !rebalancer.projects(event.getAggregateIdentifier(), ReplayToken.isReplay(event))) {
+            return null;
+        }
+        return interceptorChain.proceed();
+    }
+}
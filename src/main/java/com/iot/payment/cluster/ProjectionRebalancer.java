@@ -0,0 +1,105 @@
+package com.iot.payment.cluster;
+
+import com.iot.payment.querymodel.RetainedEntities;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.common.caching.Cache;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.eventhandling.StreamingEventProcessor;
+import org.axonframework.messaging.StreamableMessageSource;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Rebuilds the projection of a node when the members of the cluster change, as it now owns other entities. Only the
+ * entities whose owner changed are rebuilt: the processor is reset to the start of the event stream with the entities
+ * it keeps as {@link RetainedEntities}, so its reset handler forgets the entities it lost, and the replay skips the
+ * events of the entities it kept. Those stay queryable throughout, the entities it took over are projected as the
+ * replay reaches their events, without publishing derived events again. Cached aggregates are evicted as well, since
+ * the commands of an entity may have been handled elsewhere in the meantime.
+ * <p>
+ * Which entities the node projects only changes with a rebuild, {@link #projects(String, boolean)} tells the
+ * {@link OwnedEntityFilter}. Membership changes within the settle time, e.g. several nodes starting together, cause a
+ * single rebuild.
+ */
+@Slf4j
+public class ProjectionRebalancer implements AutoCloseable {
+    private final LedgerCluster cluster;
+    private final EventProcessingConfiguration eventProcessing;
+    private final String processingGroup;
+    private final Cache aggregateCache;
+    private final Duration settleTime;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "projection-rebalance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> pending;
+    private volatile Predicate<String> projected;
+    private volatile Predicate<String> retained = entityId -> false;
+
+    public ProjectionRebalancer(LedgerCluster cluster, EventProcessingConfiguration eventProcessing, String processingGroup,
+                                Cache aggregateCache, Duration settleTime) {
+        this.cluster = cluster;
+        this.projected = cluster.ownedEntities();
+        this.eventProcessing = eventProcessing;
+        this.processingGroup = processingGroup;
+        this.aggregateCache = aggregateCache;
+        this.settleTime = settleTime;
+    }
+
+    /**
+     * Whether the events of an entity are projected: the entity was owned at the last rebuild, and a replayed event
+     * is not one of an entity that was kept, which has been projected before.
+     */
+    public boolean projects(String entityId, boolean replayed) {
+        return projected.test(entityId) && !(replayed && retained.test(entityId));
+    }
+
+    public synchronized void membersChanged(Set<String> members) {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = scheduler.schedule(() -> {
+            try {
+                rebalance(members);
+            } catch (RuntimeException e) {
+                log.warn("Rebuilding the {} projection failed", processingGroup, e);
+            }
+        }, settleTime.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    void rebalance(Set<String> members) {
+        StreamingEventProcessor processor = eventProcessing.eventProcessor(processingGroup, StreamingEventProcessor.class)
+                .orElseThrow(() -> new IllegalStateException("No streaming processor for " + processingGroup));
+        if (!processor.isRunning()) {
+            // Not started yet, rebuild once the processor runs
+            membersChanged(members);
+            return;
+        }
+        log.info("Rebuilding the {} projection for cluster members {}", processingGroup, members);
+        processor.shutDown();
+        try {
+            // While replaying, the entities taken over by the last rebuild are not complete yet
+            Predicate<String> complete = processor.isReplaying() ? retained : projected;
+            Predicate<String> owned = cluster.ownedEntities();
+            Predicate<String> kept = complete.and(owned);
+            aggregateCache.removeAll();
+            projected = owned;
+            retained = kept;
+            processor.resetTokens(StreamableMessageSource::createTailToken, new RetainedEntities(kept));
+        } finally {
+            processor.start();
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -12,6 +12,6 @@ import java.util.List;
 public class Account {
     private String id;
     private List<Wallet> wallets;
-    private AccountState state;
+    private volatile AccountState state;
 
 }
\ No newline at end of file
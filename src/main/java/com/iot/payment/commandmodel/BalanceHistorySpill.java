@@ -0,0 +1,101 @@
+package com.iot.payment.commandmodel;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Cold, time ordered part of a {@link BalanceTimeline}, kept in the shared {@link BalanceHistorySpillFile} as fixed
+ * size records: epoch nanos, unscaled balance and scale. Each spill of the timeline is one segment of the file, and
+ * only the position, size and first timestamp of the segments stay in memory. Lookups find the segment first and then
+ * binary search it with positional reads.
+ */
+final class BalanceHistorySpill {
+    private static final int RECORD_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final BalanceHistorySpillFile file;
+    private long[] positions = new long[2];
+    private long[] firstTimestamps = new long[2];
+    private int[] counts = new int[2];
+    private int segments;
+    private long count;
+
+    private BalanceHistorySpill(BalanceHistorySpillFile file) {
+        this.file = file;
+    }
+
+    static BalanceHistorySpill create(BalanceHistorySpillFile file) {
+        return new BalanceHistorySpill(file);
+    }
+
+    long count() {
+        return count;
+    }
+
+    void append(long[] timestamps, long[] unscaledBalances, int[] scales, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length * RECORD_SIZE);
+        for (int i = 0; i < length; i++) {
+            buffer.putLong(timestamps[i]).putLong(unscaledBalances[i]).putInt(scales[i]);
+        }
+        buffer.flip();
+        long position = file.append(buffer);
+        if (segments == positions.length) {
+            positions = Arrays.copyOf(positions, segments * 2);
+            firstTimestamps = Arrays.copyOf(firstTimestamps, segments * 2);
+            counts = Arrays.copyOf(counts, segments * 2);
+        }
+        positions[segments] = position;
+        firstTimestamps[segments] = timestamps[0];
+        counts[segments] = length;
+        segments++;
+        count += length;
+    }
+
+    /**
+     * Balance of the latest spilled entry at or before the given instant, {@code null} if there is none.
+     */
+    BigDecimal balanceAt(long epochNanos) {
+        // Last segment starting at or before the instant, the entry is in there if it is spilled at all
+        int segment = -1;
+        for (int low = 0, high = segments - 1; low <= high; ) {
+            int mid = (low + high) >>> 1;
+            if (firstTimestamps[mid] <= epochNanos) {
+                segment = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (segment < 0) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        int low = 0;
+        int high = counts[segment];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (read(segment, mid, buffer).getLong(0) <= epochNanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        read(segment, low - 1, buffer);
+        return BigDecimal.valueOf(buffer.getLong(Long.BYTES), buffer.getInt(2 * Long.BYTES));
+    }
+
+    void forEach(BalanceTimeline.EntryVisitor visitor) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        for (int segment = 0; segment < segments; segment++) {
+            for (int record = 0; record < counts[segment]; record++) {
+                read(segment, record, buffer);
+                visitor.visit(buffer.getLong(0), BigDecimal.valueOf(buffer.getLong(Long.BYTES), buffer.getInt(2 * Long.BYTES)));
+            }
+        }
+    }
+
+    private ByteBuffer read(int segment, int record, ByteBuffer buffer) {
+        file.read(positions[segment] + (long) record * RECORD_SIZE, buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,73 @@
+package com.iot.payment.commandmodel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one file the spilled balance histories of all wallets share, so spilling takes a single file descriptor however
+ * many wallets spill. Every spill appends a segment of records at the end of the file and remembers where it went;
+ * segments are never rewritten. The file is removed when it is closed, or when the JVM exits.
+ */
+public final class BalanceHistorySpillFile implements Closeable {
+    private final FileChannel channel;
+    private final AtomicLong end = new AtomicLong();
+
+    private BalanceHistorySpillFile(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static BalanceHistorySpillFile open(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, "balance-history-", ".bin");
+            return new BalanceHistorySpillFile(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create balance history spill file in " + directory, e);
+        }
+    }
+
+    /**
+     * Appends a segment and returns its position in the file.
+     */
+    long append(ByteBuffer segment) {
+        long position = end.getAndAdd(segment.remaining());
+        try {
+            long offset = position;
+            while (segment.hasRemaining()) {
+                offset += channel.write(segment, offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill balance history", e);
+        }
+        return position;
+    }
+
+    /**
+     * Fills the buffer with the bytes at the given position.
+     */
+    void read(long position, ByteBuffer buffer) {
+        buffer.clear();
+        try {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new IllegalStateException("Balance history spill file is shorter than expected");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read spilled balance history", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,73 @@
+package com.iot.payment.commandmodel;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * How long a {@link BalanceTimeline} keeps every entry, and how coarse it gets after that. Entries younger than
+ * {@code fullResolution} are all kept; older ones are reduced to the last entry per minute for the following
+ * {@code minuteCheckpoints}, to the last entry per hour for the {@code hourCheckpoints} after that, and to the last
+ * entry per day beyond. Day checkpoints older than {@code spillAfter} move to the {@code spillFile} all wallets of
+ * the policy share when both are set; closing the policy removes the file.
+ * A policy without a {@code fullResolution} keeps the history unbounded.
+ */
+@Value
+@Builder
+public class BalanceRetentionPolicy implements Closeable {
+    public static final BalanceRetentionPolicy UNBOUNDED = BalanceRetentionPolicy.builder().build();
+
+    static final long MINUTE_NANOS = Duration.ofMinutes(1).toNanos();
+    static final long HOUR_NANOS = Duration.ofHours(1).toNanos();
+    static final long DAY_NANOS = Duration.ofDays(1).toNanos();
+
+    Duration fullResolution;
+    Duration minuteCheckpoints;
+    Duration hourCheckpoints;
+    Duration spillAfter;
+    BalanceHistorySpillFile spillFile;
+    /**
+     * Entries a timeline holds before it compacts for the first time; after that it compacts whenever it has doubled
+     * since the last compaction.
+     */
+    @Builder.Default
+    int compactionThreshold = 1024;
+
+    public boolean isBounded() {
+        return fullResolution != null;
+    }
+
+    public boolean isSpilling() {
+        return isBounded() && spillAfter != null && spillFile != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (spillFile != null) {
+            spillFile.close();
+        }
+    }
+
+    /**
+     * Checkpoint width for an entry of the given age, 0 when the entry is still kept at full resolution.
+     */
+    long checkpointWidth(long ageNanos) {
+        if (ageNanos < nanos(fullResolution)) {
+            return 0;
+        }
+        if (ageNanos < nanos(fullResolution) + nanos(minuteCheckpoints)) {
+            return MINUTE_NANOS;
+        }
+        if (ageNanos < nanos(fullResolution) + nanos(minuteCheckpoints) + nanos(hourCheckpoints)) {
+            return HOUR_NANOS;
+        }
+        return DAY_NANOS;
+    }
+
+    private static long nanos(Duration duration) {
+        return duration == null ? 0 : duration.toNanos();
+    }
+}
@@ -0,0 +1,298 @@
+package com.iot.payment.commandmodel;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time ordered balance history of a wallet, stored column wise: epoch nanos (UTC), unscaled balance and scale.
+ * Balances whose unscaled value does not fit in a long are kept aside in {@code oversized}.
+ * <p>
+ * A bounded {@link BalanceRetentionPolicy} makes {@link #compactIfDue()} thin out old entries to checkpoints, the
+ * last entry of their minute, hour or day, and optionally move the oldest checkpoints to a spill file.
+ * {@link #balanceAt} answers from all tiers; {@link #size()}, {@link #get} and {@link #asList()} only cover the
+ * entries still in memory.
+ */
+public class BalanceTimeline {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long MAX_SECONDS = Long.MAX_VALUE / NANOS_PER_SECOND - 1;
+    private static final long MIN_SECONDS = Long.MIN_VALUE / NANOS_PER_SECOND + 1;
+
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private long[] unscaledBalances = new long[INITIAL_CAPACITY];
+    private int[] scales = new int[INITIAL_CAPACITY];
+    private Map<Integer, BigDecimal> oversized;
+    private int size;
+    private final BalanceRetentionPolicy retention;
+    private int nextCompactionSize;
+    private BalanceHistorySpill spill;
+
+    public BalanceTimeline() {
+        this(BalanceRetentionPolicy.UNBOUNDED);
+    }
+
+    public BalanceTimeline(BalanceRetentionPolicy retention) {
+        this.retention = retention;
+        this.nextCompactionSize = retention.getCompactionThreshold();
+    }
+
+    public static long toEpochNanos(LocalDateTime timestamp) {
+        long seconds = timestamp.toEpochSecond(ZoneOffset.UTC);
+        if (seconds > MAX_SECONDS) {
+            return Long.MAX_VALUE;
+        }
+        if (seconds < MIN_SECONDS) {
+            return Long.MIN_VALUE;
+        }
+        return seconds * NANOS_PER_SECOND + timestamp.getNano();
+    }
+
+    public static LocalDateTime fromEpochNanos(long epochNanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), (int) Math.floorMod(epochNanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    public synchronized void append(BigDecimal balance, LocalDateTime timestamp) {
+        append(balance, toEpochNanos(timestamp));
+    }
+
+    public synchronized void append(BigDecimal balance, long epochNanos) {
+        int position = insertionPoint(epochNanos);
+        set(position, balance);
+        size++;
+    }
+
+    public synchronized void append(long unscaledBalance, int scale, long epochNanos) {
+        int position = insertionPoint(epochNanos);
+        unscaledBalances[position] = unscaledBalance;
+        scales[position] = scale;
+        size++;
+    }
+
+    /**
+     * Balance as of the given instant: the latest entry recorded at or before it, {@code null} if there is none.
+     */
+    public synchronized BigDecimal balanceAt(LocalDateTime timestamp) {
+        long epochNanos = toEpochNanos(timestamp);
+        int index = upperBound(epochNanos) - 1;
+        if (index >= 0) {
+            return balance(index);
+        }
+        return spill == null ? null : spill.balanceAt(epochNanos);
+    }
+
+    /**
+     * Compacts once the timeline has grown past the policy threshold and doubled since the last compaction, so the
+     * cost of compacting stays constant per appended entry. Entry ages are taken relative to the latest entry.
+     * Callers must not compact while they may still {@link #truncate} back to a size taken before.
+     */
+    public synchronized void compactIfDue() {
+        if (!retention.isBounded() || size < nextCompactionSize) {
+            return;
+        }
+        compact(timestamps[size - 1]);
+        nextCompactionSize = Math.max(retention.getCompactionThreshold(), size * 2);
+    }
+
+    /**
+     * Keeps every entry younger than the full resolution window and, of the older ones, only the last entry of each
+     * checkpoint bucket, bucketed by the width of the tier the entry falls in. The last entry of a tier is always
+     * kept. Then spills the day checkpoints older than the spill window when the policy asks for it.
+     */
+    synchronized void compact(long nowEpochNanos) {
+        Map<Integer, BigDecimal> keptOversized = null;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            long width = retention.checkpointWidth(nowEpochNanos - timestamps[i]);
+            if (width != 0 && i < size - 1 && retention.checkpointWidth(nowEpochNanos - timestamps[i + 1]) == width
+                    && Math.floorDiv(timestamps[i], width) == Math.floorDiv(timestamps[i + 1], width)) {
+                continue;
+            }
+            timestamps[kept] = timestamps[i];
+            unscaledBalances[kept] = unscaledBalances[i];
+            scales[kept] = scales[i];
+            BigDecimal oversizedBalance = oversized == null ? null : oversized.get(i);
+            if (oversizedBalance != null) {
+                if (keptOversized == null) {
+                    keptOversized = new HashMap<>();
+                }
+                keptOversized.put(kept, oversizedBalance);
+            }
+            kept++;
+        }
+        size = kept;
+        oversized = keptOversized;
+        if (retention.isSpilling()) {
+            spill(nowEpochNanos - retention.getSpillAfter().toNanos());
+        }
+        trimCapacity();
+    }
+
+    private void spill(long cutoffEpochNanos) {
+        int count = 0;
+        // Oversized balances do not fit a spill record, they and everything after them stay in memory
+        while (count < size && timestamps[count] <= cutoffEpochNanos && (oversized == null || !oversized.containsKey(count))) {
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+        if (spill == null) {
+            spill = BalanceHistorySpill.create(retention.getSpillFile());
+        }
+        spill.append(timestamps, unscaledBalances, scales, count);
+        int removed = count;
+        System.arraycopy(timestamps, removed, timestamps, 0, size - removed);
+        System.arraycopy(unscaledBalances, removed, unscaledBalances, 0, size - removed);
+        System.arraycopy(scales, removed, scales, 0, size - removed);
+        if (oversized != null) {
+            Map<Integer, BigDecimal> shifted = new HashMap<>();
+            oversized.forEach((index, balance) -> shifted.put(index - removed, balance));
+            oversized = shifted;
+        }
+        size -= removed;
+    }
+
+    /**
+     * Visits every entry in time order, the spilled ones included.
+     */
+    public synchronized void forEach(EntryVisitor visitor) {
+        if (spill != null) {
+            spill.forEach(visitor);
+        }
+        for (int i = 0; i < size; i++) {
+            visitor.visit(timestamps[i], balance(i));
+        }
+    }
+
+    /**
+     * Number of entries moved to the spill file.
+     */
+    public synchronized long spilledSize() {
+        return spill == null ? 0 : spill.count();
+    }
+
+    public synchronized void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IndexOutOfBoundsException("Size: " + newSize + ", current size: " + size);
+        }
+        if (oversized != null) {
+            oversized.keySet().removeIf(index -> index >= newSize);
+        }
+        size = newSize;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized BalanceHistory get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return new BalanceHistory(balance(index), fromEpochNanos(timestamps[index]));
+    }
+
+    public List<BalanceHistory> asList() {
+        return new AbstractList<>() {
+            @Override
+            public BalanceHistory get(int index) {
+                return BalanceTimeline.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return BalanceTimeline.this.size();
+            }
+        };
+    }
+
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(long epochNanos, BigDecimal balance);
+    }
+
+    private int insertionPoint(long epochNanos) {
+        ensureCapacity(size + 1);
+        // Appends are almost always in order; a clock going backwards falls back to an insert
+        int position = size;
+        if (size > 0 && timestamps[size - 1] > epochNanos) {
+            position = upperBound(epochNanos);
+            shift(position);
+        }
+        timestamps[position] = epochNanos;
+        return position;
+    }
+
+    private int upperBound(long epochNanos) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= epochNanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private BigDecimal balance(int index) {
+        if (oversized != null) {
+            BigDecimal balance = oversized.get(index);
+            if (balance != null) {
+                return balance;
+            }
+        }
+        return BigDecimal.valueOf(unscaledBalances[index], scales[index]);
+    }
+
+    private void set(int index, BigDecimal balance) {
+        BigInteger unscaled = balance.unscaledValue();
+        if (unscaled.bitLength() < Long.SIZE) {
+            unscaledBalances[index] = unscaled.longValue();
+            scales[index] = balance.scale();
+        } else {
+            if (oversized == null) {
+                oversized = new HashMap<>();
+            }
+            oversized.put(index, balance);
+        }
+    }
+
+    private void shift(int position) {
+        System.arraycopy(timestamps, position, timestamps, position + 1, size - position);
+        System.arraycopy(unscaledBalances, position, unscaledBalances, position + 1, size - position);
+        System.arraycopy(scales, position, scales, position + 1, size - position);
+        if (oversized != null && !oversized.isEmpty()) {
+            Map<Integer, BigDecimal> shifted = new HashMap<>();
+            oversized.forEach((index, balance) -> shifted.put(index >= position ? index + 1 : index, balance));
+            oversized = shifted;
+        }
+    }
+
+    private void trimCapacity() {
+        int capacity = Math.max(INITIAL_CAPACITY, size + (size >> 1));
+        if (capacity < timestamps.length / 2) {
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            unscaledBalances = Arrays.copyOf(unscaledBalances, capacity);
+            scales = Arrays.copyOf(scales, capacity);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > timestamps.length) {
+            int newCapacity = Math.max(capacity, timestamps.length + (timestamps.length >> 1));
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+            unscaledBalances = Arrays.copyOf(unscaledBalances, newCapacity);
+            scales = Arrays.copyOf(scales, newCapacity);
+        }
+    }
+}
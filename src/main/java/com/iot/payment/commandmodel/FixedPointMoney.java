@@ -0,0 +1,51 @@
+package com.iot.payment.commandmodel;
+
+import java.math.BigDecimal;
+
+/**
+ * Money as a {@code long} count of minor units (e.g. cents for a scale of 2). All arithmetic is overflow checked.
+ */
+public final class FixedPointMoney {
+    public static final int DECIMAL = -1;
+    public static final int MAX_SCALE = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPointMoney() {
+    }
+
+    public static void checkScale(int scale) {
+        if (scale != DECIMAL && (scale < 0 || scale > MAX_SCALE)) {
+            throw new IllegalArgumentException("Minor unit scale must be between 0 and " + MAX_SCALE);
+        }
+    }
+
+    /**
+     * Exact conversion, throws {@link ArithmeticException} if the amount has more decimals than the scale or does not fit.
+     */
+    public static long toMinorUnits(BigDecimal amount, int scale) {
+        if (amount.scale() == 0) {
+            // longValueExact does not allocate for compact values, the common case for integral amounts
+            return Math.multiplyExact(amount.longValueExact(), POWERS_OF_TEN[scale]);
+        }
+        return amount.scaleByPowerOfTen(scale).longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long minorUnits, int scale) {
+        return BigDecimal.valueOf(minorUnits, scale);
+    }
+
+    public static long add(long left, long right) {
+        return Math.addExact(left, right);
+    }
+
+    public static long subtract(long left, long right) {
+        return Math.subtractExact(left, right);
+    }
+}
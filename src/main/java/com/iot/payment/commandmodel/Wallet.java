@@ -1,37 +1,120 @@
 package com.iot.payment.commandmodel;
 
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A wallet keeps its balance either as a {@link BigDecimal} or, when built with a {@code minorUnitScale}, as a
+ * {@code long} count of minor units. The {@link BigDecimal} accessors work in both modes; the hot path uses the
+ * minor unit accessors to avoid allocating.
+ */
 @Data
-@Builder
 public class Wallet {
-    @Builder.Default
-    private List<BalanceHistory> balanceHistory = new ArrayList<>();
+    @Setter(AccessLevel.NONE)
+    private final BalanceTimeline balanceHistory;
     private String id;
-    private BigDecimal balance;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile BigDecimal balance;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile long balanceUnits;
+    @Setter(AccessLevel.NONE)
+    private final int minorUnitScale;
     private Account account;
     private AssetType assetType;
-    @Builder.Default
-    private List<Posting> postings = new ArrayList<>();
+    private List<Posting> postings;
+
+    @Builder
+    private Wallet(String id, BigDecimal balance, Account account, AssetType assetType, List<Posting> postings, Integer minorUnitScale,
+                   BalanceRetentionPolicy balanceRetention) {
+        this.minorUnitScale = minorUnitScale == null ? FixedPointMoney.DECIMAL : minorUnitScale;
+        FixedPointMoney.checkScale(this.minorUnitScale);
+        this.id = id;
+        this.account = account;
+        this.assetType = assetType;
+        this.postings = postings == null ? new ArrayList<>() : postings;
+        this.balanceHistory = new BalanceTimeline(balanceRetention == null ? BalanceRetentionPolicy.UNBOUNDED : balanceRetention);
+        setBalance(balance);
+    }
+
+    public boolean isFixedPoint() {
+        return minorUnitScale != FixedPointMoney.DECIMAL;
+    }
+
+    public BigDecimal getBalance() {
+        return isFixedPoint() ? FixedPointMoney.toDecimal(balanceUnits, minorUnitScale) : balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        if (isFixedPoint()) {
+            this.balanceUnits = balance == null ? 0 : FixedPointMoney.toMinorUnits(balance, minorUnitScale);
+        } else {
+            this.balance = balance;
+        }
+    }
+
+    public long getBalanceUnits() {
+        requireFixedPoint();
+        return balanceUnits;
+    }
+
+    public void setBalanceUnits(long balanceUnits) {
+        requireFixedPoint();
+        this.balanceUnits = balanceUnits;
+    }
+
+    public List<BalanceHistory> getBalanceHistory() {
+        return balanceHistory.asList();
+    }
 
     public void addBalanceHistory(BigDecimal balance, LocalDateTime timestamp) {
-        balanceHistory.add(new BalanceHistory(balance, timestamp));
+        balanceHistory.append(balance, timestamp);
+    }
+
+    public void addBalanceHistory(BigDecimal balance, long epochNanos) {
+        balanceHistory.append(balance, epochNanos);
+    }
+
+    public void addBalanceHistoryUnits(long balanceUnits, long epochNanos) {
+        balanceHistory.append(balanceUnits, minorUnitScale, epochNanos);
+    }
+
+    /**
+     * Visits the whole balance history, including the entries retention moved out of memory.
+     */
+    public void forEachBalanceHistoryEntry(BalanceTimeline.EntryVisitor visitor) {
+        balanceHistory.forEach(visitor);
+    }
+
+    public void truncateBalanceHistory(int size) {
+        balanceHistory.truncate(size);
+    }
+
+    /**
+     * Compacts the balance history according to the wallet's retention policy once enough entries piled up.
+     * Only call this once a change is final, an undo truncates the history back to an earlier size.
+     */
+    public void compactBalanceHistoryIfDue() {
+        balanceHistory.compactIfDue();
     }
 
     public BigDecimal getBalanceAt(LocalDateTime timestamp) {
-        for (BalanceHistory history : balanceHistory) {
-            if (history.getTimestamp().equals(timestamp)) {
-                return history.getBalance();
-            }
+        return balanceHistory.balanceAt(timestamp);
+    }
+
+    private void requireFixedPoint() {
+        if (!isFixedPoint()) {
+            throw new IllegalStateException("Wallet " + id + " does not keep its balance in minor units");
         }
-        return null;
     }
 
 }
-
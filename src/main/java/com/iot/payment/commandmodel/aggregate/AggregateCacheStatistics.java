@@ -0,0 +1,8 @@
+package com.iot.payment.commandmodel.aggregate;
+
+/**
+ * Lookups and contents of a {@link BoundedAggregateCache} since start up.
+ */
+public record AggregateCacheStatistics(long hits, long misses, double hitRatio, long evictions, long entries, long weight,
+                                       long maxWeight) {
+}
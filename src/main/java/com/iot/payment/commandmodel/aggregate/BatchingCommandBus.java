@@ -0,0 +1,266 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.CommandResultMessage;
+import org.axonframework.commandhandling.DuplicateCommandHandlerResolver;
+import org.axonframework.commandhandling.LoggingDuplicateCommandHandlerResolver;
+import org.axonframework.commandhandling.NoHandlerForCommandException;
+import org.axonframework.commandhandling.callbacks.LoggingCallback;
+import org.axonframework.commandhandling.distributed.AnnotationRoutingStrategy;
+import org.axonframework.commandhandling.distributed.RoutingStrategy;
+import org.axonframework.commandhandling.distributed.UnresolvedRoutingKeyPolicy;
+import org.axonframework.common.Registration;
+import org.axonframework.common.transaction.NoTransactionManager;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.messaging.DefaultInterceptorChain;
+import org.axonframework.messaging.MessageDispatchInterceptor;
+import org.axonframework.messaging.MessageHandler;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.axonframework.messaging.unitofwork.DefaultUnitOfWork;
+import org.axonframework.messaging.unitofwork.RollbackConfigurationType;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+import org.axonframework.monitoring.MessageMonitor;
+import org.axonframework.monitoring.NoOpMessageMonitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.axonframework.commandhandling.GenericCommandResultMessage.asCommandResultMessage;
+
+/**
+ * Handles the commands of an entity on one of a fixed number of threads, picked by the entity id, and commits the
+ * commands queued for a thread together. The commands of a batch are handled in nested units of work of one unit of
+ * work, whose commit appends the events of all of them to the event store in one transaction; their callbacks are
+ * completed after that commit. A batch holds the commands that queued up while the previous one was handled, so a
+ * command is never held back waiting for others.
+ * <p>
+ * When a command of a batch fails, or the batch fails to commit, the whole batch is rolled back and every command of it
+ * is handled again in a unit of work of its own, so one failing command does not fail the others.
+ */
+@Slf4j
+public class BatchingCommandBus implements CommandBus, AutoCloseable {
+    private static final long POLL_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final TransactionManager transactionManager;
+    private final MessageMonitor<? super CommandMessage<?>> messageMonitor;
+    private final DuplicateCommandHandlerResolver duplicateCommandHandlerResolver;
+    private final int maxBatchSize;
+    private final RoutingStrategy routingStrategy = AnnotationRoutingStrategy.builder()
+            .fallbackRoutingStrategy(UnresolvedRoutingKeyPolicy.RANDOM_KEY)
+            .build();
+    private final ConcurrentMap<String, MessageHandler<? super CommandMessage<?>>> subscriptions = new ConcurrentHashMap<>();
+    private final List<MessageHandlerInterceptor<? super CommandMessage<?>>> handlerInterceptors = new CopyOnWriteArrayList<>();
+    private final List<MessageDispatchInterceptor<? super CommandMessage<?>>> dispatchInterceptors = new CopyOnWriteArrayList<>();
+    private final List<BlockingQueue<DispatchedCommand<?, ?>>> queues = new ArrayList<>();
+    private final List<Thread> handlers = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * @param threads       threads handling commands, the commands of one entity are always handled by the same one
+     * @param maxBatchSize  commands committed together at most
+     * @param queueCapacity commands queued per thread at most, dispatching blocks while the queue is full
+     */
+    @Builder
+    private BatchingCommandBus(TransactionManager transactionManager, MessageMonitor<? super CommandMessage<?>> messageMonitor,
+                               DuplicateCommandHandlerResolver duplicateCommandHandlerResolver, Integer threads, Integer maxBatchSize,
+                               Integer queueCapacity) {
+        this.transactionManager = transactionManager == null ? NoTransactionManager.instance() : transactionManager;
+        this.messageMonitor = messageMonitor == null ? NoOpMessageMonitor.INSTANCE : messageMonitor;
+        this.duplicateCommandHandlerResolver = duplicateCommandHandlerResolver == null
+                ? LoggingDuplicateCommandHandlerResolver.instance() : duplicateCommandHandlerResolver;
+        this.maxBatchSize = maxBatchSize == null ? 256 : maxBatchSize;
+        int threadCount = threads == null ? 2 : threads;
+        int capacity = queueCapacity == null ? 4096 : queueCapacity;
+        if (threadCount < 1 || this.maxBatchSize < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Threads, batch size and queue capacity must be at least one");
+        }
+        for (int i = 0; i < threadCount; i++) {
+            BlockingQueue<DispatchedCommand<?, ?>> queue = new ArrayBlockingQueue<>(capacity);
+            Thread thread = new Thread(() -> handleQueued(queue), "command-batches-" + i);
+            thread.setDaemon(true);
+            queues.add(queue);
+            handlers.add(thread);
+            thread.start();
+        }
+    }
+
+    @Override
+    public <C> void dispatch(CommandMessage<C> command) {
+        dispatch(command, LoggingCallback.INSTANCE);
+    }
+
+    @Override
+    public <C, R> void dispatch(CommandMessage<C> command, CommandCallback<? super C, ? super R> callback) {
+        CommandMessage<C> intercepted = intercept(command);
+        DispatchedCommand<C, R> dispatched = new DispatchedCommand<>(intercepted, callback, messageMonitor.onMessageIngested(intercepted));
+        if (closed) {
+            dispatched.complete(asCommandResultMessage(new IllegalStateException("The command bus is closed")));
+            return;
+        }
+        try {
+            queues.get(Math.floorMod(routingStrategy.getRoutingKey(intercepted).hashCode(), queues.size())).put(dispatched);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dispatched.complete(asCommandResultMessage(e));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <C> CommandMessage<C> intercept(CommandMessage<C> command) {
+        CommandMessage<C> intercepted = command;
+        for (MessageDispatchInterceptor<? super CommandMessage<?>> interceptor : dispatchInterceptors) {
+            intercepted = (CommandMessage<C>) interceptor.handle(intercepted);
+        }
+        return intercepted;
+    }
+
+    @Override
+    public Registration subscribe(String commandName, MessageHandler<? super CommandMessage<?>> handler) {
+        subscriptions.compute(commandName, (name, existing) ->
+                existing == null || existing == handler ? handler : duplicateCommandHandlerResolver.resolve(name, existing, handler));
+        return () -> subscriptions.remove(commandName, handler);
+    }
+
+    @Override
+    public Registration registerHandlerInterceptor(MessageHandlerInterceptor<? super CommandMessage<?>> handlerInterceptor) {
+        handlerInterceptors.add(handlerInterceptor);
+        return () -> handlerInterceptors.remove(handlerInterceptor);
+    }
+
+    @Override
+    public Registration registerDispatchInterceptor(MessageDispatchInterceptor<? super CommandMessage<?>> dispatchInterceptor) {
+        dispatchInterceptors.add(dispatchInterceptor);
+        return () -> dispatchInterceptors.remove(dispatchInterceptor);
+    }
+
+    private void handleQueued(BlockingQueue<DispatchedCommand<?, ?>> queue) {
+        List<DispatchedCommand<?, ?>> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            DispatchedCommand<?, ?> first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, maxBatchSize - 1);
+            try {
+                if (batch.size() == 1 || !handleTogether(batch)) {
+                    for (DispatchedCommand<?, ?> command : batch) {
+                        command.complete(handleAlone(command.message()));
+                    }
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Handles the commands in nested units of work of one unit of work and completes them once it committed.
+     *
+     * @return whether the batch committed, nothing of it was committed otherwise
+     */
+    private boolean handleTogether(List<DispatchedCommand<?, ?>> batch) {
+        UnitOfWork<CommandMessage<?>> unitOfWork = DefaultUnitOfWork.startAndGet(batch.get(0).message());
+        List<CommandResultMessage<?>> results = new ArrayList<>(batch.size());
+        try {
+            unitOfWork.attachTransaction(transactionManager);
+            for (DispatchedCommand<?, ?> command : batch) {
+                CommandResultMessage<?> result = handleNested(command.message());
+                if (result.isExceptional()) {
+                    log.debug("{} failed in a batch of {} commands, handling them one by one", command.message().getCommandName(), batch.size());
+                    unitOfWork.rollback(result.exceptionResult());
+                    return false;
+                }
+                results.add(result);
+            }
+            unitOfWork.commit();
+        } catch (RuntimeException e) {
+            log.debug("A batch of {} commands failed, handling them one by one", batch.size(), e);
+            if (unitOfWork.isActive()) {
+                unitOfWork.rollback(e);
+            }
+            return false;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+        return true;
+    }
+
+    private CommandResultMessage<?> handleNested(CommandMessage<?> command) {
+        UnitOfWork<CommandMessage<?>> unitOfWork = DefaultUnitOfWork.startAndGet(command);
+        return asCommandResultMessage(unitOfWork.executeWithResult(() -> proceed(unitOfWork, command), RollbackConfigurationType.UNCHECKED_EXCEPTIONS));
+    }
+
+    private CommandResultMessage<?> handleAlone(CommandMessage<?> command) {
+        UnitOfWork<CommandMessage<?>> unitOfWork = DefaultUnitOfWork.startAndGet(command);
+        unitOfWork.attachTransaction(transactionManager);
+        return asCommandResultMessage(unitOfWork.executeWithResult(() -> proceed(unitOfWork, command), RollbackConfigurationType.UNCHECKED_EXCEPTIONS));
+    }
+
+    private Object proceed(UnitOfWork<CommandMessage<?>> unitOfWork, CommandMessage<?> command) throws Exception {
+        MessageHandler<? super CommandMessage<?>> handler = subscriptions.get(command.getCommandName());
+        if (handler == null) {
+            throw new NoHandlerForCommandException(command);
+        }
+        return new DefaultInterceptorChain<>(unitOfWork, handlerInterceptors, handler).proceed();
+    }
+
+    /**
+     * Stops accepting commands, handles the queued ones and stops the threads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread handler : handlers) {
+            try {
+                handler.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Dispatched while the threads stopped
+        for (BlockingQueue<DispatchedCommand<?, ?>> queue : queues) {
+            DispatchedCommand<?, ?> command;
+            while ((command = queue.poll()) != null) {
+                command.complete(asCommandResultMessage(new IllegalStateException("The command bus is closed")));
+            }
+        }
+    }
+
+    private record DispatchedCommand<C, R>(CommandMessage<C> message, CommandCallback<? super C, ? super R> callback,
+                                           MessageMonitor.MonitorCallback monitor) {
+
+        @SuppressWarnings("unchecked")
+        void complete(CommandResultMessage<?> result) {
+            if (result.isExceptional()) {
+                monitor.reportFailure(result.exceptionResult());
+            } else {
+                monitor.reportSuccess();
+            }
+            try {
+                callback.onResult(message, (CommandResultMessage<? extends R>) result);
+            } catch (RuntimeException e) {
+                log.warn("Callback of {} failed", message.getCommandName(), e);
+            }
+        }
+    }
+}
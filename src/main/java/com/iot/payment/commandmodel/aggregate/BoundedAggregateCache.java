@@ -0,0 +1,214 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import lombok.Builder;
+import org.axonframework.common.Registration;
+import org.axonframework.common.caching.Cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Aggregate cache bounded by the total weight of its entries rather than their number. Entries are spread over
+ * segments by key, each segment evicts its least recently used entries once it holds more than its share of the
+ * weight. An entry heavier than a segment's share is not cached at all.
+ */
+public class BoundedAggregateCache implements Cache {
+    private final Segment[] segments;
+    private final long maxWeight;
+    private final Weigher weigher;
+    private final List<EntryListener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxWeight total weight of the cached entries
+     * @param segments  number of independently locked segments, rounded up to a power of two
+     * @param weigher   weight of an entry, one per entry by default
+     */
+    @Builder
+    private BoundedAggregateCache(long maxWeight, Integer segments, Weigher weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Cache weight must be positive");
+        }
+        int segmentCount = Integer.highestOneBit(Math.max(1, segments == null ? 16 : segments) * 2 - 1);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment(Math.max(1, maxWeight / segmentCount));
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher == null ? (key, value) -> 1 : weigher;
+    }
+
+    @Override
+    public <K, V> V get(K key) {
+        Segment segment = segmentFor(key);
+        Object value;
+        segment.lock.lock();
+        try {
+            Weighted weighted = segment.entries.get(key);
+            value = weighted == null ? null : weighted.value;
+        } finally {
+            segment.lock.unlock();
+        }
+        if (value == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        listeners.forEach(listener -> listener.onEntryRead(key, value));
+        @SuppressWarnings("unchecked") V result = (V) value;
+        return result;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        put(key, value, false);
+    }
+
+    @Override
+    public boolean putIfAbsent(Object key, Object value) {
+        return put(key, value, true);
+    }
+
+    private boolean put(Object key, Object value, boolean onlyIfAbsent) {
+        Segment segment = segmentFor(key);
+        long weight = weigher.weigh(key, value);
+        if (weight > segment.maxWeight) {
+            if (!onlyIfAbsent) {
+                remove(key);
+            }
+            return false;
+        }
+        Weighted previous;
+        List<Object> evicted = new ArrayList<>();
+        segment.lock.lock();
+        try {
+            if (onlyIfAbsent && segment.entries.containsKey(key)) {
+                return false;
+            }
+            previous = segment.entries.put(key, new Weighted(value, weight));
+            segment.weight += weight - (previous == null ? 0 : previous.weight);
+            Iterator<Map.Entry<Object, Weighted>> eldest = segment.entries.entrySet().iterator();
+            while (segment.weight > segment.maxWeight) {
+                Map.Entry<Object, Weighted> entry = eldest.next();
+                segment.weight -= entry.getValue().weight;
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        evictions.add(evicted.size());
+        for (EntryListener listener : listeners) {
+            if (previous == null) {
+                listener.onEntryCreated(key, value);
+            } else {
+                listener.onEntryUpdated(key, value);
+            }
+            evicted.forEach(listener::onEntryExpired);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object key) {
+        Segment segment = segmentFor(key);
+        Weighted removed;
+        segment.lock.lock();
+        try {
+            removed = segment.entries.remove(key);
+            if (removed != null) {
+                segment.weight -= removed.weight;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        if (removed == null) {
+            return false;
+        }
+        listeners.forEach(listener -> listener.onEntryRemoved(key));
+        return true;
+    }
+
+    @Override
+    public void removeAll() {
+        for (Segment segment : segments) {
+            List<Object> removed;
+            segment.lock.lock();
+            try {
+                removed = new ArrayList<>(segment.entries.keySet());
+                segment.entries.clear();
+                segment.weight = 0;
+            } finally {
+                segment.lock.unlock();
+            }
+            listeners.forEach(listener -> removed.forEach(listener::onEntryRemoved));
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Segment segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            return segment.entries.containsKey(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    @Override
+    public Registration registerCacheEntryListener(EntryListener listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    public AggregateCacheStatistics statistics() {
+        long entries = 0;
+        long weight = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                entries += segment.entries.size();
+                weight += segment.weight;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        return new AggregateCacheStatistics(hitCount, missCount, hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount),
+                evictions.sum(), entries, weight, maxWeight);
+    }
+
+    private Segment segmentFor(Object key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    @FunctionalInterface
+    public interface Weigher {
+        long weigh(Object key, Object value);
+    }
+
+    private record Weighted(Object value, long weight) {
+    }
+
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Object, Weighted> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxWeight;
+        private long weight;
+
+        private Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+    }
+}
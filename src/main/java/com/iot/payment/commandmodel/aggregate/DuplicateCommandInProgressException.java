@@ -0,0 +1,11 @@
+package com.iot.payment.commandmodel.aggregate;
+
+/**
+ * A command was retried with the idempotency key of a command that is still being handled.
+ */
+public class DuplicateCommandInProgressException extends IllegalStateException {
+
+    public DuplicateCommandInProgressException(String message) {
+        super(message);
+    }
+}
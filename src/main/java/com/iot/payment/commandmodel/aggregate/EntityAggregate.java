@@ -1,5 +1,6 @@
 package com.iot.payment.commandmodel.aggregate;
 
+import com.iot.payment.coreapi.commands.BatchTransferCommand;
 import com.iot.payment.coreapi.commands.CreateEntityCommand;
 import com.iot.payment.coreapi.commands.ModifyPostingCommand;
 import com.iot.payment.coreapi.commands.TransferCommand;
@@ -7,6 +8,7 @@ import com.iot.payment.coreapi.commands.UpdateAccountStatusCommand;
 import com.iot.payment.coreapi.events.EntityCreatedEvent;
 import com.iot.payment.coreapi.events.ModifyPostingEvent;
 import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.coreapi.events.TransfersBatchedEvent;
 import com.iot.payment.coreapi.events.UpdateAccountStatusEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.axonframework.commandhandling.CommandHandler;
@@ -14,9 +16,11 @@ import org.axonframework.eventsourcing.EventSourcingHandler;
 import org.axonframework.modelling.command.AggregateIdentifier;
 import org.axonframework.spring.stereotype.Aggregate;
 
+import java.util.ArrayList;
+
 import static org.axonframework.modelling.command.AggregateLifecycle.apply;
 
-@Aggregate(snapshotTriggerDefinition = "entityAggregateSnapshotTriggerDefinition")
+@Aggregate(snapshotTriggerDefinition = "entityAggregateSnapshotTriggerDefinition", cache = "entityAggregateCache")
 @Slf4j
 public class EntityAggregate {
 
@@ -32,16 +36,35 @@ public class EntityAggregate {
         log.debug("default constructor invoked by Axon framework");
     }
 
+    EntityAggregate(String entityId) {
+        this.entityId = entityId;
+    }
+
+    String getEntityId() {
+        return entityId;
+    }
+
     @CommandHandler
     public void handle(TransferCommand command) {
         if (this.entityId.equals(command.entityId())) {
-            apply(new TransferEvent(command.entityId(), command.sourceEntityId(), command.destinationEntityId(), command.amount()));
+            apply(new TransferEvent(command.entityId(), command.sourceEntityId(), command.destinationEntityId(), command.amount(), command.postingId()));
         } else {
             throw new IllegalStateException("Transfer can only be initiated by the source entity");
         }
 
     }
 
+    @CommandHandler
+    public void handle(BatchTransferCommand command) {
+        if (!this.entityId.equals(command.entityId())) {
+            throw new IllegalStateException("Transfer can only be initiated by the source entity");
+        }
+        if (command.movements() == null || command.movements().isEmpty()) {
+            throw new IllegalArgumentException("Batch transfer must contain at least one movement");
+        }
+        apply(new TransfersBatchedEvent(command.entityId(), new ArrayList<>(command.movements())));
+    }
+
     @CommandHandler
     public void handle(UpdateAccountStatusCommand command) {
         if (this.entityId.equals(command.entityId())) {
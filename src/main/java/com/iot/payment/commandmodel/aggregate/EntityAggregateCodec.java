@@ -0,0 +1,18 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import com.iot.payment.serialization.CompactCodec;
+
+import static com.iot.payment.serialization.CompactEncoding.readString;
+import static com.iot.payment.serialization.CompactEncoding.writeString;
+
+/**
+ * Binary form of {@link EntityAggregate} snapshots.
+ */
+public final class EntityAggregateCodec {
+    public static final CompactCodec<EntityAggregate> SNAPSHOT = new CompactCodec<>(EntityAggregate.class, 1,
+            (out, aggregate) -> writeString(out, aggregate.getEntityId()),
+            (in, revision) -> new EntityAggregate(readString(in)));
+
+    private EntityAggregateCodec() {
+    }
+}
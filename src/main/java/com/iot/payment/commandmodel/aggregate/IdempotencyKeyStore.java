@@ -0,0 +1,270 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Idempotency keys of the commands handled recently, kept in memory only. Keys are held in a few generations: new keys
+ * go into the newest one, and once it is a generation old, or full, the oldest generation is dropped as a whole. So a
+ * key is remembered for at least the window unless more than {@code maxKeys} keys arrive within it, and there is no
+ * per key expiry to maintain.
+ * <p>
+ * Past {@code maxKeys} keys within the window the window shrinks: keys arriving at a rate of {@code r} per second
+ * are remembered between {@code (generations - 1) / generations * maxKeys / r} and {@code maxKeys / r} seconds, e.g.
+ * 6 to 8 minutes for 500 000 keys at 1 000 transfers per second. Every generation dropped before the window elapsed
+ * is logged and counted as an early rotation in the {@link #statistics()}. Keys whose command is still being handled
+ * are carried over into the newest generation rather than dropped, so their command can still complete them.
+ * <p>
+ * Every generation has a Bloom filter of its keys. A key the filter of a generation has definitely not seen is not
+ * looked up in that generation, so the check of a new key, which almost every key is, touches a few bits per older
+ * generation and one map.
+ */
+@Slf4j
+public class IdempotencyKeyStore {
+    private static final int HASHES = 4;
+    private static final int BITS_PER_KEY = 10;
+
+    /**
+     * What became of a claimed key.
+     */
+    public enum Claim {
+        /** The key is new and claimed by the caller, who completes or releases it. */
+        ACCEPTED,
+        /** A command with the key was handled before. */
+        DUPLICATE,
+        /** A command with the key is being handled right now. */
+        IN_PROGRESS
+    }
+
+    private final int generationCount;
+    private final int keysPerGeneration;
+    private final long generationMillis;
+    private final long windowMillis;
+    private final Clock clock;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Newest first, guarded by lock
+    private final Deque<Generation> generations = new ArrayDeque<>();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder inProgress = new LongAdder();
+    private final LongAdder prefilterSkips = new LongAdder();
+    private final LongAdder earlyRotations = new LongAdder();
+    // Guarded by lock
+    private long lastRetentionMillis;
+
+    @Builder
+    private IdempotencyKeyStore(Duration window, Integer maxKeys, Integer generations, Clock clock) {
+        this.generationCount = generations == null ? 4 : generations;
+        if (this.generationCount < 2) {
+            throw new IllegalArgumentException("At least two generations of idempotency keys are needed");
+        }
+        int keys = maxKeys == null ? 500_000 : maxKeys;
+        if (keys < this.generationCount) {
+            throw new IllegalArgumentException("At least one idempotency key per generation must fit");
+        }
+        Duration keyWindow = window == null ? Duration.ofHours(24) : window;
+        if (keyWindow.isNegative() || keyWindow.isZero()) {
+            throw new IllegalArgumentException("The idempotency window must be positive");
+        }
+        this.keysPerGeneration = keys / this.generationCount;
+        // A key outlives the generations after its own
+        this.generationMillis = Math.max(1, keyWindow.toMillis() / (this.generationCount - 1));
+        // The window the generations cover, short of the window by the rounding at most
+        this.windowMillis = generationMillis * (this.generationCount - 1);
+        this.lastRetentionMillis = windowMillis;
+        this.clock = clock == null ? Clock.systemUTC() : clock;
+        this.generations.addFirst(new Generation(this.clock.millis(), keysPerGeneration));
+    }
+
+    /**
+     * Claims the key for a command about to be handled, unless it was claimed before.
+     */
+    public Claim claim(String key) {
+        long hash = hash(key);
+        rotateIfDue();
+        lock.readLock().lock();
+        try {
+            Generation newest = generations.peekFirst();
+            for (Generation generation : generations) {
+                if (generation != newest && !generation.mightContain(hash)) {
+                    prefilterSkips.increment();
+                    continue;
+                }
+                Boolean completed = generation.keys.get(key);
+                if (completed != null) {
+                    return claimed(completed);
+                }
+            }
+            Boolean completed = newest.keys.putIfAbsent(key, Boolean.FALSE);
+            if (completed != null) {
+                return claimed(completed);
+            }
+            newest.add(hash);
+            accepted.increment();
+            return Claim.ACCEPTED;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records that the command of an accepted key was handled, so the key is a duplicate from now on.
+     */
+    public void complete(String key) {
+        lock.readLock().lock();
+        try {
+            for (Generation generation : generations) {
+                if (generation.keys.replace(key, Boolean.FALSE, Boolean.TRUE)) {
+                    return;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets an accepted key whose command failed, so it can be retried.
+     */
+    public void release(String key) {
+        lock.readLock().lock();
+        try {
+            for (Generation generation : generations) {
+                if (generation.keys.remove(key, Boolean.FALSE)) {
+                    return;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public IdempotencyStatistics statistics() {
+        lock.readLock().lock();
+        try {
+            long keys = generations.stream().mapToLong(generation -> generation.keys.size()).sum();
+            return new IdempotencyStatistics(accepted.sum(), duplicates.sum(), inProgress.sum(), prefilterSkips.sum(), keys,
+                    (long) keysPerGeneration * generationCount, earlyRotations.sum(), lastRetentionMillis);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Claim claimed(boolean completed) {
+        if (completed) {
+            duplicates.increment();
+            return Claim.DUPLICATE;
+        }
+        inProgress.increment();
+        return Claim.IN_PROGRESS;
+    }
+
+    private void rotateIfDue() {
+        long now = clock.millis();
+        if (!rotationDue(now)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (rotationDue(now)) {
+                Generation newest = new Generation(now, keysPerGeneration);
+                generations.addFirst(newest);
+                if (generations.size() > generationCount) {
+                    drop(generations.removeLast(), newest, now);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the oldest generation, keeping the keys whose command is still being handled in the newest.
+     */
+    private void drop(Generation oldest, Generation newest, long now) {
+        for (Iterator<Map.Entry<String, Boolean>> keys = oldest.keys.entrySet().iterator(); keys.hasNext(); ) {
+            Map.Entry<String, Boolean> key = keys.next();
+            if (!key.getValue() && newest.keys.putIfAbsent(key.getKey(), Boolean.FALSE) == null) {
+                newest.add(hash(key.getKey()));
+            }
+        }
+        // The last key of the dropped generation arrived before the generation after it started
+        lastRetentionMillis = now - generations.peekLast().startMillis;
+        if (lastRetentionMillis < windowMillis) {
+            earlyRotations.increment();
+            log.warn("Dropped {} idempotency keys after {} ms instead of the {} ms window, more keys arrive within the window than fit",
+                    oldest.keys.size(), lastRetentionMillis, windowMillis);
+        }
+    }
+
+    private boolean rotationDue(long now) {
+        Generation newest = generations.peekFirst();
+        return now - newest.startMillis >= generationMillis || newest.keys.size() >= keysPerGeneration;
+    }
+
+    /**
+     * 64 bit FNV-1a of the characters, mixed with the finalizer of MurmurHash3 so every bit is usable.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static final class Generation {
+        private final long startMillis;
+        private final Map<String, Boolean> keys = new ConcurrentHashMap<>();
+        private final AtomicLongArray bits;
+        private final long bitCount;
+
+        private Generation(long startMillis, int keysPerGeneration) {
+            this.startMillis = startMillis;
+            int words = (int) Math.max(1, ((long) keysPerGeneration * BITS_PER_KEY + 63) / 64);
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = words * 64L;
+        }
+
+        // Double hashing: the i-th bit is h1 + i * h2
+        private void add(long hash) {
+            int high = (int) (hash >>> 32);
+            for (int i = 0; i < HASHES; i++) {
+                long bit = Math.floorMod((int) hash + (long) i * high, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+
+        private boolean mightContain(long hash) {
+            int high = (int) (hash >>> 32);
+            for (int i = 0; i < HASHES; i++) {
+                long bit = Math.floorMod((int) hash + (long) i * high, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
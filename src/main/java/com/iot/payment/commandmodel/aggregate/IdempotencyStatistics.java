@@ -0,0 +1,11 @@
+package com.iot.payment.commandmodel.aggregate;
+
+/**
+ * Claims and contents of an {@link IdempotencyKeyStore} since start up. {@code prefilterSkips} counts the generations a
+ * lookup skipped because their Bloom filter had not seen the key. {@code earlyRotations} counts the generations dropped
+ * before the window elapsed because too many keys arrived, and {@code retentionMillis} is how long the keys of the
+ * generation dropped last were remembered at least, the window until one is dropped.
+ */
+public record IdempotencyStatistics(long accepted, long duplicates, long inProgress, long prefilterSkips, long keys, long maxKeys,
+                                    long earlyRotations, long retentionMillis) {
+}
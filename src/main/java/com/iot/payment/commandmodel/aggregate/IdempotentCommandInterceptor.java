@@ -0,0 +1,52 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.distributed.AnnotationRoutingStrategy;
+import org.axonframework.commandhandling.distributed.RoutingStrategy;
+import org.axonframework.messaging.InterceptorChain;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+
+/**
+ * Handles a command carrying an idempotency key in its meta data only once per entity. A retry of a handled command
+ * succeeds without being handled again, a retry while the first attempt is still being handled is rejected, and a
+ * failed command releases its key so it can be retried. Commands without a key are handled as always.
+ * <p>
+ * Keys are checked on the node handling the command, in memory, before the aggregate is loaded.
+ */
+@Slf4j
+public class IdempotentCommandInterceptor implements MessageHandlerInterceptor<CommandMessage<?>> {
+    public static final String IDEMPOTENCY_KEY = "idempotencyKey";
+
+    private final IdempotencyKeyStore store;
+    private final RoutingStrategy routingStrategy = AnnotationRoutingStrategy.defaultStrategy();
+
+    public IdempotentCommandInterceptor(IdempotencyKeyStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Object handle(UnitOfWork<? extends CommandMessage<?>> unitOfWork, InterceptorChain interceptorChain) throws Exception {
+        CommandMessage<?> command = unitOfWork.getMessage();
+        Object idempotencyKey = command.getMetaData().get(IDEMPOTENCY_KEY);
+        if (idempotencyKey == null) {
+            return interceptorChain.proceed();
+        }
+        // Keys are chosen by the clients of an entity, so they only need to be unique per entity
+        String key = routingStrategy.getRoutingKey(command) + '/' + command.getCommandName() + '/' + idempotencyKey;
+        switch (store.claim(key)) {
+            case DUPLICATE -> {
+                log.info("Skipping {} with idempotency key {}, it was handled before", command.getCommandName(), idempotencyKey);
+                return null;
+            }
+            case IN_PROGRESS -> throw new DuplicateCommandInProgressException(
+                    "A command with idempotency key " + idempotencyKey + " is still being handled");
+            default -> {
+                unitOfWork.afterCommit(committed -> store.complete(key));
+                unitOfWork.onRollback(rolledBack -> store.release(key));
+                return interceptorChain.proceed();
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import lombok.Builder;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventsourcing.AbstractSnapshotTrigger;
+import org.axonframework.eventsourcing.SnapshotTrigger;
+import org.axonframework.eventsourcing.SnapshotTriggerDefinition;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.serialization.Serializer;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Snapshots an aggregate once loading it is expected to take longer than a latency budget, instead of after a fixed
+ * number of events. The load time of every aggregate is measured; the events applied after loading are costed with
+ * the serialized size of the replayed events and the load time per byte learned from earlier loads. Hot aggregates
+ * are snapshotted as soon as they get slow to load, cold ones never pay for a snapshot.
+ */
+public class LoadTimeSnapshotTriggerDefinition implements SnapshotTriggerDefinition {
+    private static final double SMOOTHING = 0.2;
+    private final Snapshotter snapshotter;
+    private final Serializer eventSerializer;
+    private final long budgetNanos;
+    private final int minimumEvents;
+    private final LongSupplier nanoClock;
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAccumulator maxLoadNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder replayedEvents = new LongAdder();
+    private final LongAdder replayedBytes = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder eventsAtSnapshot = new LongAdder();
+    private final Object estimates = new Object();
+    private volatile double nanosPerByte;
+    private volatile double bytesPerEvent;
+
+    /**
+     * @param eventSerializer serializer of the event store, so the size of a replayed event is the size it was stored
+     *                        with; without one only the load time is measured
+     * @param budget          load time above which an aggregate is snapshotted
+     * @param minimumEvents   events since the last snapshot below which an aggregate is never snapshotted, so a slow
+     *                        snapshot load alone does not snapshot on every load
+     */
+    @Builder
+    private LoadTimeSnapshotTriggerDefinition(Snapshotter snapshotter, Serializer eventSerializer, Duration budget, Integer minimumEvents, LongSupplier nanoClock) {
+        if (budget == null || budget.isNegative() || budget.isZero()) {
+            throw new IllegalArgumentException("Snapshot load time budget must be positive");
+        }
+        this.snapshotter = snapshotter;
+        this.eventSerializer = eventSerializer;
+        this.budgetNanos = budget.toNanos();
+        this.minimumEvents = minimumEvents == null ? 16 : minimumEvents;
+        this.nanoClock = nanoClock == null ? System::nanoTime : nanoClock;
+    }
+
+    @Override
+    public SnapshotTrigger prepareTrigger(Class<?> aggregateType) {
+        return new LoadTimeSnapshotTrigger(this, aggregateType);
+    }
+
+    @Override
+    public SnapshotTrigger reconfigure(Class<?> aggregateType, SnapshotTrigger trigger) {
+        if (trigger instanceof LoadTimeSnapshotTrigger loadTimeTrigger) {
+            loadTimeTrigger.setSnapshotter(snapshotter);
+            loadTimeTrigger.definition = this;
+            return loadTimeTrigger;
+        }
+        return prepareTrigger(aggregateType);
+    }
+
+    public SnapshotTriggerStatistics statistics() {
+        long loadCount = loads.sum();
+        long snapshotCount = snapshots.sum();
+        return new SnapshotTriggerStatistics(loadCount,
+                Duration.ofNanos(loadCount == 0 ? 0 : loadNanos.sum() / loadCount),
+                Duration.ofNanos(maxLoadNanos.get()),
+                replayedEvents.sum(),
+                replayedBytes.sum(),
+                snapshotCount,
+                snapshotCount == 0 ? 0 : (double) eventsAtSnapshot.sum() / snapshotCount);
+    }
+
+    private long sizeOf(EventMessage<?> message) {
+        if (eventSerializer == null) {
+            return 0;
+        }
+        return message.serializePayload(eventSerializer, byte[].class).getData().length;
+    }
+
+    private void loaded(long nanos, int events, long bytes) {
+        loads.increment();
+        loadNanos.add(nanos);
+        maxLoadNanos.accumulate(nanos);
+        replayedEvents.add(events);
+        replayedBytes.add(bytes);
+        if (bytes > 0) {
+            double loadNanosPerByte = (double) nanos / bytes;
+            double eventSize = (double) bytes / events;
+            // Only the moving averages need a lock, concurrent loads must not lose each other's update
+            synchronized (estimates) {
+                nanosPerByte = nanosPerByte == 0 ? loadNanosPerByte : nanosPerByte + SMOOTHING * (loadNanosPerByte - nanosPerByte);
+                bytesPerEvent = bytesPerEvent == 0 ? eventSize : bytesPerEvent + SMOOTHING * (eventSize - bytesPerEvent);
+            }
+        }
+    }
+
+    private void snapshotScheduled(int events) {
+        snapshots.increment();
+        eventsAtSnapshot.add(events);
+    }
+
+    /**
+     * Load and replay figures of one aggregate. Newly created aggregates are not counted as loads. Snapshots are not
+     * counted as replayed events, their cost shows in the load time.
+     */
+    private static final class LoadTimeSnapshotTrigger extends AbstractSnapshotTrigger {
+        private static final long serialVersionUID = 1L;
+        private transient LoadTimeSnapshotTriggerDefinition definition;
+        private final Class<?> aggregateType;
+        private final long loadStart;
+        private long costStart;
+        private long replayNanos;
+        private int replayedEvents;
+        private long replayedBytes;
+        private int appliedEvents;
+        private boolean sourced;
+        private boolean loaded;
+
+        private LoadTimeSnapshotTrigger(LoadTimeSnapshotTriggerDefinition definition, Class<?> aggregateType) {
+            super(definition.snapshotter, aggregateType);
+            this.definition = definition;
+            this.aggregateType = aggregateType;
+            this.loadStart = definition.nanoClock.getAsLong();
+            this.costStart = loadStart;
+        }
+
+        @Override
+        public void eventHandled(EventMessage<?> message) {
+            if (loaded) {
+                appliedEvents++;
+            } else {
+                sourced = true;
+                if (!aggregateType.equals(message.getPayloadType())) {
+                    replayedEvents++;
+                    replayedBytes += definition.sizeOf(message);
+                }
+            }
+            super.eventHandled(message);
+        }
+
+        @Override
+        public void initializationFinished() {
+            long now = definition.nanoClock.getAsLong();
+            if (sourced) {
+                definition.loaded(now - loadStart, replayedEvents, replayedBytes);
+            }
+            replayNanos = now - costStart;
+            loaded = true;
+            super.initializationFinished();
+        }
+
+        @Override
+        protected boolean exceedsThreshold() {
+            return replayedEvents + appliedEvents >= definition.minimumEvents && projectedLoadNanos() > definition.budgetNanos;
+        }
+
+        private long projectedLoadNanos() {
+            long measured = loaded ? replayNanos : definition.nanoClock.getAsLong() - costStart;
+            double eventSize = replayedEvents > 0 && replayedBytes > 0 ? (double) replayedBytes / replayedEvents : definition.bytesPerEvent;
+            return measured + (long) (appliedEvents * eventSize * definition.nanosPerByte);
+        }
+
+        @Override
+        protected void reset() {
+            definition.snapshotScheduled(replayedEvents + appliedEvents);
+            costStart = definition.nanoClock.getAsLong();
+            replayNanos = 0;
+            replayedEvents = 0;
+            replayedBytes = 0;
+            appliedEvents = 0;
+        }
+    }
+}
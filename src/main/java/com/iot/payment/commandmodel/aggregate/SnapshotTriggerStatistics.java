@@ -0,0 +1,11 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import java.time.Duration;
+
+/**
+ * Aggregate loads and snapshots seen by a {@link LoadTimeSnapshotTriggerDefinition} since start up.
+ * {@code eventsPerSnapshot} is the average number of events an aggregate had accumulated when it was snapshotted.
+ */
+public record SnapshotTriggerStatistics(long loads, Duration averageLoadTime, Duration maxLoadTime, long replayedEvents,
+                                        long replayedBytes, long snapshots, double eventsPerSnapshot) {
+}
@@ -0,0 +1,9 @@
+package com.iot.payment.coreapi.commands;
+
+import com.iot.payment.coreapi.events.Movement;
+import org.axonframework.modelling.command.TargetAggregateIdentifier;
+
+import java.util.List;
+
+public record BatchTransferCommand(@TargetAggregateIdentifier String entityId, List<Movement> movements) {
+}
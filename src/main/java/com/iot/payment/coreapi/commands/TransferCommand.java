@@ -5,5 +5,10 @@ import org.axonframework.modelling.command.TargetAggregateIdentifier;
 
 import java.math.BigDecimal;
 
-public record TransferCommand(@TargetAggregateIdentifier String entityId, String sourceEntityId, String destinationEntityId, BigDecimal amount) {
+public record TransferCommand(@TargetAggregateIdentifier String entityId, String sourceEntityId, String destinationEntityId, BigDecimal amount,
+                              String postingId) {
+
+    public TransferCommand(String entityId, String sourceEntityId, String destinationEntityId, BigDecimal amount) {
+        this(entityId, sourceEntityId, destinationEntityId, amount, null);
+    }
 }
@@ -0,0 +1,17 @@
+package com.iot.payment.coreapi.events;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+@Builder
+@Value
+@AllArgsConstructor
+public class Movement {
+    String sourceWalletId;
+    String destinationWalletId;
+    BigDecimal amount;
+    String postingId;
+}
@@ -17,5 +17,10 @@ public class TransferEvent {
     String sourceWalletId;
     String destinationWalletId;
     BigDecimal amount;
+    String postingId;
 
-}
\ No newline at end of file
+    public TransferEvent(String entityId, String sourceWalletId, String destinationWalletId, BigDecimal amount) {
+        this(entityId, sourceWalletId, destinationWalletId, amount, null);
+    }
+
+}
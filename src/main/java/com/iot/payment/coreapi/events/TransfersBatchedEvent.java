@@ -0,0 +1,19 @@
+package com.iot.payment.coreapi.events;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+import org.axonframework.modelling.command.AggregateIdentifier;
+
+import java.util.List;
+
+@Builder
+@Value
+@AllArgsConstructor
+public class TransfersBatchedEvent {
+
+    @AggregateIdentifier
+    String entityId;
+    List<Movement> movements;
+
+}
@@ -0,0 +1,10 @@
+package com.iot.payment.coreapi.queries;
+
+import java.time.LocalDateTime;
+
+/**
+ * One page of historical balances, ordered by entity id and then by wallet position. {@code entityId} and
+ * {@code walletId} are optional filters, {@code after} is {@code null} for the first page.
+ */
+public record FindHistoricalBalancePage(LocalDateTime localDateTime, String entityId, String walletId, HistoricalBalanceCursor after, int limit) {
+}
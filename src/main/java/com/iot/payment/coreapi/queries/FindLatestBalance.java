@@ -0,0 +1,4 @@
+package com.iot.payment.coreapi.queries;
+
+public record FindLatestBalance(String entityId, String walletId) {
+}
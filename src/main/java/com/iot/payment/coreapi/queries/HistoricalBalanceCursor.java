@@ -0,0 +1,29 @@
+package com.iot.payment.coreapi.queries;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last wallet returned by a historical balance page: the entity id and the position of the wallet
+ * among the wallets of that entity. Clients only see it as an opaque token.
+ */
+public record HistoricalBalanceCursor(String entityId, int walletOrdinal) {
+    private static final char SEPARATOR = ':';
+
+    public static HistoricalBalanceCursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf(SEPARATOR);
+            return new HistoricalBalanceCursor(decoded.substring(0, separator), Integer.parseInt(decoded.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((entityId + SEPARATOR + walletOrdinal).getBytes(StandardCharsets.UTF_8));
+    }
+}
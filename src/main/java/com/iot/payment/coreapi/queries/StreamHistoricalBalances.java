@@ -0,0 +1,10 @@
+package com.iot.payment.coreapi.queries;
+
+import java.time.LocalDateTime;
+
+/**
+ * Streams historical balances in the same order as {@link FindHistoricalBalancePage}. {@code entityId} and
+ * {@code walletId} are optional filters.
+ */
+public record StreamHistoricalBalances(LocalDateTime localDateTime, String entityId, String walletId) {
+}
@@ -0,0 +1,12 @@
+package com.iot.payment.coreapi.queries;
+
+/**
+ * The outcome of a batch of transfers once the projection applied it, pushed as a single update. A batch is known by
+ * its entity and the posting id of its first movement, and is subscribed to before it is dispatched.
+ */
+public record SubscribeTransferBatch(String entityId, String firstPostingId) {
+
+    public boolean matches(String entityId, String firstPostingId) {
+        return this.entityId.equals(entityId) && this.firstPostingId.equals(firstPostingId);
+    }
+}
@@ -0,0 +1,12 @@
+package com.iot.payment.coreapi.queries;
+
+/**
+ * Current balances of the matching wallets, followed by an update whenever one of them changes. {@code entityId} and
+ * {@code walletId} are optional filters.
+ */
+public record SubscribeWalletBalances(String entityId, String walletId) {
+
+    public boolean matches(String entityId, String walletId) {
+        return (this.entityId == null || this.entityId.equals(entityId)) && (this.walletId == null || this.walletId.equals(walletId));
+    }
+}
@@ -0,0 +1,43 @@
+package com.iot.payment.querymodel;
+
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the derived events of a unit of work, i.e. of a whole batch of the "entities" processor, into one batch.
+ * An event published without a unit of work is a batch of its own.
+ */
+public abstract class AbstractBatchingDerivedEventPublisher implements DerivedEventPublisher {
+    private final String batchResource = "derivedEvents@" + Integer.toHexString(System.identityHashCode(this));
+
+    @Override
+    public void publish(EventMessage<?> event) {
+        if (!CurrentUnitOfWork.isStarted()) {
+            publishBatch(List.of(event));
+            return;
+        }
+        UnitOfWork<?> unitOfWork = CurrentUnitOfWork.get();
+        UnitOfWork<?> root = unitOfWork.root();
+        List<EventMessage<?>> batch = root.getOrComputeResource(batchResource, key -> {
+            List<EventMessage<?>> events = new ArrayList<>();
+            registerBatch(root, events);
+            return events;
+        });
+        // The batch leaves the unit of work, so keep the correlation data of the event handled right now
+        batch.add(event.andMetaData(unitOfWork.getCorrelationData()));
+    }
+
+    /**
+     * Registers the batch of the given root unit of work once, before the first event is added to it.
+     */
+    protected abstract void registerBatch(UnitOfWork<?> unitOfWork, List<EventMessage<?>> batch);
+
+    /**
+     * Publishes a batch of events published without a unit of work.
+     */
+    protected abstract void publishBatch(List<EventMessage<?>> batch);
+}
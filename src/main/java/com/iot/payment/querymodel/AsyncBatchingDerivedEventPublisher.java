@@ -0,0 +1,135 @@
+package com.iot.payment.querymodel;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.common.transaction.NoTransactionManager;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends the derived events of a processor batch once the batch committed, on a background thread. Batches committed
+ * while an append is running are appended together with the next one, up to {@code maxBatchSize} events at once, so
+ * the processor neither waits for the appends nor writes every event on its own.
+ * <p>
+ * An append that fails is retried every {@code retryInterval}, ahead of the events committed since, and
+ * {@link #close()} appends whatever is still pending. Events are only lost if the application stops abruptly between
+ * the commit of a batch and the append, use the {@link OutboxDerivedEventPublisher} when that is not acceptable.
+ */
+@Slf4j
+public class AsyncBatchingDerivedEventPublisher extends AbstractBatchingDerivedEventPublisher {
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final EventBus eventBus;
+    private final TransactionManager transactionManager;
+    private final int maxBatchSize;
+    private final Duration retryInterval;
+    private final Queue<EventMessage<?>> pending = new ConcurrentLinkedQueue<>();
+    private final ScheduledThreadPoolExecutor appender = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "derived-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private List<EventMessage<?>> failed;
+
+    @Builder
+    private AsyncBatchingDerivedEventPublisher(EventBus eventBus, TransactionManager transactionManager, Integer maxBatchSize,
+                                               Duration retryInterval) {
+        this.eventBus = eventBus;
+        this.transactionManager = transactionManager == null ? NoTransactionManager.instance() : transactionManager;
+        this.maxBatchSize = maxBatchSize == null ? 1024 : maxBatchSize;
+        this.retryInterval = retryInterval == null ? Duration.ofSeconds(1) : retryInterval;
+        if (this.maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batches must hold at least one event");
+        }
+        appender.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    @Override
+    protected void registerBatch(UnitOfWork<?> unitOfWork, List<EventMessage<?>> batch) {
+        unitOfWork.afterCommit(committed -> append(batch));
+    }
+
+    @Override
+    protected void publishBatch(List<EventMessage<?>> batch) {
+        append(batch);
+    }
+
+    private void append(List<EventMessage<?>> batch) {
+        pending.addAll(batch);
+        try {
+            appender.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Closed already, append on the caller's thread
+            if (!drain()) {
+                log.error("{} derived events were not appended after the shutdown", failed.size());
+            }
+        }
+    }
+
+    /**
+     * Appends batches until nothing is pending, starting with the batch that failed last.
+     *
+     * @return whether nothing is pending anymore
+     */
+    private synchronized boolean drain() {
+        while (true) {
+            List<EventMessage<?>> events = failed == null ? nextBatch() : failed;
+            if (events.isEmpty()) {
+                return true;
+            }
+            try {
+                transactionManager.executeInTransaction(() -> eventBus.publish(events));
+                failed = null;
+            } catch (RuntimeException e) {
+                failed = events;
+                log.warn("Appending {} derived events failed", events.size(), e);
+                retryLater();
+                return false;
+            }
+        }
+    }
+
+    private void retryLater() {
+        try {
+            appender.schedule(this::drain, retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closing, close() or the next append after it tries again
+        }
+    }
+
+    private List<EventMessage<?>> nextBatch() {
+        List<EventMessage<?>> events = new ArrayList<>();
+        EventMessage<?> event;
+        while (events.size() < maxBatchSize && (event = pending.poll()) != null) {
+            events.add(event);
+        }
+        return events;
+    }
+
+    /**
+     * Stops the background thread and appends the pending events on the calling thread.
+     */
+    @Override
+    public void close() {
+        appender.shutdown();
+        try {
+            appender.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!drain()) {
+            log.error("{} derived events were not appended before the shutdown", pending.size() + failed.size());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.iot.payment.querymodel;
+
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.eventhandling.EventMessage;
+
+/**
+ * Publishes the events the projection derives from the entity events, e.g. {@code MovementUpdatedEvent} and
+ * {@code BalanceUpdatedEvent}.
+ */
+public interface DerivedEventPublisher extends AutoCloseable {
+
+    /**
+     * Publishes every event on the event bus right away, inside the unit of work of the projection if there is one.
+     */
+    static DerivedEventPublisher immediate(EventBus eventBus) {
+        return event -> eventBus.publish(event);
+    }
+
+    void publish(EventMessage<?> event);
+
+    @Override
+    default void close() {
+    }
+}
@@ -3,6 +3,7 @@ package com.iot.payment.querymodel;
 import com.iot.payment.coreapi.events.EntityCreatedEvent;
 import com.iot.payment.coreapi.events.ModifyPostingEvent;
 import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.coreapi.events.TransfersBatchedEvent;
 import com.iot.payment.coreapi.events.UpdateAccountStatusEvent;
 
 public interface EntityEventHandler {
@@ -10,6 +11,8 @@ public interface EntityEventHandler {
 
     void on(TransferEvent event);
 
+    void on(TransfersBatchedEvent event);
+
     void on(UpdateAccountStatusEvent event);
 
     void on(ModifyPostingEvent event);
@@ -1,38 +1,150 @@
 package com.iot.payment.querymodel;
 
-import com.iot.payment.commandmodel.Entity;
 import com.iot.payment.coreapi.queries.FindHistoricalBalanceOfWallet;
-import lombok.AllArgsConstructor;
+import com.iot.payment.coreapi.queries.FindHistoricalBalancePage;
+import com.iot.payment.coreapi.queries.FindLatestBalance;
+import com.iot.payment.coreapi.queries.HistoricalBalanceCursor;
+import com.iot.payment.coreapi.queries.StreamHistoricalBalances;
+import com.iot.payment.coreapi.queries.SubscribeWalletBalances;
 import org.axonframework.messaging.responsetypes.ResponseTypes;
 import org.axonframework.queryhandling.QueryGateway;
+import org.axonframework.queryhandling.SubscriptionQueryResult;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 @Service
-@AllArgsConstructor
 public class EntityQueryService {
 
+    public static final int MAX_PAGE_SIZE = 1000;
     private final QueryGateway queryGateway;
+    private final Duration coalesceWindow;
+
+    public EntityQueryService(QueryGateway queryGateway, @Value("${ledger.balance.subscription.coalesce-window:250ms}") Duration coalesceWindow) {
+        this.queryGateway = queryGateway;
+        this.coalesceWindow = coalesceWindow;
+    }
 
     public CompletableFuture<List<HistoricalBalanceResponse>> findHistoricalBalanceOfWallet() {
-        return queryGateway.query(new FindHistoricalBalanceOfWallet(LocalDateTime.now()), ResponseTypes.multipleInstancesOf(HistoricalBalanceResponse.class))
-                .thenApply(r -> r.stream()
-                        .map(entity -> HistoricalBalanceResponse.builder()
-                                .walletId(entity.getWalletId())
-                                .balance(entity.getBalance())
-                                .localDate(LocalDateTime.now())
-                                .build())
-                        .collect(Collectors.toList()));
-    }
-
-    public CompletableFuture<List<LatestBalanceResponse>> findLatestBalance() {
-        return queryGateway.query(new FindHistoricalBalanceOfWallet(LocalDateTime.now()), ResponseTypes.multipleInstancesOf(Entity.class))
-                .thenApply(r -> r.stream()
-                        .map(LatestBalanceResponse::new)
-                        .collect(Collectors.toList()));
+        return queryGateway.query(new FindHistoricalBalanceOfWallet(LocalDateTime.now()), ResponseTypes.multipleInstancesOf(HistoricalBalanceResponse.class));
+    }
+
+    public CompletableFuture<HistoricalBalancePage> findHistoricalBalancePage(String entityId, String walletId, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        FindHistoricalBalancePage query = new FindHistoricalBalancePage(LocalDateTime.now(), entityId, walletId, HistoricalBalanceCursor.decode(cursor), limit);
+        return queryGateway.query(query, ResponseTypes.instanceOf(HistoricalBalancePage.class));
+    }
+
+    public Flux<HistoricalBalanceResponse> streamHistoricalBalances(String entityId, String walletId) {
+        return Flux.from(queryGateway.streamingQuery(new StreamHistoricalBalances(LocalDateTime.now(), entityId, walletId), HistoricalBalanceResponse.class));
+    }
+
+    /**
+     * Current balances of the matching wallets, then their changes. The first change of a quiet wallet is sent at once;
+     * further changes within the {@code coalesceWindow} are held and only the latest is sent when the window ends, so
+     * bursts of transfers do not flood subscribers.
+     */
+    public Flux<WalletBalance> subscribeWalletBalances(String entityId, String walletId) {
+        return Flux.using(
+                () -> queryGateway.subscriptionQuery(new SubscribeWalletBalances(entityId, walletId), ResponseTypes.multipleInstancesOf(WalletBalance.class), ResponseTypes.instanceOf(WalletBalance.class)),
+                result -> result.initialResult()
+                        .flatMapMany(Flux::fromIterable)
+                        .concatWith(coalesce(result.updates())),
+                SubscriptionQueryResult::close);
+    }
+
+    private Flux<WalletBalance> coalesce(Flux<WalletBalance> updates) {
+        if (coalesceWindow.isZero()) {
+            return updates;
+        }
+        return Flux.create(sink -> {
+            Coalescer coalescer = new Coalescer(sink, coalesceWindow, Schedulers.parallel());
+            Disposable subscription = updates.subscribe(coalescer::update, coalescer::error, coalescer::complete);
+            sink.onDispose(() -> {
+                subscription.dispose();
+                coalescer.stop();
+            });
+        });
+    }
+
+    /**
+     * Latest balance of every wallet that changed within the current window of one subscription, flushed by a single
+     * timer. The timer only runs while some wallet changed within the last window, and a wallet that stays quiet for a
+     * whole window is forgotten, so an idle subscription holds nothing.
+     */
+    private static final class Coalescer {
+        private final FluxSink<WalletBalance> sink;
+        private final Duration window;
+        private final Scheduler scheduler;
+        private final Set<String> recentlySent = new HashSet<>();
+        private final Map<String, WalletBalance> pending = new LinkedHashMap<>();
+        private Disposable timer;
+
+        private Coalescer(FluxSink<WalletBalance> sink, Duration window, Scheduler scheduler) {
+            this.sink = sink;
+            this.window = window;
+            this.scheduler = scheduler;
+        }
+
+        synchronized void update(WalletBalance balance) {
+            String wallet = balance.entityId() + '/' + balance.walletId();
+            if (!recentlySent.add(wallet)) {
+                pending.put(wallet, balance);
+                return;
+            }
+            sink.next(balance);
+            if (timer == null) {
+                timer = scheduler.schedulePeriodically(this::flush, window.toNanos(), window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private synchronized void flush() {
+            // Wallets without a change in this window are quiet again
+            recentlySent.retainAll(pending.keySet());
+            pending.values().forEach(sink::next);
+            pending.clear();
+            if (recentlySent.isEmpty()) {
+                stop();
+            }
+        }
+
+        synchronized void error(Throwable error) {
+            stop();
+            sink.error(error);
+        }
+
+        synchronized void complete() {
+            pending.values().forEach(sink::next);
+            pending.clear();
+            stop();
+            sink.complete();
+        }
+
+        synchronized void stop() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+        }
+    }
+
+    public CompletableFuture<WalletBalance> findLatestBalance(String entityId, String walletId) {
+        return queryGateway.query(new FindLatestBalance(entityId, walletId), ResponseTypes.instanceOf(WalletBalance.class));
     }
 }
@@ -0,0 +1,9 @@
+package com.iot.payment.querymodel;
+
+import java.util.List;
+
+/**
+ * {@code nextCursor} is {@code null} on the last page.
+ */
+public record HistoricalBalancePage(List<HistoricalBalanceResponse> items, String nextCursor) {
+}
@@ -3,18 +3,30 @@ package com.iot.payment.querymodel;
 import com.iot.payment.commandmodel.Account;
 import com.iot.payment.commandmodel.AccountState;
 import com.iot.payment.commandmodel.AssetType;
+import com.iot.payment.commandmodel.BalanceRetentionPolicy;
 import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.FixedPointMoney;
 import com.iot.payment.commandmodel.Wallet;
 import com.iot.payment.coreapi.events.BalanceUpdatedEvent;
 import com.iot.payment.coreapi.events.EntityCreatedEvent;
 import com.iot.payment.coreapi.events.ModifyPostingEvent;
+import com.iot.payment.coreapi.events.Movement;
 import com.iot.payment.coreapi.events.MovementUpdatedEvent;
 import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.coreapi.events.TransfersBatchedEvent;
 import com.iot.payment.coreapi.events.UpdateAccountStatusEvent;
 import com.iot.payment.coreapi.queries.FindHistoricalBalanceOfWallet;
+import com.iot.payment.coreapi.queries.FindHistoricalBalancePage;
+import com.iot.payment.coreapi.queries.FindLatestBalance;
+import com.iot.payment.coreapi.queries.HistoricalBalanceCursor;
+import com.iot.payment.coreapi.queries.StreamHistoricalBalances;
+import com.iot.payment.coreapi.queries.SubscribeTransferBatch;
+import com.iot.payment.coreapi.queries.SubscribeWalletBalances;
+import com.iot.payment.repository.EntityIndex;
 import com.iot.payment.repository.LedgerInMemoryRepository;
 import com.iot.payment.service.LedgerService;
 import com.iot.payment.service.LedgerServiceImpl;
+import com.iot.payment.service.TransferOutcome;
 import com.iot.payment.service.TransferRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.axonframework.config.ProcessingGroup;
@@ -22,16 +34,23 @@ import org.axonframework.eventhandling.EventBus;
 import org.axonframework.eventhandling.EventHandler;
 import org.axonframework.eventhandling.EventMessage;
 import org.axonframework.eventhandling.GenericEventMessage;
+import org.axonframework.eventhandling.ReplayToken;
+import org.axonframework.eventhandling.ResetHandler;
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork;
 import org.axonframework.queryhandling.QueryHandler;
 import org.axonframework.queryhandling.QueryUpdateEmitter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -44,68 +63,159 @@ public class InMemoryEntityEventHandler implements EntityEventHandler {
     private final static String FIAT_CURRENCY_DESTINATION_WALLET_ID = AssetType.FIAT_CURRENCY.name() + "_DESTINATION_1";
     private final LedgerInMemoryRepository ledgerRepository;
     private final QueryUpdateEmitter emitter;
-    private final EventBus eventBus;
+    private final DerivedEventPublisher derivedEvents;
     private final LedgerService ledgerService;
-    Map<String, Entity> entities = new HashMap<>();
+    private final int fiatMinorUnitScale;
+    private final BalanceRetentionPolicy balanceRetention;
+    private final LatestBalanceView latestBalances = new LatestBalanceView();
 
     public InMemoryEntityEventHandler(LedgerInMemoryRepository ledgerRepository, QueryUpdateEmitter emitter, EventBus eventBus) {
+        this(ledgerRepository, emitter, DerivedEventPublisher.immediate(eventBus), FixedPointMoney.DECIMAL, BalanceRetentionPolicy.UNBOUNDED);
+    }
+
+    @Autowired
+    public InMemoryEntityEventHandler(LedgerInMemoryRepository ledgerRepository, QueryUpdateEmitter emitter, DerivedEventPublisher derivedEvents,
+                                      @Value("${ledger.money.fiat-minor-unit-scale:-1}") int fiatMinorUnitScale,
+                                      BalanceRetentionPolicy balanceRetention) {
+        FixedPointMoney.checkScale(fiatMinorUnitScale);
         this.ledgerRepository = ledgerRepository;
         this.ledgerService = new LedgerServiceImpl(ledgerRepository);
         this.emitter = emitter;
-        this.eventBus = eventBus;
+        this.derivedEvents = derivedEvents;
+        this.fiatMinorUnitScale = fiatMinorUnitScale;
+        this.balanceRetention = balanceRetention;
     }
 
     @EventHandler
     public void on(EntityCreatedEvent event) {
+        if (ledgerRepository.findEntity(event.getEntityId()) != null) {
+            // Handled again after a restart restored the entity from the ledger journal
+            return;
+        }
 
         //Assume we are maintaining only on Wallet per entity of asset type FIAT_CURRENCY
-        Wallet sourceWallet = Wallet.builder().id(FIAT_CURRENCY_SOURCE_WALLET_ID).assetType(AssetType.FIAT_CURRENCY).balance(new BigDecimal(100)).build();
-        Wallet destinationWallet = Wallet.builder().id(FIAT_CURRENCY_DESTINATION_WALLET_ID).assetType(AssetType.FIAT_CURRENCY).balance(new BigDecimal(100)).build();
+        Wallet sourceWallet = Wallet.builder().id(FIAT_CURRENCY_SOURCE_WALLET_ID).assetType(AssetType.FIAT_CURRENCY).minorUnitScale(fiatMinorUnitScale).balanceRetention(balanceRetention).balance(new BigDecimal(100)).build();
+        Wallet destinationWallet = Wallet.builder().id(FIAT_CURRENCY_DESTINATION_WALLET_ID).assetType(AssetType.FIAT_CURRENCY).minorUnitScale(fiatMinorUnitScale).balanceRetention(balanceRetention).balance(new BigDecimal(100)).build();
         //Assume we are maintaining only one account per entity
         List<Account> accounts = new ArrayList<>();
         Account account = Account.builder().id("ACCOUNT1").wallets(List.of(sourceWallet, destinationWallet)).state(AccountState.OPEN).build();
         accounts.add(account);
         Entity entity = Entity.builder().id(event.getEntityId()).accounts(accounts).build();
-        entities.put(event.getEntityId(), entity);
-        ledgerRepository.setEntities(entities);
+        ledgerRepository.register(entity);
+        publishWalletBalances(event.getEntityId(), FIAT_CURRENCY_SOURCE_WALLET_ID, FIAT_CURRENCY_DESTINATION_WALLET_ID);
     }
 
     @EventHandler
     public void on(TransferEvent event) {
         //TODO create Entity registry along with aggregate root then fetch the source and destination wallet ids to build the TransferRequest.
-        TransferRequest transferRequest = TransferRequest.builder().sourceWalletId(FIAT_CURRENCY_SOURCE_WALLET_ID).destinationWalletId(FIAT_CURRENCY_DESTINATION_WALLET_ID).amount(event.getAmount()).build();
+        TransferRequest transferRequest = TransferRequest.builder().sourceWalletId(FIAT_CURRENCY_SOURCE_WALLET_ID).destinationWalletId(FIAT_CURRENCY_DESTINATION_WALLET_ID).amount(event.getAmount()).postingId(postingId(event)).build();
         List<TransferRequest> transferRequests = new ArrayList<>();
         transferRequests.add(transferRequest);
         List<String> postingIds = ledgerService.transfer(event.getEntityId(), transferRequests);
         log.info("Posting Ids: " + postingIds);
+        if (postingIds.isEmpty()) {
+            // The transfer was made before, its derived events went out then
+            return;
+        }
+
 
+        publishMovementUpdateEvent(FIAT_CURRENCY_SOURCE_WALLET_ID, FIAT_CURRENCY_DESTINATION_WALLET_ID, event.getAmount(), postingIds.get(0));
+        publishBalanceUpdatedEvent(FIAT_CURRENCY_SOURCE_WALLET_ID, FIAT_CURRENCY_DESTINATION_WALLET_ID, event.getAmount());
+        publishWalletBalances(event.getEntityId(), FIAT_CURRENCY_SOURCE_WALLET_ID, FIAT_CURRENCY_DESTINATION_WALLET_ID);
+
+    }
 
-        publishMovementUpdateEvent(event.getAmount(), postingIds.get(0));
-        publishBalanceUpdatedEvent(event.getAmount());
+    @EventHandler
+    public void on(TransfersBatchedEvent event) {
+        List<TransferRequest> transferRequests = new ArrayList<>(event.getMovements().size());
+        for (Movement movement : event.getMovements()) {
+            transferRequests.add(TransferRequest.builder().sourceWalletId(movement.getSourceWalletId()).destinationWalletId(movement.getDestinationWalletId()).amount(movement.getAmount()).postingId(movement.getPostingId()).build());
+        }
+        // A movement the wallets cannot take, e.g. naming an unknown wallet, is rejected on its own, the others are still made
+        TransferOutcome outcome = ledgerService.transferEach(event.getEntityId(), transferRequests);
+        log.info("Batched {} transfers for entity {}, rejected {}", outcome.postingIds().size(), event.getEntityId(), outcome.rejections().size());
 
+        // Movements made before, e.g. before a restart, are neither made again nor rejected
+        Set<String> made = new HashSet<>(outcome.postingIds());
+        Set<String> walletIds = new LinkedHashSet<>();
+        for (Movement movement : event.getMovements()) {
+            if (made.contains(movement.getPostingId())) {
+                publishMovementUpdateEvent(movement.getSourceWalletId(), movement.getDestinationWalletId(), movement.getAmount(), movement.getPostingId());
+                publishBalanceUpdatedEvent(movement.getSourceWalletId(), movement.getDestinationWalletId(), movement.getAmount());
+                walletIds.add(movement.getSourceWalletId());
+                walletIds.add(movement.getDestinationWalletId());
+            }
+        }
+        // One update per wallet for the whole batch
+        publishWalletBalances(event.getEntityId(), walletIds.toArray(String[]::new));
+        if (!replaying() && !event.getMovements().isEmpty() && !emitter.activeSubscriptions().isEmpty()) {
+            String firstPostingId = event.getMovements().get(0).getPostingId();
+            emitter.emit(SubscribeTransferBatch.class, query -> query.matches(event.getEntityId(), firstPostingId), outcome);
+        }
     }
 
-    private void publishMovementUpdateEvent(BigDecimal amount, String postingIds) {
+    private void publishMovementUpdateEvent(String sourceWalletId, String destinationWalletId, BigDecimal amount, String postingIds) {
         MovementUpdatedEvent movementUpdatedEvent = new MovementUpdatedEvent(
                 UUID.randomUUID().toString(),
-                FIAT_CURRENCY_SOURCE_WALLET_ID,
-                FIAT_CURRENCY_DESTINATION_WALLET_ID,
+                sourceWalletId,
+                destinationWalletId,
                 amount,
                 postingIds);
 
         EventMessage<MovementUpdatedEvent> movementCreatedEventEventMessage = GenericEventMessage.asEventMessage(movementUpdatedEvent);
 
-        eventBus.publish(movementCreatedEventEventMessage);
+        if (!replaying()) {
+            derivedEvents.publish(movementCreatedEventEventMessage);
+        }
     }
 
-    private void publishBalanceUpdatedEvent(BigDecimal amount) {
-        BalanceUpdatedEvent balanceUpdatedEvent = new BalanceUpdatedEvent(
-                InMemoryEntityEventHandler.FIAT_CURRENCY_SOURCE_WALLET_ID, InMemoryEntityEventHandler.FIAT_CURRENCY_DESTINATION_WALLET_ID, amount);
+    private void publishBalanceUpdatedEvent(String sourceWalletId, String destinationWalletId, BigDecimal amount) {
+        BalanceUpdatedEvent balanceUpdatedEvent = new BalanceUpdatedEvent(sourceWalletId, destinationWalletId, amount);
 
 
         EventMessage<BalanceUpdatedEvent> balanceUpdatedEventMessage = GenericEventMessage.asEventMessage(balanceUpdatedEvent);
 
-        eventBus.publish(balanceUpdatedEventMessage);
+        if (!replaying()) {
+            derivedEvents.publish(balanceUpdatedEventMessage);
+        }
+    }
+
+    /**
+     * Posting id of a single transfer. A transfer without one of its own is posted under the id of its event, so
+     * handling the same event again, e.g. after a restart, is recognised.
+     */
+    private static String postingId(TransferEvent event) {
+        if (event.getPostingId() != null || !CurrentUnitOfWork.isStarted()) {
+            return event.getPostingId();
+        }
+        return CurrentUnitOfWork.get().getMessage().getIdentifier();
+    }
+
+    /**
+     * Whether the event being handled is replayed, in which case its derived events and balance updates went out
+     * when it was handled the first time.
+     */
+    private static boolean replaying() {
+        return CurrentUnitOfWork.isStarted() && ReplayToken.isReplay(CurrentUnitOfWork.get().getMessage());
+    }
+
+    /**
+     * Forgets the projected entities before the processor replays the events.
+     */
+    @ResetHandler
+    public void onReset() {
+        ledgerRepository.clear();
+        latestBalances.clear();
+    }
+
+    /**
+     * Forgets only the entities that are not retained, e.g. when the entities owned by this node change in multi-node
+     * mode and the replay only rebuilds the entities it took over.
+     */
+    @ResetHandler
+    public void onReset(RetainedEntities retained) {
+        ledgerRepository.retain(retained.entityIds());
+        latestBalances.retain(retained.entityIds());
     }
 
     @EventHandler
@@ -118,24 +228,135 @@ public class InMemoryEntityEventHandler implements EntityEventHandler {
 
         ledgerService.modifyPosting(event.entityId(), event.sourceWalletId(), event.destinationWalletId(), event.postingId(), event.newAmount(), event.newState());
 
-        publishMovementUpdateEvent(event.newAmount(), event.postingId());
-        publishBalanceUpdatedEvent(event.newAmount());
+        publishMovementUpdateEvent(FIAT_CURRENCY_SOURCE_WALLET_ID, FIAT_CURRENCY_DESTINATION_WALLET_ID, event.newAmount(), event.postingId());
+        publishBalanceUpdatedEvent(FIAT_CURRENCY_SOURCE_WALLET_ID, FIAT_CURRENCY_DESTINATION_WALLET_ID, event.newAmount());
+        publishWalletBalances(event.entityId(), event.sourceWalletId(), event.destinationWalletId());
 
     }
 
+    /**
+     * Records the current balance of the given wallets in the latest balance view and pushes it to the matching
+     * {@link SubscribeWalletBalances} subscriptions, if there are any.
+     */
+    private void publishWalletBalances(String entityId, String... walletIds) {
+        EntityIndex index = ledgerRepository.indexOf(entityId, ledgerRepository.findEntity(entityId));
+        boolean subscribed = !replaying() && !emitter.activeSubscriptions().isEmpty();
+        LocalDateTime now = LocalDateTime.now();
+        for (String walletId : walletIds) {
+            WalletBalance balance = new WalletBalance(entityId, walletId, index.wallet(walletId).getBalance(), now);
+            latestBalances.update(balance);
+            if (subscribed) {
+                emitter.emit(SubscribeWalletBalances.class, query -> query.matches(entityId, walletId), balance);
+            }
+        }
+    }
+
+    @QueryHandler
+    public WalletBalance handle(FindLatestBalance query) {
+        WalletBalance balance = latestBalances.find(query.entityId(), query.walletId());
+        if (balance != null) {
+            return balance;
+        }
+        // Wallets restored from a journal or snapshot are only in the view once they change
+        Entity entity = ledgerRepository.findEntity(query.entityId());
+        return entity == null ? null : walletsOf(entity).stream()
+                .filter(wallet -> wallet.getId() != null && wallet.getId().equals(query.walletId()))
+                .findFirst()
+                .map(wallet -> new WalletBalance(query.entityId(), wallet.getId(), wallet.getBalance(), LocalDateTime.now()))
+                .orElse(null);
+    }
+
     @QueryHandler
     public List<HistoricalBalanceResponse> handle(FindHistoricalBalanceOfWallet query) {
         LocalDateTime queryDate = query.localDateTime();
 
-        return entities.values().stream()
+        return ledgerRepository.getEntities().values().stream()
                 .flatMap(entity -> entity.getAccounts().stream())
                 .flatMap(account -> account.getWallets().stream())
-                .map(wallet -> HistoricalBalanceResponse.builder()
-                        .walletId(wallet.getId())
-                        .balance(wallet.getBalanceAt(queryDate))
-                        .localDate(queryDate)
-                        .build())
+                .map(wallet -> historicalBalance(wallet, queryDate))
                 .collect(Collectors.toList());
     }
 
+    @QueryHandler
+    public List<WalletBalance> handle(SubscribeWalletBalances query) {
+        LocalDateTime now = LocalDateTime.now();
+        List<WalletBalance> balances = new ArrayList<>();
+        for (String entityId : entityIds(query.entityId(), null)) {
+            for (Wallet wallet : walletsOf(ledgerRepository.findEntity(entityId))) {
+                if (query.matches(entityId, wallet.getId())) {
+                    balances.add(new WalletBalance(entityId, wallet.getId(), wallet.getBalance(), now));
+                }
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * Outcomes of batches are only pushed as updates, there is nothing to answer before the batch is applied.
+     */
+    @QueryHandler
+    public TransferOutcome handle(SubscribeTransferBatch query) {
+        return null;
+    }
+
+    @QueryHandler
+    public HistoricalBalancePage handle(FindHistoricalBalancePage query) {
+        HistoricalBalanceCursor after = query.after();
+        List<HistoricalBalanceResponse> items = new ArrayList<>(query.limit());
+        HistoricalBalanceCursor last = null;
+        for (String entityId : entityIds(query.entityId(), after)) {
+            List<Wallet> wallets = walletsOf(ledgerRepository.findEntity(entityId));
+            int from = after != null && entityId.equals(after.entityId()) ? after.walletOrdinal() + 1 : 0;
+            for (int ordinal = from; ordinal < wallets.size(); ordinal++) {
+                Wallet wallet = wallets.get(ordinal);
+                if (query.walletId() != null && !query.walletId().equals(wallet.getId())) {
+                    continue;
+                }
+                if (items.size() == query.limit()) {
+                    return new HistoricalBalancePage(items, last.encode());
+                }
+                items.add(historicalBalance(wallet, query.localDateTime()));
+                last = new HistoricalBalanceCursor(entityId, ordinal);
+            }
+        }
+        return new HistoricalBalancePage(items, null);
+    }
+
+    @QueryHandler
+    public Flux<HistoricalBalanceResponse> handle(StreamHistoricalBalances query) {
+        // Lazily walks the entities as the subscriber requests more, nothing is collected up front
+        return Flux.fromIterable(entityIds(query.entityId(), null))
+                .concatMapIterable(entityId -> walletsOf(ledgerRepository.findEntity(entityId)))
+                .filter(wallet -> query.walletId() == null || query.walletId().equals(wallet.getId()))
+                .map(wallet -> historicalBalance(wallet, query.localDateTime()));
+    }
+
+    private Iterable<String> entityIds(String entityId, HistoricalBalanceCursor after) {
+        if (entityId != null) {
+            return after == null || entityId.compareTo(after.entityId()) >= 0 ? List.of(entityId) : List.of();
+        }
+        return ledgerRepository.entityIds(after == null ? null : after.entityId());
+    }
+
+    private static List<Wallet> walletsOf(Entity entity) {
+        if (entity == null) {
+            return List.of();
+        }
+        List<Wallet> wallets = new ArrayList<>();
+        for (Account account : entity.getAccounts()) {
+            if (account.getWallets() != null) {
+                wallets.addAll(account.getWallets());
+            }
+        }
+        return wallets;
+    }
+
+    private static HistoricalBalanceResponse historicalBalance(Wallet wallet, LocalDateTime localDateTime) {
+        return HistoricalBalanceResponse.builder()
+                .walletId(wallet.getId())
+                .balance(wallet.getBalanceAt(localDateTime))
+                .localDate(localDateTime)
+                .build();
+    }
+
 }
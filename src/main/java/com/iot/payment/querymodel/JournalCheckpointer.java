@@ -0,0 +1,147 @@
+package com.iot.payment.querymodel;
+
+import com.iot.payment.repository.LedgerJournal;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.eventhandling.StreamingEventProcessor;
+import org.axonframework.eventhandling.TrackingToken;
+import org.axonframework.eventhandling.tokenstore.TokenStore;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.axonframework.serialization.Serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic checkpoints of the {@link LedgerJournal}: the lower bound of the tokens of all segments of the
+ * "entities" processor. Every event before it was handled, so every change it made is in the journal.
+ * <p>
+ * On start up the processor resumes from the last checkpoint rather than from the start of the event stream. The
+ * events after it whose changes were journaled already are handled again and change nothing: the projection skips
+ * entities and postings it already holds and states that are already set.
+ */
+@Slf4j
+public class JournalCheckpointer implements AutoCloseable {
+    private final LedgerJournal journal;
+    private final EventProcessingConfiguration eventProcessing;
+    private final EventStore eventStore;
+    private final TokenStore tokenStore;
+    private final TransactionManager transactionManager;
+    private final Serializer serializer;
+    private ScheduledExecutorService scheduler;
+    private volatile TrackingToken resumeToken;
+    private TrackingToken lastCheckpoint;
+
+    @Builder
+    private JournalCheckpointer(LedgerJournal journal, EventProcessingConfiguration eventProcessing, EventStore eventStore,
+                                TokenStore tokenStore, TransactionManager transactionManager, Serializer serializer) {
+        this.journal = journal;
+        this.eventProcessing = eventProcessing;
+        this.eventStore = eventStore;
+        this.tokenStore = tokenStore;
+        this.transactionManager = transactionManager;
+        this.serializer = serializer;
+    }
+
+    /**
+     * Token the processor should start from when it has no tokens yet, present once a checkpoint was restored.
+     */
+    public Optional<TrackingToken> resumeToken() {
+        return Optional.ofNullable(resumeToken);
+    }
+
+    /**
+     * Moves the stored tokens of the processor back to the last checkpoint, or to the start of the event stream when
+     * there is none or it is ahead of the event store. Must run before the processor starts.
+     */
+    public synchronized void restore() {
+        TrackingToken token = journal.lastCheckpoint().map(this::decode).orElse(null);
+        if (token != null) {
+            TrackingToken head = eventStore.createHeadToken();
+            if (head == null || !head.covers(token)) {
+                log.warn("Ledger journal checkpoint {} is ahead of the event store, replaying the event store instead", token);
+                token = null;
+            }
+        }
+        TrackingToken start = token == null ? eventStore.createTailToken() : token;
+        if (!ProjectionSnapshotter.resetStoredTokens(tokenStore, transactionManager, start)) {
+            log.warn("Resuming {} from its stored tokens instead of the ledger journal checkpoint", ProjectionSnapshotter.PROCESSING_GROUP);
+            return;
+        }
+        resumeToken = start;
+        lastCheckpoint = token;
+        if (token == null) {
+            log.info("No ledger journal checkpoint, {} starts at the beginning of the event store", ProjectionSnapshotter.PROCESSING_GROUP);
+        } else {
+            log.info("Resuming {} at ledger journal checkpoint {}", ProjectionSnapshotter.PROCESSING_GROUP, token);
+        }
+    }
+
+    /**
+     * Writes a checkpoint, unless not every segment of the processor is being processed here or it did not move
+     * since the last one.
+     *
+     * @return whether a checkpoint was written
+     */
+    public synchronized boolean checkpoint() {
+        TrackingToken token = eventProcessing.eventProcessor(ProjectionSnapshotter.PROCESSING_GROUP, StreamingEventProcessor.class)
+                .map(processor -> ProjectionSnapshotter.lowerBound(processor.processingStatus()))
+                .orElse(null);
+        if (token == null || token.equals(lastCheckpoint)) {
+            return false;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ProjectionSnapshotter.writeToken(out, token, serializer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        journal.checkpoint(bytes.toByteArray());
+        lastCheckpoint = token;
+        return true;
+    }
+
+    public synchronized void scheduleEvery(Duration interval) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Ledger journal checkpoints are already scheduled");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-journal-checkpoints");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (RuntimeException e) {
+                log.warn("Ledger journal checkpoint failed", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private TrackingToken decode(byte[] checkpoint) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(checkpoint))) {
+            return ProjectionSnapshotter.readToken(in, serializer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the ledger journal checkpoint", e);
+        }
+    }
+}
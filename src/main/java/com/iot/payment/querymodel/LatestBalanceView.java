@@ -0,0 +1,32 @@
+package com.iot.payment.querymodel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Current balance of every wallet, keyed by entity and wallet id, so reading a balance is a single hash lookup.
+ * Wallet ids are only unique within an entity, hence the composite key.
+ */
+class LatestBalanceView {
+    private final Map<WalletKey, WalletBalance> balances = new ConcurrentHashMap<>();
+
+    void update(WalletBalance balance) {
+        balances.put(new WalletKey(balance.entityId(), balance.walletId()), balance);
+    }
+
+    WalletBalance find(String entityId, String walletId) {
+        return balances.get(new WalletKey(entityId, walletId));
+    }
+
+    void clear() {
+        balances.clear();
+    }
+
+    void retain(Predicate<String> entityIds) {
+        balances.keySet().removeIf(key -> !entityIds.test(key.entityId()));
+    }
+
+    private record WalletKey(String entityId, String walletId) {
+    }
+}
@@ -0,0 +1,121 @@
+package com.iot.payment.querymodel;
+
+import com.iot.payment.repository.DerivedEventOutboxEntry;
+import jakarta.persistence.EntityManager;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.common.jpa.EntityManagerProvider;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+import org.axonframework.serialization.Serializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the derived events of a processor batch to an outbox table in the transaction of the batch, which also
+ * stores the tokens of the processor, so the events are kept exactly when the batch is. A relay appends the outbox to
+ * the event store in batches of {@code relayBatchSize} events, removing them in the same transaction. Only one
+ * application instance should relay.
+ */
+@Slf4j
+public class OutboxDerivedEventPublisher extends AbstractBatchingDerivedEventPublisher {
+    private final EntityManagerProvider entityManagerProvider;
+    private final EventBus eventBus;
+    private final Serializer serializer;
+    private final TransactionManager transactionManager;
+    private final int relayBatchSize;
+    private ScheduledExecutorService relay;
+
+    @Builder
+    private OutboxDerivedEventPublisher(EntityManagerProvider entityManagerProvider, EventBus eventBus, Serializer serializer,
+                                        TransactionManager transactionManager, Integer relayBatchSize) {
+        this.entityManagerProvider = entityManagerProvider;
+        this.eventBus = eventBus;
+        this.serializer = serializer;
+        this.transactionManager = transactionManager;
+        this.relayBatchSize = relayBatchSize == null ? 1024 : relayBatchSize;
+        if (this.relayBatchSize < 1) {
+            throw new IllegalArgumentException("Relay batches must hold at least one event");
+        }
+    }
+
+    @Override
+    protected void registerBatch(UnitOfWork<?> unitOfWork, List<EventMessage<?>> batch) {
+        unitOfWork.onPrepareCommit(committing -> write(batch));
+    }
+
+    @Override
+    protected void publishBatch(List<EventMessage<?>> batch) {
+        transactionManager.executeInTransaction(() -> write(batch));
+    }
+
+    private void write(List<EventMessage<?>> batch) {
+        EntityManager entityManager = entityManagerProvider.getEntityManager();
+        for (EventMessage<?> event : batch) {
+            entityManager.persist(new DerivedEventOutboxEntry(event, serializer));
+        }
+    }
+
+    /**
+     * Appends the oldest events of the outbox to the event store and removes them.
+     *
+     * @return the number of events relayed, less than the relay batch size once the outbox is empty
+     */
+    public int relay() {
+        return transactionManager.fetchInTransaction(() -> {
+            EntityManager entityManager = entityManagerProvider.getEntityManager();
+            List<DerivedEventOutboxEntry> entries = entityManager
+                    .createQuery("SELECT e FROM DerivedEventOutboxEntry e ORDER BY e.id", DerivedEventOutboxEntry.class)
+                    .setMaxResults(relayBatchSize)
+                    .getResultList();
+            if (entries.isEmpty()) {
+                return 0;
+            }
+            List<EventMessage<?>> events = new ArrayList<>(entries.size());
+            List<Long> ids = new ArrayList<>(entries.size());
+            for (DerivedEventOutboxEntry entry : entries) {
+                events.add(entry.toEventMessage(serializer));
+                ids.add(entry.getId());
+            }
+            eventBus.publish(events);
+            entityManager.createQuery("DELETE FROM DerivedEventOutboxEntry e WHERE e.id IN :ids")
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+            return entries.size();
+        });
+    }
+
+    public synchronized void scheduleEvery(Duration interval) {
+        if (relay != null) {
+            throw new IllegalStateException("The outbox relay is already scheduled");
+        }
+        relay = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "derived-event-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        relay.scheduleWithFixedDelay(() -> {
+            try {
+                while (relay() == relayBatchSize) {
+                    // A full batch, the outbox may hold more
+                }
+            } catch (RuntimeException e) {
+                log.warn("Relaying the derived event outbox failed", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (relay != null) {
+            relay.shutdownNow();
+        }
+    }
+}
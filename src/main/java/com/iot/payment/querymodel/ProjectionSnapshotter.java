@@ -0,0 +1,344 @@
+package com.iot.payment.querymodel;
+
+import com.iot.payment.commandmodel.BalanceRetentionPolicy;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import com.iot.payment.repository.LedgerSnapshotCodec;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.eventhandling.EventTrackerStatus;
+import org.axonframework.eventhandling.StreamingEventProcessor;
+import org.axonframework.eventhandling.TrackingToken;
+import org.axonframework.eventhandling.tokenstore.TokenStore;
+import org.axonframework.eventhandling.tokenstore.UnableToClaimTokenException;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.SimpleSerializedObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Periodic binary snapshots of the {@link LedgerInMemoryRepository}, stored with the tracking token of the
+ * "entities" processor, so a restart resumes from the latest snapshot instead of replaying every event.
+ * <p>
+ * A snapshot records the lower bound of the tokens of all segments, then copies the entities one at a time, each
+ * together with the token of the last event applied to it (see {@link ProjectionWatermarks}). Event handling only
+ * waits while the entity it touches is copied, never for the whole snapshot. Events between the lower bound and the
+ * moment an entity was copied are replayed after a restore and skipped by the watermarks.
+ * <p>
+ * Entities are encoded once per token: an entity that did not apply an event since the previous snapshot is written
+ * from the copy encoded back then, so only the entities that changed are locked and encoded again. The file itself is
+ * still written whole, and the encoded copies of all entities are kept in memory between snapshots.
+ */
+@Slf4j
+public class ProjectionSnapshotter implements AutoCloseable {
+    public static final String PROCESSING_GROUP = "entities";
+    private static final int MAGIC = 0x4C534E50;
+    private static final int VERSION = 1;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final LedgerInMemoryRepository repository;
+    private final ProjectionWatermarks watermarks;
+    private final EventProcessingConfiguration eventProcessing;
+    private final EventStore eventStore;
+    private final TokenStore tokenStore;
+    private final TransactionManager transactionManager;
+    private final Serializer serializer;
+    private final BalanceRetentionPolicy balanceRetention;
+    private final Path directory;
+    private final int retained;
+    private ScheduledExecutorService scheduler;
+    private volatile TrackingToken resumeToken;
+    private TrackingToken lastSnapshotToken;
+    private final Map<String, EncodedEntity> encoded = new HashMap<>();
+
+    @Builder
+    private ProjectionSnapshotter(LedgerInMemoryRepository repository, ProjectionWatermarks watermarks, EventProcessingConfiguration eventProcessing,
+                                  EventStore eventStore, TokenStore tokenStore, TransactionManager transactionManager, Serializer serializer,
+                                  BalanceRetentionPolicy balanceRetention, Path directory, Integer retained) {
+        this.repository = repository;
+        this.watermarks = watermarks;
+        this.eventProcessing = eventProcessing;
+        this.eventStore = eventStore;
+        this.tokenStore = tokenStore;
+        this.transactionManager = transactionManager;
+        this.serializer = serializer;
+        this.balanceRetention = balanceRetention == null ? BalanceRetentionPolicy.UNBOUNDED : balanceRetention;
+        this.directory = directory;
+        this.retained = retained == null ? 2 : retained;
+        if (this.retained < 1) {
+            throw new IllegalArgumentException("At least one snapshot must be retained");
+        }
+    }
+
+    /**
+     * Token the processor should start from when it has no tokens yet, present once a snapshot was restored.
+     */
+    public Optional<TrackingToken> resumeToken() {
+        return Optional.ofNullable(resumeToken);
+    }
+
+    /**
+     * Restores the repository from the latest snapshot. Must run before the processor starts. Skipped when the
+     * repository already holds entities, e.g. restored from its journal, or when the snapshot is ahead of the event
+     * store.
+     */
+    public synchronized void restore() {
+        Path latest = snapshots().reduce((first, second) -> second).orElse(null);
+        if (latest == null) {
+            return;
+        }
+        if (!repository.getEntities().isEmpty()) {
+            log.warn("Ledger repository was already restored, ignoring projection snapshot {}", latest);
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(latest)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException(latest + " is not a projection snapshot of this version");
+            }
+            TrackingToken token = readToken(in, serializer);
+            TrackingToken head = eventStore.createHeadToken();
+            if (head == null || !head.covers(token)) {
+                log.warn("Projection snapshot {} is ahead of the event store, replaying the event store instead", latest);
+                return;
+            }
+            List<Entity> entities = new ArrayList<>();
+            List<TrackingToken> entityTokens = new ArrayList<>();
+            while (in.readBoolean()) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                DataInputStream entityIn = new DataInputStream(new ByteArrayInputStream(bytes));
+                entities.add(LedgerSnapshotCodec.readEntity(entityIn, balanceRetention));
+                entityTokens.add(readToken(entityIn, serializer));
+            }
+            if (!resetStoredTokens(tokenStore, transactionManager, token)) {
+                log.warn("Replaying the event store instead of restoring projection snapshot {}", latest);
+                return;
+            }
+            for (int i = 0; i < entities.size(); i++) {
+                repository.restoreEntity(entities.get(i));
+                watermarks.restore(entities.get(i).getId(), entityTokens.get(i));
+            }
+            resumeToken = token;
+            lastSnapshotToken = token;
+            log.info("Restored {} entities from projection snapshot {}, resuming at {}", entities.size(), latest, token);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read projection snapshot " + latest, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot, unless not every segment of the processor is being processed here or nothing changed since
+     * the last one.
+     *
+     * @return whether a snapshot was written
+     */
+    public synchronized boolean snapshot() {
+        TrackingToken token = eventProcessing.eventProcessor(PROCESSING_GROUP, StreamingEventProcessor.class)
+                .map(processor -> lowerBound(processor.processingStatus()))
+                .orElse(null);
+        if (token == null || token.equals(lastSnapshotToken)) {
+            return false;
+        }
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, SNAPSHOT_PREFIX, ".tmp");
+            int entities = 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeToken(out, token, serializer);
+                Map<String, EncodedEntity> written = new HashMap<>();
+                for (String entityId : repository.entityIds(null)) {
+                    EncodedEntity entity = encoded.get(entityId);
+                    if (entity == null || entity.token() == null || !entity.token().equals(watermarks.token(entityId))) {
+                        entity = watermarks.withEntity(entityId, entityToken -> new EncodedEntity(entityToken, encode(entityId, entityToken)));
+                    }
+                    written.put(entityId, entity);
+                    out.writeBoolean(true);
+                    out.writeInt(entity.bytes().length);
+                    out.write(entity.bytes());
+                    entities++;
+                }
+                out.writeBoolean(false);
+                encoded.clear();
+                encoded.putAll(written);
+            }
+            Path snapshot = directory.resolve(SNAPSHOT_PREFIX + String.format("%020d", nextSequence()) + SNAPSHOT_SUFFIX);
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            lastSnapshotToken = token;
+            prune();
+            log.info("Wrote projection snapshot {} with {} entities at {}", snapshot, entities, token);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write projection snapshot to " + directory, e);
+        }
+    }
+
+    public synchronized void scheduleEvery(Duration interval) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Projection snapshots are already scheduled");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "projection-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (RuntimeException e) {
+                log.warn("Projection snapshot failed", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Lower bound of the tokens of all segments, {@code null} unless the given segments cover the whole event
+     * stream and all have a token.
+     */
+    static TrackingToken lowerBound(Map<Integer, EventTrackerStatus> status) {
+        int maxMask = status.values().stream().mapToInt(segmentStatus -> segmentStatus.getSegment().getMask()).max().orElse(-1);
+        long covered = 0;
+        TrackingToken lowerBound = null;
+        for (EventTrackerStatus segmentStatus : status.values()) {
+            TrackingToken token = segmentStatus.getTrackingToken();
+            if (token == null) {
+                return null;
+            }
+            covered += (maxMask + 1L) / (segmentStatus.getSegment().getMask() + 1L);
+            lowerBound = lowerBound == null ? token : lowerBound.lowerBound(token);
+        }
+        return covered == maxMask + 1L ? lowerBound : null;
+    }
+
+    /**
+     * Moves the stored tokens of every segment of the processor to the given token, so it resumes there.
+     *
+     * @return whether the tokens could be moved, or there were none yet
+     */
+    static boolean resetStoredTokens(TokenStore tokenStore, TransactionManager transactionManager, TrackingToken token) {
+        int[] segments = tokenStore.fetchSegments(PROCESSING_GROUP);
+        if (segments.length == 0) {
+            // The processor initialises its tokens from its initial token
+            return true;
+        }
+        try {
+            transactionManager.executeInTransaction(() -> {
+                for (int segment : segments) {
+                    tokenStore.storeToken(token, PROCESSING_GROUP, segment);
+                    tokenStore.releaseClaim(PROCESSING_GROUP, segment);
+                }
+            });
+            return true;
+        } catch (UnableToClaimTokenException e) {
+            log.warn("Could not move the tokens of {} back to {}", PROCESSING_GROUP, token, e);
+            return false;
+        }
+    }
+
+    private byte[] encode(String entityId, TrackingToken entityToken) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            LedgerSnapshotCodec.writeEntity(out, repository.findEntity(entityId));
+            writeToken(out, entityToken, serializer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * An entity as written to the snapshot, with the token of the last event applied to it.
+     */
+    private record EncodedEntity(TrackingToken token, byte[] bytes) {
+    }
+
+    static void writeToken(DataOutput out, TrackingToken token, Serializer serializer) throws IOException {
+        out.writeBoolean(token != null);
+        if (token == null) {
+            return;
+        }
+        SerializedObject<byte[]> serialized = serializer.serialize(token, byte[].class);
+        out.writeUTF(serialized.getType().getName());
+        out.writeBoolean(serialized.getType().getRevision() != null);
+        if (serialized.getType().getRevision() != null) {
+            out.writeUTF(serialized.getType().getRevision());
+        }
+        out.writeInt(serialized.getData().length);
+        out.write(serialized.getData());
+    }
+
+    static TrackingToken readToken(DataInput in, Serializer serializer) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        String type = in.readUTF();
+        String revision = in.readBoolean() ? in.readUTF() : null;
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return serializer.deserialize(new SimpleSerializedObject<>(data, byte[].class, type, revision));
+    }
+
+    private Stream<Path> snapshots() {
+        if (!Files.isDirectory(directory)) {
+            return Stream.empty();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+            }).sorted(Comparator.comparing(Path::getFileName)).toList().stream();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list projection snapshots in " + directory, e);
+        }
+    }
+
+    private long nextSequence() {
+        return snapshots().reduce((first, second) -> second)
+                .map(file -> file.getFileName().toString())
+                .map(name -> Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length())) + 1)
+                .orElse(0L);
+    }
+
+    private void prune() throws IOException {
+        List<Path> snapshots = snapshots().toList();
+        for (int i = 0; i < snapshots.size() - retained; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+}
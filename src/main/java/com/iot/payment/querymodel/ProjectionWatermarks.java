@@ -0,0 +1,106 @@
+package com.iot.payment.querymodel;
+
+import org.axonframework.config.ProcessingGroup;
+import org.axonframework.eventhandling.DomainEventMessage;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventhandling.ReplayToken;
+import org.axonframework.eventhandling.ResetHandler;
+import org.axonframework.eventhandling.TrackedEventMessage;
+import org.axonframework.eventhandling.TrackingToken;
+import org.axonframework.messaging.InterceptorChain;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Token of the last event applied to each entity by the "entities" projection. Handling an event and reading an
+ * entity for a snapshot exclude each other per entity, so a snapshot always pairs an entity's state with the token it
+ * reflects. Events a restored entity already reflects are skipped, which makes resuming from a snapshot's lower bound
+ * token, or redelivery of a failed batch, safe.
+ * <p>
+ * Also registered as a handler of the processor, so a reset forgets the tokens together with the projected entities.
+ */
+@ProcessingGroup(ProjectionSnapshotter.PROCESSING_GROUP)
+public class ProjectionWatermarks implements MessageHandlerInterceptor<EventMessage<?>> {
+    private static final int STRIPES = 256;
+    private final Map<String, TrackingToken> tokens = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public ProjectionWatermarks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public Object handle(UnitOfWork<? extends EventMessage<?>> unitOfWork, InterceptorChain interceptorChain) throws Exception {
+        EventMessage<?> message = unitOfWork.getMessage();
+        if (!(message instanceof TrackedEventMessage<?> tracked) || !(message instanceof DomainEventMessage<?> domainEvent)) {
+            return interceptorChain.proceed();
+        }
+        String entityId = domainEvent.getAggregateIdentifier();
+        ReentrantLock lock = lock(entityId);
+        lock.lock();
+        try {
+            TrackingToken token = position(tracked.trackingToken());
+            TrackingToken applied = tokens.get(entityId);
+            if (applied != null && token != null && applied.covers(token)) {
+                return null;
+            }
+            Object result = interceptorChain.proceed();
+            if (token != null) {
+                tokens.put(entityId, token);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the action with the entity's events held back, passing it the token of the last event applied to it.
+     */
+    public <T> T withEntity(String entityId, Function<TrackingToken, T> action) {
+        ReentrantLock lock = lock(entityId);
+        lock.lock();
+        try {
+            return action.apply(tokens.get(entityId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Token of the last event applied to the entity, without waiting for an event being applied to it.
+     */
+    public TrackingToken token(String entityId) {
+        return tokens.get(entityId);
+    }
+
+    public void restore(String entityId, TrackingToken token) {
+        if (token != null) {
+            tokens.put(entityId, token);
+        }
+    }
+
+    @ResetHandler
+    public void onReset() {
+        tokens.clear();
+    }
+
+    /**
+     * Position of the event in the stream, replayed events carry it inside their replay token.
+     */
+    private static TrackingToken position(TrackingToken token) {
+        return token instanceof ReplayToken replay ? replay.getCurrentToken() : token;
+    }
+
+    private ReentrantLock lock(String entityId) {
+        int hash = entityId.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+}
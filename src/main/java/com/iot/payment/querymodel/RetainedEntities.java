@@ -0,0 +1,10 @@
+package com.iot.payment.querymodel;
+
+import java.util.function.Predicate;
+
+/**
+ * Reset context of a replay that only rebuilds some entities: the projection keeps the entities matching
+ * {@code entityIds} as they are and forgets the others.
+ */
+public record RetainedEntities(Predicate<String> entityIds) {
+}
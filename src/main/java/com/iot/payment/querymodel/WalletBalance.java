@@ -0,0 +1,7 @@
+package com.iot.payment.querymodel;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public record WalletBalance(String entityId, String walletId, BigDecimal balance, LocalDateTime timestamp) {
+}
@@ -0,0 +1,67 @@
+package com.iot.payment.repository;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventhandling.GenericEventMessage;
+import org.axonframework.messaging.MetaData;
+import org.axonframework.serialization.SerializedMessage;
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.SimpleSerializedObject;
+
+import java.time.Instant;
+
+/**
+ * A derived event waiting in the outbox until it is appended to the event store.
+ */
+@Entity
+@Table(name = "derived_event_outbox")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class DerivedEventOutboxEntry {
+    @Id
+    @GeneratedValue
+    private Long id;
+    @Column(nullable = false)
+    private String eventIdentifier;
+    @Column(nullable = false)
+    private Instant timestamp;
+    @Column(nullable = false)
+    private String payloadType;
+    private String payloadRevision;
+    @Lob
+    @Column(nullable = false, length = 10000)
+    private byte[] payload;
+    @Lob
+    @Column(nullable = false, length = 10000)
+    private byte[] metaData;
+
+    public DerivedEventOutboxEntry(EventMessage<?> event, Serializer serializer) {
+        SerializedObject<byte[]> serializedPayload = serializer.serialize(event.getPayload(), byte[].class);
+        this.eventIdentifier = event.getIdentifier();
+        this.timestamp = event.getTimestamp();
+        this.payloadType = serializedPayload.getType().getName();
+        this.payloadRevision = serializedPayload.getType().getRevision();
+        this.payload = serializedPayload.getData();
+        this.metaData = serializer.serialize(event.getMetaData(), byte[].class).getData();
+    }
+
+    /**
+     * The event with its payload still serialized, so relaying it does not deserialize and serialize it again.
+     */
+    public EventMessage<?> toEventMessage(Serializer serializer) {
+        SerializedMessage<?> message = new SerializedMessage<>(eventIdentifier,
+                new SimpleSerializedObject<>(payload, byte[].class, payloadType, payloadRevision),
+                new SimpleSerializedObject<>(metaData, byte[].class, MetaData.class.getName(), null),
+                serializer);
+        return new GenericEventMessage<>(message, () -> timestamp);
+    }
+}
@@ -0,0 +1,92 @@
+package com.iot.payment.repository;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Posting;
+import com.iot.payment.commandmodel.Wallet;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Constant time lookups of the accounts, wallets and postings of a single {@link Entity}.
+ */
+public class EntityIndex {
+    @Getter
+    private final Entity entity;
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<String, Wallet> wallets = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Posting>> postings = new ConcurrentHashMap<>();
+
+    public EntityIndex(Entity entity) {
+        this.entity = entity;
+        for (Account account : entity.getAccounts()) {
+            if (account.getId() != null) {
+                accounts.put(account.getId(), account);
+            }
+            if (account.getWallets() == null) {
+                continue;
+            }
+            for (Wallet wallet : account.getWallets()) {
+                wallet.setAccount(account);
+                if (wallet.getId() == null) {
+                    continue;
+                }
+                wallets.putIfAbsent(wallet.getId(), wallet);
+                Map<String, Posting> walletPostings = postingsOf(wallet.getId());
+                for (Posting posting : wallet.getPostings()) {
+                    walletPostings.put(posting.getId(), posting);
+                }
+            }
+        }
+    }
+
+    public Account findAccount(String accountId) {
+        return accountId == null ? null : accounts.get(accountId);
+    }
+
+    public Wallet findWallet(String walletId) {
+        return walletId == null ? null : wallets.get(walletId);
+    }
+
+    public Wallet wallet(String walletId) {
+        Wallet wallet = walletId == null ? null : wallets.get(walletId);
+        if (wallet == null) {
+            throw new NoSuchElementException("Wallet not found");
+        }
+        return wallet;
+    }
+
+    public Posting findPosting(String walletId, String postingId) {
+        Map<String, Posting> walletPostings = walletId == null ? null : postings.get(walletId);
+        return walletPostings == null || postingId == null ? null : walletPostings.get(postingId);
+    }
+
+    public Posting posting(String walletId, String postingId) {
+        Posting posting = postingsOf(walletId).get(postingId);
+        if (posting == null) {
+            throw new NoSuchElementException("Posting not found");
+        }
+        return posting;
+    }
+
+    public void addPosting(Wallet wallet, Posting posting) {
+        wallet.getPostings().add(posting);
+        postingsOf(wallet.getId()).put(posting.getId(), posting);
+    }
+
+    public void truncatePostings(Wallet wallet, int size) {
+        List<Posting> walletPostings = wallet.getPostings();
+        Map<String, Posting> indexed = postingsOf(wallet.getId());
+        for (int i = walletPostings.size() - 1; i >= size; i--) {
+            indexed.remove(walletPostings.remove(i).getId());
+        }
+    }
+
+    private Map<String, Posting> postingsOf(String walletId) {
+        return postings.computeIfAbsent(walletId, id -> new ConcurrentHashMap<>());
+    }
+}
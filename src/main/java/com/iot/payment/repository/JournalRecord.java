@@ -0,0 +1,43 @@
+package com.iot.payment.repository;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.AssetType;
+import com.iot.payment.commandmodel.BalanceTimeline;
+import com.iot.payment.commandmodel.FixedPointMoney;
+import com.iot.payment.commandmodel.Posting;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.commandmodel.Wallet;
+
+import java.math.BigDecimal;
+
+/**
+ * One committed change of the in-memory ledger as written to a {@link LedgerJournal}. Fields a kind does not use
+ * are {@code null}.
+ */
+public record JournalRecord(Kind kind, String entityId, String accountId, String walletId, String postingId,
+                            BigDecimal amount, int minorUnitScale, AssetType assetType, AccountState accountState,
+                            PostingState postingState, long epochNanos) {
+
+    public enum Kind {
+        WALLET_OPENED, POSTING_ADDED, POSTING_UPDATED, ACCOUNT_STATE_CHANGED
+    }
+
+    public static JournalRecord walletOpened(String entityId, Account account, Wallet wallet) {
+        return new JournalRecord(Kind.WALLET_OPENED, entityId, account.getId(), wallet.getId(), null, wallet.getBalance(),
+                wallet.getMinorUnitScale(), wallet.getAssetType(), account.getState(), null, 0);
+    }
+
+    public static JournalRecord postingAdded(String entityId, String walletId, Posting posting) {
+        return new JournalRecord(Kind.POSTING_ADDED, entityId, null, walletId, posting.getId(), posting.getAmount(),
+                FixedPointMoney.DECIMAL, null, null, posting.getState(), BalanceTimeline.toEpochNanos(posting.getDateTime()));
+    }
+
+    public static JournalRecord postingUpdated(String entityId, String walletId, String postingId, BigDecimal amount, PostingState state, long epochNanos) {
+        return new JournalRecord(Kind.POSTING_UPDATED, entityId, null, walletId, postingId, amount, FixedPointMoney.DECIMAL, null, null, state, epochNanos);
+    }
+
+    public static JournalRecord accountStateChanged(String entityId, String accountId, AccountState state) {
+        return new JournalRecord(Kind.ACCOUNT_STATE_CHANGED, entityId, accountId, null, null, null, FixedPointMoney.DECIMAL, null, state, null, 0);
+    }
+}
@@ -0,0 +1,117 @@
+package com.iot.payment.repository;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.BalanceRetentionPolicy;
+import com.iot.payment.commandmodel.BalanceTimeline;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Posting;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.commandmodel.Wallet;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+/**
+ * Applies journaled records to a repository the way the ledger service applied them when they were committed.
+ * A batch of transfers is replayed posting by posting; the intermediate balances share the batch's timestamp, so
+ * historical balances come out the same. Wallets and postings that were already applied are skipped, so a journal
+ * holding the same change twice rebuilds the same ledger.
+ */
+final class JournalReplay {
+    private final LedgerInMemoryRepository repository;
+    private final BalanceRetentionPolicy balanceRetention;
+    private long records;
+
+    JournalReplay(LedgerInMemoryRepository repository, BalanceRetentionPolicy balanceRetention) {
+        this.repository = repository;
+        this.balanceRetention = balanceRetention;
+    }
+
+    void apply(JournalRecord record) {
+        switch (record.kind()) {
+            case WALLET_OPENED -> openWallet(record);
+            case POSTING_ADDED -> addPosting(record);
+            case POSTING_UPDATED -> updatePosting(record);
+            case ACCOUNT_STATE_CHANGED -> changeAccountState(record);
+        }
+        records++;
+    }
+
+    /**
+     * Compacts the rebuilt balance histories and returns the number of records applied.
+     */
+    long finish() {
+        for (Entity entity : repository.getEntities().values()) {
+            for (Account account : entity.getAccounts()) {
+                account.getWallets().forEach(Wallet::compactBalanceHistoryIfDue);
+            }
+        }
+        return records;
+    }
+
+    private void openWallet(JournalRecord record) {
+        Entity entity = repository.findEntity(record.entityId());
+        if (entity == null) {
+            entity = Entity.builder().id(record.entityId()).accounts(new ArrayList<>()).build();
+        }
+        Account account = entity.getAccounts().stream().filter(candidate -> record.accountId() != null && record.accountId().equals(candidate.getId())).findFirst().orElse(null);
+        if (account == null) {
+            account = Account.builder().id(record.accountId()).wallets(new ArrayList<>()).state(record.accountState()).build();
+            entity.getAccounts().add(account);
+        }
+        if (account.getWallets().stream().anyMatch(wallet -> record.walletId() != null && record.walletId().equals(wallet.getId()))) {
+            return;
+        }
+        account.getWallets().add(Wallet.builder().id(record.walletId()).assetType(record.assetType()).minorUnitScale(record.minorUnitScale())
+                .balanceRetention(balanceRetention).balance(record.amount()).build());
+        repository.index(entity);
+    }
+
+    private void addPosting(JournalRecord record) {
+        EntityIndex index = index(record);
+        Wallet wallet = index.wallet(record.walletId());
+        if (index.findPosting(record.walletId(), record.postingId()) != null) {
+            return;
+        }
+        index.addPosting(wallet, Posting.builder().id(record.postingId()).amount(record.amount()).state(record.postingState())
+                .dateTime(BalanceTimeline.fromEpochNanos(record.epochNanos())).build());
+        if (record.postingState() == PostingState.CLEARED) {
+            adjustBalance(wallet, record.amount(), record.epochNanos());
+        }
+    }
+
+    private void updatePosting(JournalRecord record) {
+        EntityIndex index = index(record);
+        Wallet wallet = index.wallet(record.walletId());
+        Posting posting = index.posting(record.walletId(), record.postingId());
+        BigDecimal oldAmount = posting.getAmount();
+        posting.setAmount(record.amount());
+        posting.setState(record.postingState());
+        if (record.postingState() == PostingState.CLEARED) {
+            adjustBalance(wallet, record.amount().subtract(oldAmount), record.epochNanos());
+        }
+    }
+
+    private void changeAccountState(JournalRecord record) {
+        Account account = index(record).findAccount(record.accountId());
+        if (account == null) {
+            throw new NoSuchElementException("Account not found");
+        }
+        account.setState(record.accountState());
+    }
+
+    private EntityIndex index(JournalRecord record) {
+        Entity entity = repository.findEntity(record.entityId());
+        if (entity == null) {
+            throw new NoSuchElementException("Entity not found");
+        }
+        return repository.indexOf(record.entityId(), entity);
+    }
+
+    private static void adjustBalance(Wallet wallet, BigDecimal delta, long epochNanos) {
+        BigDecimal balance = wallet.getBalance().add(delta);
+        wallet.setBalance(balance);
+        wallet.addBalanceHistory(balance, epochNanos);
+    }
+}
@@ -1,16 +1,142 @@
 package com.iot.payment.repository;
 
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.BalanceRetentionPolicy;
 import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Wallet;
+import jakarta.annotation.PostConstruct;
 import lombok.Getter;
-import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
 
-@Getter
-@Setter
+/**
+ * Single owner of the query side entities. Writers register entities one at a time, readers go straight to the
+ * concurrent map without locking. Entity ids are also kept sorted so entities can be walked in a stable order.
+ * With a {@link LedgerJournal} every change is journaled as it is committed, and the repository is rebuilt from the
+ * journal when it is created.
+ */
+@Slf4j
 @Repository
 public class LedgerInMemoryRepository {
-    private Map<String, Entity> entities = new ConcurrentHashMap<>();
-}
\ No newline at end of file
+    private final Map<String, Entity> entities = new ConcurrentHashMap<>();
+    private final NavigableSet<String> entityIds = new ConcurrentSkipListSet<>();
+    private final Map<String, EntityIndex> indexes = new ConcurrentHashMap<>();
+    @Getter
+    private final WalletLocks walletLocks = new WalletLocks();
+    @Getter
+    private final LedgerJournal journal;
+    private final BalanceRetentionPolicy balanceRetention;
+
+    public LedgerInMemoryRepository() {
+        this(LedgerJournal.NONE, BalanceRetentionPolicy.UNBOUNDED);
+    }
+
+    @Autowired
+    public LedgerInMemoryRepository(LedgerJournal journal, BalanceRetentionPolicy balanceRetention) {
+        this.journal = journal;
+        this.balanceRetention = balanceRetention;
+    }
+
+    /**
+     * Rebuilds the entities recorded in the journal. Runs before the event processors start; the projection resumes
+     * at the journal's checkpoint, and the events after it that were already journaled change nothing when they are
+     * handled again.
+     */
+    @PostConstruct
+    public void restore() {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        JournalReplay replay = new JournalReplay(this, balanceRetention);
+        journal.replay(replay::apply);
+        log.info("Restored {} entities from {} ledger journal records", entities.size(), replay.finish());
+    }
+
+    /**
+     * Read only view of the registered entities.
+     */
+    public Map<String, Entity> getEntities() {
+        return Collections.unmodifiableMap(entities);
+    }
+
+    /**
+     * Registered entity ids in ascending order, starting at {@code fromEntityId} (inclusive) when it is not null.
+     * The view is weakly consistent: it reflects registrations made while it is being iterated or not, but never fails.
+     */
+    public NavigableSet<String> entityIds(String fromEntityId) {
+        return fromEntityId == null ? Collections.unmodifiableNavigableSet(entityIds) : Collections.unmodifiableNavigableSet(entityIds.tailSet(fromEntityId, true));
+    }
+
+    public Entity findEntity(String entityId) {
+        return entityId == null ? null : entities.get(entityId);
+    }
+
+    public void register(Entity entity) {
+        if (entity.getId() == null) {
+            throw new IllegalArgumentException("Entity id must not be null");
+        }
+        if (journal.isEnabled()) {
+            List<JournalRecord> records = new ArrayList<>();
+            for (Account account : entity.getAccounts()) {
+                for (Wallet wallet : account.getWallets()) {
+                    records.add(JournalRecord.walletOpened(entity.getId(), account, wallet));
+                }
+            }
+            journal.append(records);
+        }
+        index(entity);
+    }
+
+    /**
+     * Registers an entity rebuilt from a snapshot of the repository, without journaling it again.
+     */
+    public void restoreEntity(Entity entity) {
+        if (entity.getId() == null) {
+            throw new IllegalArgumentException("Entity id must not be null");
+        }
+        index(entity);
+    }
+
+    /**
+     * Forgets every entity, e.g. before the projection is replayed. The journal is left as it is.
+     */
+    public void clear() {
+        entityIds.clear();
+        entities.clear();
+        indexes.clear();
+    }
+
+    /**
+     * Forgets the entities not matching the given ids, e.g. before the projection replays the events of others.
+     */
+    public void retain(Predicate<String> entityIds) {
+        this.entityIds.removeIf(entityIds.negate());
+        entities.keySet().removeIf(entityIds.negate());
+        indexes.keySet().removeIf(entityIds.negate());
+    }
+
+    void index(Entity entity) {
+        // Index first, so a reader that sees the entity also finds its index
+        indexes.put(entity.getId(), new EntityIndex(entity));
+        entities.put(entity.getId(), entity);
+        entityIds.add(entity.getId());
+    }
+
+    public EntityIndex indexOf(String entityId, Entity entity) {
+        EntityIndex index = indexes.get(entityId);
+        if (index != null && index.getEntity() == entity) {
+            return index;
+        }
+        return indexes.compute(entityId, (id, existing) -> existing != null && existing.getEntity() == entity ? existing : new EntityIndex(entity));
+    }
+}
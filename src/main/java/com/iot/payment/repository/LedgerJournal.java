@@ -0,0 +1,66 @@
+package com.iot.payment.repository;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Append only log of the committed changes of the in-memory ledger, replayed on start up to rebuild the
+ * {@link LedgerInMemoryRepository} without replaying the event store. Next to the records the journal keeps a
+ * checkpoint: the position of the event processor up to which every change has been journaled, so the processor
+ * resumes there instead of at the start of the event stream.
+ */
+public interface LedgerJournal extends Closeable {
+
+    /**
+     * Journal that records nothing, used when journaling is disabled.
+     */
+    LedgerJournal NONE = new LedgerJournal() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void append(List<JournalRecord> records) {
+        }
+
+        @Override
+        public void replay(Consumer<JournalRecord> consumer) {
+        }
+    };
+
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Appends the records as one unit: if any of them cannot be journaled, none is, and after a crash either all of
+     * them are replayed or none.
+     */
+    void append(List<JournalRecord> records);
+
+    /**
+     * Feeds every journaled record to the consumer, in append order.
+     */
+    void replay(Consumer<JournalRecord> consumer);
+
+    /**
+     * Replaces the checkpoint with the given serialized position. Only changes journaled before the call may be
+     * covered by it.
+     */
+    default void checkpoint(byte[] position) {
+    }
+
+    /**
+     * The position of the last {@link #checkpoint}, empty if there was none.
+     */
+    default Optional<byte[]> lastCheckpoint() {
+        return Optional.empty();
+    }
+
+    @Override
+    default void close() {
+    }
+}
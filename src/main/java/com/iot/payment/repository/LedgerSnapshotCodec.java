@@ -0,0 +1,159 @@
+package com.iot.payment.repository;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.AssetType;
+import com.iot.payment.commandmodel.BalanceRetentionPolicy;
+import com.iot.payment.commandmodel.BalanceTimeline;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Posting;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.commandmodel.Wallet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary form of one {@link Entity} of the in-memory ledger, with its accounts, wallets, postings and full balance
+ * history, as stored in projection snapshots.
+ */
+public final class LedgerSnapshotCodec {
+
+    private LedgerSnapshotCodec() {
+    }
+
+    public static void writeEntity(DataOutput out, Entity entity) throws IOException {
+        writeString(out, entity.getId());
+        List<Account> accounts = entity.getAccounts();
+        out.writeInt(accounts.size());
+        for (Account account : accounts) {
+            writeString(out, account.getId());
+            writeEnum(out, account.getState());
+            List<Wallet> wallets = account.getWallets() == null ? List.of() : account.getWallets();
+            out.writeInt(wallets.size());
+            for (Wallet wallet : wallets) {
+                writeWallet(out, wallet);
+            }
+        }
+    }
+
+    public static Entity readEntity(DataInput in, BalanceRetentionPolicy balanceRetention) throws IOException {
+        String id = readString(in);
+        int accountCount = in.readInt();
+        List<Account> accounts = new ArrayList<>(accountCount);
+        for (int i = 0; i < accountCount; i++) {
+            String accountId = readString(in);
+            AccountState state = readEnum(in, AccountState.values());
+            int walletCount = in.readInt();
+            List<Wallet> wallets = new ArrayList<>(walletCount);
+            for (int j = 0; j < walletCount; j++) {
+                wallets.add(readWallet(in, balanceRetention));
+            }
+            accounts.add(Account.builder().id(accountId).state(state).wallets(wallets).build());
+        }
+        return Entity.builder().id(id).accounts(accounts).build();
+    }
+
+    private static void writeWallet(DataOutput out, Wallet wallet) throws IOException {
+        writeString(out, wallet.getId());
+        writeEnum(out, wallet.getAssetType());
+        out.writeInt(wallet.getMinorUnitScale());
+        writeDecimal(out, wallet.getBalance());
+        List<Posting> postings = wallet.getPostings();
+        out.writeInt(postings.size());
+        for (Posting posting : postings) {
+            writeString(out, posting.getId());
+            writeDecimal(out, posting.getAmount());
+            writeEnum(out, posting.getState());
+            out.writeBoolean(posting.getDateTime() != null);
+            if (posting.getDateTime() != null) {
+                out.writeLong(BalanceTimeline.toEpochNanos(posting.getDateTime()));
+            }
+        }
+        try {
+            wallet.forEachBalanceHistoryEntry((epochNanos, balance) -> {
+                try {
+                    out.writeBoolean(true);
+                    out.writeLong(epochNanos);
+                    writeDecimal(out, balance);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.writeBoolean(false);
+    }
+
+    private static Wallet readWallet(DataInput in, BalanceRetentionPolicy balanceRetention) throws IOException {
+        String id = readString(in);
+        AssetType assetType = readEnum(in, AssetType.values());
+        int minorUnitScale = in.readInt();
+        BigDecimal balance = readDecimal(in);
+        int postingCount = in.readInt();
+        List<Posting> postings = new ArrayList<>(postingCount);
+        for (int i = 0; i < postingCount; i++) {
+            Posting.PostingBuilder posting = Posting.builder().id(readString(in)).amount(readDecimal(in)).state(readEnum(in, PostingState.values()));
+            if (in.readBoolean()) {
+                posting.dateTime(BalanceTimeline.fromEpochNanos(in.readLong()));
+            }
+            postings.add(posting.build());
+        }
+        Wallet wallet = Wallet.builder().id(id).assetType(assetType).minorUnitScale(minorUnitScale).balance(balance)
+                .postings(postings).balanceRetention(balanceRetention).build();
+        while (in.readBoolean()) {
+            long epochNanos = in.readLong();
+            wallet.addBalanceHistory(readDecimal(in), epochNanos);
+        }
+        wallet.compactBalanceHistoryIfDue();
+        return wallet;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+        out.writeByte(value == null ? -1 : value.ordinal());
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInput in, E[] values) throws IOException {
+        byte ordinal = in.readByte();
+        return ordinal < 0 ? null : values[ordinal];
+    }
+
+    private static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeInt(unscaled.length);
+        out.write(unscaled);
+        out.writeInt(value.scale());
+    }
+
+    private static BigDecimal readDecimal(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] unscaled = new byte[length];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), in.readInt());
+    }
+}
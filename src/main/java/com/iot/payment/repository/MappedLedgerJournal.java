@@ -0,0 +1,349 @@
+package com.iot.payment.repository;
+
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.AssetType;
+import com.iot.payment.commandmodel.PostingState;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * {@link LedgerJournal} kept in memory mapped segment files of fixed size records, so journaled postings live in
+ * the page cache rather than on the heap and survive a restart of the process.
+ * <p>
+ * Every record is {@value #RECORD_SIZE} bytes: a kind, the enum and numeric fields, a CRC32C checksum and four length
+ * prefixed UTF-8 id slots. A segment is full before the next one is started, so replay reads the segments
+ * sequentially straight from the mapping and stops at the first empty record of the last one.
+ * <p>
+ * Every record of an append but the last is flagged as continued, so a batch is replayed either whole or not at all:
+ * on open the journal is cut after the last record that ends a batch. That drops a torn record and every record of
+ * the batch it belongs to, left behind by a crash half way through an append, as well as the records of a batch of
+ * which only some pages reached the disk, even if the batch spans segments. Only
+ * {@link MappedByteBuffer#force() forced} records survive a crash of the machine; set {@code forceOnWrite} to force
+ * after every append.
+ * <p>
+ * The checkpoint is a separate file next to the segments, replaced atomically, and with {@code forceOnWrite} only
+ * after the records it covers were forced.
+ */
+public class MappedLedgerJournal implements LedgerJournal {
+    static final int RECORD_SIZE = 256;
+
+    private static final int KIND = 0;
+    private static final int POSTING_STATE = 1;
+    private static final int ACCOUNT_STATE = 2;
+    private static final int ASSET_TYPE = 3;
+    private static final int AMOUNT_SCALE = 4;
+    private static final int AMOUNT = 8;
+    private static final int TIMESTAMP = 16;
+    private static final int MINOR_UNIT_SCALE = 24;
+    private static final int CHECKSUM = 28;
+    private static final int ENTITY_ID = 32;
+    private static final int ACCOUNT_ID = 96;
+    private static final int WALLET_ID = 128;
+    private static final int POSTING_ID = 192;
+    private static final int ID_SLOT = 64;
+    private static final int ACCOUNT_ID_SLOT = 32;
+
+    private static final byte CONTINUED = 0x40;
+    private static final int NO_AMOUNT = Integer.MIN_VALUE;
+    private static final int NO_ID = 0xFF;
+    private static final String SEGMENT_FORMAT = "ledger-journal-%010d.seg";
+    private static final String CHECKPOINT = "ledger-journal.checkpoint";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final boolean forceOnWrite;
+    private int segmentCount;
+    private MappedByteBuffer current;
+    private int position;
+
+    private MappedLedgerJournal(Path directory, int segmentRecords, boolean forceOnWrite) {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.forceOnWrite = forceOnWrite;
+    }
+
+    /**
+     * Opens the journal in the given directory, creating it if needed, and positions it after the last complete
+     * record. {@code segmentRecords} must not change between runs.
+     */
+    public static MappedLedgerJournal open(Path directory, int segmentRecords, boolean forceOnWrite) {
+        if (segmentRecords <= 0 || (long) segmentRecords * RECORD_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment records must be between 1 and " + Integer.MAX_VALUE / RECORD_SIZE);
+        }
+        MappedLedgerJournal journal = new MappedLedgerJournal(directory, segmentRecords, forceOnWrite);
+        try {
+            Files.createDirectories(directory);
+            journal.openTail();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open ledger journal in " + directory, e);
+        }
+        return journal;
+    }
+
+    @Override
+    public void append(List<JournalRecord> records) {
+        // Encode everything first, a record that does not fit must not leave half a batch behind
+        byte[] encoded = new byte[records.size() * RECORD_SIZE];
+        for (int i = 0; i < records.size(); i++) {
+            encode(records.get(i), i < records.size() - 1, ByteBuffer.wrap(encoded, i * RECORD_SIZE, RECORD_SIZE).slice());
+        }
+        synchronized (this) {
+            requireOpen();
+            for (int i = 0; i < records.size(); i++) {
+                if (position == segmentRecords) {
+                    roll();
+                }
+                current.put(position * RECORD_SIZE, encoded, i * RECORD_SIZE, RECORD_SIZE);
+                position++;
+            }
+            if (forceOnWrite) {
+                current.force();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void replay(Consumer<JournalRecord> consumer) {
+        requireOpen();
+        for (int segment = 0; segment < segmentCount; segment++) {
+            boolean last = segment == segmentCount - 1;
+            ByteBuffer buffer = last ? current : map(segment, FileChannel.MapMode.READ_ONLY);
+            int records = last ? position : segmentRecords;
+            for (int record = 0; record < records; record++) {
+                if (!isValid(buffer, record)) {
+                    throw new IllegalStateException("Corrupt ledger journal record " + record + " in " + segmentPath(segment));
+                }
+                consumer.accept(decode(buffer, record * RECORD_SIZE));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void checkpoint(byte[] position) {
+        requireOpen();
+        if (forceOnWrite) {
+            current.force();
+        }
+        try {
+            Path temporary = Files.createTempFile(directory, CHECKPOINT, ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(position));
+                if (forceOnWrite) {
+                    channel.force(true);
+                }
+            }
+            Files.move(temporary, directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write ledger journal checkpoint in " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized Optional<byte[]> lastCheckpoint() {
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (!Files.exists(checkpoint)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Files.readAllBytes(checkpoint));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read ledger journal checkpoint " + checkpoint, e);
+        }
+    }
+
+    /**
+     * Number of records in the journal.
+     */
+    public synchronized long size() {
+        return (long) (segmentCount - 1) * segmentRecords + position;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (current != null) {
+            current.force();
+            current = null;
+        }
+    }
+
+    private void openTail() throws IOException {
+        while (Files.exists(segmentPath(segmentCount))) {
+            long size = Files.size(segmentPath(segmentCount));
+            if (size != (long) segmentRecords * RECORD_SIZE) {
+                throw new IllegalStateException(segmentPath(segmentCount) + " has " + size + " bytes, expected " + (long) segmentRecords * RECORD_SIZE
+                        + "; the journal was written with a different segment size");
+            }
+            segmentCount++;
+        }
+        if (segmentCount == 0) {
+            segmentCount = 1;
+        }
+        current = map(segmentCount - 1, FileChannel.MapMode.READ_WRITE);
+        int valid = 0;
+        while (valid < segmentRecords && isValid(current, valid)) {
+            valid++;
+        }
+        // Cut after the last record ending a batch, which may lie in an earlier, full segment
+        int end = lastBatchEnd(current, valid);
+        while (end < 0 && segmentCount > 1) {
+            MappedByteBuffer previous = map(segmentCount - 2, FileChannel.MapMode.READ_WRITE);
+            end = lastBatchEnd(previous, segmentRecords);
+            if (end < 0 && segmentCount == 2) {
+                end = 0;
+            }
+            Files.delete(segmentPath(segmentCount - 1));
+            segmentCount--;
+            current = previous;
+        }
+        position = Math.max(end, 0);
+        // Clear the incomplete batch and anything a crash may have left behind it, so it cannot reappear after new appends
+        byte[] empty = new byte[RECORD_SIZE];
+        for (int record = position; record < segmentRecords; record++) {
+            if (current.get(record * RECORD_SIZE + KIND) != 0) {
+                current.put(record * RECORD_SIZE, empty);
+            }
+        }
+        current.force();
+    }
+
+    /**
+     * Number of records up to and including the last of the first {@code records} that ends a batch, -1 if none does.
+     */
+    private static int lastBatchEnd(ByteBuffer buffer, int records) {
+        for (int record = records - 1; record >= 0; record--) {
+            if ((buffer.get(record * RECORD_SIZE + KIND) & CONTINUED) == 0) {
+                return record + 1;
+            }
+        }
+        return -1;
+    }
+
+    private void roll() {
+        if (forceOnWrite) {
+            current.force();
+        }
+        current = map(segmentCount, FileChannel.MapMode.READ_WRITE);
+        segmentCount++;
+        position = 0;
+    }
+
+    private MappedByteBuffer map(int segment, FileChannel.MapMode mode) {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), options)) {
+            return channel.map(mode, 0, (long) segmentRecords * RECORD_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map ledger journal segment " + segmentPath(segment), e);
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format(SEGMENT_FORMAT, segment));
+    }
+
+    private void requireOpen() {
+        if (current == null) {
+            throw new IllegalStateException("Ledger journal is closed");
+        }
+    }
+
+    private static boolean isValid(ByteBuffer buffer, int record) {
+        int offset = record * RECORD_SIZE;
+        return buffer.get(offset + KIND) != 0 && buffer.getInt(offset + CHECKSUM) == checksum(buffer, offset);
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, CHECKSUM));
+        crc.update(buffer.slice(offset + CHECKSUM + Integer.BYTES, RECORD_SIZE - CHECKSUM - Integer.BYTES));
+        return (int) crc.getValue();
+    }
+
+    private static void encode(JournalRecord record, boolean continued, ByteBuffer buffer) {
+        buffer.put(KIND, (byte) ((record.kind().ordinal() + 1) | (continued ? CONTINUED : 0)));
+        buffer.put(POSTING_STATE, ordinal(record.postingState()));
+        buffer.put(ACCOUNT_STATE, ordinal(record.accountState()));
+        buffer.put(ASSET_TYPE, ordinal(record.assetType()));
+        BigDecimal amount = record.amount();
+        if (amount == null) {
+            buffer.putInt(AMOUNT_SCALE, NO_AMOUNT);
+        } else {
+            BigInteger unscaled = amount.unscaledValue();
+            if (unscaled.bitLength() >= Long.SIZE) {
+                throw new IllegalArgumentException("Amount " + amount + " does not fit a ledger journal record");
+            }
+            buffer.putInt(AMOUNT_SCALE, amount.scale());
+            buffer.putLong(AMOUNT, unscaled.longValue());
+        }
+        buffer.putLong(TIMESTAMP, record.epochNanos());
+        buffer.putInt(MINOR_UNIT_SCALE, record.minorUnitScale());
+        putId(buffer, ENTITY_ID, ID_SLOT, record.entityId());
+        putId(buffer, ACCOUNT_ID, ACCOUNT_ID_SLOT, record.accountId());
+        putId(buffer, WALLET_ID, ID_SLOT, record.walletId());
+        putId(buffer, POSTING_ID, ID_SLOT, record.postingId());
+        buffer.putInt(CHECKSUM, checksum(buffer, 0));
+    }
+
+    private static JournalRecord decode(ByteBuffer buffer, int offset) {
+        int amountScale = buffer.getInt(offset + AMOUNT_SCALE);
+        return new JournalRecord(
+                JournalRecord.Kind.values()[(buffer.get(offset + KIND) & ~CONTINUED) - 1],
+                getId(buffer, offset + ENTITY_ID),
+                getId(buffer, offset + ACCOUNT_ID),
+                getId(buffer, offset + WALLET_ID),
+                getId(buffer, offset + POSTING_ID),
+                amountScale == NO_AMOUNT ? null : BigDecimal.valueOf(buffer.getLong(offset + AMOUNT), amountScale),
+                buffer.getInt(offset + MINOR_UNIT_SCALE),
+                constant(AssetType.values(), buffer.get(offset + ASSET_TYPE)),
+                constant(AccountState.values(), buffer.get(offset + ACCOUNT_STATE)),
+                constant(PostingState.values(), buffer.get(offset + POSTING_STATE)),
+                buffer.getLong(offset + TIMESTAMP));
+    }
+
+    private static void putId(ByteBuffer buffer, int offset, int slot, String id) {
+        if (id == null) {
+            buffer.put(offset, (byte) NO_ID);
+            return;
+        }
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > slot - 1) {
+            throw new IllegalArgumentException("Id " + id + " is longer than the " + (slot - 1) + " bytes a ledger journal record holds");
+        }
+        buffer.put(offset, (byte) bytes.length);
+        buffer.put(offset + 1, bytes);
+    }
+
+    private static String getId(ByteBuffer buffer, int offset) {
+        int length = Byte.toUnsignedInt(buffer.get(offset));
+        if (length == NO_ID) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte ordinal(Enum<?> constant) {
+        return constant == null ? 0 : (byte) (constant.ordinal() + 1);
+    }
+
+    private static <E extends Enum<E>> E constant(E[] constants, byte ordinal) {
+        return ordinal == 0 ? null : constants[ordinal - 1];
+    }
+}
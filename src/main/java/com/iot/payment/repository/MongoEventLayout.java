@@ -0,0 +1,48 @@
+package com.iot.payment.repository;
+
+import org.axonframework.extensions.mongo.eventsourcing.eventstore.StorageStrategy;
+import org.axonframework.extensions.mongo.eventsourcing.eventstore.documentpercommit.CommitEntryConfiguration;
+import org.axonframework.extensions.mongo.eventsourcing.eventstore.documentpercommit.DocumentPerCommitStorageStrategy;
+import org.axonframework.extensions.mongo.eventsourcing.eventstore.documentperevent.DocumentPerEventStorageStrategy;
+import org.axonframework.extensions.mongo.eventsourcing.eventstore.documentperevent.EventEntryConfiguration;
+
+import java.time.Duration;
+
+/**
+ * Document layouts of the Mongo event store. The compact layout stores the events of one unit of work in a single
+ * commit document, written with one insert, and uses short field names: the names are repeated in every event of
+ * every document, so they make up a good part of small ledger events.
+ */
+public final class MongoEventLayout {
+    private static final EventEntryConfiguration COMPACT_EVENT_ENTRY = EventEntryConfiguration.builder()
+            .timestampProperty("ts")
+            .eventIdentifierProperty("eid")
+            .aggregateIdentifierProperty("aid")
+            .sequenceNumberProperty("seq")
+            .typeProperty("t")
+            .payloadTypeProperty("pt")
+            .payloadRevisionProperty("pr")
+            .payloadProperty("p")
+            .metaDataProperty("md")
+            .build();
+
+    private MongoEventLayout() {
+    }
+
+    /**
+     * One commit document per unit of work with short field names.
+     *
+     * @param lookBackTime how far a tracking token looks back for events committed out of order, the longer the more
+     *                     documents every fetch of a processor reads again
+     */
+    public static StorageStrategy compact(Duration lookBackTime) {
+        return new DocumentPerCommitStorageStrategy(COMPACT_EVENT_ENTRY, CommitEntryConfiguration.getDefault(), lookBackTime);
+    }
+
+    /**
+     * Axon's default layout, one document per event with descriptive field names.
+     */
+    public static StorageStrategy documentPerEvent() {
+        return new DocumentPerEventStorageStrategy();
+    }
+}
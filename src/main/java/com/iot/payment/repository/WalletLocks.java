@@ -0,0 +1,81 @@
+package com.iot.payment.repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped wallet locks. Stripes are always taken in ascending index order, so two callers locking overlapping
+ * wallet sets can never deadlock, while transfers between disjoint wallets rarely share a stripe.
+ */
+public class WalletLocks {
+    public static final int DEFAULT_STRIPES = 1024;
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public WalletLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public WalletLocks(int stripes) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Number of stripes must be a positive power of two");
+        }
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = stripes - 1;
+    }
+
+    public Held lock(String entityId, Collection<String> walletIds) {
+        int[] indexes = new int[walletIds.size()];
+        int count = 0;
+        for (String walletId : walletIds) {
+            indexes[count++] = stripe(entityId, walletId);
+        }
+        Arrays.sort(indexes);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        int locked = 0;
+        try {
+            for (; locked < distinct; locked++) {
+                stripes[indexes[locked]].lock();
+            }
+        } catch (RuntimeException | Error e) {
+            unlock(indexes, locked);
+            throw e;
+        }
+        return new Held(indexes, distinct);
+    }
+
+    private int stripe(String entityId, String walletId) {
+        int hash = 31 * entityId.hashCode() + walletId.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void unlock(int[] indexes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            stripes[indexes[i]].unlock();
+        }
+    }
+
+    public final class Held implements AutoCloseable {
+        private final int[] indexes;
+        private final int count;
+
+        private Held(int[] indexes, int count) {
+            this.indexes = indexes;
+            this.count = count;
+        }
+
+        @Override
+        public void close() {
+            unlock(indexes, count);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.iot.payment.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.iot.payment.coreapi.commands.BatchTransferCommand;
+import com.iot.payment.coreapi.events.Movement;
+import com.iot.payment.coreapi.queries.SubscribeTransferBatch;
+import com.iot.payment.exception.ApiError;
+import com.iot.payment.service.TransferOutcome;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.queryhandling.QueryGateway;
+import org.axonframework.queryhandling.SubscriptionQueryResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Bulk transfers for devices settling many micro-payments at once. The request body is a JSON array or NDJSON stream
+ * of transfers which is read incrementally and dispatched in bounded batches. Once the projection applied a batch,
+ * one NDJSON line per transfer is streamed back in request order: the posting id of a transfer that was made, or the
+ * reason a transfer was rejected, e.g. for lack of balance. A rejected transfer does not stop the others.
+ */
+@Slf4j
+@RestController
+public class BulkTransferEndpoint {
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String TRANSFERS_PATH = "/entity/{entity-id}/transfers";
+    private final CommandGateway commandGateway;
+    private final QueryGateway queryGateway;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final Duration outcomeTimeout;
+
+    public BulkTransferEndpoint(CommandGateway commandGateway, QueryGateway queryGateway, ObjectMapper objectMapper,
+                                @Value("${ledger.transfer.bulk.batch-size:500}") int batchSize,
+                                @Value("${ledger.transfer.bulk.outcome-timeout:10s}") Duration outcomeTimeout) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Bulk transfer batch size must be positive");
+        }
+        this.commandGateway = commandGateway;
+        this.queryGateway = queryGateway;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.outcomeTimeout = outcomeTimeout;
+    }
+
+    @PostMapping(value = TRANSFERS_PATH, consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE}, produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> transfers(@PathVariable("entity-id") String entityId, InputStream body) {
+        StreamingResponseBody responseBody = output -> streamTransfers(entityId, body, output);
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(responseBody);
+    }
+
+    void streamTransfers(String entityId, InputStream body, OutputStream output) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(BulkTransferItem.class);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output);
+             MappingIterator<BulkTransferItem> items = reader.readValues(body)) {
+            generator.setRootValueSeparator(null);
+            List<Movement> batch = new ArrayList<>(batchSize);
+            try {
+                while (items.hasNextValue()) {
+                    batch.add(toMovement(items.nextValue()));
+                    if (batch.size() == batchSize) {
+                        dispatch(entityId, batch, generator);
+                    }
+                }
+                dispatch(entityId, batch, generator);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Bulk transfer for entity {} stopped: {}", entityId, e.getMessage());
+                writeLine(generator, new ApiError(HttpStatus.BAD_REQUEST, rootCause(e).getMessage(), "Bulk transfer stopped"));
+            }
+        }
+    }
+
+    private Movement toMovement(BulkTransferItem item) {
+        if (item.amount() == null || item.amount().signum() <= 0) {
+            throw new IllegalArgumentException("Transfer amount must be positive");
+        }
+        return new Movement(item.sourceWalletId(), item.destinationWalletId(), item.amount(), UUID.randomUUID().toString());
+    }
+
+    private void dispatch(String entityId, List<Movement> batch, JsonGenerator generator) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // Subscribed before dispatching, so the outcome cannot be pushed before anyone listens
+        SubscriptionQueryResult<TransferOutcome, TransferOutcome> outcomes = queryGateway.subscriptionQuery(
+                new SubscribeTransferBatch(entityId, batch.get(0).getPostingId()), TransferOutcome.class, TransferOutcome.class);
+        try {
+            // One command per batch: the aggregate is loaded once and a single event carries all movements
+            commandGateway.send(new BatchTransferCommand(entityId, new ArrayList<>(batch))).join();
+            TransferOutcome outcome = outcomes.updates().next().timeout(outcomeTimeout, Mono.empty()).block();
+            if (outcome == null) {
+                throw new IllegalStateException("The outcome of the batch is unknown, no update came in time");
+            }
+            for (Movement movement : batch) {
+                String rejection = outcome.rejections().get(movement.getPostingId());
+                writeLine(generator, rejection == null ? new TransferReceipt(movement.getPostingId()) : new TransferRejection(rejection));
+            }
+        } finally {
+            outcomes.close();
+        }
+        generator.flush();
+        batch.clear();
+    }
+
+    private void writeLine(JsonGenerator generator, Object value) throws IOException {
+        generator.writeObject(value);
+        generator.writeRaw('\n');
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
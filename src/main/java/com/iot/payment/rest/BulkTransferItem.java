@@ -0,0 +1,6 @@
+package com.iot.payment.rest;
+
+import java.math.BigDecimal;
+
+public record BulkTransferItem(String sourceWalletId, String destinationWalletId, BigDecimal amount) {
+}
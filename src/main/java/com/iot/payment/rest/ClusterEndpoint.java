@@ -0,0 +1,36 @@
+package com.iot.payment.rest;
+
+import com.iot.payment.cluster.HttpCommandBusConnector;
+import com.iot.payment.cluster.LedgerCluster;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Traffic between the nodes of a multi-node ledger: membership heartbeats and commands sent to the node owning their
+ * entity. Only requests carrying the cluster secret get here, see {@link com.iot.payment.cluster.ClusterSecretInterceptor}.
+ */
+@RestController
+@AllArgsConstructor
+@ConditionalOnProperty(name = "ledger.cluster.enabled", havingValue = "true")
+public class ClusterEndpoint {
+    private final LedgerCluster cluster;
+    private final HttpCommandBusConnector connector;
+
+    @PostMapping(value = LedgerCluster.MEMBERS_PATH, consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
+    public String heartbeat(@RequestBody String members) {
+        return cluster.receiveHeartbeat(members);
+    }
+
+    @PostMapping(value = HttpCommandBusConnector.COMMANDS_PATH, consumes = HttpCommandBusConnector.CONTENT_TYPE, produces = HttpCommandBusConnector.CONTENT_TYPE)
+    public CompletableFuture<ResponseEntity<byte[]>> command(@RequestBody byte[] command) {
+        return connector.receive(command)
+                .thenApply(reply -> reply == null ? ResponseEntity.accepted().build() : ResponseEntity.ok(reply));
+    }
+}
@@ -0,0 +1,37 @@
+package com.iot.payment.rest;
+
+import com.iot.payment.commandmodel.aggregate.AggregateCacheStatistics;
+import com.iot.payment.commandmodel.aggregate.BoundedAggregateCache;
+import com.iot.payment.commandmodel.aggregate.IdempotencyKeyStore;
+import com.iot.payment.commandmodel.aggregate.IdempotencyStatistics;
+import com.iot.payment.commandmodel.aggregate.LoadTimeSnapshotTriggerDefinition;
+import com.iot.payment.commandmodel.aggregate.SnapshotTriggerStatistics;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Operational figures of the command side.
+ */
+@RestController
+@AllArgsConstructor
+public class LedgerMetricsEndpoint {
+    private final LoadTimeSnapshotTriggerDefinition entityAggregateSnapshotTriggerDefinition;
+    private final BoundedAggregateCache entityAggregateCache;
+    private final IdempotencyKeyStore idempotencyKeyStore;
+
+    @GetMapping("/metrics/entity-snapshots")
+    public SnapshotTriggerStatistics entitySnapshots() {
+        return entityAggregateSnapshotTriggerDefinition.statistics();
+    }
+
+    @GetMapping("/metrics/entity-cache")
+    public AggregateCacheStatistics entityCache() {
+        return entityAggregateCache.statistics();
+    }
+
+    @GetMapping("/metrics/idempotency-keys")
+    public IdempotencyStatistics idempotencyKeys() {
+        return idempotencyKeyStore.statistics();
+    }
+}
@@ -2,26 +2,36 @@ package com.iot.payment.rest;
 
 import com.iot.payment.commandmodel.AccountState;
 import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.commandmodel.aggregate.DuplicateCommandInProgressException;
+import com.iot.payment.commandmodel.aggregate.IdempotentCommandInterceptor;
 import com.iot.payment.coreapi.commands.CreateEntityCommand;
 import com.iot.payment.coreapi.commands.ModifyPostingCommand;
 import com.iot.payment.coreapi.commands.TransferCommand;
 import com.iot.payment.coreapi.commands.UpdateAccountStatusCommand;
 import com.iot.payment.exception.ApiError;
 import com.iot.payment.querymodel.EntityQueryService;
+import com.iot.payment.querymodel.HistoricalBalancePage;
 import com.iot.payment.querymodel.HistoricalBalanceResponse;
+import com.iot.payment.querymodel.WalletBalance;
 import lombok.AllArgsConstructor;
 import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.messaging.MetaData;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -32,12 +42,23 @@ import java.util.concurrent.CompletableFuture;
 @AllArgsConstructor
 public class LedgerRestEndpoint {
     public static final String MINIMUM_ACCOUNT = "ACCOUNT1";
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 128;
     private final CommandGateway commandGateway;
     private final EntityQueryService entityQueryService;
 
     @PostMapping("/transfer/entity/{entity-id}/source-id/{source-id}/destination-id/{destination-id}/amount/{amount}")
-    public CompletableFuture<Void> transfer(@PathVariable("entity-id") String entityId, @PathVariable("source-id") String source, @PathVariable("destination-id") String destination, @PathVariable("amount") int amount) {
-        return commandGateway.send(new TransferCommand(entityId, source, destination, new BigDecimal(amount)));
+    public CompletableFuture<Void> transfer(@PathVariable("entity-id") String entityId, @PathVariable("source-id") String source, @PathVariable("destination-id") String destination, @PathVariable("amount") int amount,
+                                            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        TransferCommand command = new TransferCommand(entityId, source, destination, new BigDecimal(amount));
+        if (idempotencyKey == null) {
+            return commandGateway.send(command);
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new IllegalArgumentException(IDEMPOTENCY_KEY_HEADER + " must have 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+        // A retry with the same key succeeds without creating another posting
+        return commandGateway.send(command, MetaData.with(IdempotentCommandInterceptor.IDEMPOTENCY_KEY, idempotencyKey));
     }
 
     @PostMapping("/entity")
@@ -68,6 +89,34 @@ public class LedgerRestEndpoint {
         return entityQueryService.findHistoricalBalanceOfWallet();
     }
 
+    @GetMapping("/historical-balance/page")
+    public CompletableFuture<HistoricalBalancePage> historicalBalancePage(@RequestParam(name = "entity-id", required = false) String entityId, @RequestParam(name = "wallet-id", required = false) String walletId,
+                                                                          @RequestParam(name = "cursor", required = false) String cursor, @RequestParam(name = "limit", defaultValue = "100") int limit) {
+        return entityQueryService.findHistoricalBalancePage(entityId, walletId, cursor, limit);
+    }
+
+    @GetMapping(value = "/historical-balance/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<HistoricalBalanceResponse> historicalBalanceStream(@RequestParam(name = "entity-id", required = false) String entityId, @RequestParam(name = "wallet-id", required = false) String walletId) {
+        return entityQueryService.streamHistoricalBalances(entityId, walletId);
+    }
+
+    @GetMapping("/latest-balance/entity/{entity-id}/wallet-id/{wallet-id}")
+    public CompletableFuture<WalletBalance> latestBalance(@PathVariable("entity-id") String entityId, @PathVariable("wallet-id") String walletId) {
+        return entityQueryService.findLatestBalance(entityId, walletId)
+                .thenApply(balance -> {
+                    if (balance == null) {
+                        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Wallet not found");
+                    }
+                    return balance;
+                });
+    }
+
+    @GetMapping(value = "/balances/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<WalletBalance>> subscribeBalances(@RequestParam(name = "entity-id", required = false) String entityId, @RequestParam(name = "wallet-id", required = false) String walletId) {
+        return entityQueryService.subscribeWalletBalances(entityId, walletId)
+                .map(balance -> ServerSentEvent.builder(balance).event("balance").build());
+    }
+
     @ExceptionHandler({ResponseStatusException.class})
     public ResponseEntity<Object> handleResponseStatusException(ResponseStatusException ex, WebRequest request) {
         ApiError apiError = new ApiError(
@@ -76,6 +125,14 @@ public class LedgerRestEndpoint {
                 apiError, new HttpHeaders(), apiError.status());
     }
 
+    @ExceptionHandler({DuplicateCommandInProgressException.class})
+    public ResponseEntity<Object> handleDuplicateCommandInProgress(DuplicateCommandInProgressException ex, WebRequest request) {
+        ApiError apiError = new ApiError(
+                HttpStatus.CONFLICT, ex.getMessage(), "Request in progress");
+        return new ResponseEntity<Object>(
+                apiError, new HttpHeaders(), apiError.status());
+    }
+
     @ExceptionHandler({IllegalArgumentException.class})
     public ResponseEntity<Object> handleIllegalArgumentException(IllegalArgumentException ex, WebRequest request) {
         ApiError apiError = new ApiError(
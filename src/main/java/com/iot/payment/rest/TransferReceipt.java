@@ -0,0 +1,4 @@
+package com.iot.payment.rest;
+
+public record TransferReceipt(String postingId) {
+}
@@ -0,0 +1,29 @@
+package com.iot.payment.serialization;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary form of one payload type for the {@link CompactSerializer}. Payloads are always written in the current
+ * {@code revision}; the reader is given the revision the payload was written in and has to read every revision the
+ * codec ever wrote, so a schema change is upcast while reading instead of through an intermediate representation.
+ */
+public record CompactCodec<T>(Class<T> type, int revision, Writer<T> writer, Reader<T> reader) {
+
+    public CompactCodec {
+        if (revision < 1) {
+            throw new IllegalArgumentException("Revisions start at 1");
+        }
+    }
+
+    @FunctionalInterface
+    public interface Writer<T> {
+        void write(DataOutput out, T value) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Reader<T> {
+        T read(DataInput in, int revision) throws IOException;
+    }
+}
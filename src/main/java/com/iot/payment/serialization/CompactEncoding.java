@@ -0,0 +1,185 @@
+package com.iot.payment.serialization;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Field encodings of the compact serializer. Numbers are written as varints, seven bits per byte, signed ones zigzag
+ * encoded first so small negative numbers stay short. Strings holding a canonical UUID take 16 bytes, other strings
+ * their UTF-8 bytes after the length. A {@link BigDecimal} is its scale and its unscaled value. Every field may be
+ * {@code null}.
+ */
+public final class CompactEncoding {
+    private static final int NULL = 0;
+    private static final int UUID_STRING = 1;
+    private static final int UTF8_STRING = 2;
+
+    private CompactEncoding() {
+    }
+
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    public static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedVarLong(DataInput in) throws IOException {
+        long zigzag = readVarLong(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, NULL);
+            return;
+        }
+        UUID uuid = parseCanonicalUuid(value);
+        if (uuid != null) {
+            writeVarInt(out, UUID_STRING);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, UTF8_STRING + bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int tag = readVarInt(in);
+        if (tag == NULL) {
+            return null;
+        }
+        if (tag == UUID_STRING) {
+            return new UUID(in.readLong(), in.readLong()).toString();
+        }
+        byte[] bytes = new byte[tag - UTF8_STRING];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The UUID of a string in the lower case form {@link UUID#toString()} writes, so it reads back as the same string.
+     */
+    private static UUID parseCanonicalUuid(String value) {
+        if (value.length() != 36 || value.charAt(8) != '-' || value.charAt(13) != '-' || value.charAt(18) != '-' || value.charAt(23) != '-') {
+            return null;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '-' && (c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return null;
+            }
+        }
+        return UUID.fromString(value);
+    }
+
+    /**
+     * Writes the zigzag encoded scale, shifted left by one with the low bit telling whether the unscaled value follows
+     * as a signed varint or, when it does not fit in a long, as its two's complement bytes.
+     */
+    public static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, NULL);
+            return;
+        }
+        BigInteger unscaled = value.unscaledValue();
+        boolean fitsLong = unscaled.bitLength() < Long.SIZE;
+        long zigzagScale = ((long) value.scale() << 1) ^ (value.scale() >> 31);
+        writeVarLong(out, ((zigzagScale << 1) | (fitsLong ? 0 : 1)) + 1);
+        if (fitsLong) {
+            writeSignedVarLong(out, unscaled.longValue());
+        } else {
+            byte[] bytes = unscaled.toByteArray();
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    public static BigDecimal readDecimal(DataInput in) throws IOException {
+        long header = readVarLong(in);
+        if (header == NULL) {
+            return null;
+        }
+        header--;
+        long zigzagScale = header >>> 1;
+        int scale = (int) ((zigzagScale >>> 1) ^ -(zigzagScale & 1));
+        if ((header & 1) == 0) {
+            return BigDecimal.valueOf(readSignedVarLong(in), scale);
+        }
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new BigDecimal(new BigInteger(bytes), scale);
+    }
+
+    public static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+        writeVarInt(out, value == null ? NULL : value.ordinal() + 1);
+    }
+
+    public static <E extends Enum<E>> E readEnum(DataInput in, E[] values) throws IOException {
+        int tag = readVarInt(in);
+        return tag == NULL ? null : values[tag - 1];
+    }
+
+    /**
+     * Writes the size of a collection, {@code -1} for {@code null}.
+     */
+    public static void writeSize(DataOutput out, int size) throws IOException {
+        writeVarInt(out, size + 1);
+    }
+
+    public static int readSize(DataInput in) throws IOException {
+        return readVarInt(in) - 1;
+    }
+
+    /**
+     * Writes the length and then the bytes, {@code null} as a length of -1.
+     */
+    public static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        writeSize(out, bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            out.write(bytes);
+        }
+    }
+
+    public static byte[] readBytes(DataInput in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,137 @@
+package com.iot.payment.serialization;
+
+import lombok.Builder;
+import org.axonframework.serialization.Converter;
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.SerializedType;
+import org.axonframework.serialization.SerializationException;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.SimpleSerializedObject;
+import org.axonframework.serialization.SimpleSerializedType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes the payload types it has a {@link CompactCodec} for in their binary form and everything else, such as
+ * meta data and tokens, with the {@code delegate}. A compact payload carries the revision {@code c<codec revision>};
+ * data without such a revision was written by the delegate, so events stored before the compact serializer was
+ * introduced are still read by the delegate.
+ * <p>
+ * Payloads requested as a {@link String}, as the Mongo event store does, are Base64 encoded.
+ */
+public class CompactSerializer implements Serializer {
+    static final String REVISION_PREFIX = "c";
+
+    private final Serializer delegate;
+    private final Map<Class<?>, CompactCodec<?>> codecsByType = new HashMap<>();
+    private final Map<String, CompactCodec<?>> codecsByName = new HashMap<>();
+
+    @Builder
+    private CompactSerializer(Serializer delegate, List<CompactCodec<?>> codecs) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("A delegate serializer is required");
+        }
+        this.delegate = delegate;
+        for (CompactCodec<?> codec : codecs == null ? List.<CompactCodec<?>>of() : codecs) {
+            if (codecsByType.put(codec.type(), codec) != null) {
+                throw new IllegalArgumentException("More than one codec for " + codec.type().getName());
+            }
+            codecsByName.put(codec.type().getName(), codec);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> SerializedObject<T> serialize(Object object, Class<T> expectedRepresentation) {
+        CompactCodec<Object> codec = object == null ? null : (CompactCodec<Object>) codecsByType.get(object.getClass());
+        if (codec == null) {
+            return delegate.serialize(object, expectedRepresentation);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            codec.writer().write(out, object);
+        } catch (IOException e) {
+            throw new SerializationException("Could not serialize " + codec.type().getName(), e);
+        }
+        SerializedType type = serializedType(codec);
+        if (expectedRepresentation == String.class) {
+            return (SerializedObject<T>) new SimpleSerializedObject<>(Base64.getEncoder().encodeToString(bytes.toByteArray()), String.class, type);
+        }
+        SerializedObject<byte[]> serialized = new SimpleSerializedObject<>(bytes.toByteArray(), byte[].class, type);
+        if (expectedRepresentation.isAssignableFrom(byte[].class)) {
+            return (SerializedObject<T>) serialized;
+        }
+        return getConverter().convert(serialized, expectedRepresentation);
+    }
+
+    @Override
+    public <T> boolean canSerializeTo(Class<T> expectedRepresentation) {
+        return delegate.canSerializeTo(expectedRepresentation)
+                && (expectedRepresentation == String.class || expectedRepresentation.isAssignableFrom(byte[].class)
+                || getConverter().canConvert(byte[].class, expectedRepresentation));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S, T> T deserialize(SerializedObject<S> serializedObject) {
+        SerializedType type = serializedObject.getType();
+        CompactCodec<?> codec = codecsByName.get(type.getName());
+        int revision = compactRevision(type.getRevision());
+        if (codec == null || revision < 1) {
+            return delegate.deserialize(serializedObject);
+        }
+        if (revision > codec.revision()) {
+            throw new SerializationException("Revision " + revision + " of " + type.getName() + " is newer than this application knows");
+        }
+        byte[] data = serializedObject.getData() instanceof String text
+                ? Base64.getDecoder().decode(text)
+                : getConverter().convert(serializedObject, byte[].class).getData();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            return (T) codec.reader().read(in, revision);
+        } catch (IOException e) {
+            throw new SerializationException("Could not deserialize revision " + revision + " of " + type.getName(), e);
+        }
+    }
+
+    private static int compactRevision(String revision) {
+        if (revision == null || !revision.startsWith(REVISION_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(revision.substring(REVISION_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static SerializedType serializedType(CompactCodec<?> codec) {
+        return new SimpleSerializedType(codec.type().getName(), REVISION_PREFIX + codec.revision());
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Class classForType(SerializedType type) {
+        CompactCodec<?> codec = codecsByName.get(type.getName());
+        return codec == null ? delegate.classForType(type) : codec.type();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SerializedType typeForClass(Class type) {
+        CompactCodec<?> codec = type == null ? null : codecsByType.get(type);
+        return codec == null ? delegate.typeForClass(type) : serializedType(codec);
+    }
+
+    @Override
+    public Converter getConverter() {
+        return delegate.getConverter();
+    }
+}
@@ -0,0 +1,93 @@
+package com.iot.payment.serialization;
+
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.coreapi.commands.BatchTransferCommand;
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.ModifyPostingCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import com.iot.payment.coreapi.commands.UpdateAccountStatusCommand;
+import com.iot.payment.coreapi.events.Movement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.iot.payment.serialization.CompactEncoding.readDecimal;
+import static com.iot.payment.serialization.CompactEncoding.readEnum;
+import static com.iot.payment.serialization.CompactEncoding.readSize;
+import static com.iot.payment.serialization.CompactEncoding.readString;
+import static com.iot.payment.serialization.CompactEncoding.writeDecimal;
+import static com.iot.payment.serialization.CompactEncoding.writeEnum;
+import static com.iot.payment.serialization.CompactEncoding.writeSize;
+import static com.iot.payment.serialization.CompactEncoding.writeString;
+
+/**
+ * Codecs of the commands in {@code coreapi.commands}, which are records and so cannot be read back by XStream. They
+ * are only needed when commands are sent to another node. Fields are written in declaration order.
+ */
+public final class LedgerCommandCodecs {
+    public static final CompactCodec<CreateEntityCommand> CREATE_ENTITY = new CompactCodec<>(CreateEntityCommand.class, 1,
+            (out, command) -> writeString(out, command.entityId()),
+            (in, revision) -> new CreateEntityCommand(readString(in)));
+
+    public static final CompactCodec<TransferCommand> TRANSFER = new CompactCodec<>(TransferCommand.class, 1,
+            (out, command) -> {
+                writeString(out, command.entityId());
+                writeString(out, command.sourceEntityId());
+                writeString(out, command.destinationEntityId());
+                writeDecimal(out, command.amount());
+                writeString(out, command.postingId());
+            },
+            (in, revision) -> new TransferCommand(readString(in), readString(in), readString(in), readDecimal(in), readString(in)));
+
+    public static final CompactCodec<BatchTransferCommand> BATCH_TRANSFER = new CompactCodec<>(BatchTransferCommand.class, 1,
+            (out, command) -> {
+                writeString(out, command.entityId());
+                List<Movement> movements = command.movements();
+                writeSize(out, movements == null ? -1 : movements.size());
+                if (movements != null) {
+                    for (Movement movement : movements) {
+                        writeString(out, movement.getSourceWalletId());
+                        writeString(out, movement.getDestinationWalletId());
+                        writeDecimal(out, movement.getAmount());
+                        writeString(out, movement.getPostingId());
+                    }
+                }
+            },
+            (in, revision) -> {
+                String entityId = readString(in);
+                int size = readSize(in);
+                List<Movement> movements = size < 0 ? null : new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    movements.add(new Movement(readString(in), readString(in), readDecimal(in), readString(in)));
+                }
+                return new BatchTransferCommand(entityId, movements);
+            });
+
+    public static final CompactCodec<ModifyPostingCommand> MODIFY_POSTING = new CompactCodec<>(ModifyPostingCommand.class, 1,
+            (out, command) -> {
+                writeString(out, command.entityId());
+                writeString(out, command.sourceWalletId());
+                writeString(out, command.destinationWalletId());
+                writeString(out, command.postingId());
+                writeDecimal(out, command.newAmount());
+                writeEnum(out, command.newState());
+            },
+            (in, revision) -> new ModifyPostingCommand(readString(in), readString(in), readString(in), readString(in),
+                    readDecimal(in), readEnum(in, PostingState.values())));
+
+    public static final CompactCodec<UpdateAccountStatusCommand> UPDATE_ACCOUNT_STATUS = new CompactCodec<>(UpdateAccountStatusCommand.class, 1,
+            (out, command) -> {
+                writeString(out, command.entityId());
+                writeString(out, command.accountId());
+                writeEnum(out, command.accountState());
+            },
+            (in, revision) -> new UpdateAccountStatusCommand(readString(in), readString(in), readEnum(in, AccountState.values())));
+
+    private LedgerCommandCodecs() {
+    }
+
+    public static List<CompactCodec<?>> all() {
+        return List.of(CREATE_ENTITY, TRANSFER, BATCH_TRANSFER, MODIFY_POSTING, UPDATE_ACCOUNT_STATUS);
+    }
+}
@@ -0,0 +1,124 @@
+package com.iot.payment.serialization;
+
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.coreapi.events.BalanceUpdatedEvent;
+import com.iot.payment.coreapi.events.EntityCreatedEvent;
+import com.iot.payment.coreapi.events.ModifyPostingEvent;
+import com.iot.payment.coreapi.events.Movement;
+import com.iot.payment.coreapi.events.MovementUpdatedEvent;
+import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.coreapi.events.TransfersBatchedEvent;
+import com.iot.payment.coreapi.events.UpdateAccountStatusEvent;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.iot.payment.serialization.CompactEncoding.readDecimal;
+import static com.iot.payment.serialization.CompactEncoding.readEnum;
+import static com.iot.payment.serialization.CompactEncoding.readSize;
+import static com.iot.payment.serialization.CompactEncoding.readString;
+import static com.iot.payment.serialization.CompactEncoding.writeDecimal;
+import static com.iot.payment.serialization.CompactEncoding.writeEnum;
+import static com.iot.payment.serialization.CompactEncoding.writeSize;
+import static com.iot.payment.serialization.CompactEncoding.writeString;
+
+/**
+ * Codecs of the events in {@code coreapi.events}. Fields are written in declaration order. A change to an event adds a
+ * revision to its codec: the writer writes the new layout and the reader keeps reading the old ones.
+ */
+public final class LedgerEventCodecs {
+    public static final CompactCodec<EntityCreatedEvent> ENTITY_CREATED = new CompactCodec<>(EntityCreatedEvent.class, 1,
+            (out, event) -> writeString(out, event.getEntityId()),
+            (in, revision) -> new EntityCreatedEvent(readString(in)));
+
+    public static final CompactCodec<TransferEvent> TRANSFER = new CompactCodec<>(TransferEvent.class, 1,
+            (out, event) -> {
+                writeString(out, event.getEntityId());
+                writeString(out, event.getSourceWalletId());
+                writeString(out, event.getDestinationWalletId());
+                writeDecimal(out, event.getAmount());
+                writeString(out, event.getPostingId());
+            },
+            (in, revision) -> new TransferEvent(readString(in), readString(in), readString(in), readDecimal(in), readString(in)));
+
+    public static final CompactCodec<TransfersBatchedEvent> TRANSFERS_BATCHED = new CompactCodec<>(TransfersBatchedEvent.class, 1,
+            (out, event) -> {
+                writeString(out, event.getEntityId());
+                List<Movement> movements = event.getMovements();
+                writeSize(out, movements == null ? -1 : movements.size());
+                if (movements != null) {
+                    for (Movement movement : movements) {
+                        writeMovement(out, movement);
+                    }
+                }
+            },
+            (in, revision) -> {
+                String entityId = readString(in);
+                int size = readSize(in);
+                List<Movement> movements = size < 0 ? null : new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    movements.add(readMovement(in));
+                }
+                return new TransfersBatchedEvent(entityId, movements);
+            });
+
+    public static final CompactCodec<ModifyPostingEvent> MODIFY_POSTING = new CompactCodec<>(ModifyPostingEvent.class, 1,
+            (out, event) -> {
+                writeString(out, event.entityId());
+                writeString(out, event.sourceWalletId());
+                writeString(out, event.destinationWalletId());
+                writeString(out, event.postingId());
+                writeDecimal(out, event.newAmount());
+                writeEnum(out, event.newState());
+            },
+            (in, revision) -> new ModifyPostingEvent(readString(in), readString(in), readString(in), readString(in),
+                    readDecimal(in), readEnum(in, PostingState.values())));
+
+    public static final CompactCodec<UpdateAccountStatusEvent> UPDATE_ACCOUNT_STATUS = new CompactCodec<>(UpdateAccountStatusEvent.class, 1,
+            (out, event) -> {
+                writeString(out, event.getEntityId());
+                writeString(out, event.getAccountId());
+                writeEnum(out, event.getAccountState());
+            },
+            (in, revision) -> new UpdateAccountStatusEvent(readString(in), readString(in), readEnum(in, AccountState.values())));
+
+    public static final CompactCodec<MovementUpdatedEvent> MOVEMENT_UPDATED = new CompactCodec<>(MovementUpdatedEvent.class, 1,
+            (out, event) -> {
+                writeString(out, event.movementId());
+                writeString(out, event.sourceWalletId());
+                writeString(out, event.destinationWalletId());
+                writeDecimal(out, event.amount());
+                writeString(out, event.postingId());
+            },
+            (in, revision) -> new MovementUpdatedEvent(readString(in), readString(in), readString(in), readDecimal(in), readString(in)));
+
+    public static final CompactCodec<BalanceUpdatedEvent> BALANCE_UPDATED = new CompactCodec<>(BalanceUpdatedEvent.class, 1,
+            (out, event) -> {
+                writeString(out, event.sourceWalletId());
+                writeString(out, event.destinationWalletId());
+                writeDecimal(out, event.amount());
+            },
+            (in, revision) -> new BalanceUpdatedEvent(readString(in), readString(in), readDecimal(in)));
+
+    private LedgerEventCodecs() {
+    }
+
+    public static List<CompactCodec<?>> all() {
+        return List.of(ENTITY_CREATED, TRANSFER, TRANSFERS_BATCHED, MODIFY_POSTING, UPDATE_ACCOUNT_STATUS, MOVEMENT_UPDATED, BALANCE_UPDATED);
+    }
+
+    private static void writeMovement(DataOutput out, Movement movement) throws IOException {
+        writeString(out, movement.getSourceWalletId());
+        writeString(out, movement.getDestinationWalletId());
+        writeDecimal(out, movement.getAmount());
+        writeString(out, movement.getPostingId());
+    }
+
+    private static Movement readMovement(DataInput in) throws IOException {
+        return new Movement(readString(in), readString(in), readDecimal(in), readString(in));
+    }
+}
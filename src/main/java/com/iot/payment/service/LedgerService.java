@@ -12,4 +12,10 @@ public interface LedgerService {
     void changeAccountState(String entityId, String accountId, AccountState newState);
 
     List<String> transfer(String entityId, List<TransferRequest> requests);
+
+    /**
+     * Makes the valid transfers of the batch together and rejects the others one by one, instead of failing the
+     * whole batch.
+     */
+    TransferOutcome transferEach(String entityId, List<TransferRequest> requests);
 }
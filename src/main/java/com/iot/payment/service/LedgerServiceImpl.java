@@ -2,41 +2,47 @@ package com.iot.payment.service;
 
 import com.iot.payment.commandmodel.Account;
 import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.BalanceTimeline;
 import com.iot.payment.commandmodel.Entity;
 import com.iot.payment.commandmodel.Posting;
 import com.iot.payment.commandmodel.PostingState;
 import com.iot.payment.commandmodel.Wallet;
+import com.iot.payment.repository.EntityIndex;
+import com.iot.payment.repository.JournalRecord;
+import com.iot.payment.repository.LedgerJournal;
 import com.iot.payment.repository.LedgerInMemoryRepository;
+import com.iot.payment.repository.WalletLocks;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.UUID;
+import java.util.Set;
 
 
 @Service("ledgerService")
 @Slf4j
 public class LedgerServiceImpl implements LedgerService {
     private final LedgerInMemoryRepository ledgerRepository;
-    private final Map<String, BigDecimal> initialBalances;
 
     public LedgerServiceImpl(LedgerInMemoryRepository ledgerRepository) {
         this.ledgerRepository = ledgerRepository;
-        this.initialBalances = new HashMap<>();
     }
 
-    private static void updateBalances(Wallet sourceWallet, BigDecimal difference, Wallet destinationWallet) {
+    private static void updateBalances(Wallet sourceWallet, BigDecimal difference, Wallet destinationWallet, LocalDateTime now) {
         sourceWallet.setBalance(sourceWallet.getBalance().subtract(difference));
-        sourceWallet.addBalanceHistory(sourceWallet.getBalance(), LocalDateTime.now());
+        sourceWallet.addBalanceHistory(sourceWallet.getBalance(), now);
 
         destinationWallet.setBalance(destinationWallet.getBalance().add(difference));
-        destinationWallet.addBalanceHistory(destinationWallet.getBalance(), LocalDateTime.now());
+        destinationWallet.addBalanceHistory(destinationWallet.getBalance(), now);
+
+        sourceWallet.compactBalanceHistoryIfDue();
+        destinationWallet.compactBalanceHistoryIfDue();
     }
 
     @Override
@@ -46,19 +52,18 @@ public class LedgerServiceImpl implements LedgerService {
             throw new NoSuchElementException("Entity not found");
         }
 
-        Wallet sourceWallet = findWallet(entity, sourceWalletId);
-        Wallet destinationWallet = findWallet(entity, destinationWalletId);
-
+        EntityIndex index = ledgerRepository.indexOf(entityId, entity);
+        Wallet sourceWallet = index.wallet(sourceWalletId);
+        Wallet destinationWallet = index.wallet(destinationWalletId);
 
-        Posting sourcePosting = sourceWallet.getPostings().stream()
-                .filter(p -> p.getId().equals(postingId))
-                .findFirst()
-                .orElseThrow(() -> new NoSuchElementException("Posting not found"));
+        try (WalletLocks.Held ignored = ledgerRepository.getWalletLocks().lock(entityId, List.of(sourceWallet.getId(), destinationWallet.getId()))) {
+            modifyPosting(index, sourceWallet, destinationWallet, postingId, newAmount, newState);
+        }
+    }
 
-        Posting destinationPosting = destinationWallet.getPostings().stream()
-                .filter(p -> p.getId().equals(postingId))
-                .findFirst()
-                .orElseThrow(() -> new NoSuchElementException("Posting not found"));
+    private void modifyPosting(EntityIndex index, Wallet sourceWallet, Wallet destinationWallet, String postingId, BigDecimal newAmount, PostingState newState) {
+        Posting sourcePosting = index.posting(sourceWallet.getId(), postingId);
+        Posting destinationPosting = index.posting(destinationWallet.getId(), postingId);
 
         if (sourcePosting.getState() == PostingState.FAILED || destinationPosting.getState() == PostingState.FAILED) {
             throw new IllegalStateException("Cannot modify a failed posting");
@@ -68,6 +73,23 @@ public class LedgerServiceImpl implements LedgerService {
             throw new IllegalStateException("Cannot modify a pending posting");
         }
 
+        if (sourcePosting.getState() == newState && sourcePosting.getAmount().compareTo(newAmount.negate()) == 0
+                && destinationPosting.getAmount().compareTo(newAmount) == 0) {
+            // Already applied, e.g. handled again after a restart
+            return;
+        }
+
+        // Journal before touching anything, so a change that cannot be journaled is not applied either
+        LocalDateTime now = LocalDateTime.now();
+        LedgerJournal journal = ledgerRepository.getJournal();
+        if (journal.isEnabled()) {
+            String entityId = index.getEntity().getId();
+            long epochNanos = BalanceTimeline.toEpochNanos(now);
+            journal.append(List.of(
+                    JournalRecord.postingUpdated(entityId, sourceWallet.getId(), postingId, newAmount.negate(), newState, epochNanos),
+                    JournalRecord.postingUpdated(entityId, destinationWallet.getId(), postingId, newAmount, newState, epochNanos)));
+        }
+
         BigDecimal oldAmount = sourcePosting.getAmount();
         sourcePosting.setAmount(newAmount.negate());
         destinationPosting.setAmount(newAmount);
@@ -78,7 +100,7 @@ public class LedgerServiceImpl implements LedgerService {
         if (newState == PostingState.CLEARED) {
             log.info("\nOld amount: " + oldAmount + "\nNew amount: " + newAmount);
             BigDecimal difference = newAmount.add(oldAmount);
-            updateBalances(sourceWallet, difference, destinationWallet);
+            updateBalances(sourceWallet, difference, destinationWallet, now);
             log.info("\nDifference: " + difference + "\nNew balance of source wallet: " + sourceWallet.getBalance() + "\ndestination wallet: " + destinationWallet.getBalance());
         }
     }
@@ -89,87 +111,59 @@ public class LedgerServiceImpl implements LedgerService {
             throw new NoSuchElementException("Entity not found");
         }
 
-        Account account = findAccount(entity, accountId);
+        Account account = ledgerRepository.indexOf(entityId, entity).findAccount(accountId);
         if (account == null) {
             throw new NoSuchElementException("Account not found");
         }
 
+        if (account.getState() == newState) {
+            return;
+        }
+        LedgerJournal journal = ledgerRepository.getJournal();
+        if (journal.isEnabled()) {
+            journal.append(List.of(JournalRecord.accountStateChanged(entityId, accountId, newState)));
+        }
         account.setState(newState);
     }
 
-    private Account findAccount(Entity entity, String accountId) {
-        for (Account account : entity.getAccounts()) {
-            if (account.getId().equals(accountId)) {
-                return account;
-            }
+    public List<String> transfer(String entityId, List<TransferRequest> requests) {
+        EntityIndex index = indexOf(entityId);
+        try (WalletLocks.Held ignored = ledgerRepository.getWalletLocks().lock(entityId, walletIds(index, requests))) {
+            return TransferBatch.prepare(index, requests).commit(ledgerRepository.getJournal());
         }
-        return null;
     }
 
+    @Override
+    public TransferOutcome transferEach(String entityId, List<TransferRequest> requests) {
+        EntityIndex index = indexOf(entityId);
+        Map<String, String> rejections = new LinkedHashMap<>();
+        try (WalletLocks.Held ignored = ledgerRepository.getWalletLocks().lock(entityId, walletIds(index, requests))) {
+            List<String> postingIds = TransferBatch.prepare(index, requests, rejections).commit(ledgerRepository.getJournal());
+            return new TransferOutcome(postingIds, rejections);
+        }
+    }
 
-    public List<String> transfer(String entityId, List<TransferRequest> requests) {
+    private EntityIndex indexOf(String entityId) {
         Entity entity = ledgerRepository.getEntities().get(entityId);
         if (entity == null) {
             throw new NoSuchElementException("Entity not found");
         }
-
-        List<String> postingIds = new ArrayList<>();
-        try {
-            for (TransferRequest request : requests) {
-                Wallet sourceWallet = findWallet(entity, request.getSourceWalletId());
-                Wallet destinationWallet = findWallet(entity, request.getDestinationWalletId());
-
-                if (sourceWallet.getAccount().getState() != AccountState.OPEN || destinationWallet.getAccount().getState() != AccountState.OPEN) {
-                    throw new IllegalStateException("Transactions can only be made to and from wallets of accounts in the OPEN state");
-                }
-
-                if (!initialBalances.containsKey(sourceWallet.getId())) {
-                    initialBalances.put(sourceWallet.getId(), sourceWallet.getBalance());
-                }
-
-                if (!initialBalances.containsKey(destinationWallet.getId())) {
-                    initialBalances.put(destinationWallet.getId(), destinationWallet.getBalance());
-                }
-
-                if (sourceWallet.getBalance().compareTo(request.getAmount()) < 0) {
-                    throw new IllegalArgumentException("Insufficient balance in source wallet");
-                }
-                updateBalances(sourceWallet, request.getAmount(), destinationWallet);
-
-                // Create postings
-                String postingId = UUID.randomUUID().toString();
-                Posting sourcePosting = Posting.builder().id(postingId).amount(request.getAmount().negate()).state(PostingState.CLEARED).build();
-                Posting destinationPosting = Posting.builder().id(postingId).amount(request.getAmount()).state(PostingState.CLEARED).build();
-
-                // Add postings to wallets
-                sourceWallet.getPostings().add(sourcePosting);
-                destinationWallet.getPostings().add(destinationPosting);
-                postingIds.add(postingId);
-
-            }
-        } catch (Exception e) {
-            rollback(entity);
-            throw e;
-        }
-        return postingIds;
+        return ledgerRepository.indexOf(entityId, entity);
     }
 
-    private void rollback(Entity entity) {
-        for (Map.Entry<String, BigDecimal> entry : initialBalances.entrySet()) {
-            Wallet wallet = findWallet(entity, entry.getKey());
-            wallet.setBalance(entry.getValue());
-        }
-    }
-
-    private Wallet findWallet(Entity entity, String walletId) {
-        for (Account account : entity.getAccounts()) {
-            for (Wallet wallet : account.getWallets()) {
-                if (wallet.getId().equals(walletId)) {
-                    wallet.setAccount(account);
-                    return wallet;
-                }
+    // Only the wallets that exist, a transfer naming an unknown wallet is rejected when the batch is prepared
+    private static Set<String> walletIds(EntityIndex index, List<TransferRequest> requests) {
+        Set<String> walletIds = new HashSet<>();
+        for (TransferRequest request : requests) {
+            Wallet sourceWallet = index.findWallet(request.getSourceWalletId());
+            Wallet destinationWallet = index.findWallet(request.getDestinationWalletId());
+            if (sourceWallet != null) {
+                walletIds.add(sourceWallet.getId());
+            }
+            if (destinationWallet != null) {
+                walletIds.add(destinationWallet.getId());
             }
         }
-        throw new NoSuchElementException("Wallet not found");
+        return walletIds;
     }
 }
\ No newline at end of file
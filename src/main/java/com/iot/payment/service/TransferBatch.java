@@ -0,0 +1,230 @@
+package com.iot.payment.service;
+
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.BalanceTimeline;
+import com.iot.payment.commandmodel.FixedPointMoney;
+import com.iot.payment.commandmodel.Posting;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.commandmodel.Wallet;
+import com.iot.payment.repository.EntityIndex;
+import com.iot.payment.repository.JournalRecord;
+import com.iot.payment.repository.LedgerJournal;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * A batch of transfers of one entity. {@link #prepare} validates every request against a scratch view of the net
+ * balance change per wallet without touching any wallet, {@link #commit} then applies the whole batch in a single
+ * pass over the affected wallets and undoes everything it already applied if it fails half way, including when the
+ * postings cannot be journaled.
+ * Callers must hold the locks of all wallets in the batch across both phases.
+ */
+final class TransferBatch {
+    private final EntityIndex index;
+    private final Map<String, NetChange> netChanges = new LinkedHashMap<>();
+    private final List<PendingPosting> postings;
+
+    private TransferBatch(EntityIndex index, int size) {
+        this.index = index;
+        this.postings = new ArrayList<>(size);
+    }
+
+    static TransferBatch prepare(EntityIndex index, List<TransferRequest> requests) {
+        return prepare(index, requests, null);
+    }
+
+    /**
+     * Like {@link #prepare(EntityIndex, List)}, but a request that fails validation is left out of the batch and its
+     * reason recorded in {@code rejections} by posting id, instead of failing the whole batch. The requests after it
+     * are validated against the balances without it. Requests whose posting was already made are left out of the
+     * batch as well, without a rejection.
+     */
+    static TransferBatch prepare(EntityIndex index, List<TransferRequest> requests, Map<String, String> rejections) {
+        TransferBatch batch = new TransferBatch(index, requests.size());
+        for (TransferRequest request : requests) {
+            String postingId = request.getPostingId() != null ? request.getPostingId() : UUID.randomUUID().toString();
+            try {
+                if (batch.isMade(request)) {
+                    continue;
+                }
+                batch.add(request, postingId);
+            } catch (IllegalArgumentException | IllegalStateException | NoSuchElementException e) {
+                if (rejections == null) {
+                    throw e;
+                }
+                rejections.put(postingId, e.getMessage());
+            }
+        }
+        return batch;
+    }
+
+    // A transfer whose posting is already on both wallets was made before, e.g. handled again after a restart. One
+    // that is on only one of them cannot be told apart from a new transfer reusing its posting id and is refused.
+    private boolean isMade(TransferRequest request) {
+        if (request.getPostingId() == null) {
+            return false;
+        }
+        boolean source = hasPosting(request.getSourceWalletId(), request.getPostingId());
+        boolean destination = hasPosting(request.getDestinationWalletId(), request.getPostingId());
+        if (source != destination) {
+            throw new IllegalStateException("Posting " + request.getPostingId() + " is only on the " + (source ? "source" : "destination") + " wallet");
+        }
+        return source;
+    }
+
+    private boolean hasPosting(String walletId, String postingId) {
+        Wallet wallet = index.findWallet(walletId);
+        return wallet != null && index.findPosting(wallet.getId(), postingId) != null;
+    }
+
+    // Only records the source wallet once it could be debited, so a rejected request leaves no trace in the scratch view
+    private void add(TransferRequest request, String postingId) {
+        Wallet sourceWallet = index.wallet(request.getSourceWalletId());
+        Wallet destinationWallet = index.wallet(request.getDestinationWalletId());
+
+        if (sourceWallet.getAccount().getState() != AccountState.OPEN || destinationWallet.getAccount().getState() != AccountState.OPEN) {
+            throw new IllegalStateException("Transactions can only be made to and from wallets of accounts in the OPEN state");
+        }
+
+        BigDecimal amount = request.getAmount();
+        NetChange source = netChanges.get(sourceWallet.getId());
+        if (source == null) {
+            source = new NetChange(sourceWallet);
+            source.debit(amount);
+            netChanges.put(sourceWallet.getId(), source);
+        } else {
+            source.debit(amount);
+        }
+        netChange(destinationWallet).credit(amount);
+        postings.add(new PendingPosting(postingId, sourceWallet, destinationWallet, amount));
+    }
+
+    List<String> commit(LedgerJournal journal) {
+        LocalDateTime now = LocalDateTime.now();
+        long epochNanos = BalanceTimeline.toEpochNanos(now);
+        UndoLog undoLog = new UndoLog();
+        List<String> postingIds = new ArrayList<>(postings.size());
+        try {
+            for (NetChange change : netChanges.values()) {
+                undoLog.record(change.wallet);
+                change.apply(epochNanos);
+            }
+
+            List<JournalRecord> journalRecords = journal.isEnabled() ? new ArrayList<>(postings.size() * 2) : null;
+            for (PendingPosting pending : postings) {
+                Posting sourcePosting = Posting.builder().id(pending.postingId()).amount(pending.amount().negate()).state(PostingState.CLEARED).dateTime(now).build();
+                Posting destinationPosting = Posting.builder().id(pending.postingId()).amount(pending.amount()).state(PostingState.CLEARED).dateTime(now).build();
+                index.addPosting(pending.sourceWallet(), sourcePosting);
+                index.addPosting(pending.destinationWallet(), destinationPosting);
+                postingIds.add(pending.postingId());
+                if (journalRecords != null) {
+                    String entityId = index.getEntity().getId();
+                    journalRecords.add(JournalRecord.postingAdded(entityId, pending.sourceWallet().getId(), sourcePosting));
+                    journalRecords.add(JournalRecord.postingAdded(entityId, pending.destinationWallet().getId(), destinationPosting));
+                }
+            }
+            if (journalRecords != null) {
+                journal.append(journalRecords);
+            }
+        } catch (RuntimeException e) {
+            undoLog.undo(index);
+            throw e;
+        }
+        // Outside the undo scope: the undo log truncates to history sizes taken before compacting
+        for (NetChange change : netChanges.values()) {
+            change.wallet.compactBalanceHistoryIfDue();
+        }
+        return postingIds;
+    }
+
+    private NetChange netChange(Wallet wallet) {
+        return netChanges.computeIfAbsent(wallet.getId(), id -> new NetChange(wallet));
+    }
+
+    /**
+     * Net balance change of one wallet, kept in minor units for fixed point wallets so validating and applying a
+     * batch does not allocate.
+     */
+    private static final class NetChange {
+        private final Wallet wallet;
+        private BigDecimal amount = BigDecimal.ZERO;
+        private long units;
+
+        private NetChange(Wallet wallet) {
+            this.wallet = wallet;
+        }
+
+        void debit(BigDecimal delta) {
+            if (wallet.isFixedPoint()) {
+                long deltaUnits = FixedPointMoney.toMinorUnits(delta, wallet.getMinorUnitScale());
+                if (FixedPointMoney.add(wallet.getBalanceUnits(), units) < deltaUnits) {
+                    throw new IllegalArgumentException("Insufficient balance in source wallet");
+                }
+                units = FixedPointMoney.subtract(units, deltaUnits);
+            } else {
+                if (wallet.getBalance().add(amount).compareTo(delta) < 0) {
+                    throw new IllegalArgumentException("Insufficient balance in source wallet");
+                }
+                amount = amount.subtract(delta);
+            }
+        }
+
+        void credit(BigDecimal delta) {
+            if (wallet.isFixedPoint()) {
+                units = FixedPointMoney.add(units, FixedPointMoney.toMinorUnits(delta, wallet.getMinorUnitScale()));
+            } else {
+                amount = amount.add(delta);
+            }
+        }
+
+        void apply(long epochNanos) {
+            if (wallet.isFixedPoint()) {
+                long balanceUnits = FixedPointMoney.add(wallet.getBalanceUnits(), units);
+                wallet.setBalanceUnits(balanceUnits);
+                wallet.addBalanceHistoryUnits(balanceUnits, epochNanos);
+            } else {
+                BigDecimal balance = wallet.getBalance().add(amount);
+                wallet.setBalance(balance);
+                wallet.addBalanceHistory(balance, epochNanos);
+            }
+        }
+    }
+
+    private record PendingPosting(String postingId, Wallet sourceWallet, Wallet destinationWallet, BigDecimal amount) {
+    }
+
+    private static final class UndoLog {
+        private final Deque<Entry> entries = new ArrayDeque<>();
+
+        void record(Wallet wallet) {
+            boolean fixedPoint = wallet.isFixedPoint();
+            entries.push(new Entry(wallet, fixedPoint ? null : wallet.getBalance(), fixedPoint ? wallet.getBalanceUnits() : 0,
+                    wallet.getPostings().size(), wallet.getBalanceHistory().size()));
+        }
+
+        void undo(EntityIndex index) {
+            while (!entries.isEmpty()) {
+                Entry entry = entries.pop();
+                if (entry.wallet().isFixedPoint()) {
+                    entry.wallet().setBalanceUnits(entry.balanceUnits());
+                } else {
+                    entry.wallet().setBalance(entry.balance());
+                }
+                entry.wallet().truncateBalanceHistory(entry.historySize());
+                index.truncatePostings(entry.wallet(), entry.postingCount());
+            }
+        }
+
+        private record Entry(Wallet wallet, BigDecimal balance, long balanceUnits, int postingCount, int historySize) {
+        }
+    }
+}
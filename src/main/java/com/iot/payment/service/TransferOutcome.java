@@ -0,0 +1,11 @@
+package com.iot.payment.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What became of a batch of transfers: the postings made, and the reason every rejected transfer was not made, by
+ * posting id in the order of the batch.
+ */
+public record TransferOutcome(List<String> postingIds, Map<String, String> rejections) {
+}
@@ -11,4 +11,5 @@ public class TransferRequest {
     private String sourceWalletId;
     private String destinationWalletId;
     private BigDecimal amount;
+    private String postingId;
 }
\ No newline at end of file
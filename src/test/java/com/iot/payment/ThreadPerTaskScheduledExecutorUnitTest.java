@@ -0,0 +1,58 @@
+package com.iot.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ThreadPerTaskScheduledExecutorUnitTest {
+
+    @Test
+    public void everyTaskShouldRunAtOnce() throws InterruptedException {
+        ThreadPerTaskScheduledExecutor executor = new ThreadPerTaskScheduledExecutor(Thread::new);
+        int tasks = 64;
+        CountDownLatch started = new CountDownLatch(tasks);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < tasks; i++) {
+            executor.submit(() -> {
+                started.countDown();
+                release.await();
+                return null;
+            });
+        }
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+        }));
+    }
+
+    @Test
+    public void delayedTasksShouldEachRunOnAThreadOfTheirOwn() throws InterruptedException {
+        ThreadPerTaskScheduledExecutor executor = new ThreadPerTaskScheduledExecutor(Thread::new);
+        AtomicReference<Thread> first = new AtomicReference<>();
+        AtomicReference<Thread> second = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(2);
+        executor.schedule(() -> {
+            first.set(Thread.currentThread());
+            done.countDown();
+        }, 10, TimeUnit.MILLISECONDS);
+        executor.schedule(() -> {
+            second.set(Thread.currentThread());
+            done.countDown();
+        }, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotEquals(first.get(), second.get());
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,57 @@
+package com.iot.payment.benchmark;
+
+import com.iot.payment.commandmodel.Wallet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Wallet#getBalanceAt} at a random instant of a balance history of the given depth.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BalanceAtBenchmark {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Param({"100", "10000", "1000000"})
+    private int depth;
+
+    private Wallet wallet;
+
+    @Setup
+    public void setup() {
+        wallet = Wallet.builder().id("walletId").balance(BigDecimal.ZERO).build();
+        for (int i = 0; i < depth; i++) {
+            wallet.addBalanceHistory(BigDecimal.valueOf(i, 2), START.plusSeconds(i));
+        }
+    }
+
+    @Benchmark
+    public BigDecimal getBalanceAt() {
+        return wallet.getBalanceAt(START.plusSeconds(ThreadLocalRandom.current().nextInt(depth)).plusNanos(1));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BalanceAtBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,117 @@
+package com.iot.payment.benchmark;
+
+import com.iot.payment.LedgerApplication;
+import com.iot.payment.commandmodel.aggregate.EntityAggregate;
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.eventhandling.EventProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained {@link TransferCommand}s of four threads against {@code entities} {@link EntityAggregate}s of the whole
+ * application on a file based H2 event store, through the simple command bus or the batching command bus. A thread
+ * waits for every single command, or keeps bursts of commands in flight as many concurrent clients would. The event
+ * processors are stopped, so only command handling and the appends are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBusBenchmark {
+    private static final int BURST = 100;
+
+    @Param({"simple", "batching"})
+    private String commandBus;
+
+    @Param({"1", "64"})
+    private int entities;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private CommandGateway commandGateway;
+    private String[] entityIds;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("command-bus-benchmark");
+        context = new SpringApplicationBuilder(LedgerApplication.class).properties(
+                "server.port=0",
+                "logging.level.root=WARN",
+                "spring.datasource.url=jdbc:h2:file:" + directory.resolve("ledger"),
+                "spring.jpa.hibernate.ddl-auto=update",
+                "ledger.commands.batching.enabled=" + "batching".equals(commandBus)).run();
+        context.getBean(EventProcessingConfiguration.class).eventProcessors().values().forEach(EventProcessor::shutDown);
+        commandGateway = context.getBean(CommandGateway.class);
+        entityIds = new String[entities];
+        for (int i = 0; i < entities; i++) {
+            entityIds[i] = "entity-" + i;
+            commandGateway.sendAndWait(new CreateEntityCommand(entityIds[i]));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object transfer() {
+        return commandGateway.sendAndWait(transferCommand());
+    }
+
+    /**
+     * Keeps {@value #BURST} commands in flight per thread.
+     */
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BURST)
+    public void transferBurst() {
+        CompletableFuture<?>[] sent = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            sent[i] = commandGateway.send(transferCommand());
+        }
+        CompletableFuture.allOf(sent).join();
+    }
+
+    private TransferCommand transferCommand() {
+        String entityId = entityIds[ThreadLocalRandom.current().nextInt(entities)];
+        return new TransferCommand(entityId, "source", "destination", BigDecimal.ONE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CommandBusBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+package com.iot.payment.benchmark;
+
+import com.iot.payment.commandmodel.aggregate.EntityAggregate;
+import com.iot.payment.coreapi.commands.BatchTransferCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import com.iot.payment.coreapi.events.EntityCreatedEvent;
+import com.iot.payment.coreapi.events.Movement;
+import com.iot.payment.coreapi.events.TransferEvent;
+import org.axonframework.test.aggregate.AggregateTestFixture;
+import org.axonframework.test.aggregate.FixtureConfiguration;
+import org.axonframework.test.aggregate.ResultValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EntityAggregate} command handling through an {@link AggregateTestFixture}: every invocation sources the
+ * aggregate from {@code history} prior events and handles one command.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityAggregateBenchmark {
+    private static final String ENTITY_ID = "entityId";
+    private static final String SOURCE_ID = "sourceId";
+    private static final String DESTINATION_ID = "destinationId";
+
+    @Param({"1", "100", "1000"})
+    private int history;
+
+    private FixtureConfiguration<EntityAggregate> fixture;
+    private List<Object> givenEvents;
+    private TransferCommand transferCommand;
+    private BatchTransferCommand batchTransferCommand;
+
+    @Setup
+    public void setup() {
+        fixture = new AggregateTestFixture<>(EntityAggregate.class);
+        givenEvents = new ArrayList<>(history);
+        givenEvents.add(new EntityCreatedEvent(ENTITY_ID));
+        for (int i = 1; i < history; i++) {
+            givenEvents.add(new TransferEvent(ENTITY_ID, SOURCE_ID, DESTINATION_ID, BigDecimal.ONE, UUID.randomUUID().toString()));
+        }
+        transferCommand = new TransferCommand(ENTITY_ID, SOURCE_ID, DESTINATION_ID, BigDecimal.ONE, UUID.randomUUID().toString());
+        List<Movement> movements = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            movements.add(new Movement(SOURCE_ID, DESTINATION_ID, BigDecimal.ONE, UUID.randomUUID().toString()));
+        }
+        batchTransferCommand = new BatchTransferCommand(ENTITY_ID, movements);
+    }
+
+    @Benchmark
+    public ResultValidator<EntityAggregate> transfer() {
+        return fixture.given(givenEvents).when(transferCommand);
+    }
+
+    @Benchmark
+    public ResultValidator<EntityAggregate> batchTransfer() {
+        return fixture.given(givenEvents).when(batchTransferCommand);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EntityAggregateBenchmark.class.getSimpleName()).build()).run();
+    }
+}
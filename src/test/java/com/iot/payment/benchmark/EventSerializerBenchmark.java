@@ -0,0 +1,122 @@
+package com.iot.payment.benchmark;
+
+import com.iot.payment.commandmodel.aggregate.EntityAggregateCodec;
+import com.iot.payment.coreapi.events.Movement;
+import com.iot.payment.coreapi.events.MovementUpdatedEvent;
+import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.coreapi.events.TransfersBatchedEvent;
+import com.iot.payment.serialization.CompactCodec;
+import com.iot.payment.serialization.CompactEncoding;
+import com.iot.payment.serialization.CompactSerializer;
+import com.iot.payment.serialization.LedgerEventCodecs;
+import com.thoughtworks.xstream.XStream;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.xml.XStreamSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes and deserializes event and snapshot payloads with Axon's XStream serializer, which stored every event so
+ * far, and with the compact serializer. The size of every payload is logged when a trial starts. XStream cannot read
+ * records back, so deserializing {@code movementUpdated} with it fails.
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventSerializerBenchmark {
+    private static final int BATCHED_MOVEMENTS = 16;
+
+    @Param({"xstream", "compact"})
+    private String serializer;
+
+    @Param({"transfer", "movementUpdated", "transfersBatched", "snapshot"})
+    private String payload;
+
+    private Serializer payloadSerializer;
+    private Object object;
+    private SerializedObject<byte[]> serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        XStream xStream = new XStream();
+        xStream.allowTypesByWildcard(new String[]{"com.iot.payment.**"});
+        XStreamSerializer xStreamSerializer = XStreamSerializer.builder().xStream(xStream).build();
+        List<CompactCodec<?>> codecs = new ArrayList<>(LedgerEventCodecs.all());
+        codecs.add(EntityAggregateCodec.SNAPSHOT);
+        payloadSerializer = "compact".equals(serializer)
+                ? CompactSerializer.builder().delegate(xStreamSerializer).codecs(codecs).build()
+                : xStreamSerializer;
+
+        String entityId = UUID.randomUUID().toString();
+        object = switch (payload) {
+            case "transfer" -> new TransferEvent(entityId, "sourceWalletId", "destinationWalletId", new BigDecimal("125.40"), UUID.randomUUID().toString());
+            case "movementUpdated" -> new MovementUpdatedEvent(UUID.randomUUID().toString(), "sourceWalletId", "destinationWalletId",
+                    new BigDecimal("125.40"), UUID.randomUUID().toString());
+            case "transfersBatched" -> {
+                List<Movement> movements = new ArrayList<>();
+                for (int i = 0; i < BATCHED_MOVEMENTS; i++) {
+                    movements.add(new Movement("sourceWalletId", "destinationWalletId", BigDecimal.valueOf(i, 2), UUID.randomUUID().toString()));
+                }
+                yield new TransfersBatchedEvent(entityId, movements);
+            }
+            case "snapshot" -> snapshot(entityId);
+            default -> throw new IllegalArgumentException("Unknown payload " + payload);
+        };
+        serialized = payloadSerializer.serialize(object, byte[].class);
+        log.info("{} {} payload takes {} bytes", serializer, payload, serialized.getData().length);
+    }
+
+    /**
+     * The aggregate has no public way to set its state, so the snapshot is read from its binary form.
+     */
+    private static Object snapshot(String entityId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            CompactEncoding.writeString(out, entityId);
+        }
+        return EntityAggregateCodec.SNAPSHOT.reader().read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 1);
+    }
+
+    @Benchmark
+    public SerializedObject<byte[]> serialize() {
+        return payloadSerializer.serialize(object, byte[].class);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return payloadSerializer.deserialize(serialized);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EventSerializerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
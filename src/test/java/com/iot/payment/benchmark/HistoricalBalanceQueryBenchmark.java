@@ -0,0 +1,82 @@
+package com.iot.payment.benchmark;
+
+import com.iot.payment.coreapi.events.EntityCreatedEvent;
+import com.iot.payment.coreapi.queries.FindHistoricalBalanceOfWallet;
+import com.iot.payment.querymodel.HistoricalBalanceResponse;
+import com.iot.payment.querymodel.InMemoryEntityEventHandler;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import com.iot.payment.service.LedgerService;
+import com.iot.payment.service.LedgerServiceImpl;
+import com.iot.payment.service.TransferRequest;
+import org.axonframework.eventhandling.SimpleEventBus;
+import org.axonframework.queryhandling.SimpleQueryUpdateEmitter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link FindHistoricalBalanceOfWallet} query handler over a projection of {@code entities} entities whose
+ * wallets each carry {@code depth} balance history entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoricalBalanceQueryBenchmark {
+    private static final String SOURCE_WALLET_ID = "FIAT_CURRENCY_SOURCE_1";
+    private static final String DESTINATION_WALLET_ID = "FIAT_CURRENCY_DESTINATION_1";
+
+    @Param({"10", "100"})
+    private int entities;
+
+    @Param({"100", "10000"})
+    private int depth;
+
+    private InMemoryEntityEventHandler handler;
+    private FindHistoricalBalanceOfWallet query;
+
+    @Setup
+    public void setup() {
+        LedgerInMemoryRepository repository = new LedgerInMemoryRepository();
+        handler = new InMemoryEntityEventHandler(repository, SimpleQueryUpdateEmitter.builder().build(), SimpleEventBus.builder().build());
+        LedgerService ledgerService = new LedgerServiceImpl(repository);
+
+        List<TransferRequest> forth = List.of(TransferRequest.builder().sourceWalletId(SOURCE_WALLET_ID).destinationWalletId(DESTINATION_WALLET_ID).amount(BigDecimal.ONE).build());
+        List<TransferRequest> back = List.of(TransferRequest.builder().sourceWalletId(DESTINATION_WALLET_ID).destinationWalletId(SOURCE_WALLET_ID).amount(BigDecimal.ONE).build());
+        for (int i = 0; i < entities; i++) {
+            String entityId = "entity-" + i;
+            handler.on(new EntityCreatedEvent(entityId));
+            for (int j = 0; j < depth; j++) {
+                ledgerService.transfer(entityId, j % 2 == 0 ? forth : back);
+            }
+        }
+        query = new FindHistoricalBalanceOfWallet(LocalDateTime.now());
+    }
+
+    @Benchmark
+    public List<HistoricalBalanceResponse> findHistoricalBalance() {
+        return handler.handle(query);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HistoricalBalanceQueryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
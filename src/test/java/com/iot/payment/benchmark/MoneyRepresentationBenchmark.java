@@ -0,0 +1,81 @@
+package com.iot.payment.benchmark;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.FixedPointMoney;
+import com.iot.payment.commandmodel.Wallet;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import com.iot.payment.service.LedgerService;
+import com.iot.payment.service.LedgerServiceImpl;
+import com.iot.payment.service.TransferRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares transfers between {@link BigDecimal} wallets and wallets keeping their balance in minor units.
+ * Run with {@code -prof gc} to see the allocation rate per batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyRepresentationBenchmark {
+    private static final String ENTITY_ID = "entityId";
+    private static final String SOURCE_WALLET_ID = "sourceWalletId";
+    private static final String DESTINATION_WALLET_ID = "destinationWalletId";
+
+    @Param({"DECIMAL", "FIXED_POINT"})
+    private String representation;
+
+    @Param({"1", "10"})
+    private int batchSize;
+
+    private LedgerService ledgerService;
+    private List<TransferRequest> requests;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        int scale = "FIXED_POINT".equals(representation) ? 2 : FixedPointMoney.DECIMAL;
+        Wallet sourceWallet = Wallet.builder().id(SOURCE_WALLET_ID).minorUnitScale(scale).balance(new BigDecimal("1000000000000.00")).build();
+        Wallet destinationWallet = Wallet.builder().id(DESTINATION_WALLET_ID).minorUnitScale(scale).balance(BigDecimal.ZERO).build();
+        Account account = Account.builder().id("accountId").wallets(List.of(sourceWallet, destinationWallet)).state(AccountState.OPEN).build();
+        LedgerInMemoryRepository repository = new LedgerInMemoryRepository();
+        repository.register(Entity.builder().id(ENTITY_ID).accounts(List.of(account)).build());
+        ledgerService = new LedgerServiceImpl(repository);
+
+        requests = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            requests.add(TransferRequest.builder().sourceWalletId(SOURCE_WALLET_ID).destinationWalletId(DESTINATION_WALLET_ID).amount(new BigDecimal("12.34")).postingId("posting-" + i).build());
+        }
+    }
+
+    @Benchmark
+    public List<String> transfer() {
+        return ledgerService.transfer(ENTITY_ID, requests);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MoneyRepresentationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
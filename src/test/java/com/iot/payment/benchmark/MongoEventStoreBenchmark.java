@@ -0,0 +1,133 @@
+package com.iot.payment.benchmark;
+
+import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.repository.MongoEventLayout;
+import com.iot.payment.repository.MongoTestServer;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.thoughtworks.xstream.XStream;
+import org.axonframework.eventhandling.DomainEventMessage;
+import org.axonframework.eventhandling.GenericDomainEventMessage;
+import org.axonframework.eventhandling.TrackedEventMessage;
+import org.axonframework.extensions.mongo.DefaultMongoTemplate;
+import org.axonframework.extensions.mongo.eventsourcing.eventstore.MongoEventStorageEngine;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.xml.XStreamSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends and replays of {@link TransferEvent}s on a {@link MongoTestServer}, in Axon's default document per event
+ * layout or in the compact layout of the ledger. An append writes the events of one unit of work and is reported per
+ * commit; a replay sources one aggregate and a stream reads the store from the start like a tracking processor does,
+ * both reported per event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MongoEventStoreBenchmark {
+    private static final int AGGREGATE_EVENTS = 256;
+    private static final int STREAMED_EVENTS = 4096;
+
+    @Param({"document-per-event", "compact"})
+    private String layout;
+
+    @Param({"1", "16"})
+    private int eventsPerCommit;
+
+    private MongoTestServer mongo;
+    private MongoClient mongoClient;
+    private MongoEventStorageEngine storageEngine;
+    private String appendedAggregateId;
+    private long appendedSequenceNumber;
+    private String replayedAggregateId;
+
+    @Setup
+    public void setup() {
+        mongo = MongoTestServer.start();
+        mongoClient = MongoClients.create(mongo.uri());
+        XStream xStream = new XStream();
+        xStream.allowTypesByWildcard(new String[]{"com.iot.payment.**"});
+        Serializer serializer = XStreamSerializer.builder().xStream(xStream).build();
+        storageEngine = MongoEventStorageEngine.builder()
+                .mongoTemplate(DefaultMongoTemplate.builder().mongoDatabase(mongoClient, "ledger").build())
+                .storageStrategy("compact".equals(layout) ? MongoEventLayout.compact(Duration.ofSeconds(1)) : MongoEventLayout.documentPerEvent())
+                .eventSerializer(serializer)
+                .snapshotSerializer(serializer)
+                .batchSize(512)
+                .build();
+
+        replayedAggregateId = UUID.randomUUID().toString();
+        for (long sequenceNumber = 0; sequenceNumber < AGGREGATE_EVENTS; sequenceNumber += eventsPerCommit) {
+            storageEngine.appendEvents(events(replayedAggregateId, sequenceNumber));
+        }
+        while (storageEngine.readEvents(null, false).limit(STREAMED_EVENTS).count() < STREAMED_EVENTS) {
+            String aggregateId = UUID.randomUUID().toString();
+            for (long sequenceNumber = 0; sequenceNumber < AGGREGATE_EVENTS; sequenceNumber += eventsPerCommit) {
+                storageEngine.appendEvents(events(aggregateId, sequenceNumber));
+            }
+        }
+        appendedAggregateId = UUID.randomUUID().toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mongoClient.close();
+        mongo.close();
+    }
+
+    private List<DomainEventMessage<TransferEvent>> events(String aggregateId, long firstSequenceNumber) {
+        List<DomainEventMessage<TransferEvent>> events = new ArrayList<>(eventsPerCommit);
+        for (int i = 0; i < eventsPerCommit; i++) {
+            TransferEvent event = new TransferEvent(aggregateId, "source", "destination", BigDecimal.ONE, UUID.randomUUID().toString());
+            events.add(new GenericDomainEventMessage<>("EntityAggregate", aggregateId, firstSequenceNumber + i, event));
+        }
+        return events;
+    }
+
+    @Benchmark
+    public void append() {
+        storageEngine.appendEvents(events(appendedAggregateId, appendedSequenceNumber));
+        appendedSequenceNumber += eventsPerCommit;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AGGREGATE_EVENTS)
+    public long replay() {
+        return storageEngine.readEvents(replayedAggregateId).asStream().map(DomainEventMessage::getPayload).count();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STREAMED_EVENTS)
+    public long stream() {
+        return storageEngine.readEvents(null, false).limit(STREAMED_EVENTS).map(TrackedEventMessage::getPayload).count();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MongoEventStoreBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+package com.iot.payment.benchmark;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.commandmodel.Wallet;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import com.iot.payment.service.LedgerService;
+import com.iot.payment.service.LedgerServiceImpl;
+import com.iot.payment.service.TransferRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows that {@code modifyPosting} latency stays flat as the number of postings per wallet grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PostingLookupBenchmark {
+    private static final String ENTITY_ID = "entityId";
+    private static final String SOURCE_WALLET_ID = "sourceWalletId";
+    private static final String DESTINATION_WALLET_ID = "destinationWalletId";
+
+    @Param({"1000", "10000", "100000"})
+    private int postings;
+
+    private LedgerService ledgerService;
+    private List<String> postingIds;
+
+    @Setup
+    public void setup() {
+        Wallet sourceWallet = Wallet.builder().id(SOURCE_WALLET_ID).balance(BigDecimal.valueOf(Long.MAX_VALUE)).build();
+        Wallet destinationWallet = Wallet.builder().id(DESTINATION_WALLET_ID).balance(BigDecimal.ZERO).build();
+        Account account = Account.builder().id("accountId").wallets(List.of(sourceWallet, destinationWallet)).state(AccountState.OPEN).build();
+        LedgerInMemoryRepository repository = new LedgerInMemoryRepository();
+        repository.register(Entity.builder().id(ENTITY_ID).accounts(List.of(account)).build());
+        ledgerService = new LedgerServiceImpl(repository);
+
+        List<TransferRequest> requests = new ArrayList<>(postings);
+        for (int i = 0; i < postings; i++) {
+            requests.add(TransferRequest.builder().sourceWalletId(SOURCE_WALLET_ID).destinationWalletId(DESTINATION_WALLET_ID).amount(BigDecimal.ONE).build());
+        }
+        postingIds = ledgerService.transfer(ENTITY_ID, requests);
+    }
+
+    @Benchmark
+    public void modifyPosting() {
+        String postingId = postingIds.get(ThreadLocalRandom.current().nextInt(postingIds.size()));
+        // A new amount each time, modifying a posting to what it already holds is skipped
+        BigDecimal amount = BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(1, 1000));
+        ledgerService.modifyPosting(ENTITY_ID, SOURCE_WALLET_ID, DESTINATION_WALLET_ID, postingId, amount, PostingState.CLEARED);
+    }
+
+    @Benchmark
+    public List<String> transfer() {
+        return ledgerService.transfer(ENTITY_ID, List.of(TransferRequest.builder().sourceWalletId(SOURCE_WALLET_ID).destinationWalletId(DESTINATION_WALLET_ID).amount(BigDecimal.ONE).build()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PostingLookupBenchmark.class.getSimpleName()).build()).run();
+    }
+}
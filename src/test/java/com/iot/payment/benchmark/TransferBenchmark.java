@@ -0,0 +1,96 @@
+package com.iot.payment.benchmark;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Wallet;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import com.iot.payment.service.LedgerService;
+import com.iot.payment.service.LedgerServiceImpl;
+import com.iot.payment.service.TransferRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single ({@code batchSize=1}) and batch transfers between random wallet pairs of one entity. Fewer wallets means
+ * more lock contention in the multi threaded variants. The ledger is rebuilt every iteration so posting lists do not
+ * grow across the whole run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+    private static final String ENTITY_ID = "entityId";
+
+    @Param({"2", "16", "256"})
+    private int wallets;
+
+    @Param({"1", "100"})
+    private int batchSize;
+
+    private LedgerService ledgerService;
+    private String[] walletIds;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        walletIds = new String[wallets];
+        List<Wallet> walletList = new ArrayList<>(wallets);
+        for (int i = 0; i < wallets; i++) {
+            walletIds[i] = "wallet-" + i;
+            walletList.add(Wallet.builder().id(walletIds[i]).balance(BigDecimal.valueOf(Long.MAX_VALUE)).build());
+        }
+        Account account = Account.builder().id("accountId").wallets(walletList).state(AccountState.OPEN).build();
+        LedgerInMemoryRepository repository = new LedgerInMemoryRepository();
+        repository.register(Entity.builder().id(ENTITY_ID).accounts(List.of(account)).build());
+        ledgerService = new LedgerServiceImpl(repository);
+    }
+
+    @Benchmark
+    public List<String> transfer() {
+        return ledgerService.transfer(ENTITY_ID, requests());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<String> transferFourThreads() {
+        return ledgerService.transfer(ENTITY_ID, requests());
+    }
+
+    private List<TransferRequest> requests() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<TransferRequest> requests = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            int source = random.nextInt(wallets);
+            int destination = (source + 1 + random.nextInt(wallets - 1)) % wallets;
+            requests.add(TransferRequest.builder().sourceWalletId(walletIds[source]).destinationWalletId(walletIds[destination]).amount(BigDecimal.ONE).build());
+        }
+        return requests;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TransferBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,179 @@
+package com.iot.payment.cluster;
+
+import com.iot.payment.LedgerApplication;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.coreapi.events.MovementUpdatedEvent;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import org.axonframework.common.stream.BlockingStream;
+import org.axonframework.eventhandling.TrackedEventMessage;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Several ledger nodes in one JVM, on their own ports and sharing one in-memory event store.
+ */
+public class LedgerClusterIntegrationTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int ENTITIES = 12;
+    private static final String SECRET = "cluster-secret";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final HttpClient redirectingClient = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    private final String database = "ledger-cluster-" + UUID.randomUUID();
+
+    @AfterEach
+    public void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    private ConfigurableApplicationContext start(String nodeId, int port, int... seeds) {
+        List<String> seedUrls = new ArrayList<>();
+        for (int seed : seeds) {
+            seedUrls.add(url(seed));
+        }
+        ConfigurableApplicationContext node = new SpringApplicationBuilder(LedgerApplication.class).properties(
+                "server.port=" + port,
+                "spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+                "spring.jpa.hibernate.ddl-auto=update",
+                "ledger.cluster.enabled=true",
+                "ledger.serializer.compact.enabled=true",
+                "ledger.cluster.node-id=" + nodeId,
+                "ledger.cluster.seeds=" + String.join(",", seedUrls),
+                "ledger.cluster.secret=" + SECRET,
+                "ledger.cluster.heartbeat-interval=200ms",
+                "ledger.cluster.member-timeout=3s").run();
+        nodes.add(node);
+        return node;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String url(int port) {
+        return "http://localhost:" + port;
+    }
+
+    private HttpResponse<String> send(HttpClient httpClient, String method, String url) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> heartbeat(int port, String sender, int senderPort, String secret) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url(port) + LedgerCluster.MEMBERS_PATH))
+                .header("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString(sender + " " + url(senderPort) + " 0\n"));
+        if (secret != null) {
+            request.header(ClusterSecretInterceptor.SECRET_HEADER, secret);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static boolean projects(ConfigurableApplicationContext node, String entityId) {
+        LedgerInMemoryRepository repository = node.getBean(LedgerInMemoryRepository.class);
+        return repository.findEntity(entityId) != null && repository.findEntity(entityId).getAccounts().get(0).getWallets().get(0).getPostings().size() == 1;
+    }
+
+    /**
+     * Whether every entity is projected by its owner, and only by its owner.
+     */
+    private boolean projectedByTheirOwners(List<String> entityIds) {
+        for (String entityId : entityIds) {
+            for (ConfigurableApplicationContext node : nodes) {
+                boolean owner = node.getBean(LedgerCluster.class).owns(entityId);
+                if (projects(node, entityId) != owner || (!owner && node.getBean(LedgerInMemoryRepository.class).findEntity(entityId) != null)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean membersAre(int members) {
+        return nodes.stream().allMatch(node -> node.getBean(LedgerCluster.class).memberNames().size() == members);
+    }
+
+    private long movementUpdatedEvents(ConfigurableApplicationContext node) throws InterruptedException {
+        long movements = 0;
+        try (BlockingStream<TrackedEventMessage<?>> events = node.getBean(EventStore.class).openStream(null)) {
+            while (events.hasNextAvailable()) {
+                if (events.nextAvailable().getPayloadType().equals(MovementUpdatedEvent.class)) {
+                    movements++;
+                }
+            }
+        }
+        return movements;
+    }
+
+    @Test
+    public void entitiesShouldBeSplitOverTheNodesAndRebalancedWhenANodeJoins() throws Exception {
+        int firstPort = freePort();
+        int secondPort = freePort();
+        ConfigurableApplicationContext first = start("first", firstPort, secondPort);
+        start("second", secondPort, firstPort);
+        await().atMost(TIMEOUT).until(() -> membersAre(2));
+        assertEquals(401, heartbeat(firstPort, "second", secondPort, null).statusCode());
+        assertEquals(401, heartbeat(firstPort, "second", secondPort, "guessed").statusCode());
+        assertEquals(200, heartbeat(firstPort, "second", secondPort, SECRET).statusCode());
+
+        // Every command goes to the first node, which sends those of the entities it does not own to the second
+        List<String> entityIds = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            String entityId = UUID.randomUUID().toString();
+            entityIds.add(entityId);
+            assertEquals(200, send(client, "POST", url(firstPort) + "/entity/" + entityId).statusCode());
+            assertEquals(200, send(client, "POST", url(firstPort) + "/transfer/entity/" + entityId + "/source-id/source/destination-id/destination/amount/5").statusCode());
+        }
+        await().atMost(TIMEOUT).until(() -> projectedByTheirOwners(entityIds));
+
+        String ownedBySecond = entityIds.stream().filter(entityId -> !first.getBean(LedgerCluster.class).owns(entityId)).findFirst().orElseThrow();
+        String latestBalance = "/latest-balance/entity/" + ownedBySecond + "/wallet-id/FIAT_CURRENCY_SOURCE_1";
+        HttpResponse<String> redirect = send(client, "GET", url(firstPort) + latestBalance);
+        assertEquals(307, redirect.statusCode());
+        assertEquals(url(secondPort) + latestBalance, redirect.headers().firstValue("Location").orElseThrow());
+        assertEquals(200, send(redirectingClient, "GET", url(firstPort) + latestBalance).statusCode());
+
+        LedgerInMemoryRepository firstRepository = first.getBean(LedgerInMemoryRepository.class);
+        Map<String, Entity> projectedByFirst = new HashMap<>();
+        entityIds.stream().filter(first.getBean(LedgerCluster.class)::owns)
+                .forEach(entityId -> projectedByFirst.put(entityId, firstRepository.findEntity(entityId)));
+
+        int thirdPort = freePort();
+        start("third", thirdPort, firstPort);
+        await().atMost(TIMEOUT).until(() -> membersAre(3));
+        await().atMost(TIMEOUT).until(() -> projectedByTheirOwners(entityIds));
+
+        // The entities first kept were not rebuilt
+        projectedByFirst.forEach((entityId, entity) -> {
+            if (first.getBean(LedgerCluster.class).owns(entityId)) {
+                assertSame(entity, firstRepository.findEntity(entityId));
+            }
+        });
+
+        // The replays after the join published no derived events again
+        assertEquals(ENTITIES, movementUpdatedEvents(first));
+    }
+}
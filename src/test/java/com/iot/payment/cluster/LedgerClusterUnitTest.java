@@ -0,0 +1,191 @@
+package com.iot.payment.cluster;
+
+import org.axonframework.commandhandling.distributed.Member;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LedgerClusterUnitTest {
+    private static final int ENTITIES = 1000;
+
+    private final MutableClock clock = new MutableClock();
+
+    private LedgerCluster node(String nodeId) {
+        return LedgerCluster.builder().nodeId(nodeId).url(URI.create("http://" + nodeId)).secret("secret").memberTimeout(Duration.ofSeconds(5)).clock(clock).build();
+    }
+
+    /**
+     * What a heartbeat of {@code from} to {@code to} does, without HTTP.
+     */
+    private static void heartbeat(LedgerCluster from, LedgerCluster to) {
+        to.receiveHeartbeat(from.heartbeatMessage());
+    }
+
+    private static List<String> entityIds() {
+        List<String> entityIds = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            entityIds.add(UUID.randomUUID().toString());
+        }
+        return entityIds;
+    }
+
+    @Test
+    public void membersShouldAgreeOnTheOwnerOfEveryEntity() {
+        LedgerCluster first = node("first");
+        LedgerCluster second = node("second");
+        heartbeat(first, second);
+        heartbeat(second, first);
+
+        int ownedByFirst = 0;
+        for (String entityId : entityIds()) {
+            assertEquals(first.ownerOf(entityId).name(), second.ownerOf(entityId).name());
+            assertTrue(first.owns(entityId) != second.owns(entityId));
+            ownedByFirst += first.owns(entityId) ? 1 : 0;
+        }
+        assertTrue(ownedByFirst > ENTITIES / 4 && ownedByFirst < ENTITIES * 3 / 4, "first owns " + ownedByFirst + " entities");
+    }
+
+    @Test
+    public void aJoiningMemberShouldOnlyTakeOverEntities() {
+        LedgerCluster first = node("first");
+        LedgerCluster second = node("second");
+        LedgerCluster third = node("third");
+        heartbeat(second, first);
+        List<String> entityIds = entityIds();
+        List<String> ownersBefore = entityIds.stream().map(entityId -> first.ownerOf(entityId).name()).toList();
+
+        heartbeat(third, first);
+
+        int moved = 0;
+        for (int i = 0; i < ENTITIES; i++) {
+            String owner = first.ownerOf(entityIds.get(i)).name();
+            if (!owner.equals(ownersBefore.get(i))) {
+                assertEquals("third", owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > 0 && moved < ENTITIES / 2, moved + " entities moved");
+    }
+
+    @Test
+    public void membersShouldBeLearntFromOtherMembersAndExpire() {
+        LedgerCluster first = node("first");
+        LedgerCluster second = node("second");
+        LedgerCluster third = node("third");
+        List<Set<String>> changes = new ArrayList<>();
+        first.onMembershipChange(changes::add);
+        heartbeat(third, second);
+
+        // second answers the heartbeat of first with third as well
+        first.receiveHeartbeat(second.receiveHeartbeat(first.heartbeatMessage()));
+        assertEquals(Set.of("first", "second", "third"), first.memberNames());
+
+        clock.advance(Duration.ofSeconds(3));
+        heartbeat(second, first);
+        clock.advance(Duration.ofSeconds(3));
+        first.expire();
+
+        assertEquals(Set.of("first", "second"), first.memberNames());
+        assertEquals(List.of(Set.of("first", "second", "third"), Set.of("first", "second")), changes);
+    }
+
+    @Test
+    public void aMemberShouldOnlyBeDroppedAfterSeveralFailedCommandsInARow() {
+        LedgerCluster first = node("first");
+        LedgerCluster second = node("second");
+        heartbeat(second, first);
+        Member ofSecond = entityIds().stream().map(first::ownerOf).filter(member -> !member.local()).findFirst().orElseThrow();
+
+        ofSecond.suspect();
+        ofSecond.suspect();
+        heartbeat(second, first);
+        ofSecond.suspect();
+        ofSecond.suspect();
+        assertEquals(Set.of("first", "second"), first.memberNames());
+
+        ofSecond.suspect();
+        assertEquals(Set.of("first"), first.memberNames());
+    }
+
+    @Test
+    public void aDroppedMemberShouldNotBeBroughtBackByGossip() {
+        LedgerCluster first = node("first");
+        LedgerCluster second = node("second");
+        LedgerCluster third = node("third");
+        heartbeat(third, second);
+        heartbeat(second, first);
+        assertEquals(Set.of("first", "second", "third"), first.memberNames());
+
+        // third stops, second still lists it
+        clock.advance(Duration.ofSeconds(3));
+        heartbeat(second, first);
+        clock.advance(Duration.ofSeconds(3));
+        first.expire();
+        heartbeat(second, first);
+        assertEquals(Set.of("first", "second"), first.memberNames());
+        assertTrue(second.memberNames().contains("third"));
+
+        // third is back, then first cannot reach it although second heard from it a moment ago
+        heartbeat(third, second);
+        heartbeat(third, first);
+        clock.advance(Duration.ofSeconds(1));
+        heartbeat(third, second);
+        Member ofThird = entityIds().stream().map(first::ownerOf).filter(member -> member.name().equals("third")).findFirst().orElseThrow();
+        for (int i = 0; i < 3; i++) {
+            ofThird.suspect();
+        }
+        heartbeat(second, first);
+        assertEquals(Set.of("first", "second"), first.memberNames());
+
+        clock.advance(Duration.ofSeconds(1));
+        heartbeat(second, first);
+        assertEquals(Set.of("first", "second"), first.memberNames());
+        heartbeat(third, second);
+        heartbeat(second, first);
+        assertEquals(Set.of("first", "second", "third"), first.memberNames());
+    }
+
+    @Test
+    public void heartbeatsShouldNameTheirSender() {
+        LedgerCluster first = node("first");
+        assertThrows(IllegalArgumentException.class, () -> first.receiveHeartbeat(""));
+        assertThrows(IllegalArgumentException.class, () -> first.receiveHeartbeat("no-url\n"));
+        assertThrows(IllegalArgumentException.class, () -> first.receiveHeartbeat("no-age http://no-age\n"));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
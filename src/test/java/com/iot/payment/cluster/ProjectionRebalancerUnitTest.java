@@ -0,0 +1,116 @@
+package com.iot.payment.cluster;
+
+import com.iot.payment.querymodel.RetainedEntities;
+import org.axonframework.commandhandling.distributed.Member;
+import org.axonframework.common.caching.Cache;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.eventhandling.StreamingEventProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProjectionRebalancerUnitTest {
+    private final LedgerCluster cluster = LedgerCluster.builder().nodeId("first").url(URI.create("http://first")).secret("secret").build();
+    private final StreamingEventProcessor processor = mock(StreamingEventProcessor.class);
+    private final Cache aggregateCache = mock(Cache.class);
+    private final List<String> entityIds = new ArrayList<>();
+    private ProjectionRebalancer rebalancer;
+
+    @BeforeEach
+    public void setup() {
+        EventProcessingConfiguration eventProcessing = mock(EventProcessingConfiguration.class);
+        when(eventProcessing.eventProcessor("entities", StreamingEventProcessor.class)).thenReturn(Optional.of(processor));
+        when(processor.isRunning()).thenReturn(true);
+        rebalancer = new ProjectionRebalancer(cluster, eventProcessing, "entities", aggregateCache, Duration.ZERO);
+        for (int i = 0; i < 100; i++) {
+            entityIds.add(UUID.randomUUID().toString());
+        }
+    }
+
+    private void join(String nodeId) {
+        cluster.receiveHeartbeat(LedgerCluster.builder().nodeId(nodeId).url(URI.create("http://" + nodeId)).secret("secret").build().heartbeatMessage());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate<String> rebalance() {
+        rebalancer.rebalance(cluster.memberNames());
+        ArgumentCaptor<RetainedEntities> retained = ArgumentCaptor.forClass(RetainedEntities.class);
+        var order = inOrder(processor);
+        order.verify(processor).shutDown();
+        order.verify(processor).resetTokens(any(Function.class), retained.capture());
+        order.verify(processor).start();
+        return retained.getValue().entityIds();
+    }
+
+    @Test
+    public void onlyTheEntitiesTakenOverShouldBeReplayed() {
+        join("second");
+        Predicate<String> retained = rebalance();
+
+        verify(aggregateCache).removeAll();
+        for (String entityId : entityIds) {
+            boolean owned = cluster.owns(entityId);
+            assertEquals(owned, retained.test(entityId));
+            assertEquals(owned, rebalancer.projects(entityId, false));
+            // Kept entities were projected before, their replayed events are skipped
+            assertFalse(rebalancer.projects(entityId, true));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void entitiesTakenOverByAnUnfinishedReplayShouldBeReplayedAgain() {
+        join("second");
+        Predicate<String> ownedWithSecond = cluster.ownedEntities();
+        rebalancer.rebalance(cluster.memberNames());
+        Member second = entityIds.stream().map(cluster::ownerOf).filter(member -> !member.local()).findFirst().orElseThrow();
+        for (int i = 0; i < 3; i++) {
+            second.suspect();
+        }
+        rebalancer.rebalance(cluster.memberNames());
+
+        // third joins before the replay of the entities taken over from second finished
+        when(processor.isReplaying()).thenReturn(true);
+        join("third");
+        rebalancer.rebalance(cluster.memberNames());
+        ArgumentCaptor<RetainedEntities> retained = ArgumentCaptor.forClass(RetainedEntities.class);
+        verify(processor, times(3)).resetTokens(any(Function.class), retained.capture());
+
+        Predicate<String> kept = retained.getValue().entityIds();
+        for (String entityId : entityIds) {
+            assertEquals(ownedWithSecond.test(entityId) && cluster.owns(entityId), kept.test(entityId));
+            assertEquals(cluster.owns(entityId) && !kept.test(entityId), rebalancer.projects(entityId, true));
+        }
+    }
+
+    @Test
+    public void aProcessorThatDoesNotRunYetShouldBeRebuiltLater() {
+        when(processor.isRunning()).thenReturn(false);
+        join("second");
+        rebalancer.rebalance(cluster.memberNames());
+        rebalancer.close();
+
+        verify(processor, never()).shutDown();
+        assertTrue(entityIds.stream().allMatch(entityId -> rebalancer.projects(entityId, false)));
+    }
+}
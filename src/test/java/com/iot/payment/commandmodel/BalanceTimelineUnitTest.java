@@ -0,0 +1,234 @@
+package com.iot.payment.commandmodel;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BalanceTimelineUnitTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 10, 0);
+
+    @Test
+    public void balanceAtShouldReturnLatestEntryAtOrBeforeInstant() {
+        BalanceTimeline timeline = new BalanceTimeline();
+        timeline.append(new BigDecimal("100"), START);
+        timeline.append(new BigDecimal("90.50"), START.plusMinutes(1));
+        timeline.append(new BigDecimal("75"), START.plusMinutes(2));
+
+        assertNull(timeline.balanceAt(START.minusNanos(1)));
+        assertEquals(new BigDecimal("100"), timeline.balanceAt(START));
+        assertEquals(new BigDecimal("100"), timeline.balanceAt(START.plusSeconds(59)));
+        assertEquals(new BigDecimal("90.50"), timeline.balanceAt(START.plusMinutes(1)));
+        assertEquals(new BigDecimal("75"), timeline.balanceAt(START.plusDays(1)));
+        assertEquals(new BigDecimal("75"), timeline.balanceAt(LocalDateTime.MAX));
+        assertNull(timeline.balanceAt(LocalDateTime.MIN));
+    }
+
+    @Test
+    public void appendShouldKeepEntriesOrderedWhenClockGoesBackwards() {
+        BalanceTimeline timeline = new BalanceTimeline();
+        timeline.append(new BigDecimal("1"), START);
+        timeline.append(new BigDecimal("3"), START.plusSeconds(2));
+        timeline.append(new BigDecimal("2"), START.plusSeconds(1));
+
+        assertEquals(3, timeline.size());
+        assertEquals(new BigDecimal("2"), timeline.get(1).getBalance());
+        assertEquals(START.plusSeconds(1), timeline.get(1).getTimestamp());
+        assertEquals(new BigDecimal("2"), timeline.balanceAt(START.plusSeconds(1).plusNanos(500)));
+    }
+
+    @Test
+    public void entriesAtTheSameInstantShouldResolveToTheLastOne() {
+        BalanceTimeline timeline = new BalanceTimeline();
+        timeline.append(new BigDecimal("10"), START);
+        timeline.append(new BigDecimal("20"), START);
+
+        assertEquals(new BigDecimal("20"), timeline.balanceAt(START));
+    }
+
+    @Test
+    public void balancesBeyondLongRangeShouldRoundTrip() {
+        BalanceTimeline timeline = new BalanceTimeline();
+        BigDecimal huge = new BigDecimal("123456789012345678901234567890.12");
+        timeline.append(new BigDecimal("5"), START);
+        timeline.append(huge, START.plusSeconds(2));
+        timeline.append(new BigDecimal("7"), START.plusSeconds(1));
+
+        assertEquals(huge, timeline.balanceAt(START.plusSeconds(2)));
+        assertEquals(new BigDecimal("7"), timeline.balanceAt(START.plusSeconds(1)));
+        assertEquals(huge, timeline.get(2).getBalance());
+    }
+
+    @Test
+    public void walletShouldExposeTimelineAsBalanceHistoryList() {
+        Wallet wallet = Wallet.builder().id("walletId").balance(BigDecimal.TEN).build();
+        wallet.addBalanceHistory(new BigDecimal("9"), START);
+        wallet.addBalanceHistory(new BigDecimal("8"), START.plusHours(1));
+
+        assertEquals(2, wallet.getBalanceHistory().size());
+        assertEquals(new BigDecimal("8"), wallet.getBalanceHistory().get(1).getBalance());
+        assertEquals(new BigDecimal("9"), wallet.getBalanceAt(START.plusMinutes(30)));
+    }
+
+    @Test
+    public void compactionShouldKeepRecentEntriesAndCheckpointOlderOnes() {
+        BalanceTimeline timeline = new BalanceTimeline(tieredPolicy(null));
+        // One entry every 10 seconds for three days
+        LocalDateTime end = START.plusDays(3);
+        int entries = 0;
+        for (LocalDateTime t = START; t.isBefore(end); t = t.plusSeconds(10)) {
+            timeline.append(BigDecimal.valueOf(entries++), t);
+        }
+        LocalDateTime last = end.minusSeconds(10);
+
+        timeline.compact(BalanceTimeline.toEpochNanos(last));
+
+        // 1h of full resolution, 1d of minutes, 1d of hours and the rest as days, plus the last entry of each tier
+        assertEquals(25920, entries);
+        assertTrue(timeline.size() <= 360 + 1441 + 25 + 3, "size " + timeline.size());
+        assertEquals(BigDecimal.valueOf(entries - 1), timeline.balanceAt(last));
+        // Full resolution window answers exactly
+        LocalDateTime recent = last.minusMinutes(30).plusSeconds(5);
+        assertEquals(expectedBalance(recent), timeline.balanceAt(recent));
+        // Minute tier answers with the last balance of the previous minute
+        LocalDateTime minuteTier = last.minusHours(5).withSecond(0).plusSeconds(25);
+        assertEquals(expectedBalance(minuteTier.withSecond(0).minusNanos(1)), timeline.balanceAt(minuteTier));
+        assertEquals(expectedBalance(minuteTier.withSecond(59)), timeline.balanceAt(minuteTier.withSecond(59)));
+        // Hour tier answers with the last balance of the previous hour
+        LocalDateTime hourTier = last.minusHours(30).withMinute(0).withSecond(0).plusMinutes(20);
+        assertEquals(expectedBalance(hourTier.withMinute(0).minusNanos(1)), timeline.balanceAt(hourTier));
+        // Day tier
+        assertNull(timeline.balanceAt(START.plusHours(12)));
+        assertEquals(expectedBalance(START.toLocalDate().plusDays(1).atStartOfDay().minusNanos(1)), timeline.balanceAt(START.toLocalDate().plusDays(1).atStartOfDay().minusNanos(1)));
+        assertNull(timeline.balanceAt(START.minusNanos(1)));
+    }
+
+    @Test
+    public void compactIfDueShouldWaitForTheThresholdAndThenForTheTimelineToDouble() {
+        BalanceTimeline timeline = new BalanceTimeline(BalanceRetentionPolicy.builder().fullResolution(Duration.ofMinutes(1)).compactionThreshold(100).build());
+        for (int i = 0; i < 99; i++) {
+            timeline.append(BigDecimal.valueOf(i), START.plusSeconds(i));
+            timeline.compactIfDue();
+        }
+        assertEquals(99, timeline.size());
+
+        timeline.append(BigDecimal.valueOf(99), START.plusSeconds(99));
+        timeline.compactIfDue();
+        // The first 40 seconds are older than a minute and fall in one day bucket
+        assertEquals(61, timeline.size());
+        assertNull(timeline.balanceAt(START.plusSeconds(20)));
+        assertEquals(new BigDecimal("39"), timeline.balanceAt(START.plusSeconds(39)));
+
+        timeline.append(BigDecimal.valueOf(100), START.plusSeconds(100));
+        timeline.compactIfDue();
+        assertEquals(62, timeline.size());
+    }
+
+    @Test
+    public void unboundedTimelineShouldNeverCompact() {
+        BalanceTimeline timeline = new BalanceTimeline(BalanceRetentionPolicy.builder().compactionThreshold(1).build());
+        timeline.append(new BigDecimal("1"), START);
+        timeline.append(new BigDecimal("2"), START.plusSeconds(1));
+        timeline.compactIfDue();
+
+        assertEquals(2, timeline.size());
+    }
+
+    @Test
+    public void spilledCheckpointsShouldStillAnswerLookups(@TempDir Path spillDirectory) throws IOException {
+        try (BalanceRetentionPolicy retention = tieredPolicy(spillDirectory)) {
+            BalanceTimeline timeline = new BalanceTimeline(retention);
+            BigDecimal huge = new BigDecimal("123456789012345678901234567890.12");
+            for (int day = 0; day < 10; day++) {
+                timeline.append(BigDecimal.valueOf(day, 2), START.plusDays(day));
+                timeline.append(BigDecimal.valueOf(day * 10L + 1, 2), START.plusDays(day).plusHours(1));
+            }
+            timeline.append(huge, START.plusDays(10));
+            timeline.append(new BigDecimal("5"), START.plusDays(40));
+
+            timeline.compact(BalanceTimeline.toEpochNanos(START.plusDays(40)));
+
+            // The checkpoints of the first ten days are older than the spill window, the oversized one stays in memory
+            assertEquals(10, timeline.spilledSize());
+            assertEquals(2, timeline.size());
+            assertNull(timeline.balanceAt(START.minusNanos(1)));
+            assertEquals(BigDecimal.valueOf(1, 2), timeline.balanceAt(START.plusDays(1).minusNanos(1)));
+            assertEquals(BigDecimal.valueOf(51, 2), timeline.balanceAt(START.plusDays(5).plusHours(2)));
+            assertEquals(BigDecimal.valueOf(91, 2), timeline.balanceAt(START.plusDays(10).minusNanos(1)));
+            assertEquals(huge, timeline.balanceAt(START.plusDays(10)));
+            assertEquals(new BigDecimal("5"), timeline.balanceAt(START.plusDays(40)));
+        }
+    }
+
+    @Test
+    public void timelinesShouldShareOneSpillFileAcrossSpills(@TempDir Path spillDirectory) throws IOException {
+        BalanceRetentionPolicy retention = tieredPolicy(spillDirectory);
+        BalanceTimeline first = new BalanceTimeline(retention);
+        BalanceTimeline second = new BalanceTimeline(retention);
+        // Two spills per timeline, interleaved in the file
+        for (int round = 0; round < 2; round++) {
+            for (int day = round * 10; day < round * 10 + 10; day++) {
+                first.append(BigDecimal.valueOf(day), START.plusDays(day));
+                second.append(BigDecimal.valueOf(-day), START.plusDays(day));
+            }
+            first.compact(BalanceTimeline.toEpochNanos(START.plusDays(round * 10 + 30)));
+            second.compact(BalanceTimeline.toEpochNanos(START.plusDays(round * 10 + 30)));
+        }
+
+        assertEquals(20, first.spilledSize());
+        assertEquals(20, second.spilledSize());
+        for (int day = 0; day < 20; day++) {
+            assertEquals(BigDecimal.valueOf(day), first.balanceAt(START.plusDays(day).plusHours(1)));
+            assertEquals(BigDecimal.valueOf(-day), second.balanceAt(START.plusDays(day).plusHours(1)));
+        }
+        List<BigDecimal> visited = new ArrayList<>();
+        first.forEach((epochNanos, balance) -> visited.add(balance));
+        assertEquals(BigDecimal.valueOf(19), visited.get(19));
+
+        // Both timelines spilled into the file of the policy, which goes away with it
+        retention.close();
+        assertThrows(UncheckedIOException.class, () -> first.balanceAt(START.plusDays(1)));
+        assertThrows(UncheckedIOException.class, () -> second.balanceAt(START.plusDays(1)));
+    }
+
+    @Test
+    public void walletShouldCompactItsHistoryWithItsRetentionPolicy() {
+        BalanceRetentionPolicy retention = BalanceRetentionPolicy.builder().fullResolution(Duration.ofMinutes(1)).compactionThreshold(10).build();
+        Wallet wallet = Wallet.builder().id("walletId").balance(BigDecimal.TEN).balanceRetention(retention).build();
+        for (int i = 0; i < 10; i++) {
+            wallet.addBalanceHistory(BigDecimal.valueOf(i), START.plusMinutes(i));
+        }
+        wallet.compactBalanceHistoryIfDue();
+
+        assertEquals(2, wallet.getBalanceHistory().size());
+        assertEquals(new BigDecimal("8"), wallet.getBalanceAt(START.plusMinutes(8)));
+        assertNull(wallet.getBalanceAt(START.plusMinutes(7)));
+    }
+
+    private static BalanceRetentionPolicy tieredPolicy(Path spillDirectory) {
+        return BalanceRetentionPolicy.builder()
+                .fullResolution(Duration.ofHours(1))
+                .minuteCheckpoints(Duration.ofDays(1))
+                .hourCheckpoints(Duration.ofDays(1))
+                .spillAfter(Duration.ofDays(20))
+                .spillFile(spillDirectory == null ? null : BalanceHistorySpillFile.open(spillDirectory))
+                .build();
+    }
+
+    // Balance of the entry recorded every 10 seconds since START at or before the given instant
+    private static BigDecimal expectedBalance(LocalDateTime timestamp) {
+        return BigDecimal.valueOf(Duration.between(START, timestamp).toSeconds() / 10);
+    }
+}
@@ -1,13 +1,16 @@
 package com.iot.payment.commandmodel;
 
 import com.iot.payment.commandmodel.aggregate.EntityAggregate;
+import com.iot.payment.coreapi.commands.BatchTransferCommand;
 import com.iot.payment.coreapi.commands.CreateEntityCommand;
 import com.iot.payment.coreapi.commands.ModifyPostingCommand;
 import com.iot.payment.coreapi.commands.TransferCommand;
 import com.iot.payment.coreapi.commands.UpdateAccountStatusCommand;
 import com.iot.payment.coreapi.events.EntityCreatedEvent;
 import com.iot.payment.coreapi.events.ModifyPostingEvent;
+import com.iot.payment.coreapi.events.Movement;
 import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.coreapi.events.TransfersBatchedEvent;
 import com.iot.payment.coreapi.events.UpdateAccountStatusEvent;
 import org.axonframework.test.aggregate.AggregateTestFixture;
 import org.axonframework.test.aggregate.FixtureConfiguration;
@@ -15,6 +18,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.UUID;
 
 public class EntityAggregateUnitTest {
@@ -47,6 +51,25 @@ public class EntityAggregateUnitTest {
                 .expectEvents(new TransferEvent(ENTITY_ID, ENTITY_SOURCE_ID, ENTITY_DESTINATION_ID, AMOUNT));
     }
 
+    @Test
+    void givenEntityCreatedEvent_whenBatchTransferCommand_thenShouldPublishSingleTransfersBatchedEvent() {
+        List<Movement> movements = List.of(
+                new Movement(ENTITY_SOURCE_ID, ENTITY_DESTINATION_ID, AMOUNT, UUID.randomUUID().toString()),
+                new Movement(ENTITY_SOURCE_ID, ENTITY_DESTINATION_ID, BigDecimal.ONE, UUID.randomUUID().toString()));
+
+        fixture.given(new EntityCreatedEvent(ENTITY_ID))
+                .when(new BatchTransferCommand(ENTITY_ID, movements))
+                .expectEvents(new TransfersBatchedEvent(ENTITY_ID, movements));
+    }
+
+    @Test
+    void givenEntityCreatedEvent_whenEmptyBatchTransferCommand_thenShouldFail() {
+        fixture.given(new EntityCreatedEvent(ENTITY_ID))
+                .when(new BatchTransferCommand(ENTITY_ID, List.of()))
+                .expectException(IllegalArgumentException.class)
+                .expectNoEvents();
+    }
+
     @Test
     void givenEntityCreatedEvent_whenUpdateAccountStatusCommand_thenShouldPublishUpdateAccountStatusEvent() {
         String accountId = UUID.randomUUID().toString();
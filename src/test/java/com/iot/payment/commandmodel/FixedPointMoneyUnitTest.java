@@ -0,0 +1,42 @@
+package com.iot.payment.commandmodel;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FixedPointMoneyUnitTest {
+
+    @Test
+    public void toMinorUnitsShouldConvertExactly() {
+        assertEquals(10000, FixedPointMoney.toMinorUnits(new BigDecimal("100"), 2));
+        assertEquals(1050, FixedPointMoney.toMinorUnits(new BigDecimal("10.5"), 2));
+        assertEquals(1, FixedPointMoney.toMinorUnits(new BigDecimal("0.01"), 2));
+        assertEquals(-250, FixedPointMoney.toMinorUnits(new BigDecimal("-2.50"), 2));
+        assertEquals(new BigDecimal("10.50"), FixedPointMoney.toDecimal(1050, 2));
+    }
+
+    @Test
+    public void lossyOrOverflowingConversionsShouldFail() {
+        assertThrows(ArithmeticException.class, () -> FixedPointMoney.toMinorUnits(new BigDecimal("0.001"), 2));
+        assertThrows(ArithmeticException.class, () -> FixedPointMoney.toMinorUnits(new BigDecimal(Long.MAX_VALUE), 2));
+        assertThrows(ArithmeticException.class, () -> FixedPointMoney.add(Long.MAX_VALUE, 1));
+        assertThrows(IllegalArgumentException.class, () -> FixedPointMoney.checkScale(19));
+    }
+
+    @Test
+    public void walletShouldKeepDecimalViewOfMinorUnitBalance() {
+        Wallet fixedPoint = Wallet.builder().id("walletId").minorUnitScale(2).balance(new BigDecimal("12.3")).build();
+        Wallet decimal = Wallet.builder().id("walletId").balance(new BigDecimal("12.3")).build();
+
+        assertTrue(fixedPoint.isFixedPoint());
+        assertEquals(1230, fixedPoint.getBalanceUnits());
+        assertEquals(new BigDecimal("12.30"), fixedPoint.getBalance());
+        assertFalse(decimal.isFixedPoint());
+        assertThrows(IllegalStateException.class, decimal::getBalanceUnits);
+    }
+}
@@ -0,0 +1,132 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.GenericCommandMessage;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.commandhandling.gateway.DefaultCommandGateway;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventsourcing.EventSourcingRepository;
+import org.axonframework.eventsourcing.eventstore.EmbeddedEventStore;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.axonframework.eventsourcing.eventstore.inmemory.InMemoryEventStorageEngine;
+import org.axonframework.messaging.GenericMessage;
+import org.axonframework.modelling.command.AggregateAnnotationCommandHandler;
+import org.axonframework.modelling.command.AggregateNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchingCommandBusUnitTest {
+    private final List<Integer> appends = new CopyOnWriteArrayList<>();
+    private final CountDownLatch handling = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private BatchingCommandBus commandBus;
+    private EventStore eventStore;
+    private CommandGateway commandGateway;
+
+    @BeforeEach
+    public void setup() {
+        eventStore = EmbeddedEventStore.builder().storageEngine(new InMemoryEventStorageEngine() {
+            @Override
+            public void appendEvents(List<? extends EventMessage<?>> events) {
+                appends.add(events.size());
+                super.appendEvents(events);
+            }
+        }).build();
+        commandBus = BatchingCommandBus.builder().threads(1).build();
+        AggregateAnnotationCommandHandler.<EntityAggregate>builder()
+                .aggregateType(EntityAggregate.class)
+                .repository(EventSourcingRepository.builder(EntityAggregate.class).eventStore(eventStore).build())
+                .build()
+                .subscribe(commandBus);
+        commandBus.subscribe("hold", command -> {
+            handling.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        commandGateway = DefaultCommandGateway.builder().commandBus(commandBus).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        commandBus.close();
+    }
+
+    /**
+     * Keeps the only thread of the bus busy, so the commands sent meanwhile queue up into one batch.
+     */
+    private CompletableFuture<Object> hold() throws InterruptedException {
+        CompletableFuture<Object> held = commandGateway.send(new GenericCommandMessage<>(new GenericMessage<>("hold"), "hold"));
+        assertTrue(handling.await(10, TimeUnit.SECONDS));
+        return held;
+    }
+
+    @Test
+    public void commandsQueuedTogetherShouldBeAppendedInOneCommit() throws Exception {
+        commandGateway.sendAndWait(new CreateEntityCommand("first"));
+        commandGateway.sendAndWait(new CreateEntityCommand("second"));
+        appends.clear();
+
+        CompletableFuture<Object> held = hold();
+        List<CompletableFuture<Object>> sent = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            sent.add(commandGateway.send(new TransferCommand("first", "source", "destination", BigDecimal.ONE)));
+            sent.add(commandGateway.send(new TransferCommand("second", "source", "destination", BigDecimal.ONE)));
+        }
+        release.countDown();
+        held.get(10, TimeUnit.SECONDS);
+        CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of(10), appends);
+        assertEquals(6, eventStore.readEvents("first").asStream().count());
+        assertEquals(6, eventStore.readEvents("second").asStream().count());
+    }
+
+    @Test
+    public void aFailingCommandShouldNotFailTheOthersOfItsBatch() throws Exception {
+        commandGateway.sendAndWait(new CreateEntityCommand("entityId"));
+        appends.clear();
+
+        CompletableFuture<Object> held = hold();
+        CompletableFuture<Object> first = commandGateway.send(new TransferCommand("entityId", "source", "destination", BigDecimal.ONE));
+        CompletableFuture<Object> unknown = commandGateway.send(new TransferCommand("unknown", "source", "destination", BigDecimal.ONE));
+        CompletableFuture<Object> second = commandGateway.send(new TransferCommand("entityId", "source", "destination", BigDecimal.ONE));
+        release.countDown();
+        held.get(10, TimeUnit.SECONDS);
+
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> unknown.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(AggregateNotFoundException.class, failure.getCause());
+        // Rolled back as a batch, then appended one by one
+        assertEquals(List.of(1, 1), appends);
+        assertEquals(3, eventStore.readEvents("entityId").asStream().count());
+    }
+
+    @Test
+    public void commandsDispatchedAfterCloseShouldFail() {
+        commandBus.close();
+
+        CommandMessage<CreateEntityCommand> command = GenericCommandMessage.asCommandMessage(new CreateEntityCommand("entityId"));
+        CompletableFuture<Object> result = commandGateway.send(command);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+    }
+}
@@ -0,0 +1,112 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import com.iot.payment.coreapi.commands.BatchTransferCommand;
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.commandhandling.gateway.DefaultCommandGateway;
+import org.axonframework.common.caching.Cache;
+import org.axonframework.eventsourcing.CachingEventSourcingRepository;
+import org.axonframework.eventsourcing.eventstore.EmbeddedEventStore;
+import org.axonframework.eventsourcing.eventstore.inmemory.InMemoryEventStorageEngine;
+import org.axonframework.modelling.command.AggregateAnnotationCommandHandler;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class BoundedAggregateCacheUnitTest {
+    private static BoundedAggregateCache cache(long maxWeight) {
+        return BoundedAggregateCache.builder().maxWeight(maxWeight).segments(1).weigher((key, value) -> (Integer) value).build();
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesShouldBeEvictedOnceTheWeightIsExceeded() {
+        BoundedAggregateCache cache = cache(10);
+        cache.put("a", 4);
+        cache.put("b", 4);
+        assertEquals(4, (Integer) cache.get("a"));
+        cache.put("c", 4);
+
+        assertTrue(cache.containsKey("a"));
+        assertFalse(cache.containsKey("b"));
+        assertTrue(cache.containsKey("c"));
+        assertFalse(cache.putIfAbsent("a", 1));
+        assertNull(cache.get("b"));
+        assertEquals(new AggregateCacheStatistics(1, 1, 0.5, 1, 2, 8, 10), cache.statistics());
+    }
+
+    @Test
+    public void entryHeavierThanTheCacheShouldNotBeCached() {
+        BoundedAggregateCache cache = cache(10);
+        cache.put("a", 4);
+        cache.put("a", 11);
+
+        assertFalse(cache.containsKey("a"));
+        assertEquals(0, cache.statistics().weight());
+    }
+
+    @Test
+    public void withoutAWeigherTheCacheShouldBeBoundedByItsNumberOfEntries() {
+        BoundedAggregateCache cache = BoundedAggregateCache.builder().maxWeight(2).segments(1).build();
+        cache.put("a", "x".repeat(1000));
+        cache.put("b", "y");
+        cache.put("c", "z");
+
+        assertFalse(cache.containsKey("a"));
+        assertEquals(2, cache.statistics().entries());
+        assertEquals(2, cache.statistics().weight());
+    }
+
+    @Test
+    public void listenersShouldSeeEveryChange() {
+        BoundedAggregateCache cache = cache(4);
+        Cache.EntryListener listener = mock(Cache.EntryListener.class);
+        cache.registerCacheEntryListener(listener);
+        cache.put("a", 2);
+        cache.put("a", 3);
+        cache.get("a");
+        cache.put("b", 2);
+        cache.remove("b");
+
+        verify(listener).onEntryCreated("a", 2);
+        verify(listener).onEntryUpdated("a", 3);
+        verify(listener).onEntryRead("a", 3);
+        verify(listener).onEntryExpired("a");
+        verify(listener).onEntryRemoved("b");
+    }
+
+    @Test
+    public void hotAggregateShouldSkipSourcingAndRolledBackOneShouldBeSourcedAgain() {
+        BoundedAggregateCache cache = BoundedAggregateCache.builder().maxWeight(1024).build();
+        CachingEventSourcingRepository<EntityAggregate> repository = CachingEventSourcingRepository.builder(EntityAggregate.class)
+                .eventStore(EmbeddedEventStore.builder().storageEngine(new InMemoryEventStorageEngine()).build())
+                .cache(cache)
+                .build();
+        SimpleCommandBus commandBus = SimpleCommandBus.builder().build();
+        AggregateAnnotationCommandHandler.<EntityAggregate>builder().aggregateType(EntityAggregate.class).repository(repository).build().subscribe(commandBus);
+        CommandGateway commandGateway = DefaultCommandGateway.builder().commandBus(commandBus).build();
+
+        commandGateway.sendAndWait(new CreateEntityCommand("entityId"));
+        for (int i = 0; i < 3; i++) {
+            commandGateway.sendAndWait(new TransferCommand("entityId", "source", "destination", BigDecimal.ONE));
+        }
+        assertEquals(3, cache.statistics().hits());
+        assertEquals(0, cache.statistics().misses());
+
+        assertThrows(IllegalArgumentException.class, () -> commandGateway.sendAndWait(new BatchTransferCommand("entityId", List.of())));
+        assertFalse(cache.containsKey("entityId"));
+        commandGateway.sendAndWait(new TransferCommand("entityId", "source", "destination", BigDecimal.ONE));
+        assertEquals(1, cache.statistics().misses());
+        assertTrue(cache.containsKey("entityId"));
+    }
+}
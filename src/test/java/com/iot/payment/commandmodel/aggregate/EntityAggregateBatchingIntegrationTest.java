@@ -0,0 +1,80 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import com.iot.payment.LedgerApplication;
+import com.iot.payment.coreapi.commands.BatchTransferCommand;
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(classes = LedgerApplication.class, properties = {
+        "ledger.commands.batching.enabled=true",
+        "ledger.commands.batching.threads=2"})
+public class EntityAggregateBatchingIntegrationTest {
+    private static final int ENTITIES = 8;
+    private static final int TRANSFERS = 25;
+
+    @Autowired
+    private CommandBus commandBus;
+    @Autowired
+    private CommandGateway commandGateway;
+    @Autowired
+    private LedgerInMemoryRepository repository;
+
+    @Test
+    public void concurrentTransfersOfManyEntitiesShouldAllBeApplied() {
+        assertInstanceOf(BatchingCommandBus.class, commandBus);
+        List<String> entityIds = IntStream.range(0, ENTITIES).mapToObj(i -> UUID.randomUUID().toString()).toList();
+        entityIds.forEach(entityId -> commandGateway.sendAndWait(new CreateEntityCommand(entityId)));
+
+        ExecutorService senders = Executors.newFixedThreadPool(ENTITIES);
+        try {
+            List<CompletableFuture<Void>> sent = new ArrayList<>();
+            for (String entityId : entityIds) {
+                for (int i = 0; i < TRANSFERS; i++) {
+                    sent.add(CompletableFuture.runAsync(() -> commandGateway.sendAndWait(new TransferCommand(entityId, "source", "destination", BigDecimal.ONE)), senders));
+                }
+            }
+            CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).join();
+        } finally {
+            senders.shutdown();
+        }
+
+        for (String entityId : entityIds) {
+            await().atMost(Duration.ofSeconds(10)).until(() -> repository.findEntity(entityId) != null
+                    && repository.findEntity(entityId).getAccounts().get(0).getWallets().get(0).getPostings().size() == TRANSFERS);
+            assertEquals(0, BigDecimal.valueOf(100 - TRANSFERS).compareTo(repository.findEntity(entityId).getAccounts().get(0).getWallets().get(0).getBalance()));
+        }
+    }
+
+    @Test
+    public void rejectedCommandShouldNotBlockLaterCommandsOfTheEntity() {
+        String entityId = UUID.randomUUID().toString();
+        commandGateway.sendAndWait(new CreateEntityCommand(entityId));
+
+        assertThrows(IllegalArgumentException.class, () -> commandGateway.sendAndWait(new BatchTransferCommand(entityId, List.of())));
+        commandGateway.sendAndWait(new TransferCommand(entityId, "source", "destination", BigDecimal.ONE));
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> repository.findEntity(entityId) != null
+                && repository.findEntity(entityId).getAccounts().get(0).getWallets().get(0).getPostings().size() == 1);
+    }
+}
@@ -0,0 +1,30 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import com.iot.payment.serialization.CompactSerializer;
+import com.thoughtworks.xstream.XStream;
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.xml.XStreamSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EntityAggregateCodecUnitTest {
+
+    @Test
+    public void snapshotsShouldReadBackTheEntityId() {
+        Serializer serializer = CompactSerializer.builder()
+                .delegate(XStreamSerializer.builder().xStream(new XStream()).build())
+                .codecs(List.of(EntityAggregateCodec.SNAPSHOT))
+                .build();
+        String entityId = UUID.randomUUID().toString();
+
+        SerializedObject<byte[]> snapshot = serializer.serialize(new EntityAggregate(entityId), byte[].class);
+
+        assertEquals(17, snapshot.getData().length);
+        assertEquals(entityId, serializer.<byte[], EntityAggregate>deserialize(snapshot).getEntityId());
+    }
+}
@@ -0,0 +1,133 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import com.iot.payment.commandmodel.aggregate.IdempotencyKeyStore.Claim;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdempotencyKeyStoreUnitTest {
+    private final MutableClock clock = new MutableClock();
+
+    private IdempotencyKeyStore store(int maxKeys) {
+        return IdempotencyKeyStore.builder().window(Duration.ofHours(3)).maxKeys(maxKeys).generations(4).clock(clock).build();
+    }
+
+    @Test
+    public void aKeyShouldBeAcceptedOnceAndThenBeADuplicate() {
+        IdempotencyKeyStore store = store(1000);
+        assertEquals(Claim.ACCEPTED, store.claim("key"));
+        assertEquals(Claim.IN_PROGRESS, store.claim("key"));
+        store.complete("key");
+        assertEquals(Claim.DUPLICATE, store.claim("key"));
+        assertEquals(Claim.ACCEPTED, store.claim("other"));
+
+        IdempotencyStatistics statistics = store.statistics();
+        assertEquals(2, statistics.accepted());
+        assertEquals(1, statistics.duplicates());
+        assertEquals(1, statistics.inProgress());
+        assertEquals(2, statistics.keys());
+    }
+
+    @Test
+    public void aReleasedKeyShouldBeAcceptedAgain() {
+        IdempotencyKeyStore store = store(1000);
+        assertEquals(Claim.ACCEPTED, store.claim("key"));
+        store.release("key");
+        assertEquals(Claim.ACCEPTED, store.claim("key"));
+
+        // A completed key is not released
+        store.complete("key");
+        store.release("key");
+        assertEquals(Claim.DUPLICATE, store.claim("key"));
+    }
+
+    @Test
+    public void keysShouldBeRememberedForTheWindowOnly() {
+        IdempotencyKeyStore store = store(1000);
+        store.claim("key");
+        store.complete("key");
+
+        // One generation per hour, the key outlives the three after its own
+        for (int hour = 1; hour <= 3; hour++) {
+            clock.advance(Duration.ofHours(1));
+            assertEquals(Claim.DUPLICATE, store.claim("key"), "after " + hour + " hours");
+        }
+        clock.advance(Duration.ofHours(1));
+        assertEquals(Claim.ACCEPTED, store.claim("key"));
+        assertEquals(0, store.statistics().earlyRotations());
+        assertEquals(Duration.ofHours(3).toMillis(), store.statistics().retentionMillis());
+    }
+
+    @Test
+    public void keysShouldBeBoundedAndLookedUpPastThePrefilter() {
+        IdempotencyKeyStore store = store(400);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Claim.ACCEPTED, store.claim("key-" + i));
+            store.complete("key-" + i);
+        }
+        IdempotencyStatistics statistics = store.statistics();
+        assertTrue(statistics.keys() <= statistics.maxKeys(), statistics.keys() + " keys");
+        // Nearly every new key skipped the older generations on their Bloom filter alone
+        assertTrue(statistics.prefilterSkips() > 2000, statistics.prefilterSkips() + " skips");
+
+        // The newest keys survived, the oldest were dropped with their generation
+        assertEquals(Claim.DUPLICATE, store.claim("key-999"));
+        assertEquals(Claim.ACCEPTED, store.claim("key-0"));
+        // All of them long before the window elapsed
+        assertTrue(statistics.earlyRotations() > 0, statistics.earlyRotations() + " early rotations");
+        assertEquals(0, statistics.retentionMillis());
+    }
+
+    @Test
+    public void keysStillInProgressShouldOutliveTheirGeneration() {
+        IdempotencyKeyStore store = store(4);
+        assertEquals(Claim.ACCEPTED, store.claim("in-progress"));
+        for (int i = 0; i < 10; i++) {
+            clock.advance(Duration.ofHours(1));
+            store.claim("key-" + i);
+            store.complete("key-" + i);
+        }
+        assertEquals(Claim.IN_PROGRESS, store.claim("in-progress"));
+
+        store.complete("in-progress");
+        assertEquals(Claim.DUPLICATE, store.claim("in-progress"));
+    }
+
+    @Test
+    public void theStoreShouldBeConfiguredSensibly() {
+        assertThrows(IllegalArgumentException.class, () -> IdempotencyKeyStore.builder().generations(1).build());
+        assertThrows(IllegalArgumentException.class, () -> IdempotencyKeyStore.builder().maxKeys(2).build());
+        assertThrows(IllegalArgumentException.class, () -> IdempotencyKeyStore.builder().window(Duration.ZERO).build());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
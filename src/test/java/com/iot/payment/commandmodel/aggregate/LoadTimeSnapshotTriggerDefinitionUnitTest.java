@@ -0,0 +1,106 @@
+package com.iot.payment.commandmodel.aggregate;
+
+import com.iot.payment.coreapi.events.TransferEvent;
+import org.axonframework.eventhandling.GenericDomainEventMessage;
+import org.axonframework.eventsourcing.SnapshotTrigger;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.serialization.json.JacksonSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class LoadTimeSnapshotTriggerDefinitionUnitTest {
+    private static final long MILLI = Duration.ofMillis(1).toNanos();
+    private final Snapshotter snapshotter = mock(Snapshotter.class);
+    private final AtomicLong clock = new AtomicLong();
+    private final LoadTimeSnapshotTriggerDefinition definition = LoadTimeSnapshotTriggerDefinition.builder()
+            .snapshotter(snapshotter)
+            .eventSerializer(JacksonSerializer.defaultSerializer())
+            .budget(Duration.ofMillis(50))
+            .minimumEvents(16)
+            .nanoClock(clock::get)
+            .build();
+    private long sequence;
+
+    private SnapshotTrigger load(int events, long nanosPerEvent) {
+        SnapshotTrigger trigger = definition.prepareTrigger(EntityAggregate.class);
+        for (int i = 0; i < events; i++) {
+            clock.addAndGet(nanosPerEvent);
+            trigger.eventHandled(transfer());
+        }
+        trigger.initializationFinished();
+        return trigger;
+    }
+
+    private GenericDomainEventMessage<TransferEvent> transfer() {
+        return new GenericDomainEventMessage<>("EntityAggregate", "entityId", sequence++, new TransferEvent("entityId", "source", "destination", BigDecimal.TEN));
+    }
+
+    @Test
+    public void aggregateLoadingWithinTheBudgetShouldNotBeSnapshotted() {
+        SnapshotTrigger trigger = load(40, MILLI);
+        trigger.eventHandled(transfer());
+
+        verify(snapshotter, never()).scheduleSnapshot(EntityAggregate.class, "entityId");
+        SnapshotTriggerStatistics statistics = definition.statistics();
+        assertEquals(1, statistics.loads());
+        assertEquals(Duration.ofMillis(40), statistics.averageLoadTime());
+        assertEquals(40, statistics.replayedEvents());
+        assertEquals(0, statistics.snapshots());
+    }
+
+    @Test
+    public void slowAggregateShouldBeSnapshottedAndEventsAppliedAfterwardsCostedByTheirSize() {
+        SnapshotTrigger trigger = load(15, 10 * MILLI);
+        trigger.eventHandled(transfer());
+        verify(snapshotter, times(1)).scheduleSnapshot(EntityAggregate.class, "entityId");
+
+        for (int i = 0; i < 15; i++) {
+            trigger.eventHandled(transfer());
+        }
+        verify(snapshotter, times(1)).scheduleSnapshot(EntityAggregate.class, "entityId");
+        trigger.eventHandled(transfer());
+        verify(snapshotter, times(2)).scheduleSnapshot(EntityAggregate.class, "entityId");
+
+        SnapshotTriggerStatistics statistics = definition.statistics();
+        assertEquals(2, statistics.snapshots());
+        assertEquals(16, statistics.eventsPerSnapshot());
+        assertEquals(Duration.ofMillis(150), statistics.maxLoadTime());
+    }
+
+    @Test
+    public void slowSnapshotLoadShouldNotBeSnapshottedAgainBeforeTheMinimumEvents() {
+        SnapshotTrigger trigger = definition.prepareTrigger(EntityAggregate.class);
+        clock.addAndGet(100 * MILLI);
+        trigger.eventHandled(new GenericDomainEventMessage<>("EntityAggregate", "entityId", 10, new EntityAggregate()));
+        trigger.eventHandled(transfer());
+        trigger.initializationFinished();
+        trigger.eventHandled(transfer());
+
+        verify(snapshotter, never()).scheduleSnapshot(EntityAggregate.class, "entityId");
+        assertEquals(1, definition.statistics().replayedEvents());
+    }
+
+    @Test
+    public void newAggregatesShouldNotCountAsLoads() {
+        SnapshotTrigger trigger = definition.prepareTrigger(EntityAggregate.class);
+        trigger.initializationFinished();
+        trigger.eventHandled(transfer());
+
+        assertEquals(0, definition.statistics().loads());
+    }
+
+    @Test
+    public void budgetMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> LoadTimeSnapshotTriggerDefinition.builder().snapshotter(snapshotter).budget(Duration.ZERO).build());
+    }
+}
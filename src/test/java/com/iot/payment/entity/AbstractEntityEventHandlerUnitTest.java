@@ -7,8 +7,10 @@ import com.iot.payment.commandmodel.Wallet;
 import com.iot.payment.coreapi.events.BalanceUpdatedEvent;
 import com.iot.payment.coreapi.events.EntityCreatedEvent;
 import com.iot.payment.coreapi.events.ModifyPostingEvent;
+import com.iot.payment.coreapi.events.Movement;
 import com.iot.payment.coreapi.events.MovementUpdatedEvent;
 import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.coreapi.events.TransfersBatchedEvent;
 import com.iot.payment.coreapi.events.UpdateAccountStatusEvent;
 import com.iot.payment.querymodel.EntityEventHandler;
 import com.iot.payment.repository.LedgerInMemoryRepository;
@@ -21,8 +23,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
@@ -37,6 +44,8 @@ public abstract class AbstractEntityEventHandlerUnitTest {
             .toString();
     private static final String ENTITY_DESTINATION_ID = UUID.randomUUID()
             .toString();
+    private static final String FIAT_SOURCE_WALLET = "FIAT_CURRENCY_SOURCE_1";
+    private static final String FIAT_DESTINATION_WALLET = "FIAT_CURRENCY_DESTINATION_1";
     protected QueryUpdateEmitter emitter = mock(QueryUpdateEmitter.class);
     protected LedgerInMemoryRepository ledgerRepository = new LedgerInMemoryRepository();
     EventBus eventBus = Mockito.mock(EventBus.class);
@@ -78,6 +87,48 @@ public abstract class AbstractEntityEventHandlerUnitTest {
         assertEquals(new BigDecimal(100), balanceUpdatedEvent.amount());
     }
 
+    @Test
+    void givenEntityExist_whenTransfersBatchedEvent_thenAllMovementsAppliedAndPublished() {
+        // Given
+        handler.on(new EntityCreatedEvent(ENTITY));
+        List<Movement> movements = List.of(
+                new Movement(FIAT_SOURCE_WALLET, FIAT_DESTINATION_WALLET, new BigDecimal(10), UUID.randomUUID().toString()),
+                new Movement(FIAT_SOURCE_WALLET, FIAT_DESTINATION_WALLET, new BigDecimal(15), UUID.randomUUID().toString()));
+
+        // When
+        handler.on(new TransfersBatchedEvent(ENTITY, movements));
+
+        // Then
+        ArgumentCaptor<EventMessage> eventMessageCaptor = ArgumentCaptor.forClass(EventMessage.class);
+        Mockito.verify(eventBus, Mockito.times(4)).publish(eventMessageCaptor.capture());
+        MovementUpdatedEvent secondMovement = (MovementUpdatedEvent) eventMessageCaptor.getAllValues().get(2).getPayload();
+        assertEquals(movements.get(1).getPostingId(), secondMovement.postingId());
+        assertEquals(FIAT_SOURCE_WALLET, secondMovement.sourceWalletId());
+
+        Wallet sourceWallet = ledgerRepository.getEntities().get(ENTITY).getAccounts().get(0).getWallets().get(0);
+        assertEquals(new BigDecimal(75), sourceWallet.getBalance());
+        assertEquals(2, sourceWallet.getPostings().size());
+    }
+
+    @Test
+    void givenEntityExist_whenTransfersBatchedEventNamesAnUnknownWallet_thenOnlyThatMovementIsRejected() {
+        // Given
+        handler.on(new EntityCreatedEvent(ENTITY));
+        List<Movement> movements = List.of(
+                new Movement(ENTITY_SOURCE_ID, FIAT_DESTINATION_WALLET, new BigDecimal(10), UUID.randomUUID().toString()),
+                new Movement(FIAT_SOURCE_WALLET, FIAT_DESTINATION_WALLET, new BigDecimal(15), UUID.randomUUID().toString()));
+
+        // When
+        handler.on(new TransfersBatchedEvent(ENTITY, movements));
+
+        // Then
+        Mockito.verify(eventBus, Mockito.times(2)).publish(Mockito.any(EventMessage.class));
+        Wallet sourceWallet = ledgerRepository.getEntities().get(ENTITY).getAccounts().get(0).getWallets().get(0);
+        assertEquals(new BigDecimal(85), sourceWallet.getBalance());
+        assertEquals(1, sourceWallet.getPostings().size());
+        assertEquals(movements.get(1).getPostingId(), sourceWallet.getPostings().get(0).getId());
+    }
+
     @Test
     void givenUpdateAccountStatusEvent_whenOn_thenAccountStateUpdated() {
         // Given
@@ -167,4 +218,36 @@ public abstract class AbstractEntityEventHandlerUnitTest {
         assertEquals(expectedSourceWalletBalance, sourceWallet.getBalance());
         assertEquals(expectedDestinationWalletBalance, destinationWallet.getBalance());
     }
+
+    @Test
+    void givenEventsOfDifferentEntities_whenHandledInParallel_thenEachEntityIsProjectedInOrder() throws Exception {
+        // Each thread plays the segment owning one entity, as the pooled "entities" processor does
+        int entities = 8;
+        int transfers = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(entities);
+        try {
+            List<Future<?>> segments = new ArrayList<>();
+            for (int i = 0; i < entities; i++) {
+                String entityId = ENTITY + "-" + i;
+                segments.add(executor.submit(() -> {
+                    handler.on(new EntityCreatedEvent(entityId));
+                    for (int j = 0; j < transfers; j++) {
+                        handler.on(new TransferEvent(entityId, ENTITY_SOURCE_ID, ENTITY_DESTINATION_ID, new BigDecimal("0.25")));
+                    }
+                }));
+            }
+            for (Future<?> segment : segments) {
+                segment.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < entities; i++) {
+            Wallet sourceWallet = ledgerRepository.getEntities().get(ENTITY + "-" + i).getAccounts().get(0).getWallets().get(0);
+            assertEquals(0, new BigDecimal(50).compareTo(sourceWallet.getBalance()));
+            assertEquals(transfers, sourceWallet.getPostings().size());
+            assertEquals(transfers, sourceWallet.getBalanceHistory().size());
+        }
+    }
 }
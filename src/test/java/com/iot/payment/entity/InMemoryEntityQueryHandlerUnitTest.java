@@ -0,0 +1,175 @@
+package com.iot.payment.entity;
+
+import com.iot.payment.coreapi.events.EntityCreatedEvent;
+import com.iot.payment.coreapi.events.Movement;
+import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.coreapi.events.TransfersBatchedEvent;
+import com.iot.payment.coreapi.queries.FindHistoricalBalancePage;
+import com.iot.payment.coreapi.queries.FindLatestBalance;
+import com.iot.payment.coreapi.queries.HistoricalBalanceCursor;
+import com.iot.payment.coreapi.queries.StreamHistoricalBalances;
+import com.iot.payment.coreapi.queries.SubscribeWalletBalances;
+import com.iot.payment.querymodel.HistoricalBalancePage;
+import com.iot.payment.querymodel.HistoricalBalanceResponse;
+import com.iot.payment.querymodel.InMemoryEntityEventHandler;
+import com.iot.payment.querymodel.WalletBalance;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.queryhandling.QueryUpdateEmitter;
+import org.axonframework.queryhandling.SubscriptionQueryMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InMemoryEntityQueryHandlerUnitTest {
+    private static final String SOURCE_WALLET = "FIAT_CURRENCY_SOURCE_1";
+    private static final String DESTINATION_WALLET = "FIAT_CURRENCY_DESTINATION_1";
+
+    private final QueryUpdateEmitter emitter = mock(QueryUpdateEmitter.class);
+    private InMemoryEntityEventHandler handler;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        handler = new InMemoryEntityEventHandler(new LedgerInMemoryRepository(), emitter, mock(EventBus.class));
+        // Registered out of order, pages come back ordered by entity id
+        for (String entityId : List.of("entity-c", "entity-a", "entity-b")) {
+            handler.on(new EntityCreatedEvent(entityId));
+        }
+        now = LocalDateTime.now();
+    }
+
+    @Test
+    void pagesShouldWalkAllWalletsOnceInEntityOrder() {
+        List<String> walletIds = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            HistoricalBalancePage page = handler.handle(new FindHistoricalBalancePage(now, null, null, HistoricalBalanceCursor.decode(cursor), 4));
+            page.items().forEach(item -> walletIds.add(item.getWalletId()));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(2, pages);
+        assertEquals(6, walletIds.size());
+        assertEquals(List.of(SOURCE_WALLET, DESTINATION_WALLET, SOURCE_WALLET, DESTINATION_WALLET, SOURCE_WALLET, DESTINATION_WALLET), walletIds);
+    }
+
+    @Test
+    void lastFullPageShouldNotAdvertiseAnotherPage() {
+        HistoricalBalancePage first = handler.handle(new FindHistoricalBalancePage(now, null, null, null, 3));
+        assertNotNull(first.nextCursor());
+
+        HistoricalBalancePage second = handler.handle(new FindHistoricalBalancePage(now, null, null, HistoricalBalanceCursor.decode(first.nextCursor()), 3));
+        assertEquals(3, second.items().size());
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    void pagesShouldApplyEntityAndWalletFilters() {
+        handler.on(new TransferEvent("entity-b", SOURCE_WALLET, DESTINATION_WALLET, BigDecimal.TEN));
+        HistoricalBalancePage byEntity = handler.handle(new FindHistoricalBalancePage(LocalDateTime.now(), "entity-b", null, null, 10));
+        assertEquals(2, byEntity.items().size());
+        assertEquals(new BigDecimal(90), byEntity.items().get(0).getBalance());
+
+        HistoricalBalancePage byWallet = handler.handle(new FindHistoricalBalancePage(now, null, DESTINATION_WALLET, null, 10));
+        assertEquals(3, byWallet.items().size());
+        assertTrue(byWallet.items().stream().allMatch(item -> DESTINATION_WALLET.equals(item.getWalletId())));
+
+        assertTrue(handler.handle(new FindHistoricalBalancePage(now, "unknown", null, null, 10)).items().isEmpty());
+    }
+
+    @Test
+    void streamShouldEmitFilteredBalancesInPageOrder() {
+        StepVerifier.create(handler.handle(new StreamHistoricalBalances(now, null, SOURCE_WALLET)).map(HistoricalBalanceResponse::getWalletId))
+                .expectNext(SOURCE_WALLET, SOURCE_WALLET, SOURCE_WALLET)
+                .verifyComplete();
+        StepVerifier.create(handler.handle(new StreamHistoricalBalances(now, "entity-a", null)), 1)
+                .expectNextCount(1)
+                .thenRequest(1)
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void cursorShouldRoundTripAndRejectGarbage() {
+        HistoricalBalanceCursor cursor = new HistoricalBalanceCursor("entity:with:colons", 3);
+        assertEquals(cursor, HistoricalBalanceCursor.decode(cursor.encode()));
+        assertNull(HistoricalBalanceCursor.decode(null));
+        assertThrows(IllegalArgumentException.class, () -> HistoricalBalanceCursor.decode("not a cursor"));
+    }
+
+    @Test
+    void subscriptionShouldStartWithCurrentBalancesOfMatchingWallets() {
+        List<WalletBalance> balances = handler.handle(new SubscribeWalletBalances("entity-a", SOURCE_WALLET));
+
+        assertEquals(1, balances.size());
+        assertEquals("entity-a", balances.get(0).entityId());
+        assertEquals(new BigDecimal(100), balances.get(0).balance());
+        assertEquals(6, handler.handle(new SubscribeWalletBalances(null, null)).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void balanceChangesShouldBeEmittedToMatchingSubscriptions() {
+        when(emitter.activeSubscriptions()).thenReturn(Set.of(mock(SubscriptionQueryMessage.class)));
+
+        handler.on(new TransferEvent("entity-a", SOURCE_WALLET, DESTINATION_WALLET, BigDecimal.TEN));
+
+        ArgumentCaptor<Predicate<SubscribeWalletBalances>> filters = ArgumentCaptor.forClass(Predicate.class);
+        ArgumentCaptor<WalletBalance> balances = ArgumentCaptor.forClass(WalletBalance.class);
+        verify(emitter, times(2)).emit(eq(SubscribeWalletBalances.class), filters.capture(), balances.capture());
+        assertEquals(new BigDecimal(90), balances.getAllValues().get(0).balance());
+        assertEquals(new BigDecimal(110), balances.getAllValues().get(1).balance());
+        assertTrue(filters.getAllValues().get(0).test(new SubscribeWalletBalances("entity-a", SOURCE_WALLET)));
+        assertTrue(filters.getAllValues().get(0).test(new SubscribeWalletBalances(null, null)));
+        assertFalse(filters.getAllValues().get(0).test(new SubscribeWalletBalances("entity-b", null)));
+        assertFalse(filters.getAllValues().get(0).test(new SubscribeWalletBalances(null, DESTINATION_WALLET)));
+    }
+
+    @Test
+    void balanceChangesShouldNotBeEmittedWithoutSubscribers() {
+        when(emitter.activeSubscriptions()).thenReturn(Set.of());
+
+        handler.on(new TransferEvent("entity-a", SOURCE_WALLET, DESTINATION_WALLET, BigDecimal.TEN));
+
+        verify(emitter, never()).emit(any(Class.class), any(Predicate.class), any(Object.class));
+    }
+
+    @Test
+    void latestBalanceShouldFollowEveryBalanceChange() {
+        assertEquals(new BigDecimal(100), handler.handle(new FindLatestBalance("entity-a", SOURCE_WALLET)).balance());
+
+        handler.on(new TransferEvent("entity-a", SOURCE_WALLET, DESTINATION_WALLET, BigDecimal.TEN));
+        handler.on(new TransfersBatchedEvent("entity-a", List.of(new Movement(SOURCE_WALLET, DESTINATION_WALLET, BigDecimal.ONE, "postingId"))));
+
+        assertEquals(new BigDecimal(89), handler.handle(new FindLatestBalance("entity-a", SOURCE_WALLET)).balance());
+        assertEquals(new BigDecimal(111), handler.handle(new FindLatestBalance("entity-a", DESTINATION_WALLET)).balance());
+        // Same wallet id in another entity is a different wallet
+        assertEquals(new BigDecimal(100), handler.handle(new FindLatestBalance("entity-b", SOURCE_WALLET)).balance());
+        assertNull(handler.handle(new FindLatestBalance("entity-a", "unknown")));
+    }
+}
@@ -0,0 +1,129 @@
+package com.iot.payment.querymodel;
+
+import com.iot.payment.coreapi.events.BalanceUpdatedEvent;
+import com.iot.payment.coreapi.events.TransferEvent;
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventhandling.GenericEventMessage;
+import org.axonframework.messaging.correlation.MessageOriginProvider;
+import org.axonframework.messaging.unitofwork.BatchingUnitOfWork;
+import org.axonframework.messaging.unitofwork.DefaultUnitOfWork;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class AsyncBatchingDerivedEventPublisherUnitTest {
+    private final EventBus eventBus = mock(EventBus.class);
+
+    private static EventMessage<TransferEvent> transfer() {
+        return GenericEventMessage.asEventMessage(new TransferEvent("entityId", "source", "destination", BigDecimal.ONE));
+    }
+
+    private static EventMessage<BalanceUpdatedEvent> balanceUpdated(int amount) {
+        return GenericEventMessage.asEventMessage(new BalanceUpdatedEvent("source", "destination", BigDecimal.valueOf(amount)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void derivedEventsOfABatchShouldBeAppendedAtOnceAfterTheCommit() {
+        EventMessage<TransferEvent> first = transfer();
+        EventMessage<TransferEvent> second = transfer();
+        try (AsyncBatchingDerivedEventPublisher publisher = AsyncBatchingDerivedEventPublisher.builder().eventBus(eventBus).build()) {
+            BatchingUnitOfWork<EventMessage<TransferEvent>> unitOfWork = new BatchingUnitOfWork<>(List.of(first, second));
+            unitOfWork.registerCorrelationDataProvider(new MessageOriginProvider());
+            unitOfWork.executeWithResult(() -> {
+                publisher.publish(balanceUpdated(unitOfWork.getMessage() == first ? 1 : 2));
+                return null;
+            });
+            verify(eventBus, timeout(1000)).publish(anyList());
+        }
+
+        ArgumentCaptor<List<EventMessage<?>>> appended = ArgumentCaptor.forClass(List.class);
+        verify(eventBus).publish(appended.capture());
+        assertEquals(2, appended.getValue().size());
+        assertEquals(BigDecimal.ONE, ((BalanceUpdatedEvent) appended.getValue().get(0).getPayload()).amount());
+        assertEquals(first.getIdentifier(), appended.getValue().get(0).getMetaData().get(MessageOriginProvider.getDefaultCorrelationKey()));
+        assertEquals(second.getIdentifier(), appended.getValue().get(1).getMetaData().get(MessageOriginProvider.getDefaultCorrelationKey()));
+    }
+
+    @Test
+    public void derivedEventsOfARolledBackBatchShouldBeDropped() {
+        try (AsyncBatchingDerivedEventPublisher publisher = AsyncBatchingDerivedEventPublisher.builder().eventBus(eventBus).build()) {
+            UnitOfWork<?> unitOfWork = DefaultUnitOfWork.startAndGet(transfer());
+            publisher.publish(balanceUpdated(1));
+            unitOfWork.rollback();
+        }
+
+        verify(eventBus, never()).publish(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void everyPendingEventShouldBeAppendedInBatchesOfAtMostTheMaximumSize() {
+        List<EventMessage<?>> events = List.of(balanceUpdated(1), balanceUpdated(2), balanceUpdated(3), balanceUpdated(4), balanceUpdated(5));
+        try (AsyncBatchingDerivedEventPublisher publisher = AsyncBatchingDerivedEventPublisher.builder().eventBus(eventBus).maxBatchSize(2).build()) {
+            publisher.publishBatch(events);
+            verify(eventBus, timeout(1000).times(3)).publish(anyList());
+        }
+
+        ArgumentCaptor<List<EventMessage<?>>> appended = ArgumentCaptor.forClass(List.class);
+        verify(eventBus, times(3)).publish(appended.capture());
+        assertEquals(events, appended.getAllValues().stream().flatMap(List::stream).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void aFailedAppendShouldBeRetriedAheadOfLaterEvents() {
+        EventMessage<?> first = balanceUpdated(1);
+        EventMessage<?> second = balanceUpdated(2);
+        doThrow(new IllegalStateException("Event store unavailable")).doNothing().when(eventBus).publish(anyList());
+        try (AsyncBatchingDerivedEventPublisher publisher = AsyncBatchingDerivedEventPublisher.builder()
+                .eventBus(eventBus)
+                .maxBatchSize(1)
+                .retryInterval(Duration.ofMillis(50))
+                .build()) {
+            publisher.publishBatch(List.of(first));
+            verify(eventBus, timeout(1000)).publish(anyList());
+            publisher.publishBatch(List.of(second));
+            verify(eventBus, timeout(1000).times(3)).publish(anyList());
+        }
+
+        ArgumentCaptor<List<EventMessage<?>>> appended = ArgumentCaptor.forClass(List.class);
+        verify(eventBus, times(3)).publish(appended.capture());
+        assertEquals(List.of(List.of(first), List.of(first), List.of(second)), appended.getAllValues());
+    }
+
+    @Test
+    public void closingShouldAppendTheEventsStillPending() {
+        doThrow(new IllegalStateException("Event store unavailable")).doNothing().when(eventBus).publish(anyList());
+        AsyncBatchingDerivedEventPublisher publisher = AsyncBatchingDerivedEventPublisher.builder()
+                .eventBus(eventBus)
+                .retryInterval(Duration.ofHours(1))
+                .build();
+        publisher.publishBatch(List.of(balanceUpdated(1)));
+        verify(eventBus, timeout(1000)).publish(anyList());
+
+        publisher.close();
+
+        verify(eventBus, times(2)).publish(anyList());
+    }
+
+    @Test
+    public void batchesShouldHoldAtLeastOneEvent() {
+        assertThrows(IllegalArgumentException.class, () -> AsyncBatchingDerivedEventPublisher.builder().eventBus(eventBus).maxBatchSize(0).build());
+    }
+}
@@ -0,0 +1,77 @@
+package com.iot.payment.querymodel;
+
+import com.iot.payment.LedgerApplication;
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import com.iot.payment.coreapi.events.BalanceUpdatedEvent;
+import com.iot.payment.coreapi.events.MovementUpdatedEvent;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.common.stream.BlockingStream;
+import org.axonframework.eventhandling.TrackedEventMessage;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@SpringBootTest(classes = LedgerApplication.class, properties = {
+        "ledger.derived-events.publication=outbox",
+        "ledger.derived-events.outbox.relay-interval=1h"})
+public class DerivedEventOutboxIntegrationTest {
+    @Autowired
+    private CommandGateway commandGateway;
+    @Autowired
+    private LedgerInMemoryRepository repository;
+    @Autowired
+    private DerivedEventPublisher derivedEventPublisher;
+    @Autowired
+    private EventStore eventStore;
+
+    @Test
+    public void derivedEventsShouldWaitInTheOutboxUntilTheyAreRelayed() {
+        assertInstanceOf(OutboxDerivedEventPublisher.class, derivedEventPublisher);
+        OutboxDerivedEventPublisher outbox = (OutboxDerivedEventPublisher) derivedEventPublisher;
+        outbox.relay();
+        long derivedEventsBefore = derivedEventsInTheEventStore();
+
+        String entityId = UUID.randomUUID().toString();
+        commandGateway.sendAndWait(new CreateEntityCommand(entityId));
+        commandGateway.sendAndWait(new TransferCommand(entityId, "source", "destination", BigDecimal.ONE));
+        commandGateway.sendAndWait(new TransferCommand(entityId, "source", "destination", BigDecimal.TEN));
+        await().atMost(Duration.ofSeconds(10)).until(() -> repository.findEntity(entityId) != null
+                && repository.findEntity(entityId).getAccounts().get(0).getWallets().get(0).getPostings().size() == 2);
+        assertEquals(derivedEventsBefore, derivedEventsInTheEventStore());
+
+        // The projection changes before its batch commits, so the outbox may still be empty
+        AtomicInteger relayed = new AtomicInteger();
+        await().atMost(Duration.ofSeconds(10)).until(() -> relayed.addAndGet(outbox.relay()) >= 4);
+        assertEquals(4, relayed.get());
+        assertEquals(0, outbox.relay());
+        assertEquals(derivedEventsBefore + 4, derivedEventsInTheEventStore());
+    }
+
+    private long derivedEventsInTheEventStore() {
+        long derivedEvents = 0;
+        try (BlockingStream<TrackedEventMessage<?>> events = eventStore.openStream(null)) {
+            while (events.hasNextAvailable()) {
+                Class<?> payloadType = events.nextAvailable().getPayloadType();
+                if (payloadType.equals(MovementUpdatedEvent.class) || payloadType.equals(BalanceUpdatedEvent.class)) {
+                    derivedEvents++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        return derivedEvents;
+    }
+}
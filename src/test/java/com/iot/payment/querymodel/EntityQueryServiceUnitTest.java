@@ -0,0 +1,85 @@
+package com.iot.payment.querymodel;
+
+import com.iot.payment.coreapi.queries.SubscribeWalletBalances;
+import org.axonframework.common.Registration;
+import org.axonframework.messaging.responsetypes.ResponseType;
+import org.axonframework.queryhandling.DefaultSubscriptionQueryResult;
+import org.axonframework.queryhandling.QueryGateway;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EntityQueryServiceUnitTest {
+    private static final Duration WINDOW = Duration.ofMillis(250);
+
+    private static WalletBalance balance(String walletId, int amount) {
+        return new WalletBalance("entityId", walletId, BigDecimal.valueOf(amount), LocalDateTime.now());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EntityQueryService service(WalletBalance initial, Flux<WalletBalance> updates, Registration registration) {
+        QueryGateway queryGateway = mock(QueryGateway.class);
+        when(queryGateway.subscriptionQuery(eq(new SubscribeWalletBalances("entityId", null)), any(ResponseType.class), any(ResponseType.class)))
+                .thenReturn(new DefaultSubscriptionQueryResult<>(Mono.just(List.of(initial)), updates, registration));
+        return new EntityQueryService(queryGateway, WINDOW);
+    }
+
+    @Test
+    public void subscriptionShouldStartWithCurrentBalancesAndCoalesceUpdatesPerWallet() {
+        Registration registration = mock(Registration.class);
+        WalletBalance initial = balance("source", 100);
+        Flux<WalletBalance> updates = Flux.just(balance("source", 90), balance("source", 80), balance("destination", 120), balance("source", 70))
+                .concatWith(Flux.never());
+        EntityQueryService service = service(initial, updates, registration);
+
+        StepVerifier.withVirtualTime(() -> service.subscribeWalletBalances("entityId", null))
+                .expectNext(initial)
+                // The first change of each wallet is not delayed
+                .recordWith(ConcurrentHashMap::newKeySet)
+                .expectNextCount(2)
+                .consumeRecordedWith(immediate -> assertEquals(Set.of(BigDecimal.valueOf(90), BigDecimal.valueOf(120)),
+                        Set.copyOf(immediate.stream().map(WalletBalance::balance).toList())))
+                .expectNoEvent(WINDOW.minusMillis(1))
+                .thenAwait(Duration.ofMillis(1))
+                // Only the latest of the later changes within the window is sent
+                .expectNextMatches(balance -> balance.walletId().equals("source") && balance.balance().equals(BigDecimal.valueOf(70)))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        verify(registration).cancel();
+    }
+
+    @Test
+    public void theFirstChangeOfAWalletThatWentQuietShouldBeSentAtOnce() {
+        Registration registration = mock(Registration.class);
+        WalletBalance initial = balance("source", 100);
+        Flux<WalletBalance> updates = Flux.just(balance("source", 90))
+                .concatWith(Mono.delay(WINDOW.multipliedBy(3)).map(tick -> balance("source", 80)))
+                .concatWith(Flux.never());
+        EntityQueryService service = service(initial, updates, registration);
+
+        StepVerifier.withVirtualTime(() -> service.subscribeWalletBalances("entityId", null))
+                .expectNext(initial)
+                .expectNextMatches(balance -> balance.balance().equals(BigDecimal.valueOf(90)))
+                .expectNoEvent(WINDOW.multipliedBy(3).minusMillis(1))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNextMatches(balance -> balance.balance().equals(BigDecimal.valueOf(80)))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,96 @@
+package com.iot.payment.querymodel;
+
+import com.iot.payment.LedgerApplication;
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import com.iot.payment.repository.LedgerJournal;
+import com.iot.payment.repository.MappedLedgerJournal;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.eventhandling.EventTrackerStatus;
+import org.axonframework.eventhandling.StreamingEventProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LedgerJournalRestartIntegrationTest {
+
+    @TempDir
+    Path directory;
+
+    private ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(LedgerApplication.class).properties(
+                "server.port=0",
+                "spring.datasource.url=jdbc:h2:file:" + directory.resolve("ledger"),
+                "spring.jpa.hibernate.ddl-auto=update",
+                "ledger.journal.enabled=true",
+                "ledger.journal.directory=" + directory.resolve("journal"),
+                "ledger.journal.checkpoint-interval=100ms").run();
+    }
+
+    private static BigDecimal sourceBalance(ConfigurableApplicationContext context, String entityId) {
+        return context.getBean(LedgerInMemoryRepository.class).findEntity(entityId).getAccounts().get(0).getWallets().get(0).getBalance();
+    }
+
+    private static long journalSize(ConfigurableApplicationContext context) {
+        return ((MappedLedgerJournal) context.getBean(LedgerJournal.class)).size();
+    }
+
+    private static void awaitCaughtUp(ConfigurableApplicationContext context) {
+        StreamingEventProcessor processor = context.getBean(EventProcessingConfiguration.class)
+                .eventProcessor(ProjectionSnapshotter.PROCESSING_GROUP, StreamingEventProcessor.class).orElseThrow();
+        await().atMost(Duration.ofSeconds(30)).until(() -> {
+            Map<Integer, EventTrackerStatus> status = processor.processingStatus();
+            return status.size() == 8 && status.values().stream().allMatch(EventTrackerStatus::isCaughtUp);
+        });
+    }
+
+    @Test
+    public void restartsShouldNeitherChangeBalancesNorGrowTheJournal() throws IOException {
+        String entityId = UUID.randomUUID().toString();
+        BigDecimal balance;
+        long size;
+        try (ConfigurableApplicationContext context = start()) {
+            CommandGateway commandGateway = context.getBean(CommandGateway.class);
+            commandGateway.sendAndWait(new CreateEntityCommand(entityId));
+            commandGateway.sendAndWait(new TransferCommand(entityId, "source", "destination", new BigDecimal("30")));
+            commandGateway.sendAndWait(new TransferCommand(entityId, "source", "destination", new BigDecimal("20")));
+            awaitCaughtUp(context);
+            await().atMost(Duration.ofSeconds(10)).until(() -> context.getBean(LedgerJournal.class).lastCheckpoint().isPresent());
+            balance = sourceBalance(context, entityId);
+            size = journalSize(context);
+        }
+        assertEquals(0, new BigDecimal("50").compareTo(balance));
+
+        try (ConfigurableApplicationContext context = start()) {
+            awaitCaughtUp(context);
+            assertEquals(balance, sourceBalance(context, entityId));
+            assertEquals(size, journalSize(context));
+        }
+
+        // Without a checkpoint the whole event store is handled again
+        Files.delete(directory.resolve("journal").resolve("ledger-journal.checkpoint"));
+        try (ConfigurableApplicationContext context = start()) {
+            awaitCaughtUp(context);
+            assertEquals(balance, sourceBalance(context, entityId));
+            assertEquals(size, journalSize(context));
+
+            context.getBean(CommandGateway.class).sendAndWait(new TransferCommand(entityId, "source", "destination", new BigDecimal("10")));
+            await().atMost(Duration.ofSeconds(10)).until(() -> journalSize(context) == size + 2);
+            assertEquals(0, new BigDecimal("40").compareTo(sourceBalance(context, entityId)));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.iot.payment.querymodel;
+
+import com.iot.payment.LedgerApplication;
+import com.iot.payment.commandmodel.BalanceRetentionPolicy;
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.common.transaction.NoTransactionManager;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.eventhandling.tokenstore.inmemory.InMemoryTokenStore;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.axonframework.serialization.Serializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(classes = LedgerApplication.class, properties = {
+        "ledger.projection.snapshot.enabled=true",
+        "ledger.projection.snapshot.directory=target/projection-snapshot-integration-test",
+        "ledger.projection.snapshot.interval=1h"})
+public class ProjectionSnapshotIntegrationTest {
+    @Autowired
+    private CommandGateway commandGateway;
+    @Autowired
+    private LedgerInMemoryRepository repository;
+    @Autowired
+    private ProjectionSnapshotter snapshotter;
+    @Autowired
+    private EventProcessingConfiguration eventProcessing;
+    @Autowired
+    private EventStore eventStore;
+    @Autowired
+    private Serializer serializer;
+
+    @Test
+    public void snapshotOfTheRunningProjectionShouldRestoreIntoAFreshRepository() {
+        String entityId = UUID.randomUUID().toString();
+        commandGateway.sendAndWait(new CreateEntityCommand(entityId));
+        commandGateway.sendAndWait(new TransferCommand(entityId, "source", "destination", new BigDecimal("30")));
+        await().atMost(Duration.ofSeconds(10)).until(() -> repository.findEntity(entityId) != null
+                && repository.findEntity(entityId).getAccounts().get(0).getWallets().get(0).getPostings().size() == 1);
+
+        await().atMost(Duration.ofSeconds(10)).until(snapshotter::snapshot);
+
+        LedgerInMemoryRepository restoredRepository = new LedgerInMemoryRepository();
+        ProjectionWatermarks restoredWatermarks = new ProjectionWatermarks();
+        ProjectionSnapshotter restored = ProjectionSnapshotter.builder()
+                .repository(restoredRepository)
+                .watermarks(restoredWatermarks)
+                .eventProcessing(eventProcessing)
+                .eventStore(eventStore)
+                .tokenStore(new InMemoryTokenStore())
+                .transactionManager(NoTransactionManager.instance())
+                .serializer(serializer)
+                .balanceRetention(BalanceRetentionPolicy.UNBOUNDED)
+                .directory(Path.of("target/projection-snapshot-integration-test"))
+                .build();
+        restored.restore();
+
+        assertTrue(restored.resumeToken().isPresent());
+        assertEquals(0, new BigDecimal("70").compareTo(restoredRepository.findEntity(entityId).getAccounts().get(0).getWallets().get(0).getBalance()));
+        assertNotNull(restoredWatermarks.withEntity(entityId, applied -> applied));
+    }
+}
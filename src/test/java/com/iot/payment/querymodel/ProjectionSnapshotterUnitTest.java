@@ -0,0 +1,195 @@
+package com.iot.payment.querymodel;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Wallet;
+import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import com.iot.payment.service.LedgerServiceImpl;
+import com.iot.payment.service.TransferRequest;
+import org.axonframework.common.transaction.NoTransactionManager;
+import org.axonframework.config.EventProcessingConfiguration;
+import org.axonframework.eventhandling.EventTrackerStatus;
+import org.axonframework.eventhandling.GenericDomainEventMessage;
+import org.axonframework.eventhandling.GenericTrackedDomainEventMessage;
+import org.axonframework.eventhandling.GlobalSequenceTrackingToken;
+import org.axonframework.eventhandling.ReplayToken;
+import org.axonframework.eventhandling.Segment;
+import org.axonframework.eventhandling.StreamingEventProcessor;
+import org.axonframework.eventhandling.TrackingToken;
+import org.axonframework.eventhandling.tokenstore.TokenStore;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.axonframework.messaging.InterceptorChain;
+import org.axonframework.messaging.unitofwork.DefaultUnitOfWork;
+import org.axonframework.serialization.json.JacksonSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProjectionSnapshotterUnitTest {
+    private static final Segment[] SEGMENTS = Segment.ROOT_SEGMENT.split();
+
+    @TempDir
+    Path directory;
+    private final EventProcessingConfiguration eventProcessing = mock(EventProcessingConfiguration.class);
+    private final StreamingEventProcessor processor = mock(StreamingEventProcessor.class);
+    private final EventStore eventStore = mock(EventStore.class);
+    private final TokenStore tokenStore = mock(TokenStore.class);
+
+    private static EventTrackerStatus status(Segment segment, TrackingToken token) {
+        EventTrackerStatus status = mock(EventTrackerStatus.class);
+        when(status.getSegment()).thenReturn(segment);
+        when(status.getTrackingToken()).thenReturn(token);
+        return status;
+    }
+
+    private static GlobalSequenceTrackingToken token(long index) {
+        return new GlobalSequenceTrackingToken(index);
+    }
+
+    @BeforeEach
+    public void setup() {
+        when(eventProcessing.eventProcessor("entities", StreamingEventProcessor.class)).thenReturn(Optional.of(processor));
+        when(tokenStore.fetchSegments("entities")).thenReturn(new int[0]);
+    }
+
+    private ProjectionSnapshotter snapshotter(LedgerInMemoryRepository repository, ProjectionWatermarks watermarks) {
+        return ProjectionSnapshotter.builder()
+                .repository(repository)
+                .watermarks(watermarks)
+                .eventProcessing(eventProcessing)
+                .eventStore(eventStore)
+                .tokenStore(tokenStore)
+                .transactionManager(NoTransactionManager.instance())
+                .serializer(JacksonSerializer.defaultSerializer())
+                .directory(directory)
+                .build();
+    }
+
+    private static LedgerInMemoryRepository ledger() {
+        LedgerInMemoryRepository repository = new LedgerInMemoryRepository();
+        Wallet source = Wallet.builder().id("source").balance(new BigDecimal("100")).build();
+        Wallet destination = Wallet.builder().id("destination").balance(new BigDecimal("100")).build();
+        repository.register(Entity.builder().id("entityId").accounts(List.of(Account.builder().id("accountId").wallets(List.of(source, destination)).state(AccountState.OPEN).build())).build());
+        new LedgerServiceImpl(repository).transfer("entityId", List.of(TransferRequest.builder().sourceWalletId("source").destinationWalletId("destination").amount(new BigDecimal("25")).postingId("p1").build()));
+        return repository;
+    }
+
+    @Test
+    public void restoreShouldResumeFromTheLowerBoundAndSkipWhatEntitiesAlreadyReflect() throws Exception {
+        ProjectionWatermarks watermarks = new ProjectionWatermarks();
+        watermarks.restore("entityId", token(6));
+        Map<Integer, EventTrackerStatus> status = Map.of(0, status(SEGMENTS[0], token(5)), 1, status(SEGMENTS[1], token(7)));
+        when(processor.processingStatus()).thenReturn(status);
+        ProjectionSnapshotter snapshotter = snapshotter(ledger(), watermarks);
+
+        assertTrue(snapshotter.snapshot());
+        assertFalse(snapshotter.snapshot());
+
+        when(eventStore.createHeadToken()).thenReturn(token(10));
+        LedgerInMemoryRepository restoredRepository = new LedgerInMemoryRepository();
+        ProjectionWatermarks restoredWatermarks = new ProjectionWatermarks();
+        ProjectionSnapshotter restored = snapshotter(restoredRepository, restoredWatermarks);
+        restored.restore();
+
+        assertEquals(Optional.of(token(5)), restored.resumeToken());
+        assertEquals(new BigDecimal("75"), restoredRepository.indexOf("entityId", restoredRepository.findEntity("entityId")).wallet("source").getBalance());
+        assertEquals(new BigDecimal("125"), restoredRepository.indexOf("entityId", restoredRepository.findEntity("entityId")).wallet("destination").getBalance());
+        assertEquals(token(6), restoredWatermarks.withEntity("entityId", applied -> applied));
+
+        InterceptorChain chain = mock(InterceptorChain.class);
+        restoredWatermarks.handle(new DefaultUnitOfWork<>(transfer(6)), chain);
+        verify(chain, never()).proceed();
+        restoredWatermarks.handle(new DefaultUnitOfWork<>(transfer(7)), chain);
+        verify(chain, times(1)).proceed();
+        assertEquals(token(7), restoredWatermarks.withEntity("entityId", applied -> applied));
+    }
+
+    @Test
+    public void snapshotAheadOfTheEventStoreShouldBeIgnored() {
+        Map<Integer, EventTrackerStatus> status = Map.of(0, status(Segment.ROOT_SEGMENT, token(5)));
+        when(processor.processingStatus()).thenReturn(status);
+        assertTrue(snapshotter(ledger(), new ProjectionWatermarks()).snapshot());
+
+        when(eventStore.createHeadToken()).thenReturn(token(3));
+        LedgerInMemoryRepository restoredRepository = new LedgerInMemoryRepository();
+        ProjectionSnapshotter restored = snapshotter(restoredRepository, new ProjectionWatermarks());
+        restored.restore();
+
+        assertTrue(restoredRepository.getEntities().isEmpty());
+        assertEquals(Optional.empty(), restored.resumeToken());
+    }
+
+    @Test
+    public void replayedEventsShouldBeComparedByTheirPositionAndAppliedAgainAfterAReset() throws Exception {
+        ProjectionWatermarks watermarks = new ProjectionWatermarks();
+        watermarks.restore("entityId", token(6));
+        InterceptorChain chain = mock(InterceptorChain.class);
+
+        watermarks.handle(new DefaultUnitOfWork<>(transfer(new ReplayToken(token(10), token(5)), 5)), chain);
+        verify(chain, never()).proceed();
+
+        watermarks.onReset();
+        watermarks.handle(new DefaultUnitOfWork<>(transfer(new ReplayToken(token(10), token(5)), 5)), chain);
+        verify(chain, times(1)).proceed();
+        assertEquals(token(5), watermarks.token("entityId"));
+    }
+
+    @Test
+    public void entitiesThatAppliedNoEventSinceTheLastSnapshotShouldNotBeEncodedAgain() throws Exception {
+        ProjectionWatermarks watermarks = new ProjectionWatermarks();
+        watermarks.restore("entityId", token(6));
+        LedgerInMemoryRepository repository = spy(ledger());
+        ProjectionSnapshotter snapshotter = snapshotter(repository, watermarks);
+
+        Map<Integer, EventTrackerStatus> atSeven = Map.of(0, status(Segment.ROOT_SEGMENT, token(7)));
+        when(processor.processingStatus()).thenReturn(atSeven);
+        assertTrue(snapshotter.snapshot());
+        Map<Integer, EventTrackerStatus> atEight = Map.of(0, status(Segment.ROOT_SEGMENT, token(8)));
+        when(processor.processingStatus()).thenReturn(atEight);
+        assertTrue(snapshotter.snapshot());
+        verify(repository, times(1)).findEntity("entityId");
+
+        watermarks.handle(new DefaultUnitOfWork<>(transfer(9)), mock(InterceptorChain.class));
+        Map<Integer, EventTrackerStatus> atNine = Map.of(0, status(Segment.ROOT_SEGMENT, token(9)));
+        when(processor.processingStatus()).thenReturn(atNine);
+        assertTrue(snapshotter.snapshot());
+        verify(repository, times(2)).findEntity("entityId");
+    }
+
+    @Test
+    public void lowerBoundShouldRequireEverySegmentToHaveAToken() {
+        assertNull(ProjectionSnapshotter.lowerBound(Map.of(0, status(SEGMENTS[0], token(5)))));
+        assertNull(ProjectionSnapshotter.lowerBound(Map.of(0, status(SEGMENTS[0], token(5)), 1, status(SEGMENTS[1], null))));
+        assertNull(ProjectionSnapshotter.lowerBound(Map.of()));
+        Segment[] quarters = SEGMENTS[1].split();
+        assertEquals(token(2), ProjectionSnapshotter.lowerBound(Map.of(0, status(SEGMENTS[0], token(5)), 1, status(quarters[0], token(2)), 3, status(quarters[1], token(9)))));
+    }
+
+    private static GenericTrackedDomainEventMessage<TransferEvent> transfer(long index) {
+        return transfer(token(index), index);
+    }
+
+    private static GenericTrackedDomainEventMessage<TransferEvent> transfer(TrackingToken token, long index) {
+        return new GenericTrackedDomainEventMessage<>(token,
+                new GenericDomainEventMessage<>("EntityAggregate", "entityId", index, new TransferEvent("entityId", "source", "destination", BigDecimal.ONE)));
+    }
+}
@@ -0,0 +1,76 @@
+package com.iot.payment.repository;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Posting;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.commandmodel.Wallet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EntityIndexUnitTest {
+    private Wallet sourceWallet;
+    private Wallet destinationWallet;
+    private Account account;
+    private Entity entity;
+
+    @BeforeEach
+    public void setup() {
+        Posting posting = Posting.builder().id("postingId").amount(new BigDecimal("-10")).state(PostingState.CLEARED).build();
+        sourceWallet = Wallet.builder().id("sourceWalletId").balance(new BigDecimal("100")).postings(new ArrayList<>(List.of(posting))).build();
+        destinationWallet = Wallet.builder().id("destinationWalletId").balance(new BigDecimal("50")).build();
+        account = Account.builder().id("accountId").wallets(Arrays.asList(sourceWallet, destinationWallet)).state(AccountState.OPEN).build();
+        entity = Entity.builder().id("entityId").accounts(List.of(account)).build();
+    }
+
+    @Test
+    public void indexShouldResolveAccountsWalletsAndExistingPostings() {
+        EntityIndex index = new EntityIndex(entity);
+
+        assertSame(account, index.findAccount("accountId"));
+        assertNull(index.findAccount("unknownAccountId"));
+        assertSame(sourceWallet, index.wallet("sourceWalletId"));
+        assertSame(account, index.wallet("destinationWalletId").getAccount());
+        assertEquals(new BigDecimal("-10"), index.posting("sourceWalletId", "postingId").getAmount());
+        assertThrows(NoSuchElementException.class, () -> index.wallet("unknownWalletId"));
+        assertThrows(NoSuchElementException.class, () -> index.posting("destinationWalletId", "postingId"));
+    }
+
+    @Test
+    public void addPostingShouldUpdateWalletAndIndex() {
+        EntityIndex index = new EntityIndex(entity);
+        Posting posting = Posting.builder().id("newPostingId").amount(new BigDecimal("10")).state(PostingState.CLEARED).build();
+
+        index.addPosting(destinationWallet, posting);
+
+        assertEquals(1, destinationWallet.getPostings().size());
+        assertSame(posting, index.posting("destinationWalletId", "newPostingId"));
+    }
+
+    @Test
+    public void repositoryShouldRebuildIndexWhenEntityIsReplaced() {
+        LedgerInMemoryRepository repository = new LedgerInMemoryRepository();
+        repository.register(entity);
+
+        EntityIndex index = repository.indexOf("entityId", entity);
+        assertSame(index, repository.indexOf("entityId", entity));
+
+        Entity replacement = Entity.builder().id("entityId").accounts(List.of()).build();
+        EntityIndex rebuilt = repository.indexOf("entityId", replacement);
+        assertNotSame(index, rebuilt);
+        assertThrows(NoSuchElementException.class, () -> rebuilt.wallet("sourceWalletId"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.iot.payment.repository;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Wallet;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LedgerInMemoryRepositoryUnitTest {
+
+    private static Entity entity(String entityId) {
+        Wallet wallet = Wallet.builder().id("walletId").balance(BigDecimal.TEN).build();
+        return Entity.builder().id(entityId).accounts(List.of(Account.builder().id("accountId").wallets(List.of(wallet)).state(AccountState.OPEN).build())).build();
+    }
+
+    @Test
+    public void registerShouldStoreAndIndexEntity() {
+        LedgerInMemoryRepository repository = new LedgerInMemoryRepository();
+        Entity entity = entity("entityId");
+
+        repository.register(entity);
+
+        assertSame(entity, repository.findEntity("entityId"));
+        assertSame(entity, repository.getEntities().get("entityId"));
+        assertSame(repository.indexOf("entityId", entity), repository.indexOf("entityId", entity));
+        assertEquals(BigDecimal.TEN, repository.indexOf("entityId", entity).wallet("walletId").getBalance());
+        Map<String, Entity> entities = repository.getEntities();
+        assertThrows(UnsupportedOperationException.class, () -> entities.put("other", entity));
+        assertThrows(IllegalArgumentException.class, () -> repository.register(Entity.builder().accounts(List.of()).build()));
+    }
+
+    @Test
+    public void readersShouldNotBeDisturbedByConcurrentRegistrations() throws Exception {
+        LedgerInMemoryRepository repository = new LedgerInMemoryRepository();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                readers.add(executor.submit(() -> {
+                    while (writing.get()) {
+                        repository.getEntities().values().forEach(entity -> entity.getAccounts().get(0).getWallets().get(0).getBalance());
+                    }
+                }));
+            }
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    repository.register(entity("entity" + i));
+                }
+                writing.set(false);
+            });
+
+            writer.get(30, TimeUnit.SECONDS);
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            writing.set(false);
+            executor.shutdownNow();
+        }
+        assertEquals(10_000, repository.getEntities().size());
+    }
+}
@@ -0,0 +1,61 @@
+package com.iot.payment.repository;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.AssetType;
+import com.iot.payment.commandmodel.BalanceRetentionPolicy;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Posting;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.commandmodel.Wallet;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class LedgerSnapshotCodecUnitTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 10, 0);
+
+    @Test
+    public void entityShouldRoundTrip() throws IOException {
+        Wallet fixedPoint = Wallet.builder().id("source").assetType(AssetType.FIAT_CURRENCY).minorUnitScale(2).balance(new BigDecimal("89.50")).build();
+        fixedPoint.getPostings().add(Posting.builder().id("p1").amount(new BigDecimal("-10.50")).state(PostingState.CLEARED).dateTime(START).build());
+        fixedPoint.addBalanceHistory(new BigDecimal("89.50"), START);
+        Wallet decimal = Wallet.builder().id("destination").balance(new BigDecimal("123456789012345678901234567890.5")).build();
+        decimal.getPostings().add(Posting.builder().id(null).amount(BigDecimal.ONE).state(PostingState.PENDING).build());
+        decimal.addBalanceHistory(new BigDecimal("123456789012345678901234567890.5"), START.plusSeconds(1));
+        List<Account> accounts = new ArrayList<>();
+        accounts.add(Account.builder().id("accountId").state(AccountState.FROZEN).wallets(List.of(fixedPoint, decimal)).build());
+        Entity entity = Entity.builder().id("entityId").accounts(accounts).build();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LedgerSnapshotCodec.writeEntity(new DataOutputStream(bytes), entity);
+        Entity restored = LedgerSnapshotCodec.readEntity(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), BalanceRetentionPolicy.UNBOUNDED);
+
+        assertEquals("entityId", restored.getId());
+        Account account = restored.getAccounts().get(0);
+        assertEquals("accountId", account.getId());
+        assertEquals(AccountState.FROZEN, account.getState());
+        Wallet restoredFixedPoint = account.getWallets().get(0);
+        assertEquals(2, restoredFixedPoint.getMinorUnitScale());
+        assertEquals(8950, restoredFixedPoint.getBalanceUnits());
+        assertEquals(AssetType.FIAT_CURRENCY, restoredFixedPoint.getAssetType());
+        assertEquals(fixedPoint.getPostings(), restoredFixedPoint.getPostings());
+        assertEquals(new BigDecimal("89.50"), restoredFixedPoint.getBalanceAt(START));
+        Wallet restoredDecimal = account.getWallets().get(1);
+        assertNull(restoredDecimal.getAssetType());
+        assertEquals(decimal.getBalance(), restoredDecimal.getBalance());
+        assertEquals(decimal.getPostings(), restoredDecimal.getPostings());
+        assertEquals(decimal.getBalanceHistory(), restoredDecimal.getBalanceHistory());
+    }
+}
@@ -0,0 +1,259 @@
+package com.iot.payment.repository;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.AssetType;
+import com.iot.payment.commandmodel.BalanceRetentionPolicy;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Posting;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.commandmodel.Wallet;
+import com.iot.payment.service.LedgerServiceImpl;
+import com.iot.payment.service.TransferOutcome;
+import com.iot.payment.service.TransferRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedLedgerJournalUnitTest {
+
+    @TempDir
+    Path directory;
+
+    private static List<JournalRecord> replay(LedgerJournal journal) {
+        List<JournalRecord> records = new ArrayList<>();
+        journal.replay(records::add);
+        return records;
+    }
+
+    private static JournalRecord posting(int i) {
+        return JournalRecord.postingUpdated("entityId", "walletId", "posting" + i, BigDecimal.valueOf(i, 2), PostingState.CLEARED, i);
+    }
+
+    @Test
+    public void recordsShouldSurviveReopeningAcrossSegments() {
+        MappedLedgerJournal journal = MappedLedgerJournal.open(directory, 4, false);
+        Wallet wallet = Wallet.builder().id("walletId").assetType(AssetType.FIAT_CURRENCY).minorUnitScale(2).balance(new BigDecimal("100.00")).build();
+        Account account = Account.builder().id("accountId").state(AccountState.OPEN).build();
+        journal.append(List.of(JournalRecord.walletOpened("entityId", account, wallet)));
+        List<JournalRecord> postings = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            postings.add(posting(i));
+        }
+        journal.append(postings);
+        journal.append(List.of(JournalRecord.accountStateChanged("entityId", "accountId", AccountState.FROZEN)));
+        journal.close();
+
+        MappedLedgerJournal reopened = MappedLedgerJournal.open(directory, 4, false);
+        List<JournalRecord> records = replay(reopened);
+
+        assertEquals(11, reopened.size());
+        assertEquals(JournalRecord.walletOpened("entityId", account, wallet), records.get(0));
+        assertEquals(postings, records.subList(1, 10));
+        assertEquals(JournalRecord.accountStateChanged("entityId", "accountId", AccountState.FROZEN), records.get(10));
+        assertNull(records.get(10).amount());
+
+        reopened.append(List.of(posting(9)));
+        assertEquals(posting(9), replay(reopened).get(11));
+    }
+
+    @Test
+    public void batchThatDoesNotFitShouldNotBeJournaledAtAll() {
+        MappedLedgerJournal journal = MappedLedgerJournal.open(directory, 4, false);
+        JournalRecord tooLong = JournalRecord.postingUpdated("entityId", "walletId", "p".repeat(64), BigDecimal.ONE, PostingState.CLEARED, 0);
+        JournalRecord tooLarge = JournalRecord.postingUpdated("entityId", "walletId", "postingId", new BigDecimal("123456789012345678901234567890"), PostingState.CLEARED, 0);
+
+        assertThrows(IllegalArgumentException.class, () -> journal.append(List.of(posting(0), tooLong)));
+        assertThrows(IllegalArgumentException.class, () -> journal.append(List.of(posting(0), tooLarge)));
+
+        assertEquals(0, journal.size());
+    }
+
+    private void clearRecords(int segment, int from, int to) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(String.format("ledger-journal-%010d.seg", segment)), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[(to - from) * MappedLedgerJournal.RECORD_SIZE]), (long) from * MappedLedgerJournal.RECORD_SIZE);
+        }
+    }
+
+    @Test
+    public void tornRecordAtTheTailShouldBeDroppedWithItsBatch() throws IOException {
+        MappedLedgerJournal journal = MappedLedgerJournal.open(directory, 8, true);
+        journal.append(List.of(posting(0)));
+        journal.append(List.of(posting(1), posting(2)));
+        journal.close();
+        try (FileChannel channel = FileChannel.open(directory.resolve("ledger-journal-0000000000.seg"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 2L * MappedLedgerJournal.RECORD_SIZE + 40);
+        }
+
+        MappedLedgerJournal reopened = MappedLedgerJournal.open(directory, 8, false);
+        assertEquals(List.of(posting(0)), replay(reopened));
+
+        reopened.append(List.of(posting(3)));
+        assertEquals(List.of(posting(0), posting(3)), replay(reopened));
+    }
+
+    @Test
+    public void batchCutOffInTheMiddleShouldBeDroppedWhole() throws IOException {
+        MappedLedgerJournal journal = MappedLedgerJournal.open(directory, 8, true);
+        journal.append(List.of(posting(0), posting(1)));
+        journal.append(List.of(posting(2), posting(3), posting(4)));
+        journal.close();
+        // The crash came before the last record of the second batch was written
+        clearRecords(0, 4, 5);
+
+        MappedLedgerJournal reopened = MappedLedgerJournal.open(directory, 8, false);
+        assertEquals(List.of(posting(0), posting(1)), replay(reopened));
+        assertEquals(2, reopened.size());
+
+        reopened.append(List.of(posting(5)));
+        reopened.close();
+        assertEquals(List.of(posting(0), posting(1), posting(5)), replay(MappedLedgerJournal.open(directory, 8, false)));
+    }
+
+    @Test
+    public void batchCutOffInALaterSegmentShouldBeDroppedFromEverySegment() throws IOException {
+        MappedLedgerJournal journal = MappedLedgerJournal.open(directory, 4, true);
+        journal.append(List.of(posting(0), posting(1)));
+        journal.append(List.of(posting(2), posting(3), posting(4), posting(5), posting(6)));
+        journal.close();
+        // Records 2 and 3 of the second batch are in the first segment, the rest in the second one
+        clearRecords(1, 2, 3);
+
+        MappedLedgerJournal reopened = MappedLedgerJournal.open(directory, 4, false);
+        assertEquals(List.of(posting(0), posting(1)), replay(reopened));
+        assertEquals(2, reopened.size());
+
+        reopened.append(List.of(posting(7)));
+        assertEquals(List.of(posting(0), posting(1), posting(7)), replay(reopened));
+    }
+
+    @Test
+    public void segmentSizeShouldNotChangeBetweenRuns() {
+        MappedLedgerJournal.open(directory, 4, false).close();
+
+        assertThrows(IllegalStateException.class, () -> MappedLedgerJournal.open(directory, 8, false));
+    }
+
+    @Test
+    public void repositoryShouldBeRebuiltFromItsJournal() {
+        MappedLedgerJournal journal = MappedLedgerJournal.open(directory, 16, false);
+        LedgerInMemoryRepository repository = new LedgerInMemoryRepository(journal, BalanceRetentionPolicy.UNBOUNDED);
+        Wallet source = Wallet.builder().id("source").assetType(AssetType.FIAT_CURRENCY).minorUnitScale(2).balance(new BigDecimal("100")).build();
+        Wallet destination = Wallet.builder().id("destination").assetType(AssetType.FIAT_CURRENCY).minorUnitScale(2).balance(new BigDecimal("100")).build();
+        repository.register(Entity.builder().id("entityId").accounts(List.of(Account.builder().id("accountId").wallets(List.of(source, destination)).state(AccountState.OPEN).build())).build());
+        LedgerServiceImpl ledgerService = new LedgerServiceImpl(repository);
+        ledgerService.transfer("entityId", List.of(
+                TransferRequest.builder().sourceWalletId("source").destinationWalletId("destination").amount(new BigDecimal("10.50")).postingId("p1").build(),
+                TransferRequest.builder().sourceWalletId("source").destinationWalletId("destination").amount(new BigDecimal("4.50")).postingId("p2").build()));
+        ledgerService.modifyPosting("entityId", "source", "destination", "p1", new BigDecimal("20"), PostingState.CLEARED);
+        assertThrows(IllegalArgumentException.class, () -> ledgerService.transfer("entityId",
+                List.of(TransferRequest.builder().sourceWalletId("source").destinationWalletId("destination").amount(BigDecimal.ONE).postingId("p".repeat(64)).build())));
+        ledgerService.changeAccountState("entityId", "accountId", AccountState.SUSPENDED);
+        journal.close();
+
+        LedgerInMemoryRepository restored = new LedgerInMemoryRepository(MappedLedgerJournal.open(directory, 16, false), BalanceRetentionPolicy.UNBOUNDED);
+        restored.restore();
+
+        EntityIndex original = repository.indexOf("entityId", repository.findEntity("entityId"));
+        EntityIndex rebuilt = restored.indexOf("entityId", restored.findEntity("entityId"));
+        for (String walletId : List.of("source", "destination")) {
+            Wallet expected = original.wallet(walletId);
+            Wallet actual = rebuilt.wallet(walletId);
+            assertEquals(expected.getBalance(), actual.getBalance());
+            assertEquals(expected.getMinorUnitScale(), actual.getMinorUnitScale());
+            assertEquals(expected.getPostings(), actual.getPostings());
+            LocalDateTime last = expected.getBalanceHistory().get(expected.getBalanceHistory().size() - 1).getTimestamp();
+            assertEquals(expected.getBalanceAt(last), actual.getBalanceAt(last));
+            assertEquals(expected.getBalanceAt(expected.getPostings().get(0).getDateTime()), actual.getBalanceAt(expected.getPostings().get(0).getDateTime()));
+        }
+        assertEquals(new BigDecimal("75.50"), rebuilt.wallet("source").getBalance());
+        assertEquals(AccountState.SUSPENDED, rebuilt.findAccount("accountId").getState());
+    }
+
+    @Test
+    public void checkpointShouldSurviveReopening() {
+        MappedLedgerJournal journal = MappedLedgerJournal.open(directory, 4, false);
+        assertTrue(journal.lastCheckpoint().isEmpty());
+        journal.checkpoint(new byte[]{1, 2});
+        journal.checkpoint(new byte[]{3, 4, 5});
+        journal.close();
+
+        assertArrayEquals(new byte[]{3, 4, 5}, MappedLedgerJournal.open(directory, 4, false).lastCheckpoint().orElseThrow());
+    }
+
+    @Test
+    public void changesHandledAgainShouldNotBeJournaledAgain() {
+        MappedLedgerJournal journal = MappedLedgerJournal.open(directory, 16, false);
+        LedgerInMemoryRepository repository = new LedgerInMemoryRepository(journal, BalanceRetentionPolicy.UNBOUNDED);
+        Wallet source = Wallet.builder().id("source").assetType(AssetType.FIAT_CURRENCY).minorUnitScale(2).balance(new BigDecimal("100")).build();
+        Wallet destination = Wallet.builder().id("destination").assetType(AssetType.FIAT_CURRENCY).minorUnitScale(2).balance(new BigDecimal("100")).build();
+        repository.register(Entity.builder().id("entityId").accounts(List.of(Account.builder().id("accountId").wallets(List.of(source, destination)).state(AccountState.OPEN).build())).build());
+        List<TransferRequest> transfers = List.of(
+                TransferRequest.builder().sourceWalletId("source").destinationWalletId("destination").amount(new BigDecimal("10.50")).postingId("p1").build(),
+                TransferRequest.builder().sourceWalletId("source").destinationWalletId("destination").amount(new BigDecimal("4.50")).postingId("p2").build());
+        LedgerServiceImpl ledgerService = new LedgerServiceImpl(repository);
+        ledgerService.transfer("entityId", transfers);
+        ledgerService.modifyPosting("entityId", "source", "destination", "p1", new BigDecimal("20"), PostingState.CLEARED);
+        long size = journal.size();
+
+        assertEquals(List.of(), ledgerService.transfer("entityId", transfers));
+        ledgerService.modifyPosting("entityId", "source", "destination", "p1", new BigDecimal("20"), PostingState.CLEARED);
+        ledgerService.changeAccountState("entityId", "accountId", AccountState.OPEN);
+
+        assertEquals(size, journal.size());
+        assertEquals(new BigDecimal("75.50"), repository.indexOf("entityId", repository.findEntity("entityId")).wallet("source").getBalance());
+    }
+
+    @Test
+    public void transferJournaledOnOnlyOneWalletShouldNotCountAsMade() {
+        MappedLedgerJournal journal = MappedLedgerJournal.open(directory, 16, false);
+        Wallet source = Wallet.builder().id("source").assetType(AssetType.FIAT_CURRENCY).minorUnitScale(2).balance(new BigDecimal("100")).build();
+        Wallet destination = Wallet.builder().id("destination").assetType(AssetType.FIAT_CURRENCY).minorUnitScale(2).balance(new BigDecimal("100")).build();
+        Account account = Account.builder().id("accountId").state(AccountState.OPEN).build();
+        Posting sourcePosting = Posting.builder().id("p1").amount(new BigDecimal("-10")).state(PostingState.CLEARED).dateTime(LocalDateTime.now()).build();
+        // A journal written before batches were atomic may hold the source posting of a transfer without its destination
+        journal.append(List.of(JournalRecord.walletOpened("entityId", account, source), JournalRecord.walletOpened("entityId", account, destination)));
+        journal.append(List.of(JournalRecord.postingAdded("entityId", "source", sourcePosting)));
+        LedgerInMemoryRepository restored = new LedgerInMemoryRepository(journal, BalanceRetentionPolicy.UNBOUNDED);
+        restored.restore();
+
+        TransferOutcome outcome = new LedgerServiceImpl(restored).transferEach("entityId", List.of(
+                TransferRequest.builder().sourceWalletId("source").destinationWalletId("destination").amount(BigDecimal.TEN).postingId("p1").build()));
+
+        assertEquals(List.of(), outcome.postingIds());
+        assertTrue(outcome.rejections().containsKey("p1"));
+    }
+
+    @Test
+    public void replayShouldSkipWalletsAndPostingsItAlreadyApplied() {
+        MappedLedgerJournal journal = MappedLedgerJournal.open(directory, 16, false);
+        Wallet wallet = Wallet.builder().id("walletId").assetType(AssetType.FIAT_CURRENCY).minorUnitScale(2).balance(new BigDecimal("100")).build();
+        Account account = Account.builder().id("accountId").state(AccountState.OPEN).build();
+        Posting posting = Posting.builder().id("p1").amount(new BigDecimal("-10")).state(PostingState.CLEARED).dateTime(LocalDateTime.now()).build();
+        journal.append(List.of(JournalRecord.walletOpened("entityId", account, wallet), JournalRecord.postingAdded("entityId", "walletId", posting)));
+        journal.append(List.of(JournalRecord.walletOpened("entityId", account, wallet), JournalRecord.postingAdded("entityId", "walletId", posting)));
+
+        LedgerInMemoryRepository restored = new LedgerInMemoryRepository(journal, BalanceRetentionPolicy.UNBOUNDED);
+        restored.restore();
+
+        Entity entity = restored.findEntity("entityId");
+        assertEquals(1, entity.getAccounts().get(0).getWallets().size());
+        assertEquals(1, entity.getAccounts().get(0).getWallets().get(0).getPostings().size());
+        assertEquals(new BigDecimal("90.00"), restored.indexOf("entityId", entity).wallet("walletId").getBalance());
+    }
+}
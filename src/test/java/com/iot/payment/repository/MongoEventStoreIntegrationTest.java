@@ -0,0 +1,87 @@
+package com.iot.payment.repository;
+
+import com.iot.payment.LedgerApplication;
+import com.iot.payment.commandmodel.aggregate.EntityAggregate;
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.eventsourcing.eventstore.EventStorageEngine;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.axonframework.extensions.mongo.MongoTemplate;
+import org.axonframework.extensions.mongo.eventsourcing.eventstore.MongoEventStorageEngine;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.mongodb.client.model.Filters.eq;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(classes = LedgerApplication.class, properties = "ledger.event-store.mongo.enabled=true")
+public class MongoEventStoreIntegrationTest {
+    private static final MongoTestServer MONGO = MongoTestServer.start();
+
+    @Autowired
+    private CommandGateway commandGateway;
+    @Autowired
+    private EventStorageEngine eventStorageEngine;
+    @Autowired
+    private EventStore eventStore;
+    @Autowired
+    private MongoTemplate ledgerMongoTemplate;
+    @Autowired
+    private Snapshotter snapshotter;
+
+    @DynamicPropertySource
+    static void mongo(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", MONGO::uri);
+    }
+
+    @AfterAll
+    static void stopMongo() {
+        MONGO.close();
+    }
+
+    @Test
+    public void eventsOfACommandShouldBeStoredInOneCompactDocument() {
+        assertInstanceOf(MongoEventStorageEngine.class, eventStorageEngine);
+        String entityId = UUID.randomUUID().toString();
+        commandGateway.sendAndWait(new CreateEntityCommand(entityId));
+        commandGateway.sendAndWait(new TransferCommand(entityId, "source", "destination", BigDecimal.ONE));
+
+        List<Document> commits = ledgerMongoTemplate.eventCollection().find(eq("aid", entityId)).into(new ArrayList<>());
+        assertEquals(2, commits.size());
+        assertTrue(commits.get(1).containsKey("events"));
+        assertTrue(commits.get(1).containsKey("ts"));
+        assertEquals(2, eventStore.readEvents(entityId, 0).asStream().count());
+    }
+
+    @Test
+    public void onlyTheLatestSnapshotOfAnEntityShouldBeKept() {
+        String entityId = UUID.randomUUID().toString();
+        commandGateway.sendAndWait(new CreateEntityCommand(entityId));
+        snapshotter.scheduleSnapshot(EntityAggregate.class, entityId);
+        commandGateway.sendAndWait(new TransferCommand(entityId, "source", "destination", BigDecimal.ONE));
+        snapshotter.scheduleSnapshot(EntityAggregate.class, entityId);
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> {
+            Document snapshot = ledgerMongoTemplate.snapshotCollection().find(eq("aid", entityId)).first();
+            return snapshot != null && snapshot.get("seq", Number.class).longValue() == 1;
+        });
+        assertEquals(1, ledgerMongoTemplate.snapshotCollection().countDocuments(eq("aid", entityId)));
+        assertEquals(2, eventStore.readEvents(entityId, 0).asStream().count());
+    }
+}
@@ -0,0 +1,50 @@
+package com.iot.payment.repository;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.MongoDBContainer;
+
+/**
+ * A MongoDB for tests: a container when Docker is available, an in memory MongoDB wire protocol server otherwise.
+ * The in memory server implements the commands the event storage engine uses, not MongoDB's storage engine, so its
+ * timings say nothing about MongoDB.
+ */
+public final class MongoTestServer implements AutoCloseable {
+    private final MongoDBContainer container;
+    private final MongoServer server;
+    private final String uri;
+
+    private MongoTestServer(MongoDBContainer container, MongoServer server, String uri) {
+        this.container = container;
+        this.server = server;
+        this.uri = uri;
+    }
+
+    public static MongoTestServer start() {
+        if (DockerClientFactory.instance().isDockerAvailable()) {
+            MongoDBContainer container = new MongoDBContainer("mongo:6.0");
+            container.start();
+            return new MongoTestServer(container, null, container.getReplicaSetUrl());
+        }
+        MongoServer server = new MongoServer(new MemoryBackend());
+        return new MongoTestServer(null, server, server.bindAndGetConnectionString());
+    }
+
+    public boolean isContainer() {
+        return container != null;
+    }
+
+    public String uri() {
+        return uri;
+    }
+
+    @Override
+    public void close() {
+        if (container != null) {
+            container.stop();
+        } else {
+            server.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.iot.payment.rest;
+
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Slow IoT clients streaming bulk transfers: every client sends one transfer and keeps its request open until all
+ * clients are connected. A client is served once the receipt of its first transfer comes back, so the number of
+ * clients served while all of them hold their requests open is the number of requests the server works on at once.
+ * Both figures and the time it took are logged, so runs on different JDKs can be compared.
+ */
+@Slf4j
+public abstract class AbstractSlowClientLoadTest {
+    protected static final int CLIENTS = 64;
+    private static final Duration HOLD = Duration.ofSeconds(1);
+    // Small enough for the initial balance to cover two transfers of every client
+    private static final String TRANSFER = "{\"sourceWalletId\":\"FIAT_CURRENCY_SOURCE_1\",\"destinationWalletId\":\"FIAT_CURRENCY_DESTINATION_1\",\"amount\":0.5}\n";
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private CommandGateway commandGateway;
+
+    /**
+     * Asserts that exactly {@code concurrency} clients are served while all of them hold their requests open, and that
+     * every client is served once they finish their requests.
+     */
+    protected void assertServedConcurrently(int concurrency) throws Exception {
+        String entityId = UUID.randomUUID().toString();
+        commandGateway.sendAndWait(new CreateEntityCommand(entityId));
+        AtomicInteger served = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            long start = System.nanoTime();
+            List<Future<Integer>> receipts = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                receipts.add(clients.submit(() -> slowClient(entityId, served, release)));
+            }
+            await().atMost(Duration.ofSeconds(20)).until(() -> served.get() >= concurrency);
+            Duration untilConcurrent = Duration.ofNanos(System.nanoTime() - start);
+            Thread.sleep(HOLD.toMillis());
+            assertEquals(concurrency, served.get());
+
+            long released = System.nanoTime();
+            release.countDown();
+            for (Future<Integer> receipt : receipts) {
+                assertEquals(2, receipt.get(30, TimeUnit.SECONDS));
+            }
+            assertEquals(CLIENTS, served.get());
+            log.info("{} on Java {}: {} of {} slow clients served at once after {} ms, all finished {} ms after the release",
+                    getClass().getSimpleName(), Runtime.version().feature(), concurrency, CLIENTS, untilConcurrent.toMillis(),
+                    Duration.ofNanos(System.nanoTime() - released).toMillis());
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+        }
+    }
+
+    private int slowClient(String entityId, AtomicInteger served, CountDownLatch release) throws IOException, InterruptedException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(30_000);
+            OutputStream output = socket.getOutputStream();
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            output.write(("POST /entity/" + entityId + "/transfers HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/x-ndjson\r\n"
+                    + "Transfer-Encoding: chunked\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            writeChunk(output, TRANSFER);
+            readReceipt(input);
+            served.incrementAndGet();
+
+            release.await();
+            writeChunk(output, TRANSFER);
+            writeChunk(output, "");
+            readReceipt(input);
+            while (input.readLine() != null) {
+                // Read up to the end of the response, the server closes the connection
+            }
+            return 2;
+        }
+    }
+
+    private static void writeChunk(OutputStream output, String data) throws IOException {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        output.write((Integer.toHexString(bytes.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        output.write(bytes);
+        output.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+    }
+
+    private static void readReceipt(BufferedReader input) throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            if (line.contains("postingId")) {
+                return;
+            }
+        }
+        throw new IOException("Connection closed before the receipt");
+    }
+}
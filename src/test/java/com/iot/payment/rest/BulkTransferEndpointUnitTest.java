@@ -0,0 +1,164 @@
+package com.iot.payment.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iot.payment.coreapi.commands.BatchTransferCommand;
+import com.iot.payment.coreapi.events.Movement;
+import com.iot.payment.coreapi.queries.SubscribeTransferBatch;
+import com.iot.payment.service.TransferOutcome;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.queryhandling.DefaultSubscriptionQueryResult;
+import org.axonframework.queryhandling.QueryGateway;
+import org.axonframework.queryhandling.SubscriptionQueryResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BulkTransferEndpointUnitTest {
+    private static final String ENTITY_ID = "entityId";
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final BigDecimal OVERDRAWN = BigDecimal.valueOf(99);
+    private CommandGateway commandGateway;
+    private QueryGateway queryGateway;
+    private BulkTransferEndpoint endpoint;
+    private BatchTransferCommand dispatched;
+
+    @BeforeEach
+    public void setup() {
+        commandGateway = Mockito.mock(CommandGateway.class);
+        queryGateway = Mockito.mock(QueryGateway.class);
+        Mockito.when(commandGateway.send(Mockito.any())).thenAnswer(invocation -> {
+            dispatched = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(null);
+        });
+        // The projection makes every movement but the overdrawn ones
+        Mockito.when(queryGateway.subscriptionQuery(Mockito.any(SubscribeTransferBatch.class), Mockito.eq(TransferOutcome.class), Mockito.eq(TransferOutcome.class)))
+                .thenAnswer(invocation -> subscription(Flux.defer(() -> Flux.just(outcomeOf(dispatched)))));
+        endpoint = new BulkTransferEndpoint(commandGateway, queryGateway, objectMapper, 2, Duration.ofSeconds(1));
+    }
+
+    private static SubscriptionQueryResult<TransferOutcome, TransferOutcome> subscription(Flux<TransferOutcome> updates) {
+        return new DefaultSubscriptionQueryResult<>(Mono.empty(), updates, () -> true);
+    }
+
+    private static TransferOutcome outcomeOf(BatchTransferCommand command) {
+        List<String> postingIds = new ArrayList<>();
+        Map<String, String> rejections = new LinkedHashMap<>();
+        for (Movement movement : command.movements()) {
+            if (movement.getAmount().equals(OVERDRAWN)) {
+                rejections.put(movement.getPostingId(), "Insufficient balance in source wallet");
+            } else {
+                postingIds.add(movement.getPostingId());
+            }
+        }
+        return new TransferOutcome(postingIds, rejections);
+    }
+
+    @Test
+    public void jsonArrayShouldBeDispatchedInBatchesAndStreamPostingIds() throws Exception {
+        String body = "[" + transfer(10) + "," + transfer(20) + "," + transfer(30) + "," + transfer(40) + "," + transfer(50) + "]";
+
+        List<JsonNode> lines = stream(body);
+
+        ArgumentCaptor<BatchTransferCommand> commands = ArgumentCaptor.forClass(BatchTransferCommand.class);
+        Mockito.verify(commandGateway, Mockito.times(3)).send(commands.capture());
+        List<Movement> movements = new ArrayList<>();
+        for (BatchTransferCommand command : commands.getAllValues()) {
+            assertEquals(ENTITY_ID, command.entityId());
+            movements.addAll(command.movements());
+        }
+        assertEquals(List.of(2, 2, 1), commands.getAllValues().stream().map(command -> command.movements().size()).toList());
+        assertEquals(5, lines.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(BigDecimal.valueOf(10L * (i + 1)), movements.get(i).getAmount());
+            assertEquals(movements.get(i).getPostingId(), lines.get(i).get("postingId").asText());
+        }
+    }
+
+    @Test
+    public void ndjsonShouldBeAccepted() throws Exception {
+        List<JsonNode> lines = stream(transfer(1) + "\n" + transfer(2) + "\n" + transfer(3) + "\n");
+
+        assertEquals(3, lines.size());
+        Mockito.verify(commandGateway, Mockito.times(2)).send(Mockito.any(BatchTransferCommand.class));
+    }
+
+    @Test
+    public void invalidTransferShouldStopTheStreamAfterCommittedBatches() throws Exception {
+        List<JsonNode> lines = stream("[" + transfer(1) + "," + transfer(2) + "," + transfer(-3) + "," + transfer(4) + "]");
+
+        Mockito.verify(commandGateway, Mockito.times(1)).send(Mockito.any(BatchTransferCommand.class));
+        assertEquals(3, lines.size());
+        assertNotNull(lines.get(1).get("postingId"));
+        assertEquals("Transfer amount must be positive", lines.get(2).get("message").asText());
+    }
+
+    @Test
+    public void failedDispatchShouldBeReported() throws Exception {
+        Mockito.when(commandGateway.send(Mockito.any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Aggregate not found")));
+
+        List<JsonNode> lines = stream("[" + transfer(1) + "]");
+
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).get("message").asText().contains("Aggregate not found"));
+    }
+
+    @Test
+    public void rejectedTransfersShouldBeReportedWithoutStoppingTheOthers() throws Exception {
+        List<JsonNode> lines = stream("[" + transfer(1) + "," + transfer(99) + "," + transfer(3) + "]");
+
+        assertEquals(3, lines.size());
+        assertNotNull(lines.get(0).get("postingId"));
+        assertNull(lines.get(1).get("postingId"));
+        assertEquals("Insufficient balance in source wallet", lines.get(1).get("rejection").asText());
+        assertNotNull(lines.get(2).get("postingId"));
+    }
+
+    @Test
+    public void batchWithoutOutcomeShouldNotBeReportedAsMade() throws Exception {
+        Mockito.when(queryGateway.subscriptionQuery(Mockito.any(SubscribeTransferBatch.class), Mockito.eq(TransferOutcome.class), Mockito.eq(TransferOutcome.class)))
+                .thenAnswer(invocation -> subscription(Flux.never()));
+        endpoint = new BulkTransferEndpoint(commandGateway, queryGateway, objectMapper, 2, Duration.ofMillis(50));
+
+        List<JsonNode> lines = stream("[" + transfer(1) + "]");
+
+        assertEquals(1, lines.size());
+        assertNull(lines.get(0).get("postingId"));
+        assertTrue(lines.get(0).get("message").asText().contains("outcome of the batch is unknown"));
+    }
+
+    private List<JsonNode> stream(String body) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        endpoint.streamTransfers(ENTITY_ID, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), output);
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : output.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isBlank()) {
+                lines.add(objectMapper.readTree(line));
+            }
+        }
+        return lines;
+    }
+
+    private static String transfer(int amount) {
+        return "{\"sourceWalletId\":\"FIAT_CURRENCY_SOURCE_1\",\"destinationWalletId\":\"FIAT_CURRENCY_DESTINATION_1\",\"amount\":" + amount + "}";
+    }
+}
@@ -15,10 +15,13 @@ import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.UUID;
 
+import static org.awaitility.Awaitility.await;
+
 @SpringBootTest(classes = LedgerApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 public class LedgerRestEndpointE2ETest {
     @LocalServerPort
@@ -49,11 +52,35 @@ public class LedgerRestEndpointE2ETest {
                 .verifyComplete();
 
         transferBalances(client, entityId);
+        // The projection catches up asynchronously, and other tests share the application context, so only look at this entity
+        String uri = "http://localhost:" + port + "/historical-balance/stream?entity-id=" + entityId;
+        await().atMost(Duration.ofSeconds(10)).until(() -> {
+            ResponseList balances = retrieveListResponse(client.get().uri(uri)).block();
+            return balances.size() == 2 && balances.stream().allMatch(response -> response.getBalance() != null);
+        });
         StepVerifier.create(retrieveListResponse(client.get()
-                        .uri("http://localhost:" + port + "/historical-balance")))
+                        .uri(uri)))
                 .expectNextMatches(list -> 2 == list.size()
                         && list.get(0).getLocalDate().isBefore(LocalDateTime.now()))
                 .verifyComplete();
+
+        // The original endpoint lists the wallets of every entity and its responses carry no entity id, so look for
+        // this entity's wallet balances among them
+        ResponseList own = retrieveListResponse(client.get().uri(uri)).block();
+        String allUri = "http://localhost:" + port + "/historical-balance";
+        await().atMost(Duration.ofSeconds(10)).until(() -> {
+            ResponseList all = retrieveListResponse(client.get().uri(allUri)).block();
+            return own.stream().allMatch(balance -> all.stream().anyMatch(other -> sameWalletBalance(balance, other)));
+        });
+        StepVerifier.create(retrieveListResponse(client.get()
+                        .uri(allUri)))
+                .expectNextMatches(list -> list.size() >= 2
+                        && list.stream().allMatch(balance -> balance.getLocalDate().isBefore(LocalDateTime.now())))
+                .verifyComplete();
+    }
+
+    private static boolean sameWalletBalance(HistoricalBalanceResponse balance, HistoricalBalanceResponse other) {
+        return balance.getWalletId().equals(other.getWalletId()) && other.getBalance() != null && balance.getBalance().compareTo(other.getBalance()) == 0;
     }
 
     private void transferBalances(WebClient client, String entityId) {
@@ -2,7 +2,9 @@ package com.iot.payment.rest;
 
 import com.iot.payment.LedgerApplication;
 import com.iot.payment.exception.ApiError;
+import com.iot.payment.querymodel.HistoricalBalancePage;
 import com.iot.payment.querymodel.HistoricalBalanceResponse;
+import com.iot.payment.querymodel.WalletBalance;
 import org.junit.Ignore;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,22 +12,28 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.UUID;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.mock;
 
@@ -92,6 +100,213 @@ public class LedgerRestEndpointIntegrationTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("Should stream back posting ids for bulk transfers")
+    public void shouldStreamPostingIdsForBulkTransfers() {
+        WebClient client = WebClient.builder()
+                .clientConnector(httpConnector())
+                .build();
+        String entityId = UUID.randomUUID().toString();
+        StepVerifier.create(retrieveResponse(client.post()
+                        .uri("http://localhost:" + port + "/entity/" + entityId)))
+                .assertNext(Assertions::assertNotNull)
+                .verifyComplete();
+        String transfer = "{\"sourceWalletId\":\"FIAT_CURRENCY_SOURCE_1\",\"destinationWalletId\":\"FIAT_CURRENCY_DESTINATION_1\",\"amount\":1}\n";
+        StepVerifier.create(client.post()
+                        .uri("http://localhost:" + port + "/entity/" + entityId + "/transfers")
+                        .contentType(MediaType.parseMediaType(BulkTransferEndpoint.APPLICATION_NDJSON_VALUE))
+                        .bodyValue(transfer.repeat(3))
+                        .retrieve()
+                        .bodyToFlux(TransferReceipt.class))
+                .expectNextMatches(receipt -> receipt.postingId() != null)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Should reject the bulk transfers a wallet cannot take and make the others")
+    public void shouldRejectBulkTransfersTheWalletCannotTake() {
+        WebClient client = WebClient.builder()
+                .clientConnector(httpConnector())
+                .build();
+        String entityId = UUID.randomUUID().toString();
+        StepVerifier.create(retrieveResponse(client.post()
+                        .uri("http://localhost:" + port + "/entity/" + entityId)))
+                .assertNext(Assertions::assertNotNull)
+                .verifyComplete();
+        String transfer = "{\"sourceWalletId\":\"FIAT_CURRENCY_SOURCE_1\",\"destinationWalletId\":\"FIAT_CURRENCY_DESTINATION_1\",\"amount\":%d}\n";
+        StepVerifier.create(client.post()
+                        .uri("http://localhost:" + port + "/entity/" + entityId + "/transfers")
+                        .contentType(MediaType.parseMediaType(BulkTransferEndpoint.APPLICATION_NDJSON_VALUE))
+                        .bodyValue(transfer.formatted(60) + transfer.formatted(60) + transfer.formatted(30))
+                        .retrieve()
+                        .bodyToFlux(Map.class))
+                .expectNextMatches(line -> line.get("postingId") != null)
+                .expectNextMatches(line -> "Insufficient balance in source wallet".equals(line.get("rejection")))
+                .expectNextMatches(line -> line.get("postingId") != null)
+                .verifyComplete();
+
+        StepVerifier.create(client.get()
+                        .uri("http://localhost:" + port + "/latest-balance/entity/" + entityId + "/wallet-id/FIAT_CURRENCY_SOURCE_1")
+                        .retrieve()
+                        .bodyToMono(WalletBalance.class))
+                .expectNextMatches(balance -> balance.balance().intValue() == 10)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Should page and stream historical balances filtered by entity")
+    public void shouldPageAndStreamHistoricalBalancesOfEntity() {
+        WebClient client = WebClient.builder()
+                .clientConnector(httpConnector())
+                .build();
+        String entityId = UUID.randomUUID().toString();
+        StepVerifier.create(retrieveResponse(client.post()
+                        .uri("http://localhost:" + port + "/entity/" + entityId)))
+                .assertNext(Assertions::assertNotNull)
+                .verifyComplete();
+
+        // The projection catches up asynchronously
+        await().atMost(Duration.ofSeconds(10)).until(() -> client.get()
+                .uri("http://localhost:" + port + "/historical-balance/page?entity-id=" + entityId + "&limit=1")
+                .retrieve()
+                .bodyToMono(HistoricalBalancePage.class)
+                .block()
+                .items().size() == 1);
+
+        HistoricalBalancePage firstPage = client.get()
+                .uri("http://localhost:" + port + "/historical-balance/page?entity-id=" + entityId + "&limit=1")
+                .retrieve()
+                .bodyToMono(HistoricalBalancePage.class)
+                .block();
+        assertEquals("FIAT_CURRENCY_SOURCE_1", firstPage.items().get(0).getWalletId());
+        StepVerifier.create(client.get()
+                        .uri("http://localhost:" + port + "/historical-balance/page?entity-id=" + entityId + "&limit=1&cursor=" + firstPage.nextCursor())
+                        .retrieve()
+                        .bodyToMono(HistoricalBalancePage.class))
+                .expectNextMatches(page -> page.items().size() == 1 && "FIAT_CURRENCY_DESTINATION_1".equals(page.items().get(0).getWalletId()) && page.nextCursor() == null)
+                .verifyComplete();
+
+        StepVerifier.create(client.get()
+                        .uri("http://localhost:" + port + "/historical-balance/stream?entity-id=" + entityId + "&wallet-id=FIAT_CURRENCY_DESTINATION_1")
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .retrieve()
+                        .bodyToFlux(HistoricalBalanceResponse.class))
+                .expectNextMatches(balance -> "FIAT_CURRENCY_DESTINATION_1".equals(balance.getWalletId()))
+                .verifyComplete();
+
+        StepVerifier.create(client.get()
+                        .uri("http://localhost:" + port + "/historical-balance/page?limit=0")
+                        .retrieve()
+                        .bodyToMono(HistoricalBalancePage.class))
+                .expectErrorMatches(throwable -> throwable instanceof WebClientResponseException.BadRequest)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Should push balance changes of subscribed wallets as server-sent events")
+    public void shouldPushBalanceChangesAsServerSentEvents() {
+        WebClient client = WebClient.builder()
+                .clientConnector(httpConnector())
+                .build();
+        String entityId = UUID.randomUUID().toString();
+        StepVerifier.create(retrieveResponse(client.post()
+                        .uri("http://localhost:" + port + "/entity/" + entityId)))
+                .assertNext(Assertions::assertNotNull)
+                .verifyComplete();
+        await().atMost(Duration.ofSeconds(10)).until(() -> client.get()
+                .uri("http://localhost:" + port + "/historical-balance/page?entity-id=" + entityId)
+                .retrieve()
+                .bodyToMono(HistoricalBalancePage.class)
+                .block()
+                .items().size() == 2);
+
+        Flux<WalletBalance> balances = client.get()
+                .uri("http://localhost:" + port + "/balances/subscribe?entity-id=" + entityId + "&wallet-id=FIAT_CURRENCY_SOURCE_1")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .retrieve()
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<WalletBalance>>() {
+                })
+                .mapNotNull(ServerSentEvent::data);
+        StepVerifier.create(balances)
+                .expectNextMatches(balance -> balance.balance().intValue() == 100)
+                .then(() -> retrieveResponse(client.post()
+                        .uri("http://localhost:" + port + "/transfer/entity/" + entityId + "/source-id/FIAT_CURRENCY_SOURCE_1/destination-id/FIAT_CURRENCY_DESTINATION_1/amount/10")).block())
+                .expectNextMatches(balance -> "FIAT_CURRENCY_SOURCE_1".equals(balance.walletId()) && balance.balance().intValue() == 90)
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+
+    @Test
+    @DisplayName("Should return the latest balance of a wallet")
+    public void shouldReturnLatestBalanceOfWallet() {
+        WebClient client = WebClient.builder()
+                .clientConnector(httpConnector())
+                .build();
+        String entityId = UUID.randomUUID().toString();
+        StepVerifier.create(retrieveResponse(client.post()
+                        .uri("http://localhost:" + port + "/entity/" + entityId)))
+                .assertNext(Assertions::assertNotNull)
+                .verifyComplete();
+        StepVerifier.create(retrieveResponse(client.post()
+                        .uri("http://localhost:" + port + "/transfer/entity/" + entityId + "/source-id/FIAT_CURRENCY_SOURCE_1/destination-id/FIAT_CURRENCY_DESTINATION_1/amount/30")))
+                .verifyComplete();
+
+        String uri = "http://localhost:" + port + "/latest-balance/entity/" + entityId + "/wallet-id/FIAT_CURRENCY_DESTINATION_1";
+        await().atMost(Duration.ofSeconds(10)).ignoreExceptions().until(() -> client.get()
+                .uri(uri)
+                .retrieve()
+                .bodyToMono(WalletBalance.class)
+                .block()
+                .balance().intValue() == 130);
+
+        StepVerifier.create(client.get()
+                        .uri("http://localhost:" + port + "/latest-balance/entity/" + entityId + "/wallet-id/unknown")
+                        .retrieve()
+                        .bodyToMono(WalletBalance.class))
+                .expectErrorMatches(throwable -> throwable instanceof WebClientResponseException.NotFound)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Should transfer only once when a transfer is retried with the same idempotency key")
+    public void shouldTransferOnceWhenRetriedWithTheSameIdempotencyKey() {
+        WebClient client = WebClient.builder()
+                .clientConnector(httpConnector())
+                .build();
+        String entityId = UUID.randomUUID().toString();
+        StepVerifier.create(retrieveResponse(client.post()
+                        .uri("http://localhost:" + port + "/entity/" + entityId)))
+                .assertNext(Assertions::assertNotNull)
+                .verifyComplete();
+        String transfer = "http://localhost:" + port + "/transfer/entity/" + entityId + "/source-id/FIAT_CURRENCY_SOURCE_1/destination-id/FIAT_CURRENCY_DESTINATION_1/amount/";
+        String idempotencyKey = UUID.randomUUID().toString();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            StepVerifier.create(retrieveResponse(client.post()
+                            .uri(transfer + 30)
+                            .header(LedgerRestEndpoint.IDEMPOTENCY_KEY_HEADER, idempotencyKey)))
+                    .verifyComplete();
+        }
+        StepVerifier.create(retrieveResponse(client.post()
+                        .uri(transfer + 1)))
+                .verifyComplete();
+
+        // The transfer without a key is projected after the retried one, so the balance settles once and for all
+        String uri = "http://localhost:" + port + "/latest-balance/entity/" + entityId + "/wallet-id/FIAT_CURRENCY_DESTINATION_1";
+        await().atMost(Duration.ofSeconds(10)).ignoreExceptions().until(() -> client.get()
+                .uri(uri)
+                .retrieve()
+                .bodyToMono(WalletBalance.class)
+                .block()
+                .balance().intValue() == 131);
+
+        StepVerifier.create(retrieveResponse(client.post()
+                        .uri(transfer + 1)
+                        .header(LedgerRestEndpoint.IDEMPOTENCY_KEY_HEADER, "k".repeat(129))))
+                .expectErrorMatches(throwable -> throwable instanceof WebClientResponseException.BadRequest)
+                .verify();
+    }
+
     @Ignore // its polluting the logs
     @DisplayName("Should fail to transfer balances when entity does not exist")
     public void shouldFailToTransferBalancesWhenEntityDoesNotExist() {
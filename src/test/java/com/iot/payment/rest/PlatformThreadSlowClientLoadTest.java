@@ -0,0 +1,21 @@
+package com.iot.payment.rest;
+
+import com.iot.payment.LedgerApplication;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Bulk transfer streams are read on the MVC task executor, so on platform threads only as many slow clients as the
+ * pool has threads are served at once; the others queue.
+ */
+@SpringBootTest(classes = LedgerApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ledger.transfer.bulk.batch-size=1",
+        "spring.task.execution.pool.core-size=" + PlatformThreadSlowClientLoadTest.POOL_SIZE})
+public class PlatformThreadSlowClientLoadTest extends AbstractSlowClientLoadTest {
+    static final int POOL_SIZE = 8;
+
+    @Test
+    public void slowClientsShouldBeLimitedByThePoolSize() throws Exception {
+        assertServedConcurrently(POOL_SIZE);
+    }
+}
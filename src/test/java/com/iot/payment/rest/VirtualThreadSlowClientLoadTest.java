@@ -0,0 +1,28 @@
+package com.iot.payment.rest;
+
+import com.iot.payment.LedgerApplication;
+import com.iot.payment.VirtualThreads;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * The same slow clients as {@link PlatformThreadSlowClientLoadTest} with virtual threads: every client is served at
+ * once. Runs on Java 21 or later only; the {@code jdk21} profile, active on a JDK 21 build, makes it fail rather than
+ * skip when virtual threads are missing.
+ */
+@EnabledIf("shouldRun")
+@SpringBootTest(classes = LedgerApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ledger.transfer.bulk.batch-size=1",
+        "ledger.threads.virtual.enabled=true"})
+public class VirtualThreadSlowClientLoadTest extends AbstractSlowClientLoadTest {
+
+    static boolean shouldRun() {
+        return VirtualThreads.isSupported() || Boolean.getBoolean("ledger.threads.virtual.required");
+    }
+
+    @Test
+    public void everySlowClientShouldBeServedAtOnce() throws Exception {
+        assertServedConcurrently(CLIENTS);
+    }
+}
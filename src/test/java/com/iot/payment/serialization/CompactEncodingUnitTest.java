@@ -0,0 +1,92 @@
+package com.iot.payment.serialization;
+
+import com.iot.payment.commandmodel.PostingState;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class CompactEncodingUnitTest {
+
+    @FunctionalInterface
+    private interface Write {
+        void to(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] write(Write write) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write.to(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream read(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void varintsShouldTakeOneByteUpTo127() throws IOException {
+        assertEquals(1, write(out -> CompactEncoding.writeVarLong(out, 127)).length);
+        assertEquals(2, write(out -> CompactEncoding.writeVarLong(out, 128)).length);
+        assertEquals(1, write(out -> CompactEncoding.writeSignedVarLong(out, -64)).length);
+        for (long value : new long[]{0, 1, -1, 300, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            assertEquals(value, CompactEncoding.readSignedVarLong(read(write(out -> CompactEncoding.writeSignedVarLong(out, value)))));
+            assertEquals(value, CompactEncoding.readVarLong(read(write(out -> CompactEncoding.writeVarLong(out, value)))));
+        }
+        assertEquals(-1, CompactEncoding.readVarInt(read(write(out -> CompactEncoding.writeVarInt(out, -1)))));
+    }
+
+    @Test
+    public void canonicalUuidsShouldTakeSixteenBytes() throws IOException {
+        String uuid = UUID.randomUUID().toString();
+        byte[] bytes = write(out -> CompactEncoding.writeString(out, uuid));
+
+        assertEquals(17, bytes.length);
+        assertEquals(uuid, CompactEncoding.readString(read(bytes)));
+    }
+
+    @Test
+    public void otherStringsShouldReadBackUnchanged() throws IOException {
+        String upperCaseUuid = UUID.randomUUID().toString().toUpperCase();
+        for (String value : new String[]{"", "walletId", upperCaseUuid, "w\u00e4llet-\u20ac"}) {
+            assertEquals(value, CompactEncoding.readString(read(write(out -> CompactEncoding.writeString(out, value)))));
+        }
+        assertNull(CompactEncoding.readString(read(write(out -> CompactEncoding.writeString(out, null)))));
+    }
+
+    @Test
+    public void decimalsShouldKeepTheirScale() throws IOException {
+        for (String value : new String[]{"0", "10.00", "-0.01", "1E+3", "123456789012345678901234567890.123456789"}) {
+            BigDecimal decimal = new BigDecimal(value);
+            BigDecimal read = CompactEncoding.readDecimal(read(write(out -> CompactEncoding.writeDecimal(out, decimal))));
+            assertEquals(decimal, read);
+            assertEquals(decimal.scale(), read.scale());
+        }
+        assertEquals(3, write(out -> CompactEncoding.writeDecimal(out, new BigDecimal("10.00"))).length);
+        assertNull(CompactEncoding.readDecimal(read(write(out -> CompactEncoding.writeDecimal(out, null)))));
+    }
+
+    @Test
+    public void enumsAndSizesShouldReadBackIncludingNull() throws IOException {
+        DataInputStream in = read(write(out -> {
+            CompactEncoding.writeEnum(out, PostingState.values()[0]);
+            CompactEncoding.writeEnum(out, null);
+            CompactEncoding.writeSize(out, 3);
+            CompactEncoding.writeSize(out, -1);
+        }));
+
+        assertEquals(PostingState.values()[0], CompactEncoding.readEnum(in, PostingState.values()));
+        assertNull(CompactEncoding.readEnum(in, PostingState.values()));
+        assertEquals(3, CompactEncoding.readSize(in));
+        assertEquals(-1, CompactEncoding.readSize(in));
+    }
+}
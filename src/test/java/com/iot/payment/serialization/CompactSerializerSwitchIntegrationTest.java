@@ -0,0 +1,72 @@
+package com.iot.payment.serialization;
+
+import com.iot.payment.LedgerApplication;
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import com.iot.payment.coreapi.events.EntityCreatedEvent;
+import com.iot.payment.coreapi.events.TransferEvent;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.eventhandling.DomainEventMessage;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactSerializerSwitchIntegrationTest {
+
+    @TempDir
+    Path directory;
+
+    private ConfigurableApplicationContext start(boolean compactSerializer) {
+        return new SpringApplicationBuilder(LedgerApplication.class).properties(
+                "server.port=0",
+                "spring.datasource.url=jdbc:h2:file:" + directory.resolve("ledger"),
+                "spring.jpa.hibernate.ddl-auto=update",
+                "ledger.serializer.compact.enabled=" + compactSerializer).run();
+    }
+
+    private static List<String> payloadRevisions(ConfigurableApplicationContext context, String entityId) {
+        return context.getBean(JdbcTemplate.class).queryForList(
+                "select payload_revision from domain_event_entry where aggregate_identifier = ? order by sequence_number",
+                String.class, entityId);
+    }
+
+    @Test
+    public void eventsStoredWithXStreamShouldStayReadableOnceTheCompactSerializerIsEnabled() {
+        String entityId = UUID.randomUUID().toString();
+        try (ConfigurableApplicationContext context = start(false)) {
+            CommandGateway commandGateway = context.getBean(CommandGateway.class);
+            commandGateway.sendAndWait(new CreateEntityCommand(entityId));
+            commandGateway.sendAndWait(new TransferCommand(entityId, "source", "destination", new BigDecimal("30")));
+        }
+
+        try (ConfigurableApplicationContext context = start(true)) {
+            // The aggregate is sourced from the XStream events before it handles the command
+            context.getBean(CommandGateway.class).sendAndWait(new TransferCommand(entityId, "source", "destination", new BigDecimal("20")));
+
+            List<String> revisions = payloadRevisions(context, entityId);
+            assertEquals(3, revisions.size());
+            assertNull(revisions.get(0));
+            assertNull(revisions.get(1));
+            assertTrue(revisions.get(2).startsWith(CompactSerializer.REVISION_PREFIX));
+
+            List<? extends DomainEventMessage<?>> events = context.getBean(EventStore.class).readEvents(entityId).asStream().toList();
+            assertEquals(3, events.size());
+            assertEquals(entityId, assertInstanceOf(EntityCreatedEvent.class, events.get(0).getPayload()).getEntityId());
+            assertEquals(0, new BigDecimal("30").compareTo(assertInstanceOf(TransferEvent.class, events.get(1).getPayload()).getAmount()));
+            assertEquals(0, new BigDecimal("20").compareTo(assertInstanceOf(TransferEvent.class, events.get(2).getPayload()).getAmount()));
+        }
+    }
+}
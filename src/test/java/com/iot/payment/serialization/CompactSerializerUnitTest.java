@@ -0,0 +1,156 @@
+package com.iot.payment.serialization;
+
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.coreapi.commands.BatchTransferCommand;
+import com.iot.payment.coreapi.commands.CreateEntityCommand;
+import com.iot.payment.coreapi.commands.ModifyPostingCommand;
+import com.iot.payment.coreapi.commands.TransferCommand;
+import com.iot.payment.coreapi.commands.UpdateAccountStatusCommand;
+import com.iot.payment.coreapi.events.BalanceUpdatedEvent;
+import com.iot.payment.coreapi.events.EntityCreatedEvent;
+import com.iot.payment.coreapi.events.ModifyPostingEvent;
+import com.iot.payment.coreapi.events.Movement;
+import com.iot.payment.coreapi.events.MovementUpdatedEvent;
+import com.iot.payment.coreapi.events.TransferEvent;
+import com.iot.payment.coreapi.events.TransfersBatchedEvent;
+import com.iot.payment.coreapi.events.UpdateAccountStatusEvent;
+import com.thoughtworks.xstream.XStream;
+import org.axonframework.messaging.MetaData;
+import org.axonframework.serialization.SerializationException;
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.SimpleSerializedObject;
+import org.axonframework.serialization.xml.XStreamSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.iot.payment.serialization.CompactEncoding.readDecimal;
+import static com.iot.payment.serialization.CompactEncoding.readString;
+import static com.iot.payment.serialization.CompactEncoding.writeDecimal;
+import static com.iot.payment.serialization.CompactEncoding.writeString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactSerializerUnitTest {
+    private static final String ENTITY_ID = UUID.randomUUID().toString();
+
+    private final XStreamSerializer xStreamSerializer = xStreamSerializer();
+    private final Serializer serializer = CompactSerializer.builder().delegate(xStreamSerializer).codecs(LedgerEventCodecs.all()).build();
+
+    private static XStreamSerializer xStreamSerializer() {
+        XStream xStream = new XStream();
+        xStream.allowTypesByWildcard(new String[]{"com.iot.payment.**"});
+        return XStreamSerializer.builder().xStream(xStream).build();
+    }
+
+    private static List<Object> events() {
+        String postingId = UUID.randomUUID().toString();
+        return List.of(
+                new EntityCreatedEvent(ENTITY_ID),
+                new TransferEvent(ENTITY_ID, "source", "destination", new BigDecimal("12.50"), postingId),
+                new TransfersBatchedEvent(ENTITY_ID, new ArrayList<>(List.of(new Movement("source", "destination", BigDecimal.ONE, postingId)))),
+                new ModifyPostingEvent(ENTITY_ID, "source", "destination", postingId, new BigDecimal("-3.10"), PostingState.CLEARED),
+                new UpdateAccountStatusEvent(ENTITY_ID, "account", AccountState.FROZEN),
+                new MovementUpdatedEvent(UUID.randomUUID().toString(), "source", "destination", BigDecimal.TEN, postingId),
+                new BalanceUpdatedEvent("source", "destination", BigDecimal.TEN));
+    }
+
+    @Test
+    public void everyLedgerEventShouldReadBackEqualAndSmallerThanXml() {
+        for (Object event : events()) {
+            SerializedObject<byte[]> serialized = serializer.serialize(event, byte[].class);
+
+            assertEquals("c1", serialized.getType().getRevision());
+            assertEquals(event, serializer.deserialize(serialized));
+            int xmlSize = xStreamSerializer.serialize(event, byte[].class).getData().length;
+            assertTrue(serialized.getData().length * 4 < xmlSize, event.getClass().getSimpleName() + " takes " + serialized.getData().length + " bytes");
+        }
+    }
+
+    @Test
+    public void everyLedgerCommandShouldReadBackEqual() {
+        Serializer commandSerializer = CompactSerializer.builder().delegate(xStreamSerializer).codecs(LedgerCommandCodecs.all()).build();
+        String postingId = UUID.randomUUID().toString();
+        List<Object> commands = List.of(
+                new CreateEntityCommand(ENTITY_ID),
+                new TransferCommand(ENTITY_ID, "source", "destination", new BigDecimal("12.50")),
+                new BatchTransferCommand(ENTITY_ID, List.of(new Movement("source", "destination", BigDecimal.ONE, postingId))),
+                new ModifyPostingCommand(ENTITY_ID, "source", "destination", postingId, new BigDecimal("-3.10"), PostingState.CLEARED),
+                new UpdateAccountStatusCommand(ENTITY_ID, "account", AccountState.FROZEN));
+
+        for (Object command : commands) {
+            assertEquals(command, commandSerializer.deserialize(commandSerializer.serialize(command, byte[].class)));
+        }
+    }
+
+    @Test
+    public void stringRepresentationsShouldBeBase64() {
+        TransferEvent event = new TransferEvent(ENTITY_ID, "source", "destination", BigDecimal.ONE);
+        SerializedObject<String> serialized = serializer.serialize(event, String.class);
+
+        assertEquals(event, serializer.deserialize(serialized));
+        assertEquals(event, serializer.deserialize(serializer.serialize(event, Object.class)));
+    }
+
+    @Test
+    public void payloadsWrittenByTheDelegateShouldStillBeRead() {
+        TransferEvent event = new TransferEvent(ENTITY_ID, "source", "destination", BigDecimal.ONE);
+        SerializedObject<byte[]> stored = xStreamSerializer.serialize(event, byte[].class);
+
+        assertNull(stored.getType().getRevision());
+        assertEquals(event, serializer.deserialize(stored));
+    }
+
+    @Test
+    public void typesWithoutCodecShouldBeSerializedByTheDelegate() {
+        MetaData metaData = MetaData.from(Map.of("traceId", "trace"));
+        SerializedObject<byte[]> serialized = serializer.serialize(metaData, byte[].class);
+
+        assertEquals(xStreamSerializer.typeForClass(MetaData.class), serialized.getType());
+        assertEquals(metaData, serializer.deserialize(serialized));
+    }
+
+    record Sample(String id, BigDecimal amount) {
+    }
+
+    @Test
+    public void olderRevisionsShouldBeUpcastWhileReading() {
+        CompactCodec<Sample> firstRevision = new CompactCodec<>(Sample.class, 1,
+                (out, sample) -> writeString(out, sample.id()),
+                (in, revision) -> new Sample(readString(in), null));
+        CompactCodec<Sample> secondRevision = new CompactCodec<>(Sample.class, 2,
+                (out, sample) -> {
+                    writeString(out, sample.id());
+                    writeDecimal(out, sample.amount());
+                },
+                (in, revision) -> new Sample(readString(in), revision < 2 ? BigDecimal.ZERO : readDecimal(in)));
+        Serializer before = CompactSerializer.builder().delegate(xStreamSerializer).codecs(List.of(firstRevision)).build();
+        Serializer after = CompactSerializer.builder().delegate(xStreamSerializer).codecs(List.of(secondRevision)).build();
+
+        SerializedObject<byte[]> stored = before.serialize(new Sample("id", BigDecimal.TEN), byte[].class);
+        assertEquals(new Sample("id", BigDecimal.ZERO), after.deserialize(stored));
+
+        SerializedObject<byte[]> newer = after.serialize(new Sample("id", BigDecimal.TEN), byte[].class);
+        assertThrows(SerializationException.class, () -> before.deserialize(newer));
+    }
+
+    @Test
+    public void aTypeShouldHaveOneCodec() {
+        List<CompactCodec<?>> codecs = List.of(LedgerEventCodecs.TRANSFER, LedgerEventCodecs.TRANSFER);
+        assertThrows(IllegalArgumentException.class, () -> CompactSerializer.builder().delegate(xStreamSerializer).codecs(codecs).build());
+    }
+
+    @Test
+    public void corruptPayloadsShouldFailAsSerializationErrors() {
+        SerializedObject<byte[]> corrupt = new SimpleSerializedObject<>(new byte[]{2}, byte[].class, TransferEvent.class.getName(), "c1");
+        assertThrows(SerializationException.class, () -> serializer.deserialize(corrupt));
+    }
+}
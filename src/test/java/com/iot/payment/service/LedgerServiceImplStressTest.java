@@ -0,0 +1,104 @@
+package com.iot.payment.service;
+
+import com.iot.payment.commandmodel.Account;
+import com.iot.payment.commandmodel.AccountState;
+import com.iot.payment.commandmodel.Entity;
+import com.iot.payment.commandmodel.Posting;
+import com.iot.payment.commandmodel.PostingState;
+import com.iot.payment.commandmodel.Wallet;
+import com.iot.payment.repository.LedgerInMemoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LedgerServiceImplStressTest {
+    private static final String ENTITY_ID = "entityId";
+    private static final int WALLETS = 8;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 2_000;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000");
+
+    private LedgerService ledgerService;
+    private List<Wallet> wallets;
+
+    @BeforeEach
+    public void setup() {
+        wallets = new ArrayList<>();
+        for (int i = 0; i < WALLETS; i++) {
+            wallets.add(Wallet.builder().id("wallet" + i).balance(INITIAL_BALANCE).build());
+        }
+        Entity entity = Entity.builder().id(ENTITY_ID).accounts(List.of(Account.builder().id("accountId").wallets(wallets).state(AccountState.OPEN).build())).build();
+        LedgerInMemoryRepository ledgerRepository = new LedgerInMemoryRepository();
+        ledgerRepository.register(entity);
+        ledgerService = new LedgerServiceImpl(ledgerRepository);
+    }
+
+    @Test
+    public void concurrentTransfersAndModificationsShouldConserveBalances() throws Exception {
+        List<String> postingIds = new CopyOnWriteArrayList<>();
+        List<String[]> postingWallets = new CopyOnWriteArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        int source = random.nextInt(WALLETS);
+                        int destination = (source + 1 + random.nextInt(WALLETS - 1)) % WALLETS;
+                        String sourceWalletId = "wallet" + source;
+                        String destinationWalletId = "wallet" + destination;
+                        try {
+                            if (random.nextInt(4) == 0 && !postingIds.isEmpty()) {
+                                int p = random.nextInt(postingIds.size());
+                                String[] pair = postingWallets.get(p);
+                                ledgerService.modifyPosting(ENTITY_ID, pair[0], pair[1], postingIds.get(p), BigDecimal.valueOf(random.nextInt(1, 20)), PostingState.CLEARED);
+                            } else {
+                                List<TransferRequest> requests = List.of(
+                                        TransferRequest.builder().sourceWalletId(sourceWalletId).destinationWalletId(destinationWalletId).amount(BigDecimal.valueOf(random.nextInt(1, 20))).build(),
+                                        TransferRequest.builder().sourceWalletId(destinationWalletId).destinationWalletId(sourceWalletId).amount(BigDecimal.valueOf(random.nextInt(1, 20))).build());
+                                List<String> ids = ledgerService.transfer(ENTITY_ID, requests);
+                                synchronized (postingIds) {
+                                    postingIds.add(ids.get(0));
+                                    postingWallets.add(new String[]{sourceWalletId, destinationWalletId});
+                                }
+                            }
+                        } catch (IllegalArgumentException insufficientBalance) {
+                            // expected once a wallet runs dry, the batch must have been rolled back
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Wallet wallet : wallets) {
+            BigDecimal postedAmount = wallet.getPostings().stream().map(Posting::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+            assertEquals(INITIAL_BALANCE.add(postedAmount), wallet.getBalance(), "balance of " + wallet.getId() + " must match its postings");
+            total = total.add(wallet.getBalance());
+        }
+        assertEquals(INITIAL_BALANCE.multiply(BigDecimal.valueOf(WALLETS)), total);
+        assertTrue(postingIds.size() > 0);
+    }
+}
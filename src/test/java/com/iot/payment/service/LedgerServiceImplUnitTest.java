@@ -15,6 +15,7 @@ import org.junit.jupiter.params.provider.EnumSource;
 import org.mockito.Mockito;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -31,7 +32,7 @@ public class LedgerServiceImplUnitTest {
 
     @BeforeEach
     public void setup() {
-        ledgerRepository = Mockito.mock(LedgerInMemoryRepository.class);
+        ledgerRepository = Mockito.spy(new LedgerInMemoryRepository());
         ledgerService = new LedgerServiceImpl(ledgerRepository);
     }
 
@@ -300,4 +301,139 @@ public class LedgerServiceImplUnitTest {
         assertEquals(initialDestinationBalance.add(totalTransferred), finalDestinationBalance);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void failedBatchShouldLeaveNoPostingsOrBalanceHistory() {
+        Wallet sourceWallet = Wallet.builder().id("sourceWalletId").balance(new BigDecimal("100")).build();
+        Wallet destinationWallet = Wallet.builder().id("destinationWalletId").balance(new BigDecimal("50")).build();
+
+        Entity entity = Entity.builder().accounts(Collections.singletonList(Account.builder().wallets(Arrays.asList(sourceWallet, destinationWallet)).state(AccountState.OPEN).build())).build();
+
+        Map<String, Entity> entities = new HashMap<>();
+        entities.put("entityId", entity);
+
+        Mockito.when(ledgerRepository.getEntities()).thenReturn(entities);
+
+        List<TransferRequest> requests = Arrays.asList(
+                TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("50")).build(),
+                TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("100")).build()
+        );
+
+        assertThrows(IllegalArgumentException.class, () -> ledgerService.transfer("entityId", requests));
+
+        assertEquals(0, sourceWallet.getPostings().size());
+        assertEquals(0, destinationWallet.getPostings().size());
+        assertEquals(0, sourceWallet.getBalanceHistory().size());
+        assertEquals(0, destinationWallet.getBalanceHistory().size());
+    }
+
+    @Test
+    public void batchShouldBeCheckedAgainstNetBalanceChanges() {
+        Wallet sourceWallet = Wallet.builder().id("sourceWalletId").balance(new BigDecimal("10")).build();
+        Wallet destinationWallet = Wallet.builder().id("destinationWalletId").balance(new BigDecimal("0")).build();
+
+        Entity entity = Entity.builder().accounts(Collections.singletonList(Account.builder().wallets(Arrays.asList(sourceWallet, destinationWallet)).state(AccountState.OPEN).build())).build();
+
+        Map<String, Entity> entities = new HashMap<>();
+        entities.put("entityId", entity);
+
+        Mockito.when(ledgerRepository.getEntities()).thenReturn(entities);
+
+        // The third transfer is only covered by the funds the second one brings back
+        List<TransferRequest> requests = Arrays.asList(
+                TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("10")).build(),
+                TransferRequest.builder().sourceWalletId("destinationWalletId").destinationWalletId("sourceWalletId").amount(new BigDecimal("10")).build(),
+                TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("4")).build()
+        );
+        List<String> postingIds = ledgerService.transfer("entityId", requests);
+
+        assertEquals(3, postingIds.size());
+        assertEquals(new BigDecimal("6"), sourceWallet.getBalance());
+        assertEquals(new BigDecimal("4"), destinationWallet.getBalance());
+        assertEquals(3, sourceWallet.getPostings().size());
+        // One commit per batch, so each wallet records a single history entry
+        assertEquals(1, sourceWallet.getBalanceHistory().size());
+        assertEquals(new BigDecimal("4"), destinationWallet.getBalanceHistory().get(0).getBalance());
+    }
+
+    @Test
+    public void transferEachShouldOnlyRejectTheTransfersTheWalletsCannotTake() {
+        Wallet sourceWallet = Wallet.builder().id("sourceWalletId").balance(new BigDecimal("100")).build();
+        Wallet destinationWallet = Wallet.builder().id("destinationWalletId").balance(new BigDecimal("0")).build();
+
+        Entity entity = Entity.builder().accounts(Collections.singletonList(Account.builder().wallets(Arrays.asList(sourceWallet, destinationWallet)).state(AccountState.OPEN).build())).build();
+
+        Map<String, Entity> entities = new HashMap<>();
+        entities.put("entityId", entity);
+
+        Mockito.when(ledgerRepository.getEntities()).thenReturn(entities);
+
+        // The second transfer overdraws the source wallet, the third one still fits without it
+        List<TransferRequest> requests = Arrays.asList(
+                TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("60")).postingId("first").build(),
+                TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("60")).postingId("second").build(),
+                TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("unknownWalletId").amount(new BigDecimal("1")).postingId("third").build(),
+                TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("30")).postingId("fourth").build()
+        );
+        TransferOutcome outcome = ledgerService.transferEach("entityId", requests);
+
+        assertEquals(List.of("first", "fourth"), outcome.postingIds());
+        assertEquals(List.of("second", "third"), List.copyOf(outcome.rejections().keySet()));
+        assertEquals("Insufficient balance in source wallet", outcome.rejections().get("second"));
+        assertEquals(new BigDecimal("10"), sourceWallet.getBalance());
+        assertEquals(new BigDecimal("90"), destinationWallet.getBalance());
+        assertEquals(2, sourceWallet.getPostings().size());
+        assertEquals(1, sourceWallet.getBalanceHistory().size());
+    }
+
+    @Test
+    public void commitFailureShouldUndoEverythingAlreadyApplied() {
+        Wallet sourceWallet = Wallet.builder().id("sourceWalletId").balance(new BigDecimal("100")).build();
+        Wallet destinationWallet = Wallet.builder().id("destinationWalletId").balance(new BigDecimal("50")).postings(Collections.emptyList()).build();
+
+        Entity entity = Entity.builder().accounts(Collections.singletonList(Account.builder().wallets(Arrays.asList(sourceWallet, destinationWallet)).state(AccountState.OPEN).build())).build();
+
+        Map<String, Entity> entities = new HashMap<>();
+        entities.put("entityId", entity);
+
+        Mockito.when(ledgerRepository.getEntities()).thenReturn(entities);
+
+        // The destination wallet rejects new postings, so the commit fails after balances were already applied
+        List<TransferRequest> requests = Collections.singletonList(TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("30")).build());
+        assertThrows(UnsupportedOperationException.class, () -> ledgerService.transfer("entityId", requests));
+
+        assertEquals(new BigDecimal("100"), sourceWallet.getBalance());
+        assertEquals(new BigDecimal("50"), destinationWallet.getBalance());
+        assertEquals(0, sourceWallet.getPostings().size());
+        assertEquals(0, sourceWallet.getBalanceHistory().size());
+        assertEquals(0, destinationWallet.getBalanceHistory().size());
+    }
+
+
+    @Test
+    public void fixedPointWalletsShouldTransferInMinorUnits() {
+        Wallet sourceWallet = Wallet.builder().id("sourceWalletId").minorUnitScale(2).balance(new BigDecimal("10")).build();
+        Wallet destinationWallet = Wallet.builder().id("destinationWalletId").minorUnitScale(2).balance(new BigDecimal("0")).build();
+
+        Entity entity = Entity.builder().accounts(Collections.singletonList(Account.builder().wallets(Arrays.asList(sourceWallet, destinationWallet)).state(AccountState.OPEN).build())).build();
+
+        Map<String, Entity> entities = new HashMap<>();
+        entities.put("entityId", entity);
+
+        Mockito.when(ledgerRepository.getEntities()).thenReturn(entities);
+
+        ledgerService.transfer("entityId", Arrays.asList(
+                TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("2.5")).build(),
+                TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("0.25")).build()
+        ));
+
+        assertEquals(725, sourceWallet.getBalanceUnits());
+        assertEquals(new BigDecimal("7.25"), sourceWallet.getBalance());
+        assertEquals(new BigDecimal("2.75"), destinationWallet.getBalanceAt(LocalDateTime.MAX));
+
+        List<TransferRequest> overdraw = Collections.singletonList(TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("7.26")).build());
+        assertThrows(IllegalArgumentException.class, () -> ledgerService.transfer("entityId", overdraw));
+        List<TransferRequest> subMinorUnit = Collections.singletonList(TransferRequest.builder().sourceWalletId("sourceWalletId").destinationWalletId("destinationWalletId").amount(new BigDecimal("0.001")).build());
+        assertThrows(ArithmeticException.class, () -> ledgerService.transfer("entityId", subMinorUnit));
+        assertEquals(725, sourceWallet.getBalanceUnits());
+    }
+}